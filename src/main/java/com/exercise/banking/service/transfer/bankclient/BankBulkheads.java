@@ -0,0 +1,306 @@
+package com.exercise.banking.service.transfer.bankclient;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+
+import com.exercise.banking.service.transfer.exception.BankUnavailableException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Optional bulkheads isolating the banks of the payees from each other.
+ *
+ * Every bank gets its own limit of transfers in flight, so a slow bank fills its own
+ * bulkhead and not the resources used for the other banks. The limit adapts to the bank
+ * (AIMD): it grows by one per round of calls answered in time, and is multiplied by
+ * {@code transfer.bank-bulkhead.backoff-ratio} when a call fails or takes longer than
+ * {@code transfer.bank-bulkhead.slow-call-ms}, between {@code transfer.bank-bulkhead.min-limit}
+ * and {@code transfer.bank-bulkhead.max-limit}.
+ *
+ * After {@code transfer.bank-bulkhead.failure-threshold} failures in a row the circuit of
+ * the bank opens: no transfer is sent to it for {@code transfer.bank-bulkhead.open-ms}, then
+ * a single call probes the bank and closes the circuit if it succeeds. New transfers to a
+ * bank whose circuit is open are refused before the payer is debited.
+ *
+ * Enabled with {@code transfer.bank-bulkhead.enabled=true} together with the bank client.
+ */
+@Component
+@ConditionalOnExpression("${transfer.bank-bulkhead.enabled:false} and ${transfer.bank-client.enabled:false}")
+public class BankBulkheads {
+
+    private static final Logger logger = LoggerFactory.getLogger(BankBulkheads.class);
+
+    private final ConcurrentHashMap<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long slowCallNanos;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final MeterRegistry meterRegistry;
+    private final LongSupplier clock;
+
+    @Autowired
+    public BankBulkheads(@Value("${transfer.bank-bulkhead.initial-limit:20}") int initialLimit,
+                         @Value("${transfer.bank-bulkhead.min-limit:1}") int minLimit,
+                         @Value("${transfer.bank-bulkhead.max-limit:200}") int maxLimit,
+                         @Value("${transfer.bank-bulkhead.backoff-ratio:0.9}") double backoffRatio,
+                         @Value("${transfer.bank-bulkhead.slow-call-ms:1000}") long slowCallMillis,
+                         @Value("${transfer.bank-bulkhead.failure-threshold:5}") int failureThreshold,
+                         @Value("${transfer.bank-bulkhead.open-ms:5000}") long openMillis,
+                         MeterRegistry meterRegistry) {
+        this(initialLimit, minLimit, maxLimit, backoffRatio, slowCallMillis, failureThreshold, openMillis, meterRegistry, System::nanoTime);
+    }
+
+    BankBulkheads(int initialLimit, int minLimit, int maxLimit, double backoffRatio, long slowCallMillis, int failureThreshold,
+                  long openMillis, MeterRegistry meterRegistry, LongSupplier clock) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.initialLimit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.backoffRatio = Math.min(1, Math.max(0.1, backoffRatio));
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, openMillis));
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+    }
+
+    /**
+     * Checks that a new transfer may be accepted for the bank. A full bulkhead does not
+     * refuse it, the transfer waits in the outbox for a place.
+     * @param bankCode code of the bank of the payee
+     * @param requestId
+     * @throws BankUnavailableException if the circuit of the bank is open
+     */
+    public void checkAvailable(String bankCode, UUID requestId) {
+        Bulkhead bulkhead = bulkheads.get(bankCode);
+        if (bulkhead != null) {
+            bulkhead.checkAvailable(requestId);
+        }
+    }
+
+    /**
+     * Takes a place in the bulkhead of the bank if there is one
+     * @param bankCode code of the bank of the payee
+     * @return the permit to release once the bank has answered, empty if the bulkhead is
+     * full or the circuit of the bank is open
+     */
+    public Optional<Permit> tryAcquire(String bankCode) {
+        return Optional.ofNullable(bulkhead(bankCode).tryAcquire());
+    }
+
+    private Bulkhead bulkhead(String bankCode) {
+        return bulkheads.computeIfAbsent(bankCode, Bulkhead::new);
+    }
+
+    /**
+     * State of the circuit of a bank, published as its ordinal
+     */
+    enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    /**
+     * Place of a transfer in the bulkhead of its bank
+     */
+    public final class Permit {
+
+        private final Bulkhead bulkhead;
+        private final boolean probe;
+        private final long acquiredAt;
+        private boolean released;
+
+        private Permit(Bulkhead bulkhead, boolean probe) {
+            this.bulkhead = bulkhead;
+            this.probe = probe;
+            this.acquiredAt = clock.getAsLong();
+        }
+
+        /**
+         * Frees the place once the bank has answered, and adapts the bulkhead to the call
+         * @param delivered true if the bank answered, whether it accepted the transfer or not
+         */
+        public void release(boolean delivered) {
+            bulkhead.release(this, delivered, clock.getAsLong() - acquiredAt);
+        }
+
+        /**
+         * Frees the place of a transfer that was not sent, without adapting the bulkhead
+         */
+        public void cancel() {
+            bulkhead.cancel(this);
+        }
+    }
+
+    /**
+     * Bulkhead and circuit of one bank. The fields are only written under the lock, they
+     * are volatile for the gauges.
+     */
+    private final class Bulkhead {
+
+        private final String bankCode;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Counter saturatedCounter;
+        private final Counter openCounter;
+
+        private volatile double limit = initialLimit;
+        private volatile int inFlight;
+        private volatile State state = State.CLOSED;
+        private int consecutiveFailures;
+        private volatile long openUntil;
+        private boolean probing;
+
+        private Bulkhead(String bankCode) {
+            this.bankCode = bankCode;
+            this.saturatedCounter = rejectedCounter(bankCode, "saturated");
+            this.openCounter = rejectedCounter(bankCode, "open");
+            Gauge.builder("transfer.bank-bulkhead.limit", this, bulkhead -> Math.floor(bulkhead.limit))
+                    .description("Transfers that may be in flight to the bank")
+                    .tag("bank", bankCode)
+                    .register(meterRegistry);
+            Gauge.builder("transfer.bank-bulkhead.in-flight", this, bulkhead -> bulkhead.inFlight)
+                    .description("Transfers in flight to the bank")
+                    .tag("bank", bankCode)
+                    .register(meterRegistry);
+            Gauge.builder("transfer.bank-bulkhead.circuit.state", this, bulkhead -> bulkhead.state.ordinal())
+                    .description("Circuit of the bank: 0 closed, 1 half open, 2 open")
+                    .tag("bank", bankCode)
+                    .register(meterRegistry);
+        }
+
+        private Counter rejectedCounter(String bankCode, String reason) {
+            return Counter.builder("transfer.bank-bulkhead.rejected")
+                    .description("Transfers refused because the bulkhead of the bank was full or its circuit open")
+                    .tag("bank", bankCode)
+                    .tag("reason", reason)
+                    .register(meterRegistry);
+        }
+
+        private Permit tryAcquire() {
+            lock.lock();
+            try {
+                if (state == State.OPEN) {
+                    if (clock.getAsLong() - openUntil < 0) {
+                        openCounter.increment();
+                        return null;
+                    }
+                    state = State.HALF_OPEN;
+                    logger.info("Circuit of bank {} is half open, probing it", bankCode);
+                }
+                if (state == State.HALF_OPEN) {
+                    // One call at a time until the bank has answered again
+                    if (probing) {
+                        openCounter.increment();
+                        return null;
+                    }
+                    probing = true;
+                    inFlight++;
+                    return new Permit(this, true);
+                }
+                if (inFlight >= (int) limit) {
+                    saturatedCounter.increment();
+                    return null;
+                }
+                inFlight++;
+                return new Permit(this, false);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void checkAvailable(UUID requestId) {
+            lock.lock();
+            try {
+                if (state == State.OPEN && clock.getAsLong() - openUntil < 0) {
+                    openCounter.increment();
+                    throw new BankUnavailableException(requestId, bankCode, retryAfterSeconds());
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void release(Permit permit, boolean delivered, long latencyNanos) {
+            lock.lock();
+            try {
+                if (!free(permit)) {
+                    return;
+                }
+                if (!delivered) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    consecutiveFailures++;
+                    if (permit.probe || consecutiveFailures >= failureThreshold) {
+                        open();
+                    }
+                    return;
+                }
+                consecutiveFailures = 0;
+                if (permit.probe) {
+                    state = State.CLOSED;
+                    logger.info("Circuit of bank {} is closed", bankCode);
+                }
+                if (latencyNanos > slowCallNanos) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                } else {
+                    // One more per round of calls answered in time
+                    limit = Math.min(maxLimit, limit + 1 / limit);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void cancel(Permit permit) {
+            lock.lock();
+            try {
+                free(permit);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return false if the permit was released before
+         */
+        private boolean free(Permit permit) {
+            if (permit.released) {
+                return false;
+            }
+            permit.released = true;
+            inFlight--;
+            if (permit.probe) {
+                probing = false;
+            }
+            return true;
+        }
+
+        private void open() {
+            if (state != State.OPEN) {
+                logger.warn("Circuit of bank {} is open for {} ms after {} failures", bankCode,
+                        TimeUnit.NANOSECONDS.toMillis(openNanos), consecutiveFailures);
+            }
+            state = State.OPEN;
+            openUntil = clock.getAsLong() + openNanos;
+            consecutiveFailures = 0;
+        }
+
+        private long retryAfterSeconds() {
+            long remaining = openUntil - clock.getAsLong();
+            return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remaining + TimeUnit.SECONDS.toNanos(1) - 1));
+        }
+    }
+}
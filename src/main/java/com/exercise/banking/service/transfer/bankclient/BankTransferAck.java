@@ -0,0 +1,23 @@
+package com.exercise.banking.service.transfer.bankclient;
+
+import java.util.UUID;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Answer of the bank of the payee to a transfer
+ */
+public record BankTransferAck(UUID transactionId, Status status, String reason) {
+
+	public enum Status {
+		/** The payee account will be credited */
+		ACCEPTED,
+		/** The transfer was refused, see the reason */
+		REJECTED
+	}
+
+	@JsonIgnore
+	public boolean isAccepted() {
+		return status == Status.ACCEPTED;
+	}
+}
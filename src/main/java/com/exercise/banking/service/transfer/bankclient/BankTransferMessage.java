@@ -0,0 +1,12 @@
+package com.exercise.banking.service.transfer.bankclient;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * Transfer sent to the bank of the payee. The transaction id identifies the transfer at
+ * the receiving bank, a transfer sent again carries the same one.
+ */
+public record BankTransferMessage(UUID transactionId, UUID requestId, String payerAccNumber, String payeeAccNumber,
+		String payeeBankCode, BigDecimal amount, String currency, String timestamp) {
+}
@@ -0,0 +1,28 @@
+package com.exercise.banking.service.transfer.bankclient;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Client sending transfers to other banks. Sending never blocks the calling thread, the
+ * answer of the bank completes the returned future.
+ */
+public interface ExternalBankClient {
+
+	/**
+	 * Sends the transfer to the bank of the payee
+	 * @param message
+	 * @return completed with the answer of the bank, or failed with an
+	 * {@link com.exercise.banking.service.transfer.exception.ExternalBankException} if the transfer
+	 * could not be delivered
+	 */
+	CompletableFuture<BankTransferAck> send(BankTransferMessage message);
+
+	/**
+	 * Sends a settlement batch to the bank of its payees
+	 * @param batch
+	 * @return completed with the answer of the bank, or failed with an
+	 * {@link com.exercise.banking.service.transfer.exception.ExternalBankException} if the batch
+	 * could not be delivered
+	 */
+	CompletableFuture<SettlementBatchAck> sendBatch(SettlementBatch batch);
+}
@@ -0,0 +1,185 @@
+package com.exercise.banking.service.transfer.bankclient;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.exercise.banking.service.transfer.config.BankConfiguration;
+import com.exercise.banking.service.transfer.exception.ExternalBankException;
+import com.exercise.banking.service.transfer.registry.BankDirectory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Sends transfers to other banks over HTTP with the non-blocking JDK client.
+ *
+ * A transfer is posted as JSON to {@code <endpoint>/transfers}, where the endpoint is the
+ * one of the payee bank in the {@link BankDirectory}, or {@code transfer.bank-client.default-endpoint}
+ * for banks without one. No thread waits for the answer: the requests are multiplexed by
+ * the selector thread of the client, and the answers are handled by
+ * {@code transfer.bank-client.threads} threads. Connections are kept alive and reused
+ * between requests to the same bank. A bank that does not accept the connection within
+ * {@code transfer.bank-client.connect-timeout-ms}, or does not answer within
+ * {@code transfer.bank-client.request-timeout-ms}, fails the transfer.
+ *
+ * Settlement batches are posted the same way to {@code <endpoint>/settlement-batches}, with
+ * the batch id as idempotency key.
+ *
+ * Enabled with {@code transfer.bank-client.enabled=true}.
+ */
+@Component
+@ConditionalOnProperty(name = "transfer.bank-client.enabled", havingValue = "true")
+public class HttpExternalBankClient implements ExternalBankClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpExternalBankClient.class);
+
+    static final String SENDER_BANK_HEADER = "X-Sender-Bank";
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    private final BankDirectory bankDirectory;
+    private final BankConfiguration config;
+    private final ObjectMapper objectMapper;
+    private final String defaultEndpoint;
+    private final Duration requestTimeout;
+    private final ExecutorService executor;
+    private final HttpClient httpClient;
+    private final MeterRegistry meterRegistry;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public HttpExternalBankClient(BankDirectory bankDirectory, BankConfiguration config, ObjectMapper objectMapper,
+                                  @Value("${transfer.bank-client.default-endpoint:}") String defaultEndpoint,
+                                  @Value("${transfer.bank-client.connect-timeout-ms:1000}") long connectTimeoutMillis,
+                                  @Value("${transfer.bank-client.request-timeout-ms:5000}") long requestTimeoutMillis,
+                                  @Value("${transfer.bank-client.threads:2}") int threads,
+                                  MeterRegistry meterRegistry) {
+        this.bankDirectory = bankDirectory;
+        this.config = config;
+        this.objectMapper = objectMapper;
+        this.defaultEndpoint = defaultEndpoint.isBlank() ? null : defaultEndpoint;
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMillis);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "bank-client-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                .executor(executor)
+                .build();
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("transfer.bank-client.in-flight", inFlight, AtomicInteger::get)
+                .description("Transfers sent to other banks and waiting for their answer")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public CompletableFuture<BankTransferAck> send(BankTransferMessage message) {
+        return post(message.payeeBankCode(), "/transfers", message.transactionId(), message.requestId(), message,
+                BankTransferAck.class, "transfer.bank-client.requests", ack -> ack.isAccepted() ? "accepted" : "rejected");
+    }
+
+    @Override
+    public CompletableFuture<SettlementBatchAck> sendBatch(SettlementBatch batch) {
+        // Not the request of a client, the batch id stands in for it in the errors
+        return post(batch.payeeBankCode(), "/settlement-batches", batch.batchId(), batch.batchId(), batch,
+                SettlementBatchAck.class, "transfer.bank-client.batches", ack -> "answered");
+    }
+
+    private <T> CompletableFuture<T> post(String bankCode, String path, UUID idempotencyKey, UUID requestId, Object body,
+                                          Class<T> answerType, String timerName, Function<T, String> outcome) {
+        String endpoint = bankDirectory.findEndpoint(bankCode).orElse(defaultEndpoint);
+        if (endpoint == null) {
+            record(timerName, bankCode, "error", 0);
+            return CompletableFuture.failedFuture(
+                    new ExternalBankException(requestId, bankCode, "No endpoint known for bank " + bankCode));
+        }
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(endpoint + path))
+                    .timeout(requestTimeout)
+                    .header("Content-Type", "application/json")
+                    .header(SENDER_BANK_HEADER, config.getBankCode())
+                    .header(IDEMPOTENCY_KEY_HEADER, idempotencyKey.toString())
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+                    .build();
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            record(timerName, bankCode, "error", 0);
+            return CompletableFuture.failedFuture(new ExternalBankException(requestId, bankCode, e.getMessage()));
+        }
+
+        long started = System.nanoTime();
+        inFlight.incrementAndGet();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .handle((response, failure) -> {
+                    inFlight.decrementAndGet();
+                    long elapsed = System.nanoTime() - started;
+                    if (failure != null) {
+                        record(timerName, bankCode, "error", elapsed);
+                        throw new CompletionException(deliveryFailure(idempotencyKey, requestId, bankCode, failure));
+                    }
+                    if (response.statusCode() / 100 != 2) {
+                        record(timerName, bankCode, "error", elapsed);
+                        throw new CompletionException(new ExternalBankException(requestId, bankCode,
+                                "Bank " + bankCode + " answered with status " + response.statusCode()));
+                    }
+                    T answer = readAnswer(requestId, bankCode, response.body(), answerType);
+                    record(timerName, bankCode, outcome.apply(answer), elapsed);
+                    return answer;
+                });
+    }
+
+    private <T> T readAnswer(UUID requestId, String bankCode, byte[] body, Class<T> answerType) {
+        try {
+            return objectMapper.readValue(body, answerType);
+        } catch (IOException e) {
+            throw new CompletionException(new ExternalBankException(requestId, bankCode,
+                    "Answer of bank " + bankCode + " cannot be read: " + e.getMessage()));
+        }
+    }
+
+    private ExternalBankException deliveryFailure(UUID idempotencyKey, UUID requestId, String bankCode, Throwable failure) {
+        Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+        String reason = cause instanceof HttpTimeoutException ? "timed out" : "failed: " + cause;
+        logger.debug("Call {} to bank {} {}", idempotencyKey, bankCode, reason);
+        return new ExternalBankException(requestId, bankCode, "Call to bank " + bankCode + " " + reason);
+    }
+
+    private void record(String timerName, String bankCode, String outcome, long nanos) {
+        Timer.builder(timerName)
+                .description("Calls to other banks, by bank and outcome")
+                .tag("bank", String.valueOf(bankCode))
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,35 @@
+package com.exercise.banking.service.transfer.bankclient;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Transfers cleared to the bank of the payees in one call: the net position owed to the bank
+ * per currency, and the itemised transfers. A transfer sent again in a later batch carries the
+ * same transaction id, the receiving bank recognises it.
+ */
+public record SettlementBatch(UUID batchId, String payeeBankCode, String timestamp, List<SettlementPosition> positions,
+		List<BankTransferMessage> transfers) {
+
+	/**
+	 * @param payeeBankCode bank the transfers are sent to
+	 * @param transfers transfers to the bank
+	 * @return a new batch with the net positions of the transfers
+	 */
+	public static SettlementBatch of(String payeeBankCode, List<BankTransferMessage> transfers) {
+		Map<String, BigDecimal> amounts = new TreeMap<>();
+		Map<String, Integer> counts = new TreeMap<>();
+		for (BankTransferMessage transfer : transfers) {
+			amounts.merge(transfer.currency(), transfer.amount(), BigDecimal::add);
+			counts.merge(transfer.currency(), 1, Integer::sum);
+		}
+		List<SettlementPosition> positions = amounts.entrySet().stream()
+				.map(amount -> new SettlementPosition(amount.getKey(), amount.getValue(), counts.get(amount.getKey())))
+				.toList();
+		return new SettlementBatch(UUID.randomUUID(), payeeBankCode, Instant.now().toString(), positions, transfers);
+	}
+}
@@ -0,0 +1,11 @@
+package com.exercise.banking.service.transfer.bankclient;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Answer of the bank of the payees to a settlement batch, with the answer to each of its
+ * transfers. A transfer without an answer was not settled and is sent again.
+ */
+public record SettlementBatchAck(UUID batchId, List<BankTransferAck> transfers) {
+}
@@ -0,0 +1,9 @@
+package com.exercise.banking.service.transfer.bankclient;
+
+import java.math.BigDecimal;
+
+/**
+ * Amount owed to the bank of the payees in one currency by the transfers of a settlement batch
+ */
+public record SettlementPosition(String currency, BigDecimal amount, int transfers) {
+}
@@ -0,0 +1,211 @@
+package com.exercise.banking.service.transfer.bankclient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Local stand-in for the transfer API of other banks, for tests, benchmarks and running
+ * the service without a counterparty.
+ *
+ * Accepts the transfers posted to {@code /transfers} on {@code transfer.stub-bank.port}
+ * after {@code transfer.stub-bank.latency-ms}, and answers {@code 503 Service Unavailable}
+ * to a share of them given by {@code transfer.stub-bank.error-rate}. The delay is scheduled
+ * instead of slept, so slow answers do not take a thread each. A transfer received again
+ * with the same transaction id is acknowledged again and counted as a duplicate.
+ *
+ * Settlement batches posted to {@code /settlement-batches} are answered the same way, after
+ * one latency per batch: the error rate fails the whole batch, otherwise every transfer of the
+ * batch is acknowledged.
+ *
+ * Enabled with {@code transfer.stub-bank.enabled=true}. Point the banks at it with
+ * {@code transfer.bank-client.default-endpoint=http://localhost:<port>}.
+ */
+@Component
+@ConditionalOnProperty(name = "transfer.stub-bank.enabled", havingValue = "true")
+public class StubBankServer {
+
+    private static final Logger logger = LoggerFactory.getLogger(StubBankServer.class);
+
+    private final ObjectMapper objectMapper;
+    private final int port;
+    private final long latencyMillis;
+    private final double errorRate;
+    private final Set<UUID> received = ConcurrentHashMap.newKeySet();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    private HttpServer server;
+    private ExecutorService handlers;
+    private ScheduledExecutorService answers;
+
+    public StubBankServer(ObjectMapper objectMapper,
+                          @Value("${transfer.stub-bank.port:8089}") int port,
+                          @Value("${transfer.stub-bank.latency-ms:50}") long latencyMillis,
+                          @Value("${transfer.stub-bank.error-rate:0.0}") double errorRate) {
+        this.objectMapper = objectMapper;
+        this.port = port;
+        this.latencyMillis = Math.max(0, latencyMillis);
+        this.errorRate = errorRate;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        handlers = Executors.newFixedThreadPool(2, daemon("stub-bank-"));
+        answers = Executors.newSingleThreadScheduledExecutor(daemon("stub-bank-answers-"));
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 1024);
+        server.createContext("/transfers", this::receive);
+        server.createContext("/settlement-batches", this::receiveBatch);
+        server.setExecutor(handlers);
+        server.start();
+        logger.info("Stub bank listening on port {} with a latency of {} ms and an error rate of {}", getPort(), latencyMillis, errorRate);
+    }
+
+    @PreDestroy
+    public void stop() {
+        server.stop(0);
+        answers.shutdownNow();
+        handlers.shutdownNow();
+    }
+
+    /**
+     * @return port the stub listens on, chosen by the system if configured as 0
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return base URL of the stub, to use as the endpoint of a bank
+     */
+    public String getEndpoint() {
+        return "http://localhost:" + getPort();
+    }
+
+    public long getAccepted() {
+        return accepted.get();
+    }
+
+    public long getDuplicates() {
+        return duplicates.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return settlement batches acknowledged
+     */
+    public long getBatches() {
+        return batches.get();
+    }
+
+    private void receive(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            answer(exchange, 405, new byte[0]);
+            return;
+        }
+        BankTransferMessage message;
+        try (InputStream in = exchange.getRequestBody()) {
+            message = objectMapper.readValue(in, BankTransferMessage.class);
+        } catch (IOException e) {
+            answer(exchange, 400, new byte[0]);
+            return;
+        }
+        answers.schedule(() -> {
+            try {
+                if (ThreadLocalRandom.current().nextDouble() < errorRate) {
+                    failed.incrementAndGet();
+                    answer(exchange, 503, new byte[0]);
+                    return;
+                }
+                answer(exchange, 200, objectMapper.writeValueAsBytes(acknowledge(message)));
+            } catch (IOException e) {
+                logger.debug("Stub bank could not answer transfer {}", message.transactionId(), e);
+            }
+        }, latencyMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void receiveBatch(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            answer(exchange, 405, new byte[0]);
+            return;
+        }
+        SettlementBatch batch;
+        try (InputStream in = exchange.getRequestBody()) {
+            batch = objectMapper.readValue(in, SettlementBatch.class);
+        } catch (IOException e) {
+            answer(exchange, 400, new byte[0]);
+            return;
+        }
+        answers.schedule(() -> {
+            try {
+                if (ThreadLocalRandom.current().nextDouble() < errorRate) {
+                    failed.incrementAndGet();
+                    answer(exchange, 503, new byte[0]);
+                    return;
+                }
+                List<BankTransferAck> acks = batch.transfers().stream().map(this::acknowledge).toList();
+                batches.incrementAndGet();
+                answer(exchange, 200, objectMapper.writeValueAsBytes(new SettlementBatchAck(batch.batchId(), acks)));
+            } catch (IOException e) {
+                logger.debug("Stub bank could not answer settlement batch {}", batch.batchId(), e);
+            }
+        }, latencyMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private BankTransferAck acknowledge(BankTransferMessage message) {
+        if (received.add(message.transactionId())) {
+            accepted.incrementAndGet();
+        } else {
+            duplicates.incrementAndGet();
+        }
+        return new BankTransferAck(message.transactionId(), BankTransferAck.Status.ACCEPTED, null);
+    }
+
+    private static void answer(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static ThreadFactory daemon(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,153 @@
+package com.exercise.banking.service.transfer.concurrency;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.exercise.banking.service.transfer.exception.AccountLockTimeoutException;
+import com.exercise.banking.service.transfer.exception.TransactionProcessingException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Account keyed lock manager backed by a fixed set of lock stripes.
+ *
+ * Each account number is hashed onto one stripe, so transfers on unrelated
+ * accounts rarely share a lock. When a transfer needs more than one account,
+ * the stripes are always acquired in ascending stripe order, which makes
+ * A->B and B->A transfers deadlock free.
+ *
+ * The locks only coordinate transfers within one JVM. They can be switched off with
+ * {@code transfer.lock.enabled=false} when correctness is left to the optimistic
+ * version check on {@code Account}.
+ */
+@Component
+public class AccountLockManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(AccountLockManager.class);
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+    private final long timeoutMillis;
+    private final boolean enabled;
+
+    private final Timer lockWaitTimer;
+    private final Counter lockTimeoutCounter;
+
+    public AccountLockManager(@Value("${transfer.lock.enabled:true}") boolean enabled,
+                              @Value("${transfer.lock.stripes:1024}") int stripeCount,
+                              @Value("${transfer.lock.timeout-ms:5000}") long timeoutMillis,
+                              MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        int size = stripeCount <= 1 ? 1 : Integer.highestOneBit(stripeCount - 1) << 1; // round up to a power of two
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+        this.timeoutMillis = timeoutMillis;
+        this.lockWaitTimer = Timer.builder("transfer.account.lock.wait")
+                .description("Time spent waiting for account locks")
+                .register(meterRegistry);
+        this.lockTimeoutCounter = Counter.builder("transfer.account.lock.timeouts")
+                .description("Number of transfers that gave up waiting for account locks")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Locks all the given accounts for the calling thread.
+     * The returned lease must be closed by the same thread to release the locks.
+     *
+     * @param requestId
+     * @param accountNumbers
+     * @return lease holding the acquired locks
+     */
+    public Lease lock(UUID requestId, Collection<String> accountNumbers) {
+        if (!enabled) {
+            return new Lease(List.of());
+        }
+        int[] indexes = accountNumbers.stream()
+                .mapToInt(this::stripeFor)
+                .distinct()
+                .sorted()
+                .toArray();
+
+        List<ReentrantLock> acquired = new ArrayList<>(indexes.length);
+        long start = System.nanoTime();
+        try {
+            for (int index : indexes) {
+                ReentrantLock lock = stripes[index];
+                if (!lock.tryLock(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                    lockTimeoutCounter.increment();
+                    logger.error("Timed out after {} ms waiting for account lock", timeoutMillis);
+                    throw new AccountLockTimeoutException(requestId);
+                }
+                acquired.add(lock);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            release(acquired);
+            throw new TransactionProcessingException(requestId, "Interrupted while waiting for account lock");
+        } catch (RuntimeException e) {
+            release(acquired);
+            throw e;
+        } finally {
+            lockWaitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        return new Lease(acquired);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Number of lock stripes in use
+     * @return stripe count
+     */
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    private int stripeFor(String accountNumber) {
+        int h = accountNumber.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static void release(List<ReentrantLock> locks) {
+        for (int i = locks.size() - 1; i >= 0; i--) {
+            locks.get(i).unlock();
+        }
+    }
+
+    /**
+     * Locks held for a single transfer.
+     */
+    public static final class Lease implements AutoCloseable {
+
+        private final List<ReentrantLock> locks;
+        private boolean released;
+
+        private Lease(List<ReentrantLock> locks) {
+            this.locks = locks;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                release(locks);
+            }
+        }
+    }
+}
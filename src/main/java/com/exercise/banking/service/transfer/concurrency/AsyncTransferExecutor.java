@@ -0,0 +1,101 @@
+package com.exercise.banking.service.transfer.concurrency;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Bounded worker pool for asynchronous transfers.
+ *
+ * A fixed number of workers runs the transfers, so the database sees at most that many
+ * transfers at a time however many requests are open. Transfers waiting for a worker are
+ * held in a bounded queue; when it is full the transfer is rejected immediately with a
+ * {@link RejectedExecutionException} instead of waiting.
+ *
+ * The logging context of the submitting thread is carried over to the worker.
+ */
+@Component
+public class AsyncTransferExecutor implements Executor {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncTransferExecutor.class);
+
+    private final ThreadPoolExecutor pool;
+    private final Counter rejectedCounter;
+
+    public AsyncTransferExecutor(@Value("${transfer.async.threads:10}") int threads,
+                                 @Value("${transfer.async.queue-capacity:100}") int queueCapacity,
+                                 MeterRegistry meterRegistry) {
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new WorkerThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+        this.rejectedCounter = Counter.builder("transfer.async.rejected")
+                .description("Asynchronous transfers rejected because the queue was full")
+                .register(meterRegistry);
+        Gauge.builder("transfer.async.queue.depth", pool, executor -> executor.getQueue().size())
+                .description("Asynchronous transfers waiting for a worker")
+                .register(meterRegistry);
+        Gauge.builder("transfer.async.active", pool, ThreadPoolExecutor::getActiveCount)
+                .description("Asynchronous transfers being processed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queues the task for a worker
+     * @param task
+     * @throws RejectedExecutionException if the queue is full
+     */
+    @Override
+    public void execute(Runnable task) {
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        try {
+            pool.execute(() -> runWithContext(context, task));
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            logger.error("Asynchronous transfer queue is full");
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private static void runWithContext(Map<String, String> context, Runnable task) {
+        if (context != null) {
+            MDC.setContextMap(context);
+        }
+        try {
+            task.run();
+        } finally {
+            MDC.clear();
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "transfer-async-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
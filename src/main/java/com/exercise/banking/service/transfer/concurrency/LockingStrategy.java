@@ -0,0 +1,20 @@
+package com.exercise.banking.service.transfer.concurrency;
+
+/**
+ * How an intra bank transfer protects the payer and payee balances in the database.
+ */
+public enum LockingStrategy {
+
+    /**
+     * Conditional single statement updates. Conflicting transfers are detected by the
+     * database and retried by the {@link TransferExecutor}.
+     */
+    ATOMIC_UPDATE,
+
+    /**
+     * Both account rows are locked with database row locks, in account number order,
+     * before they are updated. Transfers on the same accounts wait for each other
+     * instead of being retried.
+     */
+    PESSIMISTIC
+}
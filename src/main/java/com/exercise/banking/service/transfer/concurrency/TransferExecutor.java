@@ -0,0 +1,113 @@
+package com.exercise.banking.service.transfer.concurrency;
+
+import java.util.Collection;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.exercise.banking.service.transfer.exception.ConcurrentUpdateException;
+import com.exercise.banking.service.transfer.exception.TransactionProcessingException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Runs the database work of a transfer while holding the locks of the accounts it touches.
+ *
+ * The locks are taken before the transaction begins and released only after it has
+ * committed or rolled back, so a transfer never reads balances that another transfer
+ * on the same account has not committed yet.
+ *
+ * Attempts that fail because of a concurrent update (for example an optimistic lock
+ * version mismatch detected by another instance) are rolled back and retried in a new
+ * transaction, as allowed by the {@link TransferRetryPolicy}.
+ */
+@Component
+public class TransferExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransferExecutor.class);
+
+    private final AccountLockManager lockManager;
+    private final TransferRetryPolicy retryPolicy;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Counter attemptCounter;
+    private final Counter conflictCounter;
+    private final Counter retryCounter;
+    private final Counter exhaustedCounter;
+
+    public TransferExecutor(AccountLockManager lockManager, TransferRetryPolicy retryPolicy,
+                            PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.lockManager = lockManager;
+        this.retryPolicy = retryPolicy;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.attemptCounter = Counter.builder("transfer.attempts")
+                .description("Transfer attempts, including retries")
+                .register(meterRegistry);
+        this.conflictCounter = Counter.builder("transfer.conflicts")
+                .description("Transfer attempts that failed because of a concurrent update")
+                .register(meterRegistry);
+        this.retryCounter = Counter.builder("transfer.retries")
+                .description("Transfer attempts that were retried after a conflict")
+                .register(meterRegistry);
+        this.exhaustedCounter = Counter.builder("transfer.retries.exhausted")
+                .description("Transfers that failed after using up their retries or the retry budget")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Executes the work in a transaction, holding the locks of the given accounts
+     * @param requestId
+     * @param accountNumbers accounts read or updated by the work
+     * @param work
+     * @return result of the work
+     */
+    public <T> T execute(UUID requestId, Collection<String> accountNumbers, Supplier<T> work) {
+        retryPolicy.onRequest();
+        // A surrounding transaction would be rolled back as a whole, retrying inside it cannot succeed
+        boolean retryable = !TransactionSynchronizationManager.isActualTransactionActive();
+
+        for (int attempt = 1; ; attempt++) {
+            attemptCounter.increment();
+            try {
+                return executeOnce(requestId, accountNumbers, work);
+            } catch (RuntimeException e) {
+                if (!retryPolicy.isRetriable(e)) {
+                    throw e;
+                }
+                conflictCounter.increment();
+                if (!retryable || attempt >= retryPolicy.getMaxAttempts() || !retryPolicy.tryAcquireRetry()) {
+                    exhaustedCounter.increment();
+                    logger.error("Transfer conflicted with a concurrent update on attempt {}, giving up", attempt, e);
+                    throw new ConcurrentUpdateException(requestId);
+                }
+                retryCounter.increment();
+                long backoff = retryPolicy.backoffMillis(attempt);
+                logger.warn("Transfer conflicted with a concurrent update on attempt {}, retrying in {} ms", attempt, backoff);
+                sleep(requestId, backoff);
+            }
+        }
+    }
+
+    @SuppressWarnings("try")
+    private <T> T executeOnce(UUID requestId, Collection<String> accountNumbers, Supplier<T> work) {
+        try (AccountLockManager.Lease ignored = lockManager.lock(requestId, accountNumbers)) {
+            return transactionTemplate.execute(status -> work.get());
+        }
+    }
+
+    private static void sleep(UUID requestId, long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransactionProcessingException(requestId, "Interrupted while waiting to retry transfer");
+        }
+    }
+}
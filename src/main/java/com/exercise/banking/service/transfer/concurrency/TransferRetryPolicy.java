@@ -0,0 +1,91 @@
+package com.exercise.banking.service.transfer.concurrency;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Component;
+
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.PessimisticLockException;
+
+/**
+ * Decides whether a failed transfer attempt is retried and how long to back off before the next one.
+ *
+ * Only conflicts with concurrent updates are retried. Each request may be attempted at most
+ * {@code transfer.retry.max-attempts} times, and retries across all requests are limited by a
+ * retry budget: every new request earns {@code transfer.retry.budget-ratio} retry tokens and every
+ * retry spends one, so a conflict storm cannot multiply the load on the database.
+ */
+@Component
+public class TransferRetryPolicy {
+
+    private static final long TOKEN_SCALE = 1000;
+
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final long tokensPerRequest;
+    private final long maxTokens;
+
+    private final AtomicLong tokens;
+
+    public TransferRetryPolicy(@Value("${transfer.retry.max-attempts:3}") int maxAttempts,
+                               @Value("${transfer.retry.initial-backoff-ms:10}") long initialBackoffMillis,
+                               @Value("${transfer.retry.max-backoff-ms:200}") long maxBackoffMillis,
+                               @Value("${transfer.retry.budget-ratio:0.2}") double budgetRatio,
+                               @Value("${transfer.retry.budget-min:10}") int minBudget) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMillis = Math.max(1, initialBackoffMillis);
+        this.maxBackoffMillis = Math.max(this.initialBackoffMillis, maxBackoffMillis);
+        this.tokensPerRequest = Math.round(budgetRatio * TOKEN_SCALE);
+        this.maxTokens = Math.max(minBudget, 1) * TOKEN_SCALE * 10;
+        this.tokens = new AtomicLong(Math.max(minBudget, 0) * TOKEN_SCALE);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Records a new request, adding to the retry budget
+     */
+    public void onRequest() {
+        tokens.accumulateAndGet(tokensPerRequest, (current, add) -> Math.min(maxTokens, current + add));
+    }
+
+    /**
+     * Takes one retry from the budget
+     * @return true if the retry may go ahead
+     */
+    public boolean tryAcquireRetry() {
+        return tokens.getAndUpdate(current -> current >= TOKEN_SCALE ? current - TOKEN_SCALE : current) >= TOKEN_SCALE;
+    }
+
+    /**
+     * Checks if the failure was caused by a conflicting concurrent update
+     * @param failure
+     * @return true if the attempt can be retried
+     */
+    public boolean isRetriable(Throwable failure) {
+        for (Throwable t = failure; t != null; t = t.getCause()) {
+            if (t instanceof ConcurrencyFailureException
+                    || t instanceof OptimisticLockException
+                    || t instanceof PessimisticLockException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Backoff before the given retry, using exponential backoff with full jitter
+     * @param retry 1 for the first retry
+     * @return backoff in milliseconds
+     */
+    public long backoffMillis(int retry) {
+        long ceiling = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(retry - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+}
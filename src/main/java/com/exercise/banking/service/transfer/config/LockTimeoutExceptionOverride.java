@@ -0,0 +1,23 @@
+package com.exercise.banking.service.transfer.config;
+
+import java.sql.SQLException;
+
+import com.zaxxer.hikari.SQLExceptionOverride;
+
+/**
+ * Keeps pooled connections whose statement failed only because a row lock was not granted in time.
+ *
+ * H2 reports a lock timeout as a {@link java.sql.SQLTimeoutException}, which the pool otherwise
+ * treats as a broken connection. Evicting it would also fail the rollback of the transfer and hide
+ * the lock timeout from the caller.
+ */
+public class LockTimeoutExceptionOverride implements SQLExceptionOverride {
+
+	/** H2 error code for "Timeout trying to lock table" */
+	private static final int H2_LOCK_TIMEOUT = 50200;
+
+	@java.lang.Override
+	public Override adjudicate(SQLException sqlException) {
+		return sqlException.getErrorCode() == H2_LOCK_TIMEOUT ? Override.DO_NOT_EVICT : Override.CONTINUE_EVICT;
+	}
+}
@@ -0,0 +1,20 @@
+package com.exercise.banking.service.transfer.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.exercise.banking.service.transfer.model.PayeeIdGenerator;
+
+@Configuration
+public class PersistenceConfig {
+
+    /**
+     * Hands the payee id allocation size to the payee id generator, which is created by Hibernate
+     */
+    @Bean
+    HibernatePropertiesCustomizer payeeIdAllocationSize(@Value("${transfer.payee.id.allocation-size:50}") int allocationSize) {
+        return properties -> properties.put(PayeeIdGenerator.ALLOCATION_SIZE_SETTING, allocationSize);
+    }
+}
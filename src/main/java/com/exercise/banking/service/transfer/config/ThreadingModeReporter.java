@@ -0,0 +1,30 @@
+package com.exercise.banking.service.transfer.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+/**
+ * Logs whether requests are handled on virtual threads.
+ *
+ * Spring Boot silently ignores {@code spring.threads.virtual.enabled} below Java 21,
+ * so a request for virtual threads that cannot be honoured is reported as a warning.
+ */
+@Component
+public class ThreadingModeReporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ThreadingModeReporter.class);
+
+    public ThreadingModeReporter(Environment environment) {
+        if (Threading.VIRTUAL.isActive(environment)) {
+            logger.info("Requests are handled on virtual threads");
+        } else if (environment.getProperty("spring.threads.virtual.enabled", Boolean.class, false)) {
+            logger.warn("Virtual threads require Java 21, running on Java {}: requests are handled on platform threads",
+                    Runtime.version().feature());
+        } else {
+            logger.info("Requests are handled on platform threads");
+        }
+    }
+}
@@ -1,29 +1,54 @@
 package com.exercise.banking.service.transfer.controller;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.exercise.banking.service.transfer.concurrency.AsyncTransferExecutor;
 import com.exercise.banking.service.transfer.config.BankConfiguration;
+import com.exercise.banking.service.transfer.dto.BatchItemResultV1;
+import com.exercise.banking.service.transfer.dto.BatchTransferRequestV1;
+import com.exercise.banking.service.transfer.dto.BatchTransferResponseV1;
 import com.exercise.banking.service.transfer.dto.ErrorResponse;
+import com.exercise.banking.service.transfer.dto.PaymentFileFormat;
+import com.exercise.banking.service.transfer.dto.PaymentFileResultV1;
 import com.exercise.banking.service.transfer.dto.TransferRequestV1;
 import com.exercise.banking.service.transfer.dto.TransferResponseV1;
+import com.exercise.banking.service.transfer.exception.TransferQueueFullException;
+import com.exercise.banking.service.transfer.service.BatchTransferService;
+import com.exercise.banking.service.transfer.service.PaymentFileService;
 import com.exercise.banking.service.transfer.service.TransferService;
 import com.exercise.banking.service.transfer.service.TransferServiceSelector;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 
 @RestController
@@ -36,10 +61,20 @@ public class TransferControllerV1 {
 
     private final TransferServiceSelector transferServiceSelector;
     private final BankConfiguration config;
+    private final AsyncTransferExecutor asyncExecutor;
+    private final BatchTransferService batchTransferService;
+    private final PaymentFileService paymentFileService;
+    private final ObjectMapper objectMapper;
 
-    public TransferControllerV1(TransferServiceSelector transferServiceSelector, BankConfiguration config) {
+    public TransferControllerV1(TransferServiceSelector transferServiceSelector, BankConfiguration config,
+    		AsyncTransferExecutor asyncExecutor, BatchTransferService batchTransferService, PaymentFileService paymentFileService,
+    		ObjectMapper objectMapper) {
         this.transferServiceSelector = transferServiceSelector;
         this.config = config;
+        this.asyncExecutor = asyncExecutor;
+        this.batchTransferService = batchTransferService;
+        this.paymentFileService = paymentFileService;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping
@@ -85,4 +120,213 @@ public class TransferControllerV1 {
             MDC.remove("requestId");
     	}
     }
+
+    @PostMapping("/async")
+    @Operation(
+        summary = "Transfer money between accounts asynchronously (v1)",
+        description = "Same as the v1 transfer, but the request thread is released while the transfer waits for a worker. "
+        		+ "Returns 503 when too many transfers are already queued",
+        responses = {
+            @ApiResponse(
+                responseCode = "200",
+                description = "Transfer Successful",
+                content = @Content(schema = @Schema(implementation = TransferResponseV1.class))
+            ),
+            @ApiResponse(
+                responseCode = "400",
+                description = "Invalid input or Insufficient funds",
+                content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            ),
+            @ApiResponse(
+                responseCode = "404",
+                description = "Account Not Found",
+                content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            ),
+            @ApiResponse(
+                responseCode = "503",
+                description = "Too many transfers queued, retry after the Retry-After header",
+                content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            ),
+            @ApiResponse(
+                responseCode = "500",
+                description = "Internal Server Error - An unexpected error occurred",
+                content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            )
+        }
+    )
+    public CompletableFuture<ResponseEntity<TransferResponseV1>> transferAsync(@Valid @RequestBody TransferRequestV1 request) {
+
+    	MDC.put("requestId", request.getRequestId().toString());
+    	try {
+
+    		logger.info("Received async Transfer Request");
+
+    		TransferService service = transferServiceSelector.getService(config.getBankCode(), request.getPayeeBankCode());
+
+    		return service.performTransferV1Async(request, asyncExecutor).thenApply(ResponseEntity::ok);
+    	} catch (RejectedExecutionException e) {
+    		throw new TransferQueueFullException(request.getRequestId());
+    	} finally {
+            MDC.remove("requestId");
+    	}
+    }
+
+    @PostMapping("/batch")
+    @Operation(
+        summary = "Transfer money in a batch (v1)",
+        description = "Executes up to 10000 transfers in their order and answers with the result of each. "
+        		+ "An ALL_OR_NOTHING batch executes every transfer or none, a BEST_EFFORT batch executes every transfer that can be executed. "
+        		+ "Transfers whose request ids were used before are answered as duplicates",
+        responses = {
+            @ApiResponse(
+                responseCode = "200",
+                description = "Batch processed, see the result of every transfer",
+                content = @Content(schema = @Schema(implementation = BatchTransferResponseV1.class))
+            ),
+            @ApiResponse(
+                responseCode = "400",
+                description = "Invalid batch, or batch mode not supported",
+                content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            ),
+            @ApiResponse(
+                responseCode = "503",
+                description = "Accounts of an ALL_OR_NOTHING batch are busy, retry after the Retry-After header",
+                content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            ),
+            @ApiResponse(
+                responseCode = "500",
+                description = "Internal Server Error - An unexpected error occurred",
+                content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            )
+        }
+    )
+    public ResponseEntity<BatchTransferResponseV1> transferBatch(@Valid @RequestBody BatchTransferRequestV1 request) {
+
+    	MDC.put("requestId", request.getBatchId().toString());
+    	try {
+
+    		logger.info("Received Batch Transfer Request");
+
+    		return ResponseEntity.ok(batchTransferService.performBatchV1(request));
+    	} finally {
+            MDC.remove("requestId");
+    	}
+    }
+
+    @PostMapping(value = "/stream", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(
+        summary = "Transfer money from a stream of transfers (v1)",
+        description = "Reads newline delimited transfer requests and executes them best effort, in chunks, while the upload is still "
+        		+ "being read. Streams back one result per non blank line, in the order of the lines, as every chunk completes. "
+        		+ "Transfers whose request ids were used before are answered as duplicates",
+        responses = {
+            @ApiResponse(
+                responseCode = "200",
+                description = "Stream processed, one result per line",
+                content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE, schema = @Schema(implementation = BatchItemResultV1.class))
+            ),
+            @ApiResponse(
+                responseCode = "500",
+                description = "Internal Server Error - An unexpected error occurred",
+                content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            )
+        }
+    )
+    public void transferStream(HttpServletRequest request, HttpServletResponse response) throws IOException {
+
+    	UUID streamId = UUID.randomUUID();
+    	MDC.put("requestId", streamId.toString());
+    	try (BufferedReader reader = request.getReader()) {
+
+    		logger.info("Received Stream Transfer Request");
+
+    		response.setStatus(HttpServletResponse.SC_OK);
+    		response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+    		response.setHeader("X-Stream-Id", streamId.toString());
+    		OutputStream out = response.getOutputStream();
+    		// Lines are read lazily, only when the previous chunk has been answered
+    		Iterator<TransferRequestV1> transfers = reader.lines().filter(line -> !line.isBlank()).map(this::readTransfer).iterator();
+    		batchTransferService.performStreamV1(streamId, transfers, results -> writeResults(out, results));
+    	} catch (UncheckedIOException e) {
+    		throw e.getCause();
+    	} finally {
+            MDC.remove("requestId");
+    	}
+    }
+
+    @PostMapping(value = "/files/{fileId}",
+    		consumes = { MediaType.APPLICATION_XML_VALUE, MediaType.TEXT_XML_VALUE, PaymentFileFormat.TEXT_CSV_VALUE })
+    @Operation(
+        summary = "Transfer money from a payment file (v1)",
+        description = "Reads an ISO 20022 pain.001 file (application/xml) or a CSV file (text/csv) record by record while it is "
+        		+ "uploaded, and executes its transfers best effort, in chunks. The progress is saved after every chunk: "
+        		+ "uploading the same file under the same file id after an interruption resumes after the last chunk executed, "
+        		+ "and a completed file is answered with its outcome",
+        responses = {
+            @ApiResponse(
+                responseCode = "200",
+                description = "File processed, see the counts and the failed records",
+                content = @Content(schema = @Schema(implementation = PaymentFileResultV1.class))
+            ),
+            @ApiResponse(
+                responseCode = "400",
+                description = "File cannot be read any further, the records before it were processed",
+                content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            ),
+            @ApiResponse(
+                responseCode = "409",
+                description = "File is being processed by another upload, retry after the Retry-After header",
+                content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            ),
+            @ApiResponse(
+                responseCode = "500",
+                description = "Internal Server Error - An unexpected error occurred",
+                content = @Content(schema = @Schema(implementation = ErrorResponse.class))
+            )
+        }
+    )
+    public ResponseEntity<PaymentFileResultV1> transferFile(@PathVariable UUID fileId, HttpServletRequest request) throws IOException {
+
+    	MDC.put("requestId", fileId.toString());
+    	try (InputStream content = request.getInputStream()) {
+
+    		PaymentFileFormat format = PaymentFileFormat.fromContentType(request.getContentType());
+    		logger.info("Received {} Payment File", format);
+
+    		return ResponseEntity.ok(paymentFileService.performFileV1(fileId, format, content));
+    	} catch (UncheckedIOException e) {
+    		throw e.getCause();
+    	} finally {
+            MDC.remove("requestId");
+    	}
+    }
+
+    /**
+     * Reads one line of a stream
+     * @param line
+     * @return the transfer request, null if the line is not a transfer request
+     */
+    private TransferRequestV1 readTransfer(String line) {
+    	try {
+    		return objectMapper.readValue(line, TransferRequestV1.class);
+    	} catch (JsonProcessingException e) {
+    		logger.error("Line of the stream is not a transfer request: {}", e.getOriginalMessage());
+    		return null;
+    	}
+    }
+
+    /**
+     * Writes the results of a chunk, one per line, and sends them to the client right away
+     */
+    private void writeResults(OutputStream out, List<BatchItemResultV1> results) {
+    	try {
+    		for (BatchItemResultV1 result : results) {
+    			out.write(objectMapper.writeValueAsBytes(result));
+    			out.write('\n');
+    		}
+    		out.flush();
+    	} catch (IOException e) {
+    		throw new UncheckedIOException(e);
+    	}
+    }
 }
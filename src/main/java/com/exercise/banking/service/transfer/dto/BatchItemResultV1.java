@@ -0,0 +1,61 @@
+package com.exercise.banking.service.transfer.dto;
+
+import java.util.UUID;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Outcome of one transfer of a batch, in the order of the request
+ */
+@Getter
+@ToString
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Schema(description = "Batch Transfer Item Result")
+public final class BatchItemResultV1 {
+
+	public enum Status {
+		/** Executed by this batch */
+		SUCCESS,
+		/** Executed before, answered with the recorded transfer */
+		DUPLICATE,
+		/** Rejected, see the error */
+		FAILED,
+		/** Valid, but not executed because another transfer of an all or nothing batch failed */
+		NOT_EXECUTED
+	}
+
+	@Schema(description = "Request ID", example = "3fa85f64-5717-4562-b3fc-2c963f66afa6")
+	private final UUID requestId;
+
+	@Schema(description = "Outcome of the transfer", example = "SUCCESS")
+	private final Status status;
+
+	@Schema(description = "Executed transfer, for SUCCESS and DUPLICATE")
+	private final TransferResponseV1 transfer;
+
+	@Schema(description = "Reason the transfer failed, for FAILED")
+	private final ErrorResponse error;
+
+	private BatchItemResultV1(UUID requestId, Status status, TransferResponseV1 transfer, ErrorResponse error) {
+		this.requestId = requestId;
+		this.status = status;
+		this.transfer = transfer;
+		this.error = error;
+	}
+
+	public static BatchItemResultV1 executed(TransferResponseV1 transfer) {
+		return new BatchItemResultV1(transfer.getRequestId(), transfer.isDuplicate() ? Status.DUPLICATE : Status.SUCCESS, transfer, null);
+	}
+
+	public static BatchItemResultV1 failed(UUID requestId, ErrorResponse error) {
+		return new BatchItemResultV1(requestId, Status.FAILED, null, error);
+	}
+
+	public static BatchItemResultV1 notExecuted(UUID requestId) {
+		return new BatchItemResultV1(requestId, Status.NOT_EXECUTED, null, null);
+	}
+}
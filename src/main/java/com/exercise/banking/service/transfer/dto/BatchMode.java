@@ -0,0 +1,20 @@
+package com.exercise.banking.service.transfer.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * How a batch treats transfers that cannot be executed
+ */
+@Schema(description = "Batch mode")
+public enum BatchMode {
+
+	/**
+	 * Either every transfer of the batch is executed, or none is
+	 */
+	ALL_OR_NOTHING,
+
+	/**
+	 * Every transfer that can be executed is, the others are reported as failed
+	 */
+	BEST_EFFORT
+}
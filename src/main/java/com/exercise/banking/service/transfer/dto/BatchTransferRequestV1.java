@@ -0,0 +1,49 @@
+package com.exercise.banking.service.transfer.dto;
+
+import java.util.List;
+import java.util.UUID;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Transfers submitted together. The transfers themselves are validated one by one by the
+ * batch, so that in best effort mode an invalid transfer does not reject the others.
+ */
+@Getter
+@ToString
+@Schema(description = "Batch Transfer Request")
+public class BatchTransferRequestV1 {
+
+    @NotNull(message = "Batch ID is required")
+    @Schema(description = "Batch ID", example = "0b7e7c8a-5d0e-4a49-9a4f-6f1f5c3d2b1a")
+    private final UUID batchId;
+
+    @NotNull(message = "Batch mode is required")
+    @Schema(description = "ALL_OR_NOTHING executes every transfer or none, BEST_EFFORT executes every transfer that can be executed",
+    		example = "BEST_EFFORT")
+    private final BatchMode mode;
+
+    @NotEmpty(message = "Transfers are required")
+    @Size(max = 10000, message = "A batch holds at most 10000 transfers")
+    @Schema(description = "Transfers of the batch, executed in this order")
+    private final List<TransferRequestV1> transfers;
+
+    @JsonCreator
+    public BatchTransferRequestV1(
+        @JsonProperty("batchId") UUID batchId,
+        @JsonProperty("mode") BatchMode mode,
+        @JsonProperty("transfers") List<TransferRequestV1> transfers
+    ) {
+        this.batchId = batchId;
+        this.mode = mode;
+        this.transfers = transfers;
+    }
+}
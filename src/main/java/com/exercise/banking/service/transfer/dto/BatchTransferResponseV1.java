@@ -0,0 +1,76 @@
+package com.exercise.banking.service.transfer.dto;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Outcome of a batch, with the result of every transfer in the order of the request
+ */
+@Getter
+@ToString
+@Schema(description = "Batch Transfer Response")
+public final class BatchTransferResponseV1 {
+
+	public enum Status {
+		/** Every transfer was executed, by this batch or before */
+		COMPLETED,
+		/** Some transfers were executed, the others failed */
+		PARTIALLY_COMPLETED,
+		/** No transfer was executed */
+		REJECTED
+	}
+
+	@Schema(description = "Batch ID", example = "0b7e7c8a-5d0e-4a49-9a4f-6f1f5c3d2b1a")
+	private final UUID batchId;
+
+	@Schema(description = "Batch mode", example = "BEST_EFFORT")
+	private final BatchMode mode;
+
+	@Schema(description = "Outcome of the batch", example = "COMPLETED")
+	private final Status status;
+
+	@Schema(description = "Transfers executed by this batch", example = "2")
+	private final int succeeded;
+
+	@Schema(description = "Transfers executed before, answered as duplicates", example = "0")
+	private final int duplicates;
+
+	@Schema(description = "Transfers that failed", example = "0")
+	private final int failed;
+
+	@Schema(description = "Transfers not executed because another transfer failed", example = "0")
+	private final int notExecuted;
+
+	@Schema(description = "Timestamp of the response in ISO 8601 format", example = "2024-08-11T17:26:13.581630Z")
+	private final String timestamp;
+
+	@Schema(description = "Result of every transfer, in the order of the request")
+	private final List<BatchItemResultV1> results;
+
+	public BatchTransferResponseV1(UUID batchId, BatchMode mode, List<BatchItemResultV1> results) {
+		this.batchId = batchId;
+		this.mode = mode;
+		this.results = List.copyOf(results);
+		this.succeeded = count(results, BatchItemResultV1.Status.SUCCESS);
+		this.duplicates = count(results, BatchItemResultV1.Status.DUPLICATE);
+		this.failed = count(results, BatchItemResultV1.Status.FAILED);
+		this.notExecuted = count(results, BatchItemResultV1.Status.NOT_EXECUTED);
+		if (failed == 0 && notExecuted == 0) {
+			this.status = Status.COMPLETED;
+		} else if (succeeded + duplicates > 0) {
+			this.status = Status.PARTIALLY_COMPLETED;
+		} else {
+			this.status = Status.REJECTED;
+		}
+		this.timestamp = Instant.now().toString();
+	}
+
+	private static int count(List<BatchItemResultV1> results, BatchItemResultV1.Status status) {
+		return (int) results.stream().filter(result -> result.getStatus() == status).count();
+	}
+}
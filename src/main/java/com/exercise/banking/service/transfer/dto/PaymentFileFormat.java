@@ -0,0 +1,41 @@
+package com.exercise.banking.service.transfer.dto;
+
+import org.springframework.http.MediaType;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+/**
+ * Formats of the payment files a bank customer can upload
+ */
+@Schema(description = "Payment file format")
+public enum PaymentFileFormat {
+
+	/**
+	 * ISO 20022 customer credit transfer initiation, one transfer per {@code CdtTrfTxInf}
+	 */
+	PAIN_001,
+
+	/**
+	 * Comma separated values with a header row, one transfer per line
+	 */
+	CSV;
+
+	public static final String TEXT_CSV_VALUE = "text/csv";
+
+	/**
+	 * @param contentType content type of the upload
+	 * @return format of the file, null if the content type is not a payment file format
+	 */
+	public static PaymentFileFormat fromContentType(String contentType) {
+		if (contentType == null) {
+			return null;
+		}
+		MediaType mediaType = MediaType.parseMediaType(contentType);
+		if (mediaType.isCompatibleWith(MediaType.APPLICATION_XML) || mediaType.isCompatibleWith(MediaType.TEXT_XML)) {
+			return PAIN_001;
+		} else if (mediaType.isCompatibleWith(MediaType.parseMediaType(TEXT_CSV_VALUE))) {
+			return CSV;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,27 @@
+package com.exercise.banking.service.transfer.dto;
+
+import java.util.UUID;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * A record of a payment file whose transfer failed
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+@Schema(description = "Failed Payment File Record")
+public final class PaymentFileRecordErrorV1 {
+
+	@Schema(description = "Position of the record in the file, starting at 1", example = "42")
+	private final long record;
+
+	@Schema(description = "Request ID of the transfer", example = "3fa85f64-5717-4562-b3fc-2c963f66afa6")
+	private final UUID requestId;
+
+	@Schema(description = "Reason the transfer failed")
+	private final ErrorResponse error;
+}
@@ -0,0 +1,59 @@
+package com.exercise.banking.service.transfer.dto;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Outcome of a payment file. The counts cover the whole file, including the records executed
+ * by earlier uploads of the same file. The failures only cover the records executed by this upload.
+ */
+@Getter
+@ToString
+@Schema(description = "Payment File Response")
+public final class PaymentFileResultV1 {
+
+	@Schema(description = "File ID", example = "6f1c2a9e-3b1d-4c55-8d3e-2f0b9a7c4e11")
+	private final UUID fileId;
+
+	@Schema(description = "Format of the file", example = "PAIN_001")
+	private final PaymentFileFormat format;
+
+	@Schema(description = "Records of the file", example = "250000")
+	private final long records;
+
+	@Schema(description = "Records executed by earlier uploads of the file and skipped by this one", example = "0")
+	private final long resumedFrom;
+
+	@Schema(description = "Transfers executed", example = "249998")
+	private final long succeeded;
+
+	@Schema(description = "Transfers executed before, answered as duplicates", example = "0")
+	private final long duplicates;
+
+	@Schema(description = "Transfers that failed", example = "2")
+	private final long failed;
+
+	@Schema(description = "Timestamp of the response in ISO 8601 format", example = "2024-08-11T17:26:13.581630Z")
+	private final String timestamp;
+
+	@Schema(description = "Failed records of this upload, up to transfer.file.max-reported-failures")
+	private final List<PaymentFileRecordErrorV1> failures;
+
+	public PaymentFileResultV1(UUID fileId, PaymentFileFormat format, long records, long resumedFrom, long succeeded,
+			long duplicates, long failed, List<PaymentFileRecordErrorV1> failures) {
+		this.fileId = fileId;
+		this.format = format;
+		this.records = records;
+		this.resumedFrom = resumedFrom;
+		this.succeeded = succeeded;
+		this.duplicates = duplicates;
+		this.failed = failed;
+		this.timestamp = Instant.now().toString();
+		this.failures = List.copyOf(failures);
+	}
+}
@@ -95,6 +95,26 @@ public final class TransferResponseV1 {
         String payerAccNum;
         String payeeAccNum;
         String payeeBankCode;
+
+        /**
+         * Copies the fields of an existing response, except its timestamp
+         * @param response
+         * @return this builder
+         */
+        public Builder from(TransferResponseV1 response) {
+            this.requestId = response.requestId;
+            this.transactionId = response.transactionId;
+            this.status = response.status;
+            this.balance = response.balance;
+            this.amount = response.amount;
+            this.currency = response.currency;
+            this.transferType = response.transferType;
+            this.isDuplicate = response.duplicate;
+            this.payerAccNum = response.payerAccNumber;
+            this.payeeAccNum = response.payeeAccNumber;
+            this.payeeBankCode = response.payeeBankCode;
+            return this;
+        }
         
 
         public Builder withRequestId(UUID requestId) {
@@ -0,0 +1,16 @@
+package com.exercise.banking.service.transfer.exception;
+
+import java.util.UUID;
+
+/**
+ * Thrown when an account stays locked by other transfers for longer than the
+ * configured wait time. The request can safely be retried by the client.
+ */
+public class AccountLockTimeoutException extends BaseTransferException {
+
+	private static final long serialVersionUID = 6151623287934416823L;
+
+	public AccountLockTimeoutException(UUID requestId) {
+        super(requestId, "Timed out waiting for account lock");
+    }
+}
@@ -0,0 +1,35 @@
+package com.exercise.banking.service.transfer.exception;
+
+import java.util.UUID;
+
+/**
+ * Thrown when a transfer to another bank is refused before any money moves, because the
+ * circuit of the bank is open after repeated failures. The request can be retried by the
+ * client.
+ */
+public class BankUnavailableException extends BaseTransferException {
+
+	private static final long serialVersionUID = -3541276928150273650L;
+
+	private final String bankCode;
+	private final long retryAfterSeconds;
+
+	/**
+	 * @param requestId
+	 * @param bankCode code of the bank of the payee
+	 * @param retryAfterSeconds time after which the bank may accept transfers again
+	 */
+	public BankUnavailableException(UUID requestId, String bankCode, long retryAfterSeconds) {
+        super(requestId, "Bank " + bankCode + " is unavailable");
+        this.bankCode = bankCode;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+	public String getBankCode() {
+		return bankCode;
+	}
+
+	public long getRetryAfterSeconds() {
+		return retryAfterSeconds;
+	}
+}
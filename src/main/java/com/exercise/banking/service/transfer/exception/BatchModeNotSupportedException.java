@@ -0,0 +1,16 @@
+package com.exercise.banking.service.transfer.exception;
+
+import java.util.UUID;
+
+/**
+ * Thrown when a batch asks for a mode this instance cannot honour, such as an all or
+ * nothing batch while the ledger applies the balance changes on separate shards.
+ */
+public class BatchModeNotSupportedException extends BaseTransferException {
+
+	private static final long serialVersionUID = 4412236904983358519L;
+
+	public BatchModeNotSupportedException(UUID batchId, String msg) {
+        super(batchId, msg);
+    }
+}
@@ -0,0 +1,16 @@
+package com.exercise.banking.service.transfer.exception;
+
+import java.util.UUID;
+
+/**
+ * Thrown when a transfer keeps conflicting with concurrent updates to the same
+ * accounts and the retry budget is used up. The request can be retried by the client.
+ */
+public class ConcurrentUpdateException extends BaseTransferException {
+
+	private static final long serialVersionUID = -3047519866013260151L;
+
+	public ConcurrentUpdateException(UUID requestId) {
+        super(requestId, "Account was updated concurrently");
+    }
+}
@@ -0,0 +1,23 @@
+package com.exercise.banking.service.transfer.exception;
+
+import java.util.UUID;
+
+/**
+ * Thrown when a transfer could not be delivered to the bank of the payee: the bank has no
+ * endpoint, could not be reached in time, or answered with an error.
+ */
+public class ExternalBankException extends BaseTransferException {
+
+	private static final long serialVersionUID = 6120714455276913318L;
+
+	private final String bankCode;
+
+	public ExternalBankException(UUID requestId, String bankCode, String msg) {
+        super(requestId, msg);
+        this.bankCode = bankCode;
+    }
+
+	public String getBankCode() {
+		return bankCode;
+	}
+}
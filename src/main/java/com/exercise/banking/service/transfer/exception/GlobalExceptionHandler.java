@@ -7,6 +7,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.MessageSource;
 import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
@@ -23,6 +24,8 @@ public class GlobalExceptionHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(GlobalExceptionHandler.class);
 
+    private static final String RETRY_AFTER_SECONDS = "1";
+
     private final MessageSource messageSource;
     
     public GlobalExceptionHandler(MessageSource messageSource) {
@@ -53,6 +56,93 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(errorResponse, HttpStatus.NOT_FOUND);
     }
 
+    @ExceptionHandler(AccountLockTimeoutException.class)
+    public ResponseEntity<ErrorResponse> handleAccountLockTimeoutException(AccountLockTimeoutException ex) {
+        String message = messageSource.getMessage("error.account.lock.timeout", null, LocaleContextHolder.getLocale());
+        logError(message, ex);
+        ErrorResponse errorResponse = new ErrorResponse(ex.getRequestId(),HttpStatus.SERVICE_UNAVAILABLE, message);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                .body(errorResponse);
+    }
+
+    @ExceptionHandler(ConcurrentUpdateException.class)
+    public ResponseEntity<ErrorResponse> handleConcurrentUpdateException(ConcurrentUpdateException ex) {
+        String message = messageSource.getMessage("error.transfer.conflict", null, LocaleContextHolder.getLocale());
+        logError(message, ex);
+        ErrorResponse errorResponse = new ErrorResponse(ex.getRequestId(),HttpStatus.CONFLICT, message);
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                .body(errorResponse);
+    }
+
+    @ExceptionHandler(TransferInProgressException.class)
+    public ResponseEntity<ErrorResponse> handleTransferInProgressException(TransferInProgressException ex) {
+        String message = messageSource.getMessage("error.transfer.in.progress", null, LocaleContextHolder.getLocale());
+        logError(message, ex);
+        ErrorResponse errorResponse = new ErrorResponse(ex.getRequestId(),HttpStatus.CONFLICT, message);
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                .body(errorResponse);
+    }
+
+    @ExceptionHandler(LedgerBusyException.class)
+    public ResponseEntity<ErrorResponse> handleLedgerBusyException(LedgerBusyException ex) {
+        String message = messageSource.getMessage("error.ledger.busy", null, LocaleContextHolder.getLocale());
+        logError(message, ex);
+        ErrorResponse errorResponse = new ErrorResponse(ex.getRequestId(),HttpStatus.SERVICE_UNAVAILABLE, message);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                .body(errorResponse);
+    }
+
+    @ExceptionHandler(TransferQueueFullException.class)
+    public ResponseEntity<ErrorResponse> handleTransferQueueFullException(TransferQueueFullException ex) {
+        String message = messageSource.getMessage("error.transfer.queue.full", null, LocaleContextHolder.getLocale());
+        logError(message, ex);
+        ErrorResponse errorResponse = new ErrorResponse(ex.getRequestId(),HttpStatus.SERVICE_UNAVAILABLE, message);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                .body(errorResponse);
+    }
+
+    @ExceptionHandler(BankUnavailableException.class)
+    public ResponseEntity<ErrorResponse> handleBankUnavailableException(BankUnavailableException ex) {
+        String message = messageSource.getMessage("error.bank.unavailable", new Object[] { ex.getBankCode() },
+                LocaleContextHolder.getLocale());
+        logError(message, ex);
+        ErrorResponse errorResponse = new ErrorResponse(ex.getRequestId(),HttpStatus.SERVICE_UNAVAILABLE, message);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(errorResponse);
+    }
+
+    @ExceptionHandler(BatchModeNotSupportedException.class)
+    public ResponseEntity<ErrorResponse> handleBatchModeNotSupportedException(BatchModeNotSupportedException ex) {
+        String message = messageSource.getMessage("error.batch.mode.unsupported", null, LocaleContextHolder.getLocale());
+        logError(message, ex);
+        ErrorResponse errorResponse = new ErrorResponse(ex.getRequestId(),HttpStatus.BAD_REQUEST, message);
+        return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(PaymentFileFormatException.class)
+    public ResponseEntity<ErrorResponse> handlePaymentFileFormatException(PaymentFileFormatException ex) {
+        String message = messageSource.getMessage("error.file.format", new Object[] { ex.getRecord() }, LocaleContextHolder.getLocale());
+        logError(message, ex);
+        ErrorResponse errorResponse = new ErrorResponse(ex.getRequestId(),HttpStatus.BAD_REQUEST, message);
+        return new ResponseEntity<>(errorResponse, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(PaymentFileInProgressException.class)
+    public ResponseEntity<ErrorResponse> handlePaymentFileInProgressException(PaymentFileInProgressException ex) {
+        String message = messageSource.getMessage("error.file.in.progress", null, LocaleContextHolder.getLocale());
+        logError(message, ex);
+        ErrorResponse errorResponse = new ErrorResponse(ex.getRequestId(),HttpStatus.CONFLICT, message);
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                .body(errorResponse);
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ErrorResponse> handleGeneralException(Exception ex) {
         String message = messageSource.getMessage("error.unexpected", null, LocaleContextHolder.getLocale());
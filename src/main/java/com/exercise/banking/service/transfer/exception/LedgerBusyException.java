@@ -0,0 +1,31 @@
+package com.exercise.banking.service.transfer.exception;
+
+import java.util.UUID;
+
+/**
+ * Thrown when the ledger shard owning the payer account has no room for another
+ * transfer, or does not complete it in time. The request can be retried by the client.
+ */
+public class LedgerBusyException extends BaseTransferException {
+
+	private static final long serialVersionUID = 2871190464419533176L;
+
+	private final boolean accepted;
+
+	public LedgerBusyException(UUID requestId) {
+        this(requestId, false);
+    }
+
+	/**
+	 * @param requestId
+	 * @param accepted true if the shard accepted the transfer and may still apply it
+	 */
+	public LedgerBusyException(UUID requestId, boolean accepted) {
+        super(requestId, "Ledger is busy");
+        this.accepted = accepted;
+    }
+
+	public boolean isAccepted() {
+		return accepted;
+	}
+}
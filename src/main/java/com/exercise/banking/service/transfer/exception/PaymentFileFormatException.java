@@ -0,0 +1,27 @@
+package com.exercise.banking.service.transfer.exception;
+
+import java.util.UUID;
+
+/**
+ * Thrown when a payment file cannot be read any further, such as malformed XML or a CSV
+ * file without the expected header. The records before it have been executed and a
+ * corrected upload of the file resumes after them.
+ */
+public class PaymentFileFormatException extends BaseTransferException {
+
+	private static final long serialVersionUID = 2871602918871265263L;
+
+	private final long record;
+
+	public PaymentFileFormatException(UUID fileId, long record, String msg) {
+        super(fileId, msg);
+        this.record = record;
+    }
+
+	/**
+	 * @return position of the record that could not be read, starting at 1, 0 for the header
+	 */
+	public long getRecord() {
+		return record;
+	}
+}
@@ -0,0 +1,16 @@
+package com.exercise.banking.service.transfer.exception;
+
+import java.util.UUID;
+
+/**
+ * Thrown when a payment file is uploaded while another upload of the same file is still
+ * being processed. The upload can be retried once the other one has completed.
+ */
+public class PaymentFileInProgressException extends BaseTransferException {
+
+	private static final long serialVersionUID = -1837745903611950718L;
+
+	public PaymentFileInProgressException(UUID fileId) {
+        super(fileId, "Payment file is being processed by another upload");
+    }
+}
@@ -0,0 +1,17 @@
+package com.exercise.banking.service.transfer.exception;
+
+import java.util.UUID;
+
+/**
+ * Thrown when another request with the same request id is still transferring and does not
+ * complete in time. The request can be retried by the client, it is then answered with the
+ * outcome of the transfer.
+ */
+public class TransferInProgressException extends BaseTransferException {
+
+	private static final long serialVersionUID = -6237188092641385721L;
+
+	public TransferInProgressException(UUID requestId) {
+        super(requestId, "Transfer with the same request id is in progress");
+    }
+}
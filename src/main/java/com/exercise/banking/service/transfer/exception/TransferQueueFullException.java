@@ -0,0 +1,16 @@
+package com.exercise.banking.service.transfer.exception;
+
+import java.util.UUID;
+
+/**
+ * Thrown when an asynchronous transfer cannot be accepted because the bounded queue of
+ * transfers waiting for a worker is full. The request can be retried by the client.
+ */
+public class TransferQueueFullException extends BaseTransferException {
+
+	private static final long serialVersionUID = -4630125807913052417L;
+
+	public TransferQueueFullException(UUID requestId) {
+        super(requestId, "Transfer queue is full");
+    }
+}
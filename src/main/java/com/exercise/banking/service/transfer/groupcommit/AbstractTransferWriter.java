@@ -0,0 +1,96 @@
+package com.exercise.banking.service.transfer.groupcommit;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.exercise.banking.service.transfer.dto.TransferRequestV1;
+import com.exercise.banking.service.transfer.dto.TransferResponseV1;
+import com.exercise.banking.service.transfer.exception.LedgerBusyException;
+import com.exercise.banking.service.transfer.exception.TransactionProcessingException;
+
+import io.micrometer.core.instrument.Counter;
+
+/**
+ * Waiting side of a {@link TransferWriter}: the writers only queue the transfer, the caller
+ * waits here for its commit up to the timeout of the writer.
+ */
+public abstract class AbstractTransferWriter implements TransferWriter {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final String commitName;
+    protected final long timeoutMillis;
+    protected final Counter rejectedCounter;
+
+    /**
+     * @param commitName what the transfers wait for, for the logs
+     * @param timeoutMillis time a transfer waits for its commit
+     * @param rejectedCounter counts the transfers rejected or timed out
+     */
+    protected AbstractTransferWriter(String commitName, long timeoutMillis, Counter rejectedCounter) {
+        this.commitName = commitName;
+        this.timeoutMillis = timeoutMillis;
+        this.rejectedCounter = rejectedCounter;
+    }
+
+    /**
+     * Queues the transfer without blocking
+     * @param request
+     * @return future completed once the transfer is committed
+     * @throws com.exercise.banking.service.transfer.exception.TransferQueueFullException if too many transfers are waiting
+     */
+    protected abstract CompletableFuture<TransferResponseV1> enqueue(TransferRequestV1 request);
+
+    @Override
+    public TransferResponseV1 submit(TransferRequestV1 request) {
+        UUID requestId = request.getRequestId();
+        CompletableFuture<TransferResponseV1> result = enqueue(request);
+        try {
+            return result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new TransactionProcessingException(requestId, e.getCause().getMessage());
+        } catch (TimeoutException e) {
+            // The transfer may still be committed, a retry with the same request id is answered as a duplicate
+            throw timedOut(requestId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransactionProcessingException(requestId, "Interrupted while waiting for " + commitName);
+        }
+    }
+
+    /**
+     * The returned future is completed by the writer thread once the transfer is committed.
+     */
+    @Override
+    public CompletableFuture<TransferResponseV1> submitAsync(TransferRequestV1 request) {
+        UUID requestId = request.getRequestId();
+        return enqueue(request)
+                .orTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                .exceptionally(failure -> {
+                    Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+                    if (cause instanceof TimeoutException) {
+                        throw timedOut(requestId);
+                    }
+                    if (cause instanceof RuntimeException runtimeException) {
+                        throw runtimeException;
+                    }
+                    throw new TransactionProcessingException(requestId, cause.getMessage());
+                });
+    }
+
+    private LedgerBusyException timedOut(UUID requestId) {
+        rejectedCounter.increment();
+        logger.error("Timed out after {} ms waiting for {}", timeoutMillis, commitName);
+        return new LedgerBusyException(requestId, true);
+    }
+}
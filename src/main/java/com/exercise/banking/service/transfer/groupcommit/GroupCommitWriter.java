@@ -0,0 +1,208 @@
+package com.exercise.banking.service.transfer.groupcommit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+
+import com.exercise.banking.service.transfer.dto.TransferRequestV1;
+import com.exercise.banking.service.transfer.dto.TransferResponseV1;
+import com.exercise.banking.service.transfer.exception.BaseTransferException;
+import com.exercise.banking.service.transfer.exception.TransactionProcessingException;
+import com.exercise.banking.service.transfer.exception.TransferQueueFullException;
+import com.exercise.banking.service.transfer.service.impl.TransferChunkProcessor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Optional writer that commits concurrent transfers together.
+ *
+ * Transfers are queued by the request threads and collected by one writer thread for up to
+ * {@code transfer.group-commit.window-ms}, or until {@code transfer.group-commit.max-group-size}
+ * transfers are waiting. The group is executed by the {@link TransferChunkProcessor} in one
+ * database transaction, with batched inserts and one balance update per account, so the
+ * commit and its log flush are paid once per group instead of once per transfer. Each
+ * caller is answered only after the commit of its group.
+ *
+ * A longer window makes bigger groups under load at the cost of latency when the load is
+ * light. Transfers rejected inside a group, for insufficient funds for example, do not
+ * prevent the others from being committed.
+ *
+ * Enabled with {@code transfer.group-commit.enabled=true}, ignored when the ledger is enabled.
+ */
+@Component
+@ConditionalOnExpression("${transfer.group-commit.enabled:false} and !${transfer.ledger.enabled:false}")
+public class GroupCommitWriter extends AbstractTransferWriter implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(GroupCommitWriter.class);
+
+    private static final long POLL_MILLIS = 100;
+
+    private final TransferChunkProcessor chunkProcessor;
+    private final LinkedBlockingQueue<Pending> queue;
+    private final int maxGroupSize;
+    private final long windowNanos;
+    private final Thread thread;
+
+    private final DistributionSummary groupSizeSummary;
+    private final Timer commitTimer;
+
+    private volatile boolean running = true;
+
+    public GroupCommitWriter(TransferChunkProcessor chunkProcessor,
+                             @Value("${transfer.group-commit.window-ms:2}") long windowMillis,
+                             @Value("${transfer.group-commit.max-group-size:128}") int maxGroupSize,
+                             @Value("${transfer.group-commit.queue-capacity:4096}") int queueCapacity,
+                             @Value("${transfer.group-commit.timeout-ms:5000}") long timeoutMillis,
+                             MeterRegistry meterRegistry) {
+        super("the group commit", timeoutMillis, Counter.builder("transfer.group-commit.rejected")
+                .description("Transfers rejected or timed out because the group commit writer was busy")
+                .register(meterRegistry));
+        this.chunkProcessor = chunkProcessor;
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.maxGroupSize = Math.max(1, maxGroupSize);
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, windowMillis));
+        this.thread = new Thread(this, "group-commit-writer");
+        this.thread.setDaemon(true);
+        this.groupSizeSummary = DistributionSummary.builder("transfer.group-commit.group.size")
+                .description("Transfers committed per group")
+                .register(meterRegistry);
+        this.commitTimer = Timer.builder("transfer.group-commit.commit")
+                .description("Time spent executing and committing a group")
+                .register(meterRegistry);
+        Gauge.builder("transfer.group-commit.queue.depth", queue, LinkedBlockingQueue::size)
+                .description("Transfers waiting for the group commit writer")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        thread.start();
+        logger.info("Started group commit writer with a window of {} ms and groups of up to {} transfers",
+                TimeUnit.NANOSECONDS.toMillis(windowNanos), maxGroupSize);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        thread.join(timeoutMillis);
+        logger.info("Stopped group commit writer");
+    }
+
+    /**
+     * The returned future is completed by the writer thread once the group of the transfer is committed.
+     */
+    @Override
+    protected CompletableFuture<TransferResponseV1> enqueue(TransferRequestV1 request) {
+        Pending pending = new Pending(request, new CompletableFuture<>());
+        if (!running || !queue.offer(pending)) {
+            rejectedCounter.increment();
+            logger.error("Group commit queue is full");
+            throw new TransferQueueFullException(request.getRequestId());
+        }
+        return pending.result();
+    }
+
+    @Override
+    public void run() {
+        List<Pending> group = new ArrayList<>(maxGroupSize);
+        while (running) {
+            try {
+                collect(group);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                group.forEach(this::failShuttingDown);
+                group.clear();
+                break;
+            }
+            if (!group.isEmpty()) {
+                commit(group);
+                group.clear();
+            }
+        }
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            failShuttingDown(pending);
+        }
+    }
+
+    /**
+     * Waits for a first transfer, then collects the others arriving within the window
+     */
+    private void collect(List<Pending> group) throws InterruptedException {
+        Pending first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return;
+        }
+        group.add(first);
+        long deadline = System.nanoTime() + windowNanos;
+        while (group.size() < maxGroupSize) {
+            queue.drainTo(group, maxGroupSize - group.size());
+            long remaining = deadline - System.nanoTime();
+            if (group.size() >= maxGroupSize || remaining <= 0) {
+                break;
+            }
+            Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                break;
+            }
+            group.add(next);
+        }
+    }
+
+    private void commit(List<Pending> group) {
+        groupSizeSummary.record(group.size());
+        UUID groupId = UUID.randomUUID();
+        try {
+            List<TransferChunkProcessor.Outcome> outcomes = commitTimer.record(
+                    () -> chunkProcessor.executeOrAnswer(groupId, requests(group)));
+            for (int i = 0; i < group.size(); i++) {
+                complete(group.get(i), outcomes.get(i));
+            }
+        } catch (BaseTransferException e) {
+            logger.error("Group {} of {} transfers failed", groupId, group.size(), e);
+            group.forEach(pending -> pending.result().completeExceptionally(e));
+        } catch (RuntimeException e) {
+            logger.error("Group {} of {} transfers failed", groupId, group.size(), e);
+            group.forEach(pending -> pending.result().completeExceptionally(
+                    new TransactionProcessingException(pending.request().getRequestId(), e.getMessage())));
+        }
+    }
+
+    private void complete(Pending pending, TransferChunkProcessor.Outcome outcome) {
+        if (outcome.response() != null) {
+            pending.result().complete(outcome.response());
+        } else {
+            pending.result().completeExceptionally(outcome.failure());
+        }
+    }
+
+    private void failShuttingDown(Pending pending) {
+        pending.result().completeExceptionally(
+                new TransactionProcessingException(pending.request().getRequestId(), "Group commit writer is shutting down"));
+    }
+
+    private static List<TransferRequestV1> requests(List<Pending> pendings) {
+        return pendings.stream().map(Pending::request).toList();
+    }
+
+    /**
+     * A transfer waiting for its group to be committed
+     */
+    private record Pending(TransferRequestV1 request, CompletableFuture<TransferResponseV1> result) {
+    }
+}
@@ -0,0 +1,27 @@
+package com.exercise.banking.service.transfer.groupcommit;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.exercise.banking.service.transfer.dto.TransferRequestV1;
+import com.exercise.banking.service.transfer.dto.TransferResponseV1;
+
+/**
+ * Executes transfers together with others instead of in a transaction of their own. The
+ * transfer is only answered once the transaction holding it is committed.
+ */
+public interface TransferWriter {
+
+    /**
+     * Queues a transfer and waits until it is committed
+     * @param request transfer whose payer and payee accounts are different
+     * @return response of the committed transfer, or of the transfer that used the request id before
+     */
+    TransferResponseV1 submit(TransferRequestV1 request);
+
+    /**
+     * Queues a transfer without waiting for it
+     * @param request transfer whose payer and payee accounts are different
+     * @return future of the response, completed once the transfer is committed
+     */
+    CompletableFuture<TransferResponseV1> submitAsync(TransferRequestV1 request);
+}
@@ -0,0 +1,29 @@
+package com.exercise.banking.service.transfer.health;
+
+import java.util.Map;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import com.exercise.banking.service.transfer.idempotency.RequestIdFilter;
+
+/**
+ * Exposes the state of the request id filter at /actuator/requestidfilter, to size
+ * its expected insertions, false positive rate and memory budget.
+ */
+@Component
+@Endpoint(id = "requestidfilter")
+public class RequestIdFilterEndpoint {
+
+	private final RequestIdFilter requestIdFilter;
+
+	public RequestIdFilterEndpoint(RequestIdFilter requestIdFilter) {
+		this.requestIdFilter = requestIdFilter;
+	}
+
+	@ReadOperation
+	public Map<String, Object> requestIdFilter() {
+		return requestIdFilter.describe();
+	}
+}
@@ -0,0 +1,172 @@
+package com.exercise.banking.service.transfer.idempotency;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.exercise.banking.service.transfer.dto.TransferResponseV1;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Bounded cache of the responses of recently completed transfers, keyed by request id.
+ *
+ * A client retrying a transfer that already went through is answered from here, without
+ * a database query. Entries expire {@code transfer.idempotency.cache.ttl-ms} after they
+ * were stored, and the least recently used entries are evicted once the cache holds
+ * {@code transfer.idempotency.cache.max-size} responses. A miss only means the duplicate
+ * check falls back to the transactions table, so the cache never has to be complete.
+ *
+ * A maximum size of 0 disables the cache.
+ */
+@Component
+public class IdempotencyCache {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+
+    // Access ordered, guarded by the lock
+    private final LinkedHashMap<UUID, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Counter hitCounter;
+    private final Counter missCounter;
+    private final Counter sizeEvictionCounter;
+    private final Counter expiryEvictionCounter;
+
+    @Autowired
+    public IdempotencyCache(@Value("${transfer.idempotency.cache.max-size:10000}") int maxSize,
+                            @Value("${transfer.idempotency.cache.ttl-ms:600000}") long ttlMillis,
+                            MeterRegistry meterRegistry) {
+        this(maxSize, ttlMillis, meterRegistry, System::nanoTime);
+    }
+
+    IdempotencyCache(int maxSize, long ttlMillis, MeterRegistry meterRegistry, LongSupplier clock) {
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.clock = clock;
+        this.hitCounter = Counter.builder("transfer.idempotency.cache.gets")
+                .description("Duplicate checks answered by the idempotency cache")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.missCounter = Counter.builder("transfer.idempotency.cache.gets")
+                .description("Duplicate checks answered by the idempotency cache")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.sizeEvictionCounter = Counter.builder("transfer.idempotency.cache.evictions")
+                .description("Responses removed from the idempotency cache")
+                .tag("cause", "size")
+                .register(meterRegistry);
+        this.expiryEvictionCounter = Counter.builder("transfer.idempotency.cache.evictions")
+                .description("Responses removed from the idempotency cache")
+                .tag("cause", "expired")
+                .register(meterRegistry);
+        Gauge.builder("transfer.idempotency.cache.size", this, IdempotencyCache::size)
+                .description("Responses held by the idempotency cache")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the response of the completed transfer with the given request id
+     * @param requestId
+     * @return the stored response, empty if it is unknown or expired
+     */
+    public Optional<TransferResponseV1> get(UUID requestId) {
+        if (maxSize <= 0) {
+            return Optional.empty();
+        }
+        lock.lock();
+        try {
+            Entry entry = entries.get(requestId);
+            if (entry != null && isExpired(entry, clock.getAsLong())) {
+                entries.remove(requestId);
+                expiryEvictionCounter.increment();
+                entry = null;
+            }
+            if (entry == null) {
+                missCounter.increment();
+                return Optional.empty();
+            }
+            hitCounter.increment();
+            return Optional.of(entry.response());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stores the response of a completed transfer
+     * @param requestId
+     * @param response
+     */
+    public void put(UUID requestId, TransferResponseV1 response) {
+        if (maxSize <= 0) {
+            return;
+        }
+        long now = clock.getAsLong();
+        lock.lock();
+        try {
+            entries.put(requestId, new Entry(response, now));
+            evict(now);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forgets the response of a transfer whose status changed after it was answered, a
+     * retry then reads the transaction again
+     * @param requestId
+     */
+    public void invalidate(UUID requestId) {
+        lock.lock();
+        try {
+            entries.remove(requestId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void evict(long now) {
+        Iterator<Map.Entry<UUID, Entry>> eldest = entries.entrySet().iterator();
+        while (eldest.hasNext()) {
+            Entry entry = eldest.next().getValue();
+            if (isExpired(entry, now)) {
+                expiryEvictionCounter.increment();
+            } else if (entries.size() > maxSize) {
+                sizeEvictionCounter.increment();
+            } else {
+                break;
+            }
+            eldest.remove();
+        }
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.storedAt() >= ttlNanos;
+    }
+
+    private record Entry(TransferResponseV1 response, long storedAt) {
+    }
+}
@@ -0,0 +1,129 @@
+package com.exercise.banking.service.transfer.idempotency;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.exercise.banking.service.transfer.dto.TransferResponseV1;
+import com.exercise.banking.service.transfer.exception.TransactionProcessingException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Transfers being processed by this instance, keyed by request id.
+ *
+ * A request arriving while a transfer with the same request id is in flight, typically a
+ * client retrying after a timeout, does not start a transfer of its own. It attaches to
+ * the one in flight and is completed with the same response, marked as duplicate, or
+ * with the same failure. It takes no database connection, lock or queue slot meanwhile.
+ *
+ * Only requests handled by this instance are coalesced, duplicates arriving at another
+ * instance are kept apart by the request id reservation.
+ */
+@Component
+public class InFlightRequests {
+
+    private static final Logger logger = LoggerFactory.getLogger(InFlightRequests.class);
+
+    private final ConcurrentHashMap<UUID, CompletableFuture<TransferResponseV1>> requests = new ConcurrentHashMap<>();
+
+    private final Counter coalescedCounter;
+
+    public InFlightRequests(MeterRegistry meterRegistry) {
+        this.coalescedCounter = Counter.builder("transfer.idempotency.inflight.coalesced")
+                .description("Requests answered by a transfer with the same request id that was already in flight")
+                .register(meterRegistry);
+        Gauge.builder("transfer.idempotency.inflight", requests, ConcurrentHashMap::size)
+                .description("Transfers in flight that duplicates can attach to")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs the transfer, unless one with the same request id is in flight, in which case
+     * its outcome is awaited instead
+     * @param requestId
+     * @param transfer
+     * @return response of the transfer, marked as duplicate if it was run by another request
+     */
+    public TransferResponseV1 execute(UUID requestId, Supplier<TransferResponseV1> transfer) {
+        CompletableFuture<TransferResponseV1> own = new CompletableFuture<>();
+        CompletableFuture<TransferResponseV1> inFlight = requests.putIfAbsent(requestId, own);
+        if (inFlight != null) {
+            return await(requestId, attach(inFlight));
+        }
+        try {
+            TransferResponseV1 response = transfer.get();
+            own.complete(response);
+            return response;
+        } catch (RuntimeException e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            requests.remove(requestId, own);
+        }
+    }
+
+    /**
+     * Starts the asynchronous transfer, unless one with the same request id is in flight,
+     * in which case its outcome is returned instead
+     * @param requestId
+     * @param transfer starts the transfer
+     * @return future response of the transfer, marked as duplicate if it was run by another request
+     */
+    public CompletableFuture<TransferResponseV1> executeAsync(UUID requestId, Supplier<CompletableFuture<TransferResponseV1>> transfer) {
+        CompletableFuture<TransferResponseV1> own = new CompletableFuture<>();
+        CompletableFuture<TransferResponseV1> inFlight = requests.putIfAbsent(requestId, own);
+        if (inFlight != null) {
+            return attach(inFlight);
+        }
+        CompletableFuture<TransferResponseV1> result;
+        try {
+            result = transfer.get();
+        } catch (RuntimeException e) {
+            own.completeExceptionally(e);
+            requests.remove(requestId, own);
+            throw e;
+        }
+        return result.whenComplete((response, failure) -> {
+            if (failure != null) {
+                own.completeExceptionally(unwrap(failure));
+            } else {
+                own.complete(response);
+            }
+            requests.remove(requestId, own);
+        });
+    }
+
+    public int size() {
+        return requests.size();
+    }
+
+    private CompletableFuture<TransferResponseV1> attach(CompletableFuture<TransferResponseV1> inFlight) {
+        coalescedCounter.increment();
+        logger.info("Transfer with the same request id is in flight, waiting for its outcome");
+        return inFlight.thenApply(response -> new TransferResponseV1.Builder().from(response).withIsDuplicate(true).build());
+    }
+
+    private static TransferResponseV1 await(UUID requestId, CompletableFuture<TransferResponseV1> response) {
+        try {
+            return response.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new TransactionProcessingException(requestId, e.getCause().getMessage());
+        }
+    }
+
+    private static Throwable unwrap(Throwable failure) {
+        return failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+    }
+}
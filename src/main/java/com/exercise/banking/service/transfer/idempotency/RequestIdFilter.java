@@ -0,0 +1,312 @@
+package com.exercise.banking.service.transfer.idempotency;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import com.exercise.banking.service.transfer.repository.TransactionRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Scalable Bloom filter of the request ids of all recorded transactions.
+ *
+ * A negative answer means the request id has never been recorded by this instance, so a
+ * new transfer can go straight to its reservation without looking up the request id first.
+ * A positive answer, which is wrong with a probability of at most about twice
+ * {@code transfer.idempotency.filter.fpp}, only means the lookup is done. The filter is a
+ * hint: the unique request id still rejects a duplicate the filter does not know about,
+ * for example one recorded by another instance.
+ *
+ * The filter starts with one slice sized for {@code transfer.idempotency.filter.expected-insertions}
+ * request ids. When a slice is full a new one with twice the capacity and half the false positive
+ * rate is added, so the overall rate stays bounded however many transactions there are. Slices are
+ * only added while the filter fits in {@code transfer.idempotency.filter.max-memory-mb}; beyond that
+ * the last slice keeps filling up and its false positive rate grows.
+ *
+ * The filter is rebuilt from the transactions table in the background at startup. Until it is
+ * complete every request id is treated as possibly seen.
+ */
+@Component
+public class RequestIdFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestIdFilter.class);
+
+    private static final double GROWTH_FACTOR = 2.0;
+    private static final double TIGHTENING_RATIO = 0.5;
+    private static final int REBUILD_PAGE_SIZE = 10_000;
+
+    private final boolean enabled;
+    private final long expectedInsertions;
+    private final double falsePositiveRate;
+    private final long maxMemoryBits;
+    private final TransactionRepository txnRepo;
+
+    // Slices are only added, under the lock; readers work on the current snapshot
+    private volatile List<Slice> slices;
+    private final ReentrantLock growLock = new ReentrantLock();
+    private volatile boolean ready;
+    private volatile boolean saturated;
+    private volatile long rebuiltInsertions;
+
+    private final Counter negativeCounter;
+    private final Counter positiveCounter;
+
+    public RequestIdFilter(@Value("${transfer.idempotency.filter.enabled:true}") boolean enabled,
+                           @Value("${transfer.idempotency.filter.expected-insertions:1000000}") long expectedInsertions,
+                           @Value("${transfer.idempotency.filter.fpp:0.001}") double falsePositiveRate,
+                           @Value("${transfer.idempotency.filter.max-memory-mb:64}") long maxMemoryMb,
+                           TransactionRepository txnRepo, MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.expectedInsertions = Math.max(1, expectedInsertions);
+        this.falsePositiveRate = falsePositiveRate;
+        this.maxMemoryBits = Math.max(1, maxMemoryMb) * 1024 * 1024 * 8;
+        this.txnRepo = txnRepo;
+        this.slices = enabled
+                ? List.of(new Slice(Math.min(this.expectedInsertions, maxCapacity(falsePositiveRate * (1 - TIGHTENING_RATIO))),
+                        falsePositiveRate * (1 - TIGHTENING_RATIO)))
+                : List.of();
+        this.negativeCounter = Counter.builder("transfer.idempotency.filter.checks")
+                .description("Request ids checked against the request id filter")
+                .tag("result", "negative")
+                .register(meterRegistry);
+        this.positiveCounter = Counter.builder("transfer.idempotency.filter.checks")
+                .description("Request ids checked against the request id filter")
+                .tag("result", "positive")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Checks if the request id may have been recorded
+     * @param requestId
+     * @return false if the request id has certainly not been recorded by this instance
+     */
+    public boolean mightContain(UUID requestId) {
+        if (!enabled || !ready) {
+            return true;
+        }
+        long h1 = mix(requestId.getMostSignificantBits() ^ mix(requestId.getLeastSignificantBits()));
+        long h2 = mix(requestId.getLeastSignificantBits() + 0x9E3779B97F4A7C15L) | 1;
+        for (Slice slice : slices) {
+            if (slice.mightContain(h1, h2)) {
+                positiveCounter.increment();
+                return true;
+            }
+        }
+        negativeCounter.increment();
+        return false;
+    }
+
+    /**
+     * Records the request id of a transaction
+     * @param requestId
+     */
+    public void put(UUID requestId) {
+        if (!enabled) {
+            return;
+        }
+        long h1 = mix(requestId.getMostSignificantBits() ^ mix(requestId.getLeastSignificantBits()));
+        long h2 = mix(requestId.getLeastSignificantBits() + 0x9E3779B97F4A7C15L) | 1;
+        currentSlice().put(h1, h2);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!enabled) {
+            return;
+        }
+        Thread rebuild = new Thread(this::rebuild, "request-id-filter-rebuild");
+        rebuild.setDaemon(true);
+        rebuild.start();
+    }
+
+    /**
+     * Adds the request ids of all transactions in the database, then starts answering checks.
+     * Request ids recorded meanwhile are added as they are saved.
+     */
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        long started = System.nanoTime();
+        long count = 0;
+        try {
+            List<UUID> page = txnRepo.findFirstRequestIds(PageRequest.ofSize(REBUILD_PAGE_SIZE));
+            while (!page.isEmpty()) {
+                page.forEach(this::put);
+                count += page.size();
+                page = page.size() < REBUILD_PAGE_SIZE ? List.of()
+                        : txnRepo.findRequestIdsAfter(page.get(page.size() - 1), PageRequest.ofSize(REBUILD_PAGE_SIZE));
+            }
+        } catch (RuntimeException e) {
+            // Every request id keeps being looked up
+            logger.error("Failed to rebuild the request id filter after {} request ids", count, e);
+            return;
+        }
+        rebuiltInsertions = count;
+        ready = true;
+        logger.info("Rebuilt the request id filter from {} request ids in {} ms", count, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /**
+     * Current state of the filter, to size it
+     * @return sizes, memory use and estimated false positive rate
+     */
+    public Map<String, Object> describe() {
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("enabled", enabled);
+        state.put("ready", ready);
+        state.put("saturated", saturated);
+        state.put("rebuiltInsertions", rebuiltInsertions);
+        state.put("configuredFpp", falsePositiveRate);
+        state.put("maxMemoryBytes", maxMemoryBits / 8);
+        List<Map<String, Object>> sliceStates = new ArrayList<>();
+        long insertions = 0;
+        long bits = 0;
+        double notFalsePositive = 1.0;
+        for (Slice slice : slices) {
+            double fpp = slice.estimatedFpp();
+            notFalsePositive *= 1 - fpp;
+            insertions += slice.count.get();
+            bits += slice.numBits;
+            Map<String, Object> sliceState = new LinkedHashMap<>();
+            sliceState.put("capacity", slice.capacity);
+            sliceState.put("insertions", slice.count.get());
+            sliceState.put("hashFunctions", slice.numHashes);
+            sliceState.put("memoryBytes", slice.numBits / 8);
+            sliceState.put("targetFpp", slice.targetFpp);
+            sliceState.put("estimatedFpp", fpp);
+            sliceStates.add(sliceState);
+        }
+        state.put("insertions", insertions);
+        state.put("memoryBytes", bits / 8);
+        state.put("bitsPerInsertion", insertions == 0 ? 0.0 : (double) bits / insertions);
+        state.put("estimatedFpp", 1 - notFalsePositive);
+        state.put("slices", sliceStates);
+        return state;
+    }
+
+    private Slice currentSlice() {
+        List<Slice> current = slices;
+        Slice last = current.get(current.size() - 1);
+        if (last.count.get() < last.capacity || saturated) {
+            return last;
+        }
+        growLock.lock();
+        try {
+            current = slices;
+            last = current.get(current.size() - 1);
+            if (last.count.get() < last.capacity || saturated) {
+                return last;
+            }
+            double fpp = last.targetFpp * TIGHTENING_RATIO;
+            long capacity = (long) (last.capacity * GROWTH_FACTOR);
+            long usedBits = current.stream().mapToLong(slice -> slice.numBits).sum();
+            if (usedBits + Slice.bitsFor(capacity, fpp) > maxMemoryBits || capacity > maxCapacity(fpp)) {
+                saturated = true;
+                logger.warn("Request id filter reached its memory budget with {} request ids, its false positive rate will grow",
+                        current.stream().mapToLong(slice -> slice.count.get()).sum());
+                return last;
+            }
+            Slice next = new Slice(capacity, fpp);
+            List<Slice> grown = new ArrayList<>(current);
+            grown.add(next);
+            slices = List.copyOf(grown);
+            logger.info("Request id filter grew to {} slices", grown.size());
+            return next;
+        } finally {
+            growLock.unlock();
+        }
+    }
+
+    /**
+     * Largest capacity a single slice can hold at the given false positive rate
+     * @param fpp
+     * @return capacity
+     */
+    private static long maxCapacity(double fpp) {
+        return (long) (Slice.MAX_BITS * Math.log(2) * Math.log(2) / -Math.log(fpp));
+    }
+
+    /**
+     * 64 bit finalizer of MurmurHash3, spreads request ids that are not random
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Fixed size Bloom filter. Bits are set with atomic updates, so concurrent puts do not lose bits.
+     */
+    private static final class Slice {
+
+        private static final long MAX_BITS = (long) Integer.MAX_VALUE * Long.SIZE;
+
+        private final long capacity;
+        private final double targetFpp;
+        private final long numBits;
+        private final int numHashes;
+        private final AtomicLongArray bits;
+        private final AtomicLong count = new AtomicLong();
+
+        Slice(long capacity, double targetFpp) {
+            this.capacity = Math.max(1, capacity);
+            this.targetFpp = targetFpp;
+            this.numBits = bitsFor(this.capacity, targetFpp);
+            this.numHashes = Math.max(1, (int) Math.round((double) numBits / this.capacity * Math.log(2)));
+            this.bits = new AtomicLongArray((int) ((numBits + Long.SIZE - 1) / Long.SIZE));
+        }
+
+        static long bitsFor(long capacity, double fpp) {
+            long bits = (long) Math.ceil(-capacity * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+            return Math.min(Math.max(Long.SIZE, bits), MAX_BITS);
+        }
+
+        boolean mightContain(long h1, long h2) {
+            long combined = h1;
+            for (int i = 0; i < numHashes; i++) {
+                long index = Math.floorMod(combined, numBits);
+                if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                    return false;
+                }
+                combined += h2;
+            }
+            return true;
+        }
+
+        void put(long h1, long h2) {
+            long combined = h1;
+            for (int i = 0; i < numHashes; i++) {
+                long index = Math.floorMod(combined, numBits);
+                long mask = 1L << index;
+                bits.getAndUpdate((int) (index >>> 6), word -> word | mask);
+                combined += h2;
+            }
+            count.incrementAndGet();
+        }
+
+        double estimatedFpp() {
+            double filled = 1 - Math.exp(-(double) numHashes * count.get() / numBits);
+            return Math.pow(filled, numHashes);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.exercise.banking.service.transfer.idempotency;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import com.exercise.banking.service.transfer.exception.TransactionProcessingException;
+import com.exercise.banking.service.transfer.exception.TransferInProgressException;
+import com.exercise.banking.service.transfer.model.Transaction;
+import com.exercise.banking.service.transfer.model.TransactionStatus;
+import com.exercise.banking.service.transfer.service.TransactionService;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Reserves request ids before any balance is touched.
+ *
+ * A transfer first inserts its transaction as PENDING, in a transaction of its own. The
+ * unique constraint on the request id lets only one of the requests with the same id do
+ * so, across threads and instances alike. The others wait, polling the status of the
+ * reservation, until the winner has completed and then answer with its outcome. If the
+ * winner fails, it releases the reservation and one of the waiting requests takes it over.
+ *
+ * A request that is still pending after {@code transfer.idempotency.reservation.wait-ms}
+ * is rejected with a {@link TransferInProgressException}. A reservation older than
+ * {@code transfer.idempotency.reservation.expiry-ms} was left behind by an instance that
+ * stopped mid transfer and is taken over.
+ *
+ * A request id the {@link RequestIdFilter} has certainly not seen is inserted straight away.
+ * Otherwise the status is looked up first, so a retry of a completed transfer is answered
+ * without a failing insert.
+ */
+@Component
+public class RequestReservations {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestReservations.class);
+
+    private static final long MAX_POLL_MILLIS = 200;
+
+    private final TransactionService txnService;
+    private final RequestIdFilter requestIdFilter;
+    private final long waitNanos;
+    private final long pollMillis;
+    private final long expiryMillis;
+
+    private final Counter claimedCounter;
+    private final Counter completedCounter;
+    private final Counter expiredCounter;
+    private final Counter timeoutCounter;
+
+    public RequestReservations(TransactionService txnService, RequestIdFilter requestIdFilter,
+                               @Value("${transfer.idempotency.reservation.wait-ms:5000}") long waitMillis,
+                               @Value("${transfer.idempotency.reservation.poll-ms:10}") long pollMillis,
+                               @Value("${transfer.idempotency.reservation.expiry-ms:60000}") long expiryMillis,
+                               MeterRegistry meterRegistry) {
+        this.txnService = txnService;
+        this.requestIdFilter = requestIdFilter;
+        this.waitNanos = TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        this.pollMillis = Math.max(1, pollMillis);
+        this.expiryMillis = expiryMillis;
+        this.claimedCounter = counter(meterRegistry, "claimed");
+        this.completedCounter = counter(meterRegistry, "completed");
+        this.expiredCounter = counter(meterRegistry, "expired");
+        this.timeoutCounter = counter(meterRegistry, "timeout");
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("transfer.idempotency.reservations")
+                .description("Request id reservations by outcome")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Reserves the request id, waiting while another request holds it
+     * @param requestId
+     * @param reservation creates the pending transaction to insert, called for each attempt
+     * @return the pending transaction inserted for this request, empty if a transfer with
+     * this request id has completed
+     * @throws TransferInProgressException if the request id is still reserved by another request after waiting
+     */
+    public Optional<Transaction> claim(UUID requestId, Supplier<Transaction> reservation) {
+        long deadline = System.nanoTime() + waitNanos;
+        long pause = pollMillis;
+        boolean lookUpFirst = requestIdFilter.mightContain(requestId);
+        while (true) {
+            Optional<TransactionStatus> status = Optional.empty();
+            if (lookUpFirst) {
+                status = txnService.findStatusByRequestId(requestId);
+            }
+            if (status.isEmpty()) {
+                try {
+                    Transaction reserved = txnService.reserve(reservation.get());
+                    requestIdFilter.put(requestId);
+                    claimedCounter.increment();
+                    return Optional.of(reserved);
+                } catch (DataIntegrityViolationException e) {
+                    logger.debug("Request id is already reserved");
+                }
+                status = txnService.findStatusByRequestId(requestId);
+            }
+            lookUpFirst = true;
+            if (status.isPresent() && status.get() != TransactionStatus.PENDING) {
+                completedCounter.increment();
+                return Optional.empty();
+            }
+            if (status.isPresent() && txnService.releaseExpiredReservation(requestId, LocalDateTime.now().minusNanos(
+                    TimeUnit.MILLISECONDS.toNanos(expiryMillis)))) {
+                expiredCounter.increment();
+                logger.warn("Took over an expired reservation");
+                continue;
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                timeoutCounter.increment();
+                logger.error("Transfer with the same request id is still in progress");
+                throw new TransferInProgressException(requestId);
+            }
+            sleep(requestId, pause);
+            pause = Math.min(pause * 2, MAX_POLL_MILLIS);
+        }
+    }
+
+    /**
+     * Releases the reservation of a transfer that failed, so the request can be retried
+     * @param requestId
+     */
+    public void release(UUID requestId) {
+        try {
+            txnService.releaseReservation(requestId);
+        } catch (RuntimeException e) {
+            // The reservation expires on its own
+            logger.error("Failed to release the reservation", e);
+        }
+    }
+
+    private static void sleep(UUID requestId, long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransactionProcessingException(requestId, "Interrupted while waiting for a transfer with the same request id");
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.exercise.banking.service.transfer.ingestion;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+import com.exercise.banking.service.transfer.dto.TransferRequestV1;
+import com.exercise.banking.service.transfer.exception.PaymentFileFormatException;
+
+/**
+ * Reads a UTF-8 CSV payment file one line at a time. The first line names the columns, in
+ * any order and case: {@code payerAccNumber}, {@code payeeAccNumber}, {@code payeeBankCode},
+ * {@code amount} and {@code currency} are required, {@code requestId} and {@code payeeBankName}
+ * are optional. Fields may be quoted, with {@code ""} for a quote inside a quoted field, but
+ * a record cannot span several lines. Blank lines are skipped.
+ */
+public class CsvPaymentReader extends PaymentFileReader {
+
+    private static final List<String> REQUIRED_COLUMNS = List.of("payeraccnumber", "payeeaccnumber", "payeebankcode", "amount", "currency");
+
+    private final BufferedReader reader;
+    private Map<String, Integer> columns;
+
+    public CsvPaymentReader(UUID fileId, InputStream in) {
+        super(fileId);
+        this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    protected TransferRequestV1 readNext() {
+        try {
+            if (columns == null) {
+                columns = readHeader();
+            }
+            String line;
+            do {
+                line = reader.readLine();
+            } while (line != null && line.isBlank());
+            if (line == null) {
+                return null;
+            }
+            List<String> fields = split(line);
+            return new TransferRequestV1(requestId(field(fields, "requestid")), account(field(fields, "payeraccnumber")),
+                    account(field(fields, "payeeaccnumber")), trimmed(field(fields, "payeebankname")),
+                    trimmed(field(fields, "payeebankcode")), amount(field(fields, "amount")), trimmed(field(fields, "currency")), null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Map<String, Integer> readHeader() throws IOException {
+        String header = reader.readLine();
+        if (header == null) {
+            throw new PaymentFileFormatException(fileId, 0, "Payment file is empty");
+        }
+        // A byte order mark left by spreadsheet exports
+        if (header.startsWith("\uFEFF")) {
+            header = header.substring(1);
+        }
+        Map<String, Integer> indexes = new HashMap<>();
+        List<String> names = split(header);
+        for (int i = 0; i < names.size(); i++) {
+            indexes.put(names.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        List<String> missing = REQUIRED_COLUMNS.stream().filter(column -> !indexes.containsKey(column)).toList();
+        if (!missing.isEmpty()) {
+            throw new PaymentFileFormatException(fileId, 0, "Payment file header misses the columns " + missing);
+        }
+        return indexes;
+    }
+
+    private String field(List<String> fields, String column) {
+        Integer index = columns.get(column);
+        return index == null || index >= fields.size() ? null : fields.get(index);
+    }
+
+    /**
+     * Splits a line on the commas outside of quotes
+     */
+    private List<String> split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new PaymentFileFormatException(fileId, columns == null ? 0 : currentRecord(), "Quoted field is not closed on its line");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
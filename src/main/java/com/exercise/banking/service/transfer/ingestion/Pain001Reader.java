@@ -0,0 +1,164 @@
+package com.exercise.banking.service.transfer.ingestion;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.UUID;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.exercise.banking.service.transfer.dto.TransferRequestV1;
+import com.exercise.banking.service.transfer.exception.PaymentFileFormatException;
+
+/**
+ * Reads an ISO 20022 pain.001 customer credit transfer initiation with a StAX cursor, one
+ * {@code CdtTrfTxInf} at a time. Elements are matched on their local names, so any version
+ * of the message is read.
+ *
+ * The payer account is the debtor account of the enclosing {@code PmtInf}. For every
+ * transaction:
+ * <ul>
+ * <li>the request id is the {@code PmtId/EndToEndId}, when it is a UUID</li>
+ * <li>the amount and currency are the {@code Amt/InstdAmt} and its {@code Ccy}</li>
+ * <li>the payee bank code is the {@code CdtrAgt} clearing system member id, or its other id</li>
+ * <li>the payee account is the {@code CdtrAcct} other id, or its IBAN</li>
+ * </ul>
+ * DTDs and external entities are not processed.
+ */
+public class Pain001Reader extends PaymentFileReader {
+
+    private static final XMLInputFactory FACTORY = XMLInputFactory.newFactory();
+
+    static {
+        FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    private final InputStream in;
+    private final XMLStreamReader reader;
+    // Local names of the open elements, separated by '/', and where each one starts
+    private final StringBuilder path = new StringBuilder();
+    private int[] pathStarts = new int[16];
+    private int depth;
+    private final StringBuilder text = new StringBuilder();
+
+    private String payerAccNumber;
+    private Transaction transaction;
+
+    public Pain001Reader(UUID fileId, InputStream in) {
+        super(fileId);
+        this.in = in;
+        try {
+            this.reader = FACTORY.createXMLStreamReader(in);
+        } catch (XMLStreamException e) {
+            throw new PaymentFileFormatException(fileId, 0, e.getMessage());
+        }
+    }
+
+    @Override
+    protected TransferRequestV1 readNext() {
+        try {
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                    case XMLStreamConstants.START_ELEMENT -> start(reader.getLocalName());
+                    case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA -> text.append(reader.getText());
+                    case XMLStreamConstants.END_ELEMENT -> {
+                        TransferRequestV1 request = end();
+                        if (request != null) {
+                            return request;
+                        }
+                    }
+                    default -> {
+                        // Comments, processing instructions and the document events carry no field
+                    }
+                }
+            }
+            return null;
+        } catch (XMLStreamException e) {
+            throw new PaymentFileFormatException(fileId, currentRecord(), e.getMessage());
+        }
+    }
+
+    private void start(String name) {
+        if (depth == pathStarts.length) {
+            pathStarts = Arrays.copyOf(pathStarts, depth * 2);
+        }
+        pathStarts[depth++] = path.length();
+        path.append('/').append(name);
+        text.setLength(0);
+        if ("PmtInf".equals(name)) {
+            payerAccNumber = null;
+        } else if ("CdtTrfTxInf".equals(name)) {
+            transaction = new Transaction();
+        } else if ("InstdAmt".equals(name) && transaction != null) {
+            transaction.currency = reader.getAttributeValue(null, "Ccy");
+        }
+    }
+
+    /**
+     * Sets the field the closed element holds
+     * @return the transfer, if the element closed a transaction
+     */
+    private TransferRequestV1 end() {
+        String value = trimmed(text.toString());
+        text.setLength(0);
+        TransferRequestV1 request = null;
+        if (endsWith("/PmtInf/DbtrAcct/Id/Othr/Id") || endsWith("/PmtInf/DbtrAcct/Id/IBAN")) {
+            payerAccNumber = value;
+        } else if (transaction != null) {
+            if (endsWith("/CdtTrfTxInf")) {
+                request = transaction.toRequest();
+                transaction = null;
+            } else if (endsWith("/CdtTrfTxInf/PmtId/EndToEndId")) {
+                transaction.endToEndId = value;
+            } else if (endsWith("/CdtTrfTxInf/Amt/InstdAmt")) {
+                transaction.amount = value;
+            } else if (endsWith("/CdtrAgt/FinInstnId/ClrSysMmbId/MmbId")
+                    || (endsWith("/CdtrAgt/FinInstnId/Othr/Id") && transaction.bankCode == null)) {
+                transaction.bankCode = value;
+            } else if (endsWith("/CdtrAgt/FinInstnId/Nm")) {
+                transaction.bankName = value;
+            } else if (endsWith("/CdtrAcct/Id/Othr/Id") || (endsWith("/CdtrAcct/Id/IBAN") && transaction.payeeAccNumber == null)) {
+                transaction.payeeAccNumber = value;
+            }
+        }
+        path.setLength(pathStarts[--depth]);
+        return request;
+    }
+
+    private boolean endsWith(String suffix) {
+        int from = path.length() - suffix.length();
+        return from >= 0 && path.indexOf(suffix, from) == from;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            // Closing the cursor does not close the stream, closed below
+        }
+        in.close();
+    }
+
+    /**
+     * Fields of the transaction being read
+     */
+    private final class Transaction {
+
+        private String endToEndId;
+        private String amount;
+        private String currency;
+        private String bankCode;
+        private String bankName;
+        private String payeeAccNumber;
+
+        private TransferRequestV1 toRequest() {
+            return new TransferRequestV1(requestId(endToEndId), account(payerAccNumber), account(payeeAccNumber), bankName,
+                    bankCode, amount(amount), trimmed(currency), null);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.exercise.banking.service.transfer.ingestion;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+import com.exercise.banking.service.transfer.dto.PaymentFileFormat;
+import com.exercise.banking.service.transfer.dto.TransferRequestV1;
+
+/**
+ * Reads the records of a payment file one at a time, as transfer requests. Only the
+ * record being read is held in memory, whatever the size of the file.
+ *
+ * Records are mapped leniently: a field that cannot be parsed, such as an amount that is
+ * not a number, is left empty so that the validation of the transfer reports it and the
+ * file goes on. A file that cannot be read any further fails with a
+ * {@link com.exercise.banking.service.transfer.exception.PaymentFileFormatException}.
+ *
+ * A record without a request id gets one derived from the file id and its position, so
+ * the same record of a file uploaded again is answered as a duplicate.
+ */
+public abstract class PaymentFileReader implements Iterator<TransferRequestV1>, Closeable {
+
+    protected final UUID fileId;
+
+    private long recordsRead;
+    private TransferRequestV1 next;
+
+    protected PaymentFileReader(UUID fileId) {
+        this.fileId = fileId;
+    }
+
+    /**
+     * @param format
+     * @param fileId
+     * @param in content of the file, closed with the reader
+     * @return reader of the records of the file
+     */
+    public static PaymentFileReader open(PaymentFileFormat format, UUID fileId, InputStream in) {
+        return switch (format) {
+            case PAIN_001 -> new Pain001Reader(fileId, in);
+            case CSV -> new CsvPaymentReader(fileId, in);
+        };
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = readNext();
+        }
+        return next != null;
+    }
+
+    @Override
+    public TransferRequestV1 next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        TransferRequestV1 record = next;
+        next = null;
+        recordsRead++;
+        return record;
+    }
+
+    /**
+     * @return records returned so far
+     */
+    public long getRecordsRead() {
+        return recordsRead;
+    }
+
+    /**
+     * @return position of the record being read, starting at 1
+     */
+    protected long currentRecord() {
+        return recordsRead + 1;
+    }
+
+    /**
+     * Reads the next record of the file
+     * @return the next record, null at the end of the file
+     */
+    protected abstract TransferRequestV1 readNext();
+
+    /**
+     * @param value request id of the record, may be empty
+     * @return the request id of the record if it is a UUID, otherwise one derived from the file and the position of the record
+     */
+    protected UUID requestId(String value) {
+        if (value != null && !value.isBlank()) {
+            try {
+                return UUID.fromString(value.trim());
+            } catch (IllegalArgumentException e) {
+                // Not a UUID, such as a bank reference, derived below
+            }
+        }
+        return UUID.nameUUIDFromBytes((fileId + "/" + currentRecord()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the amount, null if it is not a number
+     */
+    protected static BigDecimal amount(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return new BigDecimal(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the account number, empty if the record has none so that the validation rejects it
+     */
+    protected static String account(String value) {
+        return value == null ? "" : value.trim();
+    }
+
+    protected static String trimmed(String value) {
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+}
@@ -0,0 +1,14 @@
+package com.exercise.banking.service.transfer.ledger;
+
+import java.math.BigDecimal;
+
+import com.exercise.banking.service.transfer.model.Transaction;
+
+/**
+ * Outcome of a transfer applied by a ledger shard.
+ *
+ * @param transaction the persisted transaction
+ * @param payerBalance balance of the payer account right after this transfer
+ */
+public record LedgerResult(Transaction transaction, BigDecimal payerBalance) {
+}
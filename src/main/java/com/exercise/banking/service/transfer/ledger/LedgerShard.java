@@ -0,0 +1,287 @@
+package com.exercise.banking.service.transfer.ledger;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.exercise.banking.service.transfer.exception.AccountNotFoundException;
+import com.exercise.banking.service.transfer.exception.BaseTransferException;
+import com.exercise.banking.service.transfer.exception.InsufficientFundsException;
+import com.exercise.banking.service.transfer.exception.TransactionProcessingException;
+import com.exercise.banking.service.transfer.model.Transaction;
+import com.exercise.banking.service.transfer.model.TransactionStatus;
+import com.exercise.banking.service.transfer.repository.AccountView;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Single threaded owner of the balances of one partition of the accounts.
+ *
+ * Transfers are taken from a bounded ring buffer in batches. The balances are checked and
+ * changed in memory by the shard thread only, then the whole batch is persisted in one
+ * transaction before any of its transfers is completed.
+ *
+ * Credits to accounts owned by another shard are persisted with the batch and then sent to
+ * the owning shard, together with the row version written by the update. The owner skips
+ * a credit that is already part of the balance it loaded from the database.
+ */
+class LedgerShard implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(LedgerShard.class);
+
+    private static final long POLL_MILLIS = 100;
+
+    /** Wakes up an idle shard when a credit arrives, carries no transfer */
+    private static final Transfer WAKE_UP = new Transfer(null, null, null);
+
+    private final int index;
+    private final ShardedLedgerEngine engine;
+    private final LedgerStore store;
+    private final int batchSize;
+    private final ArrayBlockingQueue<Transfer> ringBuffer;
+    private final Queue<Credit> creditInbox = new ConcurrentLinkedQueue<>();
+    private final DistributionSummary batchSizeSummary;
+    private final Timer persistTimer;
+
+    // Only accessed by the shard thread
+    private final Map<String, Balance> balances = new HashMap<>();
+
+    private volatile boolean running = true;
+
+    LedgerShard(int index, ShardedLedgerEngine engine, LedgerStore store, int ringBufferSize, int batchSize,
+                DistributionSummary batchSizeSummary, Timer persistTimer) {
+        this.index = index;
+        this.engine = engine;
+        this.store = store;
+        this.batchSize = batchSize;
+        this.ringBuffer = new ArrayBlockingQueue<>(ringBufferSize);
+        this.batchSizeSummary = batchSizeSummary;
+        this.persistTimer = persistTimer;
+    }
+
+    /**
+     * Queues a transfer without blocking
+     * @param transfer
+     * @return false if the ring buffer is full
+     */
+    boolean offer(Transfer transfer) {
+        return ringBuffer.offer(transfer);
+    }
+
+    /**
+     * Queues a credit persisted by another shard. Credits are never rejected.
+     * @param credit
+     */
+    void deliver(Credit credit) {
+        creditInbox.add(credit);
+        // A full ring buffer means the shard is busy and will see the credit anyway
+        ringBuffer.offer(WAKE_UP);
+    }
+
+    int queueDepth() {
+        return ringBuffer.size();
+    }
+
+    void stop() {
+        running = false;
+    }
+
+    @Override
+    public void run() {
+        List<Transfer> batch = new ArrayList<>(batchSize);
+        while (running) {
+            Transfer first;
+            try {
+                first = ringBuffer.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            applyCredits();
+            if (first == null) {
+                continue;
+            }
+            batch.add(first);
+            ringBuffer.drainTo(batch, batchSize - 1);
+            batch.removeIf(transfer -> transfer == WAKE_UP);
+            try {
+                if (!batch.isEmpty()) {
+                    process(batch);
+                }
+            } catch (RuntimeException e) {
+                // The shard keeps serving its accounts, only the transfers of the batch fail
+                logger.error("Ledger shard {} failed to process a batch of {} transfers", index, batch.size(), e);
+                balances.clear();
+                batch.forEach(transfer -> transfer.result.completeExceptionally(
+                        new TransactionProcessingException(transfer.requestId(), e.getMessage())));
+            } finally {
+                batch.clear();
+            }
+        }
+        failPending();
+    }
+
+    private void process(List<Transfer> batch) {
+        batchSizeSummary.record(batch.size());
+        List<Transfer> accepted = new ArrayList<>(batch.size());
+        SortedMap<String, BigDecimal> deltas = new TreeMap<>();
+        Set<String> foreignAccounts = new HashSet<>();
+        for (Transfer transfer : batch) {
+            try {
+                apply(transfer, deltas, foreignAccounts);
+                accepted.add(transfer);
+            } catch (BaseTransferException e) {
+                transfer.result.completeExceptionally(e);
+            } catch (RuntimeException e) {
+                // Balance could not be read, the transfer fails on its own
+                logger.error("Ledger shard {} failed to apply a transfer", index, e);
+                transfer.result.completeExceptionally(new TransactionProcessingException(transfer.requestId(), e.getMessage()));
+            }
+        }
+        if (accepted.isEmpty()) {
+            return;
+        }
+
+        Map<String, Long> versions;
+        try {
+            versions = persistTimer.record(() -> store.persist(deltas, foreignAccounts,
+                    accepted.stream().map(transfer -> transfer.transaction).toList()));
+        } catch (RuntimeException e) {
+            logger.error("Ledger shard {} failed to persist a batch of {} transfers", index, accepted.size(), e);
+            // The in memory balances include the failed batch, reload them from the database
+            balances.clear();
+            accepted.forEach(transfer -> transfer.result.completeExceptionally(
+                    new TransactionProcessingException(transfer.requestId(), e.getMessage())));
+            return;
+        }
+
+        versions.forEach((accNum, version) -> engine.deliverCredit(new Credit(accNum, deltas.get(accNum), version)));
+        accepted.forEach(transfer -> transfer.result.complete(new LedgerResult(transfer.transaction, transfer.payerBalance)));
+    }
+
+    private void apply(Transfer transfer, Map<String, BigDecimal> deltas, Set<String> foreignAccounts) {
+        UUID requestId = transfer.requestId();
+        BigDecimal amount = transfer.transaction.getAmount();
+        Balance payer = balance(transfer.payerAccNum, requestId);
+        if (payer.amount.compareTo(amount) < 0) {
+            // A credit from another shard may be waiting
+            applyCredits();
+            if (payer.amount.compareTo(amount) < 0) {
+                logger.error("Transfer failed: Payer account has insufficient funds");
+                throw new InsufficientFundsException(requestId);
+            }
+        }
+        Balance payee = null;
+        if (transfer.creditAccNum != null && engine.shardIndex(transfer.creditAccNum) == index) {
+            payee = balance(transfer.creditAccNum, requestId);
+        }
+
+        payer.amount = payer.amount.subtract(amount);
+        deltas.merge(transfer.payerAccNum, amount.negate(), BigDecimal::add);
+        if (transfer.creditAccNum != null) {
+            if (payee != null) {
+                payee.amount = payee.amount.add(amount);
+            } else {
+                foreignAccounts.add(transfer.creditAccNum);
+            }
+            deltas.merge(transfer.creditAccNum, amount, BigDecimal::add);
+        }
+        transfer.payerBalance = payer.amount;
+        transfer.transaction.setStatus(TransactionStatus.SUCCESS);
+    }
+
+    private Balance balance(String accNum, UUID requestId) {
+        Balance balance = balances.get(accNum);
+        if (balance == null) {
+            AccountView account = store.load(accNum).orElseThrow(() -> {
+                logger.error("Account not found in ledger shard {}", index);
+                return new AccountNotFoundException(requestId);
+            });
+            balance = new Balance(account.balance(), account.version() == null ? 0 : account.version());
+            balances.put(accNum, balance);
+        }
+        return balance;
+    }
+
+    private void applyCredits() {
+        Credit credit;
+        while ((credit = creditInbox.poll()) != null) {
+            Balance balance = balances.get(credit.accNum());
+            // Not loaded yet, or loaded after the credit was committed: already in the balance
+            if (balance != null && credit.version() > balance.loadedVersion) {
+                balance.amount = balance.amount.add(credit.amount());
+            }
+        }
+    }
+
+    private void failPending() {
+        Transfer transfer;
+        while ((transfer = ringBuffer.poll()) != null) {
+            if (transfer != WAKE_UP) {
+                transfer.result.completeExceptionally(new TransactionProcessingException(transfer.requestId(), "Ledger is shutting down"));
+            }
+        }
+    }
+
+    /**
+     * A transfer waiting in the ring buffer of the payer's shard.
+     */
+    static final class Transfer {
+
+        final String payerAccNum;
+        final String creditAccNum;
+        final Transaction transaction;
+        final CompletableFuture<LedgerResult> result = new CompletableFuture<>();
+
+        // Written and read by the shard thread only
+        BigDecimal payerBalance;
+
+        /**
+         * @param payerAccNum account to debit
+         * @param creditAccNum account to credit, null if the payee is in another bank
+         * @param transaction transaction to persist with the balance changes
+         */
+        Transfer(String payerAccNum, String creditAccNum, Transaction transaction) {
+            this.payerAccNum = payerAccNum;
+            this.creditAccNum = creditAccNum;
+            this.transaction = transaction;
+        }
+
+        UUID requestId() {
+            return transaction.getRequestId();
+        }
+    }
+
+    /**
+     * Committed credit to an account owned by the receiving shard.
+     */
+    record Credit(String accNum, BigDecimal amount, long version) {
+    }
+
+    private static final class Balance {
+
+        private BigDecimal amount;
+        private final long loadedVersion;
+
+        private Balance(BigDecimal amount, long loadedVersion) {
+            this.amount = amount;
+            this.loadedVersion = loadedVersion;
+        }
+    }
+}
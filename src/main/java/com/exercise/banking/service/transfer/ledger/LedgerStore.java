@@ -0,0 +1,74 @@
+package com.exercise.banking.service.transfer.ledger;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.exercise.banking.service.transfer.model.Transaction;
+import com.exercise.banking.service.transfer.repository.AccountRepository;
+import com.exercise.banking.service.transfer.repository.AccountView;
+import com.exercise.banking.service.transfer.repository.TransactionRepository;
+
+/**
+ * Database access of the ledger shards.
+ */
+class LedgerStore {
+
+    private final AccountRepository accRepo;
+    private final TransactionRepository txnRepo;
+    private final TransactionTemplate transactionTemplate;
+
+    LedgerStore(AccountRepository accRepo, TransactionRepository txnRepo, PlatformTransactionManager transactionManager) {
+        this.accRepo = accRepo;
+        this.txnRepo = txnRepo;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Reads the committed balance of an account
+     * @param accNum
+     * @return balance and row version, empty if the account does not exist
+     */
+    Optional<AccountView> load(String accNum) {
+        return accRepo.findViewByAccNum(accNum);
+    }
+
+    /**
+     * Persists a batch in one transaction: one update per account with its net change, followed by the transactions.
+     * Transactions reserved before the transfer are updated, the others are inserted.
+     * Accounts are updated in account number order, so batches of different shards cannot deadlock.
+     *
+     * @param deltas net balance change per account, sorted by account number
+     * @param foreignAccounts accounts owned by other shards
+     * @param transactions transactions of the batch
+     * @return row version after the update, for each foreign account
+     */
+    Map<String, Long> persist(SortedMap<String, BigDecimal> deltas, Set<String> foreignAccounts, List<Transaction> transactions) {
+        return transactionTemplate.execute(status -> {
+            Map<String, Long> versions = new HashMap<>();
+            deltas.forEach((accNum, delta) -> {
+                if (delta.signum() == 0) {
+                    return;
+                }
+                if (accRepo.applyDelta(accNum, delta) == 0) {
+                    throw new IllegalStateException("Ledger balance is out of sync with the database");
+                }
+                if (foreignAccounts.contains(accNum)) {
+                    versions.put(accNum, accRepo.findVersionByAccNum(accNum));
+                }
+            });
+            // Reserved transactions are updated, load them with one query instead of one per merge
+            txnRepo.findAllById(transactions.stream().map(Transaction::getTransactionId).filter(Objects::nonNull).toList());
+            txnRepo.saveAll(transactions);
+            return versions;
+        });
+    }
+}
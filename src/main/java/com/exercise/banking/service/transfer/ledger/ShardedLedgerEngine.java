@@ -0,0 +1,187 @@
+package com.exercise.banking.service.transfer.ledger;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.exercise.banking.service.transfer.exception.LedgerBusyException;
+import com.exercise.banking.service.transfer.exception.TransactionProcessingException;
+import com.exercise.banking.service.transfer.model.Transaction;
+import com.exercise.banking.service.transfer.repository.AccountRepository;
+import com.exercise.banking.service.transfer.repository.TransactionRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Optional ledger that applies balance changes on single threaded shards.
+ *
+ * Accounts are partitioned by hash across the shards. A transfer is handed to the shard
+ * owning the payer account, which checks and debits the balance in memory without locks
+ * and persists its transfers in batches. The calling thread waits for the batch holding its
+ * transfer to be committed.
+ *
+ * The shards assume they are the only writers of the account balances, so the engine must
+ * not be combined with other instances or other balance updates on the same database.
+ * Enabled with {@code transfer.ledger.enabled=true}.
+ */
+@Component
+@ConditionalOnProperty(name = "transfer.ledger.enabled", havingValue = "true")
+public class ShardedLedgerEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardedLedgerEngine.class);
+
+    private final LedgerShard[] shards;
+    private final Thread[] threads;
+    private final long timeoutMillis;
+
+    private final Counter rejectedCounter;
+
+    public ShardedLedgerEngine(@Value("${transfer.ledger.shards:4}") int shardCount,
+                               @Value("${transfer.ledger.ring-buffer-size:1024}") int ringBufferSize,
+                               @Value("${transfer.ledger.batch-size:256}") int batchSize,
+                               @Value("${transfer.ledger.timeout-ms:5000}") long timeoutMillis,
+                               AccountRepository accRepo, TransactionRepository txnRepo,
+                               PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.timeoutMillis = timeoutMillis;
+        LedgerStore store = new LedgerStore(accRepo, txnRepo, transactionManager);
+        DistributionSummary batchSizeSummary = DistributionSummary.builder("transfer.ledger.batch.size")
+                .description("Transfers persisted per ledger batch")
+                .register(meterRegistry);
+        Timer persistTimer = Timer.builder("transfer.ledger.persist")
+                .description("Time spent persisting a ledger batch")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("transfer.ledger.rejected")
+                .description("Transfers rejected or timed out because a ledger shard was busy")
+                .register(meterRegistry);
+
+        this.shards = new LedgerShard[shardCount];
+        this.threads = new Thread[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            LedgerShard shard = new LedgerShard(i, this, store, ringBufferSize, batchSize, batchSizeSummary, persistTimer);
+            shards[i] = shard;
+            threads[i] = new Thread(shard, "ledger-shard-" + i);
+            threads[i].setDaemon(true);
+            Gauge.builder("transfer.ledger.queue.depth", shard, LedgerShard::queueDepth)
+                    .description("Transfers waiting in the ring buffer of a ledger shard")
+                    .tag("shard", String.valueOf(i))
+                    .register(meterRegistry);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        logger.info("Started ledger with {} shards", shards.length);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        for (LedgerShard shard : shards) {
+            shard.stop();
+        }
+        for (Thread thread : threads) {
+            thread.join(timeoutMillis);
+        }
+        logger.info("Stopped ledger");
+    }
+
+    /**
+     * Applies a transfer on the shard owning the payer account and waits until it is persisted
+     * @param payerAccNum account to debit
+     * @param creditAccNum account to credit, null if the payee is in another bank
+     * @param transaction transaction to persist with the balance changes
+     * @return the persisted transaction and the payer balance after the transfer
+     */
+    public LedgerResult transfer(String payerAccNum, String creditAccNum, Transaction transaction) {
+        UUID requestId = transaction.getRequestId();
+        LedgerShard.Transfer transfer = submit(payerAccNum, creditAccNum, transaction);
+        try {
+            return transfer.result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new TransactionProcessingException(requestId, e.getCause().getMessage());
+        } catch (TimeoutException e) {
+            // The transfer may still complete, a retry with the same request id is answered as a duplicate
+            rejectedCounter.increment();
+            logger.error("Timed out after {} ms waiting for the ledger", timeoutMillis);
+            throw new LedgerBusyException(requestId, true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TransactionProcessingException(requestId, "Interrupted while waiting for the ledger");
+        }
+    }
+
+    /**
+     * Applies a transfer on the shard owning the payer account without waiting for it.
+     * The returned future is completed by the shard thread once the transfer is persisted.
+     * @param payerAccNum account to debit
+     * @param creditAccNum account to credit, null if the payee is in another bank
+     * @param transaction transaction to persist with the balance changes
+     * @return future of the persisted transaction and the payer balance after the transfer
+     */
+    public CompletableFuture<LedgerResult> transferAsync(String payerAccNum, String creditAccNum, Transaction transaction) {
+        UUID requestId = transaction.getRequestId();
+        return submit(payerAccNum, creditAccNum, transaction).result
+                .orTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                .exceptionally(failure -> {
+                    Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+                    if (cause instanceof TimeoutException) {
+                        rejectedCounter.increment();
+                        logger.error("Timed out after {} ms waiting for the ledger", timeoutMillis);
+                        throw new LedgerBusyException(requestId, true);
+                    }
+                    if (cause instanceof RuntimeException runtimeException) {
+                        throw runtimeException;
+                    }
+                    throw new TransactionProcessingException(requestId, cause.getMessage());
+                });
+    }
+
+    private LedgerShard.Transfer submit(String payerAccNum, String creditAccNum, Transaction transaction) {
+        LedgerShard.Transfer transfer = new LedgerShard.Transfer(payerAccNum, creditAccNum, transaction);
+        if (!shards[shardIndex(payerAccNum)].offer(transfer)) {
+            rejectedCounter.increment();
+            logger.error("Ledger shard ring buffer is full");
+            throw new LedgerBusyException(transaction.getRequestId());
+        }
+        return transfer;
+    }
+
+    /**
+     * Shard owning the account
+     * @param accNum
+     * @return shard index
+     */
+    int shardIndex(String accNum) {
+        int h = accNum.hashCode();
+        return Math.floorMod(h ^ (h >>> 16), shards.length);
+    }
+
+    void deliverCredit(LedgerShard.Credit credit) {
+        shards[shardIndex(credit.accNum())].deliver(credit);
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+}
@@ -13,6 +13,7 @@ import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.OneToMany;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -41,6 +42,13 @@ public class Account {
 
     @OneToMany(mappedBy = "payerAccount", cascade = CascadeType.ALL, orphanRemoval = true)
     private Set<Payee> payees = new HashSet<>();   // Set of payees associated with this account
+
+    @Version
+    private Long version;   // Optimistic lock version, incremented on every balance update
+
+    public Account(String accNum, BigDecimal balance, String holderName, Bank bank, Set<Payee> payees) {
+        this(accNum, balance, holderName, bank, payees, null);
+    }
     
     public void addPayee(Payee payee) {
         payee.setPayerAccount(this); 
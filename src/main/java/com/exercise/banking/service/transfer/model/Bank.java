@@ -4,6 +4,7 @@ import java.util.List;
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.FetchType;
 import jakarta.persistence.Id;
 import jakarta.persistence.OneToMany;
@@ -12,9 +13,13 @@ import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 
+import com.exercise.banking.service.transfer.registry.BankDirectoryListener;
+
 @Data
 @Entity
 @Table(name = "bank")
+// Banks are held in memory by the bank directory, changes mark it stale
+@EntityListeners(BankDirectoryListener.class)
 @NoArgsConstructor
 @EqualsAndHashCode(of = {"code", "name"})
 public class Bank {
@@ -26,6 +31,9 @@ public class Bank {
     @Column(nullable = false)
     private String name;   // The name of the bank, cannot be null
 
+    @Column
+    private String endpoint;   // Base URL of the bank's transfer API, null to use the default of the bank client
+
     @OneToMany(mappedBy = "bank", cascade = CascadeType.ALL, fetch = FetchType.LAZY, orphanRemoval = true)
     private List<Account> accounts;   // List of accounts associated with this bank
 }
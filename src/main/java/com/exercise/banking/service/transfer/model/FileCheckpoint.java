@@ -0,0 +1,68 @@
+package com.exercise.banking.service.transfer.model;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import com.exercise.banking.service.transfer.dto.PaymentFileFormat;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Progress of a payment file, saved after every chunk. An upload of a file that was
+ * interrupted skips the records already executed and resumes after them.
+ */
+@Entity
+@Table(name = "file_checkpoint")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class FileCheckpoint {
+
+    @Id
+    @Column(name = "file_id", updatable = false, nullable = false)
+    private UUID fileId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private PaymentFileFormat format;
+
+    // Records executed, from the start of the file
+    @Column(nullable = false)
+    private long recordsDone;
+
+    @Column(nullable = false)
+    private long succeeded;
+
+    @Column(nullable = false)
+    private long duplicates;
+
+    @Column(nullable = false)
+    private long failed;
+
+    @Column(nullable = false)
+    private boolean completed;
+
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+
+    public FileCheckpoint(UUID fileId, PaymentFileFormat format) {
+        this.fileId = fileId;
+        this.format = format;
+    }
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        updatedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,114 @@
+package com.exercise.banking.service.transfer.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import org.springframework.data.domain.Persistable;
+
+import com.exercise.banking.service.transfer.bankclient.BankTransferMessage;
+import com.exercise.banking.service.transfer.dto.TransferRequestV1;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Inter bank transfer waiting to be sent to the bank of the payee. Written in the
+ * transaction debiting the payer and deleted once the bank has answered, so a debit is
+ * never committed without its message. A transfer that could not be delivered after the
+ * last attempt stays in the outbox as a dead letter, marked with the time it was given up.
+ */
+@Entity
+@Table(name = "transfer_outbox", indexes = @Index(name = "ix_transfer_outbox_due", columnList = "payee_bank_code, next_attempt_at"))
+@Data
+@NoArgsConstructor
+public class OutboxEntry implements Persistable<UUID> {
+
+    @Id
+    @Column(name = "transaction_id", updatable = false, nullable = false)
+    private UUID transactionId;
+
+    @Column(nullable = false)
+    private UUID requestId;
+
+    @Column(nullable = false)
+    private String payerAccNumber;
+
+    @Column(nullable = false)
+    private String payeeAccNumber;
+
+    @Column(name = "payee_bank_code", nullable = false)
+    private String payeeBankCode;
+
+    @Column(nullable = false, precision = 20, scale = 2)
+    private BigDecimal amount;
+
+    @Column(nullable = false)
+    private String currency;
+
+    // Timestamp of the transfer request, sent as is
+    private String requestTimestamp;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    // Set when the dispatcher gives up, the transfer is no longer sent
+    @Column(name = "dead_lettered_at")
+    private LocalDateTime deadLetteredAt;
+
+    // The id is assigned, without this flag every insert would read the row first
+    @Transient
+    private boolean isNew;
+
+    public OutboxEntry(Transaction txn, TransferRequestV1 request) {
+        this.transactionId = txn.getTransactionId();
+        this.requestId = request.getRequestId();
+        this.payerAccNumber = request.getPayerAccNumber();
+        this.payeeAccNumber = request.getPayeeAccNumber();
+        this.payeeBankCode = request.getPayeeBankCode();
+        this.amount = request.getAmount();
+        this.currency = request.getCurrency();
+        this.requestTimestamp = request.getTimestamp();
+        this.createdAt = LocalDateTime.now();
+        this.nextAttemptAt = this.createdAt;
+        this.isNew = true;
+    }
+
+    /**
+     * @return message sent to the bank of the payee, the transaction id is its idempotency key
+     */
+    public BankTransferMessage toMessage() {
+        return new BankTransferMessage(transactionId, requestId, payerAccNumber, payeeAccNumber, payeeBankCode, amount, currency,
+                requestTimestamp);
+    }
+
+    @Override
+    public UUID getId() {
+        return transactionId;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    protected void markNotNew() {
+        isNew = false;
+    }
+}
@@ -2,9 +2,9 @@ package com.exercise.banking.service.transfer.model;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
-import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
@@ -14,15 +14,26 @@ import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+
+import com.exercise.banking.service.transfer.registry.PayeeRegistryListener;
+
 @Entity
 @Table(name = "payees")
+// Registered payees are cached, changes invalidate the payer's entries
+@EntityListeners(PayeeRegistryListener.class)
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 @EqualsAndHashCode(of = {"accNum", "name", "bank"})
 public class Payee {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Pooled sequence instead of an identity column, so payee inserts can be batched
+    @GeneratedValue(generator = "payee_id")
+    @GenericGenerator(name = "payee_id", type = PayeeIdGenerator.class,
+            parameters = @Parameter(name = SequenceStyleGenerator.SEQUENCE_PARAM, value = "payee_seq"))
     private Long id;
 
     @Column(nullable = false)
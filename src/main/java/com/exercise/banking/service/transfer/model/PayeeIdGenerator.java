@@ -0,0 +1,42 @@
+package com.exercise.banking.service.transfer.model;
+
+import java.util.Properties;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.id.OptimizableGenerator;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+/**
+ * Pooled sequence generator of payee ids.
+ *
+ * Ids are reserved {@value #ALLOCATION_SIZE_SETTING} at a time: the sequence is called once
+ * per block and the ids of the block are handed out in memory. Unlike an identity column,
+ * the id is known before the insert, so Hibernate can send the inserts in JDBC batches.
+ *
+ * The block size is read from the Hibernate settings, where it is put from the Spring
+ * property of the same name. The sequence is created with the block size as its increment,
+ * so it must not be changed on a database whose sequence was created with another one.
+ */
+public class PayeeIdGenerator extends SequenceStyleGenerator {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final String ALLOCATION_SIZE_SETTING = "transfer.payee.id.allocation-size";
+
+    static final int DEFAULT_ALLOCATION_SIZE = 50;
+
+    @Override
+    public void configure(Type type, Properties parameters, ServiceRegistry serviceRegistry) throws MappingException {
+        int allocationSize = ConfigurationHelper.getInt(ALLOCATION_SIZE_SETTING,
+                serviceRegistry.requireService(ConfigurationService.class).getSettings(), DEFAULT_ALLOCATION_SIZE);
+        Properties pooled = new Properties();
+        pooled.putAll(parameters);
+        pooled.put(OptimizableGenerator.INCREMENT_PARAM, String.valueOf(Math.max(1, allocationSize)));
+        pooled.put(OptimizableGenerator.OPT_PARAM, "pooled");
+        super.configure(type, pooled, serviceRegistry);
+    }
+}
@@ -17,13 +17,15 @@ import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.PrePersist;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 
 @Entity
-@Table(name = "transactions")
+// One transaction per request id: the row is inserted as PENDING to reserve the request id before the transfer runs
+@Table(name = "transactions", uniqueConstraints = @UniqueConstraint(name = "uk_transactions_request_id", columnNames = "requestId"))
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
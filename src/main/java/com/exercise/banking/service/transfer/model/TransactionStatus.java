@@ -2,6 +2,7 @@ package com.exercise.banking.service.transfer.model;
 
 public enum TransactionStatus {
 	
-	PENDING,SUCCESS, FAILURE;
+	// SUBMITTED: inter bank transfer debited and waiting in the outbox for the bank of the payee
+	PENDING,SUCCESS, FAILURE, SUBMITTED;
 
 }
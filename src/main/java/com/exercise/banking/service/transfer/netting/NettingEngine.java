@@ -0,0 +1,238 @@
+package com.exercise.banking.service.transfer.netting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+
+import com.exercise.banking.service.transfer.dto.TransferRequestV1;
+import com.exercise.banking.service.transfer.dto.TransferResponseV1;
+import com.exercise.banking.service.transfer.exception.BaseTransferException;
+import com.exercise.banking.service.transfer.exception.TransactionProcessingException;
+import com.exercise.banking.service.transfer.exception.TransferQueueFullException;
+import com.exercise.banking.service.transfer.groupcommit.AbstractTransferWriter;
+import com.exercise.banking.service.transfer.service.impl.TransferChunkProcessor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Optional netting of intra bank transfers between the same pair of accounts.
+ *
+ * A transfer is added right away to the in-memory position of its payer and payee pair,
+ * without touching the database. Every {@code transfer.netting.window-ms} the positions are
+ * settled: the transfers of the window are checked in order against the balances and the
+ * net change of every account is written with one update, however many transfers moved
+ * money between the pair. A transaction is still recorded for every transfer. Hot accounts
+ * paying the same counterparties all the time are then updated once per window instead of
+ * once per transfer.
+ *
+ * A transfer is answered once the window holding it is committed. Transfers rejected at
+ * settlement, for insufficient funds for example, fail on their own.
+ *
+ * Enabled with {@code transfer.netting.enabled=true}, ignored when the ledger is enabled.
+ */
+@Component
+@ConditionalOnExpression("${transfer.netting.enabled:false} and !${transfer.ledger.enabled:false}")
+public class NettingEngine extends AbstractTransferWriter implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(NettingEngine.class);
+
+    private final TransferChunkProcessor chunkProcessor;
+    private final ConcurrentHashMap<Pair, Position> positions = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final long windowMillis;
+    private final int maxPending;
+    private final int maxSettlementSize;
+    private final Thread thread;
+
+    private final DistributionSummary pairsSummary;
+    private final DistributionSummary transfersSummary;
+    private final Timer settleTimer;
+
+    private volatile boolean running = true;
+
+    public NettingEngine(TransferChunkProcessor chunkProcessor,
+                         @Value("${transfer.netting.window-ms:10}") long windowMillis,
+                         @Value("${transfer.netting.max-pending:10000}") int maxPending,
+                         @Value("${transfer.netting.max-settlement-size:1000}") int maxSettlementSize,
+                         @Value("${transfer.netting.timeout-ms:5000}") long timeoutMillis,
+                         MeterRegistry meterRegistry) {
+        super("the netting settlement", timeoutMillis, Counter.builder("transfer.netting.rejected")
+                .description("Transfers rejected or timed out because too many transfers were waiting for settlement")
+                .register(meterRegistry));
+        this.chunkProcessor = chunkProcessor;
+        this.windowMillis = Math.max(1, windowMillis);
+        this.maxPending = maxPending;
+        this.maxSettlementSize = Math.max(1, maxSettlementSize);
+        this.thread = new Thread(this, "netting-settlement");
+        this.thread.setDaemon(true);
+        this.pairsSummary = DistributionSummary.builder("transfer.netting.window.pairs")
+                .description("Account pairs settled per netting window")
+                .register(meterRegistry);
+        this.transfersSummary = DistributionSummary.builder("transfer.netting.window.transfers")
+                .description("Transfers settled per netting window")
+                .register(meterRegistry);
+        this.settleTimer = Timer.builder("transfer.netting.settle")
+                .description("Time spent settling a netting window")
+                .register(meterRegistry);
+        Gauge.builder("transfer.netting.pending", pending, AtomicInteger::get)
+                .description("Transfers added to a position and waiting for settlement")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        thread.start();
+        logger.info("Started netting with a window of {} ms", windowMillis);
+    }
+
+    /**
+     * Settles the positions of the last window before stopping
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        // Not interrupted, the thread may be writing to the database
+        running = false;
+        thread.join(timeoutMillis);
+        logger.info("Stopped netting");
+    }
+
+    /**
+     * Adds the transfer to the position of its pair. The position is replaced atomically
+     * when it is settled, a transfer added meanwhile starts the position of the next window.
+     * The returned future is completed by the settlement thread once the window of the
+     * transfer is committed.
+     */
+    @Override
+    protected CompletableFuture<TransferResponseV1> enqueue(TransferRequestV1 request) {
+        if (!running || pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            rejectedCounter.increment();
+            logger.error("Too many transfers waiting for the netting settlement");
+            throw new TransferQueueFullException(request.getRequestId());
+        }
+        Pending transfer = new Pending(request, new CompletableFuture<>());
+        positions.compute(new Pair(request.getPayerAccNumber(), request.getPayeeAccNumber()), (pair, position) -> {
+            Position current = position == null ? new Position() : position;
+            current.add(transfer);
+            return current;
+        });
+        return transfer.result();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                Thread.sleep(windowMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            settle();
+        }
+        settle();
+    }
+
+    /**
+     * Settles the positions of the window, in chunks of whole pairs. The pairs are sorted,
+     * so the accounts are locked and updated in the same order by every settlement.
+     */
+    void settle() {
+        if (positions.isEmpty()) {
+            return;
+        }
+        List<Pair> pairs = new ArrayList<>(positions.keySet());
+        pairs.sort(null);
+        int transfers = 0;
+        List<Pending> chunk = new ArrayList<>();
+        for (Pair pair : pairs) {
+            Position position = positions.remove(pair);
+            if (position == null) {
+                continue;
+            }
+            if (!chunk.isEmpty() && chunk.size() + position.transfers.size() > maxSettlementSize) {
+                settleChunk(chunk);
+                chunk = new ArrayList<>();
+            }
+            chunk.addAll(position.transfers);
+            transfers += position.transfers.size();
+        }
+        if (!chunk.isEmpty()) {
+            settleChunk(chunk);
+        }
+        pairsSummary.record(pairs.size());
+        transfersSummary.record(transfers);
+    }
+
+    private void settleChunk(List<Pending> chunk) {
+        UUID settlementId = UUID.randomUUID();
+        List<TransferRequestV1> requests = chunk.stream().map(Pending::request).toList();
+        try {
+            List<TransferChunkProcessor.Outcome> outcomes = settleTimer.record(() -> chunkProcessor.executeOrAnswer(settlementId, requests));
+            for (int i = 0; i < chunk.size(); i++) {
+                TransferChunkProcessor.Outcome outcome = outcomes.get(i);
+                if (outcome.response() != null) {
+                    chunk.get(i).result().complete(outcome.response());
+                } else {
+                    chunk.get(i).result().completeExceptionally(outcome.failure());
+                }
+            }
+        } catch (BaseTransferException e) {
+            logger.error("Settlement {} of {} transfers failed", settlementId, chunk.size(), e);
+            chunk.forEach(transfer -> transfer.result().completeExceptionally(e));
+        } catch (RuntimeException e) {
+            logger.error("Settlement {} of {} transfers failed", settlementId, chunk.size(), e);
+            chunk.forEach(transfer -> transfer.result().completeExceptionally(
+                    new TransactionProcessingException(transfer.request().getRequestId(), e.getMessage())));
+        } finally {
+            pending.addAndGet(-chunk.size());
+        }
+    }
+
+    /**
+     * Payer and payee accounts of a transfer
+     */
+    private record Pair(String payerAccNum, String payeeAccNum) implements Comparable<Pair> {
+
+        @Override
+        public int compareTo(Pair other) {
+            int payer = payerAccNum.compareTo(other.payerAccNum);
+            return payer != 0 ? payer : payeeAccNum.compareTo(other.payeeAccNum);
+        }
+    }
+
+    /**
+     * Transfers of a pair waiting for settlement, in arrival order. Only changed inside
+     * {@link ConcurrentHashMap#compute}, never after it is removed from the map. The net
+     * change of each account is computed by the {@link TransferChunkProcessor}.
+     */
+    private static final class Position {
+
+        private final List<Pending> transfers = new ArrayList<>();
+
+        private void add(Pending transfer) {
+            transfers.add(transfer);
+        }
+    }
+
+    /**
+     * A transfer waiting for the settlement of its window
+     */
+    private record Pending(TransferRequestV1 request, CompletableFuture<TransferResponseV1> result) {
+    }
+}
@@ -0,0 +1,385 @@
+package com.exercise.banking.service.transfer.outbox;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.exercise.banking.service.transfer.bankclient.BankBulkheads;
+import com.exercise.banking.service.transfer.bankclient.BankTransferAck;
+import com.exercise.banking.service.transfer.bankclient.ExternalBankClient;
+import com.exercise.banking.service.transfer.bankclient.SettlementBatch;
+import com.exercise.banking.service.transfer.bankclient.SettlementBatchAck;
+import com.exercise.banking.service.transfer.exception.ExternalBankException;
+import com.exercise.banking.service.transfer.idempotency.IdempotencyCache;
+import com.exercise.banking.service.transfer.model.OutboxEntry;
+import com.exercise.banking.service.transfer.model.TransactionStatus;
+import com.exercise.banking.service.transfer.repository.OutboxRepository;
+import com.exercise.banking.service.transfer.repository.TransactionRepository;
+import com.exercise.banking.service.transfer.service.AccountService;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Sends the inter bank transfers of the {@link TransferOutbox} to the banks of the payees.
+ *
+ * One thread polls the outbox every {@code transfer.outbox.poll-ms}, or right away while
+ * batches come back full. Each round reads up to {@code transfer.outbox.batch-size} due
+ * transfers per destination bank, sends all of them at once through the non-blocking
+ * {@link ExternalBankClient}, then records the answers of each bank in one transaction:
+ * <ul>
+ * <li>accepted transfers become SUCCESS,</li>
+ * <li>rejected transfers become FAILURE and the payer is refunded,</li>
+ * <li>transfers that were not delivered are retried after a backoff doubling from
+ * {@code transfer.outbox.initial-backoff-ms} up to {@code transfer.outbox.max-backoff-ms}.
+ * After {@code transfer.outbox.max-attempts} they are kept in the outbox as dead letters:
+ * they stay SUBMITTED and the payer is not refunded, since a call that timed out may
+ * still have been credited by the other bank.</li>
+ * </ul>
+ * A payer is only refunded by the dispatcher whose status update completed the transaction,
+ * so two dispatchers sending the same entries cannot refund a transfer twice.
+ * An entry is only deleted with the status update of its transaction, so a transfer is sent
+ * at least once and may be sent again after a failure or a restart. The transaction id is
+ * the idempotency key, the other bank recognises the duplicates.
+ *
+ * With the {@link BankBulkheads}, a bank is only sent as many transfers per round as its
+ * bulkhead has room for, and none while its circuit is open. The others stay in the outbox.
+ *
+ * In clearing mode ({@code transfer.clearing.enabled=true}) the transfers to a bank are
+ * instead accumulated in the outbox and sent in one {@link SettlementBatch}, with the net
+ * position owed to the bank and the itemised transfers. A bank is cleared once it has
+ * {@code transfer.clearing.max-batch-size} due transfers, or once its oldest due transfer has
+ * waited {@code transfer.clearing.cycle-ms}. The transfers stay SUBMITTED until the bank has
+ * answered the batch, and its answer to each transfer is recorded as above. A batch that was
+ * not delivered is retried as a whole, with the backoff of its transfers.
+ */
+@Component
+@ConditionalOnExpression("${transfer.outbox.enabled:false} and ${transfer.bank-client.enabled:false} and !${transfer.ledger.enabled:false}")
+public class OutboxDispatcher implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxDispatcher.class);
+
+    private static final long STOP_TIMEOUT_MILLIS = 10000;
+
+    private final OutboxRepository outboxRepo;
+    private final TransactionRepository txnRepo;
+    private final AccountService accountService;
+    private final ExternalBankClient bankClient;
+    private final IdempotencyCache idempotencyCache;
+    private final Optional<BankBulkheads> bulkheads;
+    private final TransactionTemplate transactionTemplate;
+    private final long pollMillis;
+    private final int batchSize;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final int maxAttempts;
+    private final boolean clearing;
+    private final long clearingCycleMillis;
+    private final int clearingBatchSize;
+    private final Thread thread;
+
+    private final DistributionSummary batchSizeSummary;
+    private final Timer dispatchTimer;
+    private final Counter acceptedCounter;
+    private final Counter rejectedCounter;
+    private final Counter retriedCounter;
+    private final Counter deadLetteredCounter;
+
+    private volatile boolean running = true;
+
+    public OutboxDispatcher(OutboxRepository outboxRepo, TransactionRepository txnRepo, AccountService accountService,
+                            ExternalBankClient bankClient, IdempotencyCache idempotencyCache, Optional<BankBulkheads> bulkheads,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${transfer.outbox.poll-ms:100}") long pollMillis,
+                            @Value("${transfer.outbox.batch-size:100}") int batchSize,
+                            @Value("${transfer.outbox.initial-backoff-ms:1000}") long initialBackoffMillis,
+                            @Value("${transfer.outbox.max-backoff-ms:60000}") long maxBackoffMillis,
+                            @Value("${transfer.outbox.max-attempts:20}") int maxAttempts,
+                            @Value("${transfer.clearing.enabled:false}") boolean clearing,
+                            @Value("${transfer.clearing.cycle-ms:10000}") long clearingCycleMillis,
+                            @Value("${transfer.clearing.max-batch-size:1000}") int clearingBatchSize,
+                            MeterRegistry meterRegistry) {
+        this.outboxRepo = outboxRepo;
+        this.txnRepo = txnRepo;
+        this.accountService = accountService;
+        this.bankClient = bankClient;
+        this.idempotencyCache = idempotencyCache;
+        this.bulkheads = bulkheads;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.pollMillis = Math.max(1, pollMillis);
+        this.batchSize = Math.max(1, batchSize);
+        this.initialBackoffMillis = Math.max(1, initialBackoffMillis);
+        this.maxBackoffMillis = Math.max(this.initialBackoffMillis, maxBackoffMillis);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.clearing = clearing;
+        this.clearingCycleMillis = Math.max(0, clearingCycleMillis);
+        this.clearingBatchSize = Math.max(1, clearingBatchSize);
+        this.thread = new Thread(this, "outbox-dispatcher");
+        this.thread.setDaemon(true);
+        this.batchSizeSummary = DistributionSummary.builder("transfer.outbox.batch.size")
+                .description("Transfers sent to a bank per outbox batch, or per settlement batch in clearing mode")
+                .register(meterRegistry);
+        this.dispatchTimer = Timer.builder("transfer.outbox.dispatch")
+                .description("Time spent sending a round of outbox batches and recording the answers")
+                .register(meterRegistry);
+        this.acceptedCounter = deliveryCounter(meterRegistry, "accepted");
+        this.rejectedCounter = deliveryCounter(meterRegistry, "rejected");
+        this.retriedCounter = deliveryCounter(meterRegistry, "retried");
+        this.deadLetteredCounter = deliveryCounter(meterRegistry, "dead-lettered");
+    }
+
+    private static Counter deliveryCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("transfer.outbox.deliveries")
+                .description("Outbox transfers by answer of the bank of the payee")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        thread.start();
+        if (clearing) {
+            logger.info("Started outbox dispatcher clearing every {} ms with settlement batches of up to {} transfers per bank",
+                    clearingCycleMillis, clearingBatchSize);
+        } else {
+            logger.info("Started outbox dispatcher polling every {} ms with batches of up to {} transfers per bank", pollMillis, batchSize);
+        }
+    }
+
+    /**
+     * Lets the current round finish, the transfers left in the outbox are sent after the restart
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        // Not interrupted, the thread may be writing to the database
+        running = false;
+        thread.join(STOP_TIMEOUT_MILLIS);
+        logger.info("Stopped outbox dispatcher");
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            boolean full;
+            try {
+                full = dispatch();
+            } catch (RuntimeException e) {
+                logger.error("Outbox dispatch failed, retrying in {} ms", pollMillis, e);
+                full = false;
+            }
+            if (full) {
+                continue;
+            }
+            try {
+                Thread.sleep(pollMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Sends one batch per bank with due transfers and records the answers
+     * @return true if a batch was full, more transfers may be due
+     */
+    boolean dispatch() {
+        LocalDateTime now = LocalDateTime.now();
+        List<String> bankCodes = clearing
+                ? outboxRepo.findBankCodesToClear(now, now.minus(clearingCycleMillis, ChronoUnit.MILLIS), clearingBatchSize)
+                : outboxRepo.findDueBankCodes(now);
+        if (bankCodes.isEmpty()) {
+            return false;
+        }
+        int size = clearing ? clearingBatchSize : batchSize;
+        return dispatchTimer.record(() -> {
+            // Every batch is sent before any answer is awaited, a slow bank does not delay the others
+            Map<String, CompletableFuture<List<Delivery>>> sent = new LinkedHashMap<>();
+            for (String bankCode : bankCodes) {
+                List<OutboxEntry> batch = outboxRepo.findDue(bankCode, now, PageRequest.of(0, size));
+                sent.put(bankCode, clearing ? settle(bankCode, batch) : sendEach(bankCode, batch));
+            }
+            boolean full = false;
+            for (Map.Entry<String, CompletableFuture<List<Delivery>>> deliveries : sent.entrySet()) {
+                List<Delivery> answered = deliveries.getValue().join();
+                record(deliveries.getKey(), answered);
+                full |= answered.size() == size;
+            }
+            return full;
+        });
+    }
+
+    private CompletableFuture<List<Delivery>> sendEach(String bankCode, List<OutboxEntry> batch) {
+        List<CompletableFuture<Delivery>> deliveries = new ArrayList<>(batch.size());
+        for (OutboxEntry entry : batch) {
+            Optional<BankBulkheads.Permit> permit = Optional.empty();
+            if (bulkheads.isPresent()) {
+                permit = bulkheads.get().tryAcquire(bankCode);
+                if (permit.isEmpty()) {
+                    // No room left for the bank, the rest of the batch stays due without counting an attempt
+                    break;
+                }
+            }
+            deliveries.add(send(entry, permit));
+        }
+        return CompletableFuture.allOf(deliveries.toArray(CompletableFuture[]::new))
+                .thenApply(done -> deliveries.stream().map(CompletableFuture::join).toList());
+    }
+
+    /**
+     * Sends the transfers to the bank in one settlement batch, the answer of the bank to each
+     * transfer becomes its delivery
+     */
+    private CompletableFuture<List<Delivery>> settle(String bankCode, List<OutboxEntry> batch) {
+        if (batch.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        Optional<BankBulkheads.Permit> permit = Optional.empty();
+        if (bulkheads.isPresent()) {
+            permit = bulkheads.get().tryAcquire(bankCode);
+            if (permit.isEmpty()) {
+                // The batch keeps accumulating without counting an attempt
+                return CompletableFuture.completedFuture(List.of());
+            }
+        }
+        SettlementBatch settlement = SettlementBatch.of(bankCode, batch.stream().map(OutboxEntry::toMessage).toList());
+        CompletableFuture<SettlementBatchAck> ack;
+        try {
+            ack = bankClient.sendBatch(settlement);
+        } catch (RuntimeException e) {
+            ack = CompletableFuture.failedFuture(e);
+        }
+        Optional<BankBulkheads.Permit> place = permit;
+        return ack.handle((answer, failure) -> {
+            place.ifPresent(held -> held.release(failure == null));
+            if (failure != null) {
+                return batch.stream().map(entry -> new Delivery(entry, null, failure)).toList();
+            }
+            Map<UUID, BankTransferAck> acks = new HashMap<>();
+            answer.transfers().forEach(transferAck -> acks.putIfAbsent(transferAck.transactionId(), transferAck));
+            return batch.stream().map(entry -> {
+                BankTransferAck transferAck = acks.get(entry.getTransactionId());
+                // Left out of the answer, the transfer was not settled and goes into a later batch
+                return transferAck != null ? new Delivery(entry, transferAck, null)
+                        : new Delivery(entry, null, new ExternalBankException(entry.getRequestId(), bankCode,
+                                "Bank " + bankCode + " did not answer transfer " + entry.getTransactionId() + " of batch " + settlement.batchId()));
+            }).toList();
+        });
+    }
+
+    private CompletableFuture<Delivery> send(OutboxEntry entry, Optional<BankBulkheads.Permit> permit) {
+        CompletableFuture<BankTransferAck> ack;
+        try {
+            ack = bankClient.send(entry.toMessage());
+        } catch (RuntimeException e) {
+            ack = CompletableFuture.failedFuture(e);
+        }
+        // The client fails the transfer when the bank does not answer in time, the join does not hang
+        return ack.handle((answer, failure) -> {
+            permit.ifPresent(place -> place.release(failure == null));
+            return new Delivery(entry, answer, failure);
+        });
+    }
+
+    /**
+     * Records the answers of one bank in one transaction
+     */
+    private void record(String bankCode, List<Delivery> deliveries) {
+        if (deliveries.isEmpty()) {
+            return;
+        }
+        batchSizeSummary.record(deliveries.size());
+        List<UUID> accepted = new ArrayList<>();
+        List<Delivery> rejected = new ArrayList<>();
+        List<OutboxEntry> retried = new ArrayList<>();
+        List<OutboxEntry> deadLettered = new ArrayList<>();
+        for (Delivery delivery : deliveries) {
+            OutboxEntry entry = delivery.entry();
+            if (delivery.failure() != null) {
+                entry.setAttempts(entry.getAttempts() + 1);
+                if (entry.getAttempts() >= maxAttempts) {
+                    entry.setDeadLetteredAt(LocalDateTime.now());
+                    deadLettered.add(entry);
+                    logger.error("Transfer {} was not delivered to bank {} after {} attempts, kept as a dead letter", entry.getTransactionId(),
+                            bankCode, entry.getAttempts());
+                    continue;
+                }
+                entry.setNextAttemptAt(LocalDateTime.now().plus(backoffMillis(entry.getAttempts()), ChronoUnit.MILLIS));
+                retried.add(entry);
+                logger.warn("Transfer {} was not delivered to bank {} after {} attempts, retrying at {}", entry.getTransactionId(),
+                        bankCode, entry.getAttempts(), entry.getNextAttemptAt());
+            } else if (delivery.ack().isAccepted()) {
+                accepted.add(entry.getTransactionId());
+            } else {
+                rejected.add(delivery);
+                logger.warn("Transfer {} was rejected by bank {}: {}", entry.getTransactionId(), bankCode, delivery.ack().reason());
+            }
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!accepted.isEmpty()) {
+                txnRepo.completeSubmitted(accepted, TransactionStatus.SUCCESS);
+                outboxRepo.deleteAllByIdInBatch(accepted);
+            }
+            if (!rejected.isEmpty()) {
+                List<UUID> failed = new ArrayList<>();
+                for (Delivery delivery : rejected) {
+                    OutboxEntry entry = delivery.entry();
+                    // Only the dispatcher completing the transaction refunds it, the entry may have been sent twice
+                    if (txnRepo.completeSubmitted(List.of(entry.getTransactionId()), TransactionStatus.FAILURE) == 1) {
+                        accountService.creditToAccount(entry.getPayerAccNumber(), entry.getAmount(), entry.getRequestId());
+                    } else {
+                        logger.warn("Transfer {} was already completed, the payer is not refunded again", entry.getTransactionId());
+                    }
+                    failed.add(entry.getTransactionId());
+                }
+                outboxRepo.deleteAllByIdInBatch(failed);
+            }
+            if (!retried.isEmpty() || !deadLettered.isEmpty()) {
+                List<OutboxEntry> updated = new ArrayList<>(retried);
+                updated.addAll(deadLettered);
+                outboxRepo.saveAll(updated);
+            }
+        });
+        // Responses cached while the transfers were submitted are stale
+        deliveries.stream()
+                .filter(delivery -> delivery.failure() == null)
+                .forEach(delivery -> idempotencyCache.invalidate(delivery.entry().getRequestId()));
+        acceptedCounter.increment(accepted.size());
+        rejectedCounter.increment(rejected.size());
+        retriedCounter.increment(retried.size());
+        deadLetteredCounter.increment(deadLettered.size());
+        logger.info("Outbox batch of {} transfers to bank {}: {} accepted, {} rejected, {} to retry, {} dead letters", deliveries.size(),
+                bankCode, accepted.size(), rejected.size(), retried.size(), deadLettered.size());
+    }
+
+    private long backoffMillis(int attempts) {
+        // Capped before shifting, the backoff cannot overflow
+        return Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempts - 1, 20));
+    }
+
+    /**
+     * Answer of the bank to a transfer of the outbox, or the failure to deliver it
+     */
+    private record Delivery(OutboxEntry entry, BankTransferAck ack, Throwable failure) {
+    }
+}
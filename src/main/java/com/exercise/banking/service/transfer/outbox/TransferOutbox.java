@@ -0,0 +1,44 @@
+package com.exercise.banking.service.transfer.outbox;
+
+import java.util.List;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.exercise.banking.service.transfer.model.OutboxEntry;
+import com.exercise.banking.service.transfer.repository.OutboxRepository;
+
+/**
+ * Optional outbox of the inter bank transfers.
+ *
+ * The message to the bank of the payee is inserted in the transaction debiting the payer,
+ * so the transfer is answered as soon as that transaction commits, whatever the latency of
+ * the other bank. The {@link OutboxDispatcher} sends the messages afterwards.
+ *
+ * Enabled with {@code transfer.outbox.enabled=true} together with the bank client, ignored
+ * when the ledger is enabled.
+ */
+@Component
+@ConditionalOnExpression("${transfer.outbox.enabled:false} and ${transfer.bank-client.enabled:false} and !${transfer.ledger.enabled:false}")
+public class TransferOutbox {
+
+    private final OutboxRepository outboxRepo;
+
+    public TransferOutbox(OutboxRepository outboxRepo) {
+        this.outboxRepo = outboxRepo;
+    }
+
+    /**
+     * Inserts the messages in JDBC batches, in the transaction of the debits
+     * @param entries
+     * @throws org.springframework.transaction.IllegalTransactionStateException if no transaction is active
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void add(List<OutboxEntry> entries) {
+        if (!entries.isEmpty()) {
+            outboxRepo.saveAll(entries);
+        }
+    }
+}
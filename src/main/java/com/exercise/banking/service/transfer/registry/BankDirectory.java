@@ -0,0 +1,180 @@
+package com.exercise.banking.service.transfer.registry;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import com.exercise.banking.service.transfer.model.Bank;
+import com.exercise.banking.service.transfer.repository.BankRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Immutable snapshot of the banks, keyed by bank code.
+ *
+ * Banks rarely change, so transfers resolve bank codes here instead of loading the
+ * bank rows. The snapshot is loaded at startup and replaced as a whole: a reader always
+ * sees one consistent version and never waits for a reload, except for the very first.
+ *
+ * A bank added, updated or removed through JPA marks the snapshot stale, see
+ * {@link BankDirectoryListener}, and the next lookup reloads it. Changes made by another
+ * instance or directly in the database are picked up once the snapshot is older than
+ * {@code transfer.bank.directory.max-age-ms}.
+ */
+@Component
+public class BankDirectory {
+
+    private static final Logger logger = LoggerFactory.getLogger(BankDirectory.class);
+
+    private final BankRepository bankRepo;
+    private final long maxAgeNanos;
+    private final LongSupplier clock;
+
+    private volatile Snapshot snapshot;
+    private volatile boolean stale = true;
+    private final ReentrantLock reloadLock = new ReentrantLock();
+
+    private final Counter reloadCounter;
+
+    @Autowired
+    public BankDirectory(BankRepository bankRepo,
+                         @Value("${transfer.bank.directory.max-age-ms:300000}") long maxAgeMillis,
+                         MeterRegistry meterRegistry) {
+        this(bankRepo, maxAgeMillis, meterRegistry, System::nanoTime);
+    }
+
+    BankDirectory(BankRepository bankRepo, long maxAgeMillis, MeterRegistry meterRegistry, LongSupplier clock) {
+        this.bankRepo = bankRepo;
+        this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMillis);
+        this.clock = clock;
+        this.reloadCounter = Counter.builder("transfer.bank.directory.reloads")
+                .description("Reloads of the bank directory")
+                .register(meterRegistry);
+        Gauge.builder("transfer.bank.directory.size", this, directory -> directory.snapshot == null ? 0 : directory.snapshot.banks().size())
+                .description("Banks held by the bank directory")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        reload();
+    }
+
+    /**
+     * Checks if a bank with the code exists
+     * @param bankCode
+     * @return true if the bank is known
+     */
+    public boolean contains(String bankCode) {
+        return bankCode != null && current().containsKey(bankCode);
+    }
+
+    /**
+     * Name of the bank with the code
+     * @param bankCode
+     * @return bank name, empty if the bank is unknown
+     */
+    public Optional<String> findName(String bankCode) {
+        return bankCode == null ? Optional.empty() : Optional.ofNullable(current().get(bankCode));
+    }
+
+    /**
+     * Base URL of the transfer API of the bank with the code
+     * @param bankCode
+     * @return endpoint of the bank, empty if the bank is unknown or has none
+     */
+    public Optional<String> findEndpoint(String bankCode) {
+        return bankCode == null ? Optional.empty() : Optional.ofNullable(currentSnapshot().endpoints().get(bankCode));
+    }
+
+    /**
+     * Detached bank to reference from entities, without loading the bank row
+     * @param bankCode
+     * @return bank holding the code and, if the bank is known, its name
+     */
+    public Bank toBank(String bankCode) {
+        Bank bank = new Bank();
+        bank.setCode(bankCode);
+        bank.setName(findName(bankCode).orElse(null));
+        return bank;
+    }
+
+    /**
+     * All banks, keyed by code
+     * @return immutable map of bank names
+     */
+    public Map<String, String> banks() {
+        return current();
+    }
+
+    /**
+     * Marks the snapshot stale, the next lookup reloads it
+     */
+    public void invalidate() {
+        stale = true;
+    }
+
+    /**
+     * Loads the banks and replaces the snapshot
+     */
+    public void reload() {
+        reloadLock.lock();
+        try {
+            // Cleared first: a change committed while loading marks the new snapshot stale again
+            stale = false;
+            List<Bank> loaded = bankRepo.findAll();
+            Map<String, String> banks = loaded.stream().collect(Collectors.toUnmodifiableMap(Bank::getCode, Bank::getName));
+            Map<String, String> endpoints = loaded.stream().filter(bank -> bank.getEndpoint() != null)
+                    .collect(Collectors.toUnmodifiableMap(Bank::getCode, Bank::getEndpoint));
+            snapshot = new Snapshot(banks, endpoints, clock.getAsLong());
+            reloadCounter.increment();
+            logger.info("Bank directory loaded {} banks", banks.size());
+        } catch (RuntimeException e) {
+            stale = true;
+            throw e;
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    private Map<String, String> current() {
+        return currentSnapshot().banks();
+    }
+
+    private Snapshot currentSnapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            reload();
+            return snapshot;
+        }
+        if ((stale || clock.getAsLong() - current.loadedAt() >= maxAgeNanos) && reloadLock.tryLock()) {
+            // One reader reloads, the others keep using the current snapshot meanwhile
+            try {
+                reload();
+            } catch (RuntimeException e) {
+                logger.error("Failed to reload the bank directory, keeping the current one", e);
+            } finally {
+                reloadLock.unlock();
+            }
+            return snapshot;
+        }
+        return current;
+    }
+
+    private record Snapshot(Map<String, String> banks, Map<String, String> endpoints, long loadedAt) {
+    }
+}
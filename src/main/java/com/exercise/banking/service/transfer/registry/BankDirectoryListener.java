@@ -0,0 +1,50 @@
+package com.exercise.banking.service.transfer.registry;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.exercise.banking.service.transfer.model.Bank;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+/**
+ * Marks the {@link BankDirectory} stale when a bank is added, updated or removed, when
+ * the change is flushed and again once the transaction completes.
+ *
+ * Created by Hibernate through the Spring bean container, like {@link PayeeRegistryListener}.
+ */
+@Component
+public class BankDirectoryListener {
+
+    private ObjectProvider<BankDirectory> bankDirectory;
+
+    @Autowired
+    public void setBankDirectory(ObjectProvider<BankDirectory> bankDirectory) {
+        this.bankDirectory = bankDirectory;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void bankChanged(Bank bank) {
+        if (bankDirectory == null) {
+            return;
+        }
+        bankDirectory.ifAvailable(directory -> {
+            directory.invalidate();
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        directory.invalidate();
+                    }
+                });
+            }
+        });
+    }
+}
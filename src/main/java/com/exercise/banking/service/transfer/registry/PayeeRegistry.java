@@ -0,0 +1,168 @@
+package com.exercise.banking.service.transfer.registry;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Bounded write-through cache of the payees registered by payer accounts, keyed by payer
+ * account number, payee account number and payee bank code.
+ *
+ * Every transfer checks that its payee is registered. The registration is read once and
+ * kept for {@code transfer.payee.cache.ttl-ms}. A payee that is not registered is
+ * remembered for {@code transfer.payee.cache.negative-ttl-ms} only, so repeated attempts to
+ * pay it do not query the database while a registration made meanwhile shows up soon.
+ * The least recently used entries are evicted once the cache holds
+ * {@code transfer.payee.cache.max-size} entries.
+ *
+ * The entries of a payer are invalidated whenever one of its payees is added, updated or
+ * removed through JPA, see {@link PayeeRegistryListener}. Changes made by another instance
+ * or directly in the database show up once the entries expire.
+ *
+ * A maximum size of 0 disables the cache.
+ */
+@Component
+public class PayeeRegistry {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final LongSupplier clock;
+
+    // Access ordered, guarded by the lock
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReentrantLock lock = new ReentrantLock();
+    // Incremented by every invalidation, a lookup that overlapped one is not stored
+    private long generation;
+
+    private final Counter hitCounter;
+    private final Counter negativeHitCounter;
+    private final Counter missCounter;
+
+    @Autowired
+    public PayeeRegistry(@Value("${transfer.payee.cache.max-size:10000}") int maxSize,
+                         @Value("${transfer.payee.cache.ttl-ms:600000}") long ttlMillis,
+                         @Value("${transfer.payee.cache.negative-ttl-ms:5000}") long negativeTtlMillis,
+                         MeterRegistry meterRegistry) {
+        this(maxSize, ttlMillis, negativeTtlMillis, meterRegistry, System::nanoTime);
+    }
+
+    PayeeRegistry(int maxSize, long ttlMillis, long negativeTtlMillis, MeterRegistry meterRegistry, LongSupplier clock) {
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMillis);
+        this.clock = clock;
+        this.hitCounter = counter(meterRegistry, "hit");
+        this.negativeHitCounter = counter(meterRegistry, "negative");
+        this.missCounter = counter(meterRegistry, "miss");
+        Gauge.builder("transfer.payee.cache.size", this, PayeeRegistry::size)
+                .description("Payee registrations held by the payee registry")
+                .register(meterRegistry);
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("transfer.payee.cache.gets")
+                .description("Payee registrations looked up in the payee registry")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the payee registered by the payer, loading it on a miss
+     * @param payerAccNum
+     * @param payeeAccNum
+     * @param payeeBankCode
+     * @param loader reads the registration from the database, exceptions it throws are not cached
+     * @return the registered payee, empty if the payee is not registered by the payer in this bank
+     */
+    public Optional<RegisteredPayee> find(String payerAccNum, String payeeAccNum, String payeeBankCode,
+                                          Supplier<Optional<RegisteredPayee>> loader) {
+        if (maxSize <= 0) {
+            return loader.get();
+        }
+        Key key = new Key(payerAccNum, payeeAccNum, payeeBankCode);
+        long loadedGeneration;
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            if (entry != null && clock.getAsLong() - entry.expiresAt() >= 0) {
+                entries.remove(key);
+                entry = null;
+            }
+            if (entry != null) {
+                (entry.payee().isPresent() ? hitCounter : negativeHitCounter).increment();
+                return entry.payee();
+            }
+            loadedGeneration = generation;
+        } finally {
+            lock.unlock();
+        }
+        missCounter.increment();
+        // Loaded without the lock, a slow query does not hold up other payers
+        Optional<RegisteredPayee> payee = loader.get();
+        long now = clock.getAsLong();
+        lock.lock();
+        try {
+            if (generation == loadedGeneration) {
+                entries.put(key, new Entry(payee, now + (payee.isPresent() ? ttlNanos : negativeTtlNanos)));
+                evict(now);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return payee;
+    }
+
+    /**
+     * Forgets the payees of the payer account, registered or not
+     * @param payerAccNum
+     */
+    public void invalidate(String payerAccNum) {
+        lock.lock();
+        try {
+            generation++;
+            entries.keySet().removeIf(key -> key.payerAccNum().equals(payerAccNum));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void evict(long now) {
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while (eldest.hasNext()) {
+            Entry entry = eldest.next().getValue();
+            if (now - entry.expiresAt() < 0 && entries.size() <= maxSize) {
+                break;
+            }
+            eldest.remove();
+        }
+    }
+
+    private record Key(String payerAccNum, String payeeAccNum, String payeeBankCode) {
+    }
+
+    private record Entry(Optional<RegisteredPayee> payee, long expiresAt) {
+    }
+}
@@ -0,0 +1,83 @@
+package com.exercise.banking.service.transfer.registry;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.exercise.banking.service.transfer.model.Payee;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+/**
+ * Invalidates the {@link PayeeRegistry} entries of a payer when one of its payees is
+ * added, for example through {@code Account.addPayee}, updated or removed.
+ *
+ * The entries are dropped as soon as the first change of the payer is flushed and again once
+ * the transaction completes, so a lookup running in between cannot keep the state from before
+ * the commit.
+ *
+ * Created by Hibernate through the Spring bean container; the registry is injected
+ * optionally so that slices of the context without it, such as JPA tests, still work.
+ */
+@Component
+public class PayeeRegistryListener {
+
+    private ObjectProvider<PayeeRegistry> payeeRegistry;
+
+    @Autowired
+    public void setPayeeRegistry(ObjectProvider<PayeeRegistry> payeeRegistry) {
+        this.payeeRegistry = payeeRegistry;
+    }
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void payeeChanged(Payee payee) {
+        if (payeeRegistry == null || payee.getPayerAccount() == null) {
+            return;
+        }
+        String payerAccNum = payee.getPayerAccount().getAccNum();
+        payeeRegistry.ifAvailable(registry -> {
+            if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+                registry.invalidate(payerAccNum);
+                return;
+            }
+            ChangedPayers changed = (ChangedPayers) TransactionSynchronizationManager.getResource(ChangedPayers.class);
+            if (changed == null) {
+                changed = new ChangedPayers(registry);
+                TransactionSynchronizationManager.bindResource(ChangedPayers.class, changed);
+                TransactionSynchronizationManager.registerSynchronization(changed);
+            }
+            if (changed.payerAccNums.add(payerAccNum)) {
+                registry.invalidate(payerAccNum);
+            }
+        });
+    }
+
+    /**
+     * Payers whose payees changed in the current transaction. Loading many payees of a
+     * payer in one transaction invalidates its entries once, and once more on completion.
+     */
+    private static final class ChangedPayers implements TransactionSynchronization {
+
+        private final PayeeRegistry registry;
+        private final Set<String> payerAccNums = new HashSet<>();
+
+        private ChangedPayers(PayeeRegistry registry) {
+            this.registry = registry;
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(ChangedPayers.class);
+            payerAccNums.forEach(registry::invalidate);
+        }
+    }
+}
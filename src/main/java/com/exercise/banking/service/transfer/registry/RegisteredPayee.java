@@ -0,0 +1,14 @@
+package com.exercise.banking.service.transfer.registry;
+
+/**
+ * Payee registered by a payer account, as read by {@code PayeeRepository.findRegisteredPayee}
+ * and held by the {@link PayeeRegistry}. The bank is held by its code, checking it does not load the bank.
+ *
+ * @param id payee id
+ * @param name payee name
+ * @param accNum payee account number
+ * @param bankCode code of the payee bank
+ * @param payerAccNum account number of the payer that registered the payee
+ */
+public record RegisteredPayee(Long id, String name, String accNum, String bankCode, String payerAccNum) {
+}
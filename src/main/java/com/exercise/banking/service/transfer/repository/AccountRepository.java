@@ -1,11 +1,91 @@
 package com.exercise.banking.service.transfer.repository;
 
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.exercise.banking.service.transfer.model.Account;
 
+import jakarta.persistence.LockModeType;
+
 @Repository
 public interface AccountRepository extends JpaRepository<Account,String> {
 
+	/**
+	 * Debits the amount in a single statement, only if the account holds enough funds.
+	 * The version is incremented so that concurrent entity based updates are detected.
+	 * @param accNum
+	 * @param amount
+	 * @return number of updated rows, 0 if the account does not exist or has insufficient funds
+	 */
+	@Modifying
+	@Query("update Account a set a.balance = a.balance - :amount, a.version = a.version + 1 "
+			+ "where a.accNum = :accNum and a.balance >= :amount")
+	int debitIfSufficientFunds(@Param("accNum") String accNum, @Param("amount") BigDecimal amount);
+
+	/**
+	 * Credits the amount in a single statement.
+	 * @param accNum
+	 * @param amount
+	 * @return number of updated rows, 0 if the account does not exist
+	 */
+	@Modifying
+	@Query("update Account a set a.balance = a.balance + :amount, a.version = a.version + 1 "
+			+ "where a.accNum = :accNum")
+	int credit(@Param("accNum") String accNum, @Param("amount") BigDecimal amount);
+
+	/**
+	 * Adds a signed amount to the balance in a single statement, only if the balance does not become negative.
+	 * @param accNum
+	 * @param delta
+	 * @return number of updated rows, 0 if the account does not exist or the balance would become negative
+	 */
+	@Modifying
+	@Query("update Account a set a.balance = a.balance + :delta, a.version = a.version + 1 "
+			+ "where a.accNum = :accNum and a.balance + :delta >= 0")
+	int applyDelta(@Param("accNum") String accNum, @Param("delta") BigDecimal delta);
+
+	/**
+	 * Read-only view of the account, the bank code is read from the foreign key without joining the bank
+	 * @param accNum
+	 * @return account view, empty if the account does not exist
+	 */
+	@Query("select new com.exercise.banking.service.transfer.repository.AccountView(a.accNum, a.balance, a.bank.code, a.version) "
+			+ "from Account a where a.accNum = :accNum")
+	Optional<AccountView> findViewByAccNum(@Param("accNum") String accNum);
+
+	/**
+	 * Read-only views of the accounts, in one query
+	 * @param accNums
+	 * @return views of the accounts that exist
+	 */
+	@Query("select new com.exercise.banking.service.transfer.repository.AccountView(a.accNum, a.balance, a.bank.code, a.version) "
+			+ "from Account a where a.accNum in :accNums")
+	List<AccountView> findViewsByAccNumIn(@Param("accNums") Collection<String> accNums);
+
+	/**
+	 * Current version of the account row
+	 * @param accNum
+	 * @return version, null if the account does not exist
+	 */
+	@Query("select a.version from Account a where a.accNum = :accNum")
+	Long findVersionByAccNum(@Param("accNum") String accNum);
+
+	/**
+	 * Takes a database write lock on the account row, held until the transaction ends.
+	 * Only the account number is selected, so the account is not loaded into the persistence context.
+	 * @param accNum
+	 * @return the account number, empty if the account does not exist
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("select a.accNum from Account a where a.accNum = :accNum")
+	Optional<String> lockByAccNum(@Param("accNum") String accNum);
 }
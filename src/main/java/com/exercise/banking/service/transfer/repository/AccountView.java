@@ -0,0 +1,16 @@
+package com.exercise.banking.service.transfer.repository;
+
+import java.math.BigDecimal;
+
+/**
+ * Read-only projection of an account, as read by {@link AccountRepository#findViewByAccNum(String)}.
+ * It is not managed by the persistence context: reading it neither loads the payees of the
+ * account nor adds work to the next flush. Balances are only changed through the update queries.
+ *
+ * @param accNum account number
+ * @param balance committed balance
+ * @param bankCode code of the bank holding the account
+ * @param version row version, incremented on every balance update
+ */
+public record AccountView(String accNum, BigDecimal balance, String bankCode, Long version) {
+}
@@ -0,0 +1,13 @@
+package com.exercise.banking.service.transfer.repository;
+
+import java.util.UUID;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.exercise.banking.service.transfer.model.FileCheckpoint;
+
+@Repository
+public interface FileCheckpointRepository extends JpaRepository<FileCheckpoint, UUID> {
+
+}
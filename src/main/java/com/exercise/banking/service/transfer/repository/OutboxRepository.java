@@ -0,0 +1,49 @@
+package com.exercise.banking.service.transfer.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.exercise.banking.service.transfer.model.OutboxEntry;
+
+@Repository
+public interface OutboxRepository extends JpaRepository<OutboxEntry, UUID> {
+
+	/**
+	 * Banks with transfers due to be sent, dead letters excepted
+	 * @param now
+	 * @return bank codes
+	 */
+	@Query("select distinct e.payeeBankCode from OutboxEntry e where e.nextAttemptAt <= :now and e.deadLetteredAt is null")
+	List<String> findDueBankCodes(@Param("now") LocalDateTime now);
+
+	/**
+	 * Banks to clear: with at least a full settlement batch of due transfers, or with a due
+	 * transfer waiting since the cutoff
+	 * @param now
+	 * @param cutoff creation time of the transfers whose clearing cycle is over
+	 * @param batchSize transfers of a full settlement batch
+	 * @return bank codes
+	 */
+	@Query("select e.payeeBankCode from OutboxEntry e where e.nextAttemptAt <= :now and e.deadLetteredAt is null group by e.payeeBankCode"
+			+ " having count(e) >= :batchSize or min(e.createdAt) <= :cutoff")
+	List<String> findBankCodesToClear(@Param("now") LocalDateTime now, @Param("cutoff") LocalDateTime cutoff,
+			@Param("batchSize") long batchSize);
+
+	/**
+	 * Transfers due to be sent to a bank, oldest first, dead letters excepted
+	 * @param bankCode
+	 * @param now
+	 * @param page size of the batch
+	 * @return outbox entries
+	 */
+	@Query("select e from OutboxEntry e where e.payeeBankCode = :bankCode and e.nextAttemptAt <= :now"
+			+ " and e.deadLetteredAt is null order by e.createdAt")
+	List<OutboxEntry> findDue(@Param("bankCode") String bankCode, @Param("now") LocalDateTime now, Pageable page);
+}
@@ -3,13 +3,26 @@ package com.exercise.banking.service.transfer.repository;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.exercise.banking.service.transfer.model.Payee;
+import com.exercise.banking.service.transfer.registry.RegisteredPayee;
 
 @Repository
 public interface PayeeRepository extends JpaRepository<Payee,Long>{
 
-	Optional<Payee> findByPayerAccount_AccNumAndAccNum(String payerAccountNum, String payeeAccountNum);
+	/**
+	 * Registration of the payee by the payer in the given bank, in one query that loads no entity
+	 * @param payerAccountNum
+	 * @param payeeAccountNum
+	 * @param payeeBankCode
+	 * @return registered payee, empty if the payer has not registered it in this bank
+	 */
+	@Query("select new com.exercise.banking.service.transfer.registry.RegisteredPayee(p.id, p.name, p.accNum, p.bank.code, p.payerAccount.accNum) "
+			+ "from Payee p where p.payerAccount.accNum = :payerAccountNum and p.accNum = :payeeAccountNum and p.bank.code = :payeeBankCode")
+	Optional<RegisteredPayee> findRegisteredPayee(@Param("payerAccountNum") String payerAccountNum,
+			@Param("payeeAccountNum") String payeeAccountNum, @Param("payeeBankCode") String payeeBankCode);
 
 }
@@ -1,12 +1,108 @@
 package com.exercise.banking.service.transfer.repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import com.exercise.banking.service.transfer.model.Account;
+import com.exercise.banking.service.transfer.model.Payee;
 import com.exercise.banking.service.transfer.model.Transaction;
+import com.exercise.banking.service.transfer.model.TransactionStatus;
 
 public interface TransactionRepository extends JpaRepository<Transaction,UUID>{
+	/**
+	 * Transaction of the request with its payer account and payee, in one query
+	 * @param requestId
+	 * @return transaction, empty if the request id is unknown
+	 */
+	@EntityGraph(attributePaths = {"payerAccount", "payee"})
 	Optional<Transaction> findByRequestId(UUID requestId);
+
+	/**
+	 * Transactions of the requests with their payer accounts and payees, in one query
+	 * @param requestIds
+	 * @return transactions of the request ids that are recorded or reserved
+	 */
+	@EntityGraph(attributePaths = {"payerAccount", "payee"})
+	List<Transaction> findByRequestIdIn(Collection<UUID> requestIds);
+
+	/**
+	 * Completes a reserved transaction without reading it first
+	 * @param transactionId
+	 * @param status
+	 * @param payerAccount
+	 * @param payee
+	 * @return number of updated rows, 0 if there is no such transaction
+	 */
+	@Modifying
+	@Query("update Transaction t set t.status = :status, t.payerAccount = :payerAccount, t.payee = :payee "
+			+ "where t.transactionId = :transactionId")
+	int complete(@Param("transactionId") UUID transactionId, @Param("status") TransactionStatus status,
+			@Param("payerAccount") Account payerAccount, @Param("payee") Payee payee);
+
+	/**
+	 * Completes submitted transactions once the bank of the payee has answered
+	 * @param transactionIds
+	 * @param status
+	 * @return number of updated rows, transactions completed before are left as they are
+	 */
+	@Modifying
+	@Query("update Transaction t set t.status = :status where t.transactionId in :transactionIds "
+			+ "and t.status = com.exercise.banking.service.transfer.model.TransactionStatus.SUBMITTED")
+	int completeSubmitted(@Param("transactionIds") Collection<UUID> transactionIds, @Param("status") TransactionStatus status);
+
+	/**
+	 * Status of the transaction of the request, without loading it
+	 * @param requestId
+	 * @return status, empty if the request id is unknown
+	 */
+	@Query("select t.status from Transaction t where t.requestId = :requestId")
+	Optional<TransactionStatus> findStatusByRequestId(@Param("requestId") UUID requestId);
+
+	/**
+	 * Deletes the pending transaction of the request
+	 * @param requestId
+	 * @return number of deleted rows, 0 if there is no pending transaction for the request
+	 */
+	@Modifying
+	@Query("delete from Transaction t where t.requestId = :requestId "
+			+ "and t.status = com.exercise.banking.service.transfer.model.TransactionStatus.PENDING")
+	int deletePending(@Param("requestId") UUID requestId);
+
+	/**
+	 * Deletes the pending transaction of the request if it was created before the cutoff
+	 * @param requestId
+	 * @param cutoff
+	 * @return number of deleted rows, 0 if there is no such pending transaction
+	 */
+	@Modifying
+	@Query("delete from Transaction t where t.requestId = :requestId "
+			+ "and t.status = com.exercise.banking.service.transfer.model.TransactionStatus.PENDING and t.timestamp < :cutoff")
+	int deletePendingCreatedBefore(@Param("requestId") UUID requestId, @Param("cutoff") LocalDateTime cutoff);
+
+	/**
+	 * First page of the request ids of all transactions, in request id order
+	 * @param page size of the page
+	 * @return request ids
+	 */
+	@Query("select t.requestId from Transaction t order by t.requestId")
+	List<UUID> findFirstRequestIds(Pageable page);
+
+	/**
+	 * Next page of the request ids of all transactions, read from the request id index
+	 * @param after last request id of the previous page
+	 * @param page size of the page
+	 * @return request ids
+	 */
+	@Query("select t.requestId from Transaction t where t.requestId > :after order by t.requestId")
+	List<UUID> findRequestIdsAfter(@Param("after") UUID after, Pageable page);
 }
@@ -1,10 +1,13 @@
 package com.exercise.banking.service.transfer.service;
 
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Map;
 import java.util.UUID;
 
 import com.exercise.banking.service.transfer.model.Account;
 import com.exercise.banking.service.transfer.model.Payee;
+import com.exercise.banking.service.transfer.repository.AccountView;
 
 public interface AccountService {
 	
@@ -16,6 +19,22 @@ public interface AccountService {
 	 * @return matched account
 	 */
 	 Account getAccountByNumberOrThrow(String accountNumber, UUID requestID);
+
+	/**
+	 * Find and returns a read-only view of the account, without loading it into the persistence context,
+	 * if account number is not found, it throws AccountNotFoundException
+	 * @param accountNumber
+	 * @param requestId
+	 * @return account view
+	 */
+	 AccountView getAccountViewOrThrow(String accountNumber, UUID requestId);
+
+	/**
+	 * Finds read-only views of the accounts in one query
+	 * @param accountNumbers
+	 * @return views keyed by account number, accounts that do not exist are left out
+	 */
+	 Map<String, AccountView> getAccountViews(Collection<String> accountNumbers);
 	 
 	 /**
 	  * Find the payee account registered by the payer account,
@@ -29,22 +48,41 @@ public interface AccountService {
 	 Payee getPayeeByAccountNumbersOrThrow(String payerAccountNum, String payeeAccountNum, String payeeBankCode, UUID requestId);
 	 
 	 /**
-	  * Credits the amount to the account
-	  * @param account
+	  * Credits the amount to the account in a single update,
+	  * if account number is not found, it throws AccountNotFoundException
+	  * @param accountNumber
 	  * @param amount
 	  * @param requestId
-	  * @return updated account
 	  */
-	 Account creditToAccount(Account account, BigDecimal amount,UUID requestId);
+	 void creditToAccount(String accountNumber, BigDecimal amount,UUID requestId);
 	 
 	/**
-	 * Debits amount from account
-	 * @param account
+	 * Debits amount from account in a single update guarded by the balance,
+	 * if the balance is lower than the amount, it throws InsufficientFundsException
+	 * @param accountNumber
 	 * @param amount
 	 * @param requestId
-	 * @return updated account
 	 */
-	 Account debitFromAccount(Account account, BigDecimal amount,UUID requestId);
+	 void debitFromAccount(String accountNumber, BigDecimal amount,UUID requestId);
+
+	/**
+	 * Applies the net change of several transfers whose balances were checked beforehand, in a single
+	 * update guarded by the balance. If the update does not match, the balance was changed by another
+	 * writer meanwhile and it throws a ConcurrencyFailureException, so the transfers are retried
+	 * @param accountNumber
+	 * @param delta signed amount to add to the balance
+	 * @param requestId
+	 */
+	 void applyBalanceChange(String accountNumber, BigDecimal delta, UUID requestId);
+
+	/**
+	 * Locks the account rows until the end of the current transaction, always in account number order.
+	 * If an account is not found, it throws AccountNotFoundException, and if a lock
+	 * cannot be acquired in time, it throws AccountLockTimeoutException
+	 * @param accountNumbers
+	 * @param requestId
+	 */
+	 void lockAccountsInOrder(Collection<String> accountNumbers, UUID requestId);
 	 
 	 
 }
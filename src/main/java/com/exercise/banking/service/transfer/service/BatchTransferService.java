@@ -0,0 +1,37 @@
+package com.exercise.banking.service.transfer.service;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import com.exercise.banking.service.transfer.dto.BatchItemResultV1;
+import com.exercise.banking.service.transfer.dto.BatchTransferRequestV1;
+import com.exercise.banking.service.transfer.dto.BatchTransferResponseV1;
+import com.exercise.banking.service.transfer.dto.TransferRequestV1;
+
+/**
+ * Service to execute batches of transfers
+ */
+public interface BatchTransferService {
+
+	/**
+	 * Executes the transfers of the batch in their order
+	 * @param request
+	 * @return result of every transfer, in the order of the request
+	 * @throws com.exercise.banking.service.transfer.exception.BatchModeNotSupportedException if the mode cannot be honoured
+	 */
+	BatchTransferResponseV1 performBatchV1(BatchTransferRequestV1 request);
+
+	/**
+	 * Executes a stream of transfers best effort, chunk by chunk. The next transfers are only
+	 * read once the results of the previous chunk have been handed over, so a slow consumer
+	 * slows down the reading of the stream.
+	 * A request id used by an earlier chunk is answered as a duplicate.
+	 * @param streamId id of the stream, used for the locks and the logs
+	 * @param transfers transfers in their order, null for a record that could not be read
+	 * @param results receives the results of every chunk, in the order of the stream
+	 * @return number of transfers of the stream
+	 */
+	long performStreamV1(UUID streamId, Iterator<TransferRequestV1> transfers, Consumer<List<BatchItemResultV1>> results);
+}
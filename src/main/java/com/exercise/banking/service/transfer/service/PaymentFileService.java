@@ -0,0 +1,26 @@
+package com.exercise.banking.service.transfer.service;
+
+import java.io.InputStream;
+import java.util.UUID;
+
+import com.exercise.banking.service.transfer.dto.PaymentFileFormat;
+import com.exercise.banking.service.transfer.dto.PaymentFileResultV1;
+
+/**
+ * Service to execute the transfers of payment files
+ */
+public interface PaymentFileService {
+
+	/**
+	 * Reads the file record by record and executes its transfers best effort, in chunks.
+	 * The progress is saved after every chunk: a file uploaded again after an interruption
+	 * resumes after the last chunk executed, and a completed file is answered with its outcome.
+	 * @param fileId id of the file, the same for every upload of the file
+	 * @param format
+	 * @param content content of the file, read once
+	 * @return outcome of the file
+	 * @throws com.exercise.banking.service.transfer.exception.PaymentFileFormatException if the file cannot be read any further
+	 * @throws com.exercise.banking.service.transfer.exception.PaymentFileInProgressException if the file is being processed by another upload
+	 */
+	PaymentFileResultV1 performFileV1(UUID fileId, PaymentFileFormat format, InputStream content);
+}
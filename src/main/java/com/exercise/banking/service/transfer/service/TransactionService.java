@@ -1,9 +1,13 @@
 package com.exercise.banking.service.transfer.service;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 import com.exercise.banking.service.transfer.model.Transaction;
+import com.exercise.banking.service.transfer.model.TransactionStatus;
 
 public interface TransactionService {
 	/**
@@ -19,6 +23,51 @@ public interface TransactionService {
 	 * @return matching transaction
 	 */
 	Optional<Transaction> findByRequestId(UUID requestId);
-	
+
+	/**
+	 * Finds the transactions of the requests in one query
+	 * @param requestIds
+	 * @return transactions of the request ids that are recorded or reserved
+	 */
+	List<Transaction> findByRequestIds(Collection<UUID> requestIds);
+
+	/**
+	 * Inserts new transactions in JDBC batches and flushes them, so that a request id
+	 * already in use fails here rather than at commit
+	 * @param txns
+	 * @return saved transactions
+	 * @throws org.springframework.dao.DataIntegrityViolationException if a request id is already used
+	 */
+	List<Transaction> insertTransactions(List<Transaction> txns);
+
+	/**
+	 * Inserts the pending transaction reserving its request id, committed in a transaction of its own
+	 * @param txn pending transaction
+	 * @return saved transaction
+	 * @throws org.springframework.dao.DataIntegrityViolationException if the request id is already reserved
+	 */
+	Transaction reserve(Transaction txn);
+
+	/**
+	 * Finds the status of the transaction by requestId
+	 * @param requestId
+	 * @return status, empty if the request id is not reserved
+	 */
+	Optional<TransactionStatus> findStatusByRequestId(UUID requestId);
+
+	/**
+	 * Deletes the reservation of a transfer that did not complete, so the request can be retried
+	 * @param requestId
+	 * @return true if a pending transaction was deleted
+	 */
+	boolean releaseReservation(UUID requestId);
+
+	/**
+	 * Deletes a reservation made before the cutoff, left behind by a transfer that never completed
+	 * @param requestId
+	 * @param cutoff
+	 * @return true if a pending transaction was deleted
+	 */
+	boolean releaseExpiredReservation(UUID requestId, LocalDateTime cutoff);
 
 }
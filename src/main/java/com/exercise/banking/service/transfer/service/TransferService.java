@@ -1,5 +1,8 @@
 package com.exercise.banking.service.transfer.service;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 import com.exercise.banking.service.transfer.dto.TransferRequestV1;
 import com.exercise.banking.service.transfer.dto.TransferResponseV1;
 
@@ -11,4 +14,13 @@ public interface TransferService {
 	 * @return response object
 	 */
 	TransferResponseV1 performTransferV1(TransferRequestV1 transferRequest);
+
+	/**
+	 * Transfers the amount as per the request details without blocking the calling thread
+	 * @param transferRequest
+	 * @param executor runs the blocking parts of the transfer
+	 * @return future completed with the response, or with the exception the synchronous call would throw
+	 * @throws java.util.concurrent.RejectedExecutionException if the executor does not accept the transfer
+	 */
+	CompletableFuture<TransferResponseV1> performTransferV1Async(TransferRequestV1 transferRequest, Executor executor);
 }
@@ -2,17 +2,31 @@ package com.exercise.banking.service.transfer.service.impl;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.dao.ConcurrencyFailureException;
 
+import com.exercise.banking.service.transfer.concurrency.TransferExecutor;
 import com.exercise.banking.service.transfer.dto.TransferRequestV1;
 import com.exercise.banking.service.transfer.dto.TransferResponseV1;
 import com.exercise.banking.service.transfer.exception.InsufficientFundsException;
+import com.exercise.banking.service.transfer.exception.LedgerBusyException;
 import com.exercise.banking.service.transfer.exception.TransactionProcessingException;
+import com.exercise.banking.service.transfer.groupcommit.GroupCommitWriter;
+import com.exercise.banking.service.transfer.groupcommit.TransferWriter;
+import com.exercise.banking.service.transfer.idempotency.IdempotencyCache;
+import com.exercise.banking.service.transfer.idempotency.InFlightRequests;
+import com.exercise.banking.service.transfer.idempotency.RequestReservations;
+import com.exercise.banking.service.transfer.ledger.LedgerResult;
+import com.exercise.banking.service.transfer.ledger.ShardedLedgerEngine;
 import com.exercise.banking.service.transfer.model.Account;
 import com.exercise.banking.service.transfer.model.Payee;
 import com.exercise.banking.service.transfer.model.Transaction;
@@ -32,77 +46,276 @@ public abstract class AbstractTransferServiceImpl implements TransferService {
 
     protected final TransactionService txnService;
     protected final AccountService accountService;
+    protected final TransferExecutor transferExecutor;
+    protected final Optional<ShardedLedgerEngine> ledgerEngine;
+    protected final Optional<GroupCommitWriter> groupCommitWriter;
+    protected final IdempotencyCache idempotencyCache;
+    protected final RequestReservations reservations;
+    protected final InFlightRequests inFlightRequests;
 
-    protected AbstractTransferServiceImpl( TransactionService txnService,AccountService accountService) {
+    protected AbstractTransferServiceImpl( TransactionService txnService,AccountService accountService, TransferExecutor transferExecutor,
+    		Optional<ShardedLedgerEngine> ledgerEngine, Optional<GroupCommitWriter> groupCommitWriter, IdempotencyCache idempotencyCache,
+    		RequestReservations reservations, InFlightRequests inFlightRequests) {
         this .txnService = txnService;
         this.accountService = accountService;
+        this.transferExecutor = transferExecutor;
+        this.ledgerEngine = ledgerEngine;
+        this.groupCommitWriter = groupCommitWriter;
+        this.idempotencyCache = idempotencyCache;
+        this.reservations = reservations;
+        this.inFlightRequests = inFlightRequests;
     }
 
     @Override
-    @Transactional
     public TransferResponseV1 performTransferV1(TransferRequestV1 request) {
     	logger.info("Started processing transfer for request");
-    	Transaction txn = null;
-    	boolean isDuplicate = false;
-    	Optional<Transaction> processedTxn = checkForDuplicateTransaction(request.getRequestId());
-    	if(processedTxn.isPresent()) {
-    		txn = processedTxn.get();
-    		isDuplicate = true;
-    		logger.info("Duplicate transaction {} detected with request id{}. Sending the previously processed transaction details",
-    				txn.getTransactionId(),txn.getRequestId());
-    	}else {
-    		txn = executeTransfer(fetchAndValidatePayerAccount(request),
-    				findRegisteredPayee(request), request);
+    	Optional<TransferResponseV1> cachedResponse = findCachedResponse(request.getRequestId());
+    	if (cachedResponse.isPresent()) {
+    		return cachedResponse.get();
     	}
-    	return sendResponse(txn,isDuplicate);
+    	// A retry of a transfer still in flight waits for its outcome instead of running it again
+    	return inFlightRequests.execute(request.getRequestId(), () -> transfer(request));
     }
-    
+
+    private TransferResponseV1 transfer(TransferRequestV1 request) {
+    	TransferResponseV1 response;
+    	if (ledgerEngine.isPresent()) {
+    		response = performLedgerTransfer(request, ledgerEngine.get());
+    	} else if (transferWriter().isPresent()) {
+    		// Committed with the transfers of other requests, the writer caches the response
+    		validateAccounts(request);
+    		return transferWriter().get().submit(request);
+    	} else {
+    		Optional<Transaction> reserved = claimReservation(request);
+    		try {
+    			// A request answered with the outcome of another one only reads its transaction
+    			response = transferExecutor.execute(request.getRequestId(), reserved.isPresent() ? accountsToLock(request) : List.of(),
+    					() -> processTransfer(request, reserved));
+    		} catch (RuntimeException e) {
+    			if (reserved.isPresent()) {
+    				reservations.release(request.getRequestId());
+    			}
+    			throw e;
+    		}
+    	}
+    	return cacheResponse(response);
+    }
+
+    /**
+     * Inserts the pending transaction of the request before any balance is touched.
+     * Waits while another request with the same request id is transferring.
+     * @param request
+     * @return the pending transaction reserved by this request, empty if another
+     * request with the same request id has completed the transfer
+     */
+    private Optional<Transaction> claimReservation(TransferRequestV1 request) {
+    	return reservations.claim(request.getRequestId(),
+    			() -> createTransaction(null, null, request, getTransferType().getValue()));
+    }
+
     /**
-     * Check if the request is processed before by checking the request Id in the
-     * transaction table
+     * Releases the reservation of a ledger transfer that failed. A transfer accepted by a
+     * shard that timed out may still be applied, its reservation is completed by the shard.
      * @param requestId
-     * @return
+     * @param failure
      */
-    private Optional<Transaction> checkForDuplicateTransaction(UUID requestId) {
-        return txnService.findByRequestId(requestId);
+    private void releaseLedgerReservation(UUID requestId, Throwable failure) {
+    	Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+    	if (cause instanceof LedgerBusyException busy && busy.isAccepted()) {
+    		return;
+    	}
+    	reservations.release(requestId);
     }
-    
+
     /**
-     * Fetch payer account details from DB and validate 
-     * if the payer and payee account number is different.
+     * Answers a retried request from the idempotency cache, without querying the database
+     * @param requestId
+     * @return the response of the completed transfer marked as duplicate, empty if it is not cached
+     */
+    private Optional<TransferResponseV1> findCachedResponse(UUID requestId) {
+    	return idempotencyCache.get(requestId).map(response -> {
+    		logger.info("Duplicate transaction {} answered from the idempotency cache", response.getTransactionId());
+    		return new TransferResponseV1.Builder().from(response).withIsDuplicate(true).build();
+    	});
+    }
+
+    /**
+     * Stores the response once the transfer is committed
+     * @param response
+     * @return the response
+     */
+    private TransferResponseV1 cacheResponse(TransferResponseV1 response) {
+    	idempotencyCache.put(response.getRequestId(), response);
+    	return response;
+    }
+
+    /**
+     * Hands the balance changes to the ledger shard owning the payer account.
+     * The duplicate check and the payee lookup run in a short transaction of their own,
+     * no database connection is held while waiting for the shard.
      * @param request
-     * @return
+     * @param engine
+     * @return response object
      */
-    private Account fetchAndValidatePayerAccount(TransferRequestV1 request) {
-        Account payerAccount = findPayerAccount(request);
-        validateAccounts(request, payerAccount);
-        return payerAccount;
+    private TransferResponseV1 performLedgerTransfer(TransferRequestV1 request, ShardedLedgerEngine engine) {
+    	LedgerPreparation preparation = prepareLedgerTransfer(request);
+    	if (preparation.duplicateResponse() != null) {
+    		return preparation.duplicateResponse();
+    	}
+    	try {
+    		return ledgerResponse(request, engine.transfer(request.getPayerAccNumber(), accountToCredit(request), preparation.transaction()));
+    	} catch (RuntimeException e) {
+    		releaseLedgerReservation(request.getRequestId(), e);
+    		throw e;
+    	}
     }
 
     /**
-     * Validate the request parameters
-     *
+     * Runs the transfer on the executor. With the ledger, the executor only prepares the
+     * transfer and is released while the shard applies it; the response is completed by the
+     * shard once the batch is committed. With a transfer writer, the executor is not used
+     * at all and the response is completed once the transfer is committed.
+     */
+    @Override
+    public CompletableFuture<TransferResponseV1> performTransferV1Async(TransferRequestV1 request, Executor executor) {
+    	// Retries of completed transfers do not take a place in the queue
+    	Optional<TransferResponseV1> cachedResponse = findCachedResponse(request.getRequestId());
+    	if (cachedResponse.isPresent()) {
+    		return CompletableFuture.completedFuture(cachedResponse.get());
+    	}
+    	return inFlightRequests.executeAsync(request.getRequestId(), () -> transferAsync(request, executor));
+    }
+
+    private CompletableFuture<TransferResponseV1> transferAsync(TransferRequestV1 request, Executor executor) {
+    	if (ledgerEngine.isEmpty() && transferWriter().isPresent()) {
+    		// No worker waits for the commit, the writer thread completes the response
+    		logger.info("Started processing transfer for request");
+    		validateAccounts(request);
+    		return transferWriter().get().submitAsync(request);
+    	}
+    	if (ledgerEngine.isEmpty()) {
+    		return CompletableFuture.supplyAsync(() -> {
+    			logger.info("Started processing transfer for request");
+    			return transfer(request);
+    		}, executor);
+    	}
+    	ShardedLedgerEngine engine = ledgerEngine.get();
+    	return CompletableFuture
+    			.supplyAsync(() -> {
+    				logger.info("Started processing transfer for request");
+    				return prepareLedgerTransfer(request);
+    			}, executor)
+    			.thenCompose(preparation -> completeLedgerTransferAsync(request, engine, preparation))
+    			.thenApply(this::cacheResponse);
+    }
+
+    private CompletableFuture<TransferResponseV1> completeLedgerTransferAsync(TransferRequestV1 request, ShardedLedgerEngine engine,
+    		LedgerPreparation preparation) {
+    	if (preparation.duplicateResponse() != null) {
+    		return CompletableFuture.completedFuture(preparation.duplicateResponse());
+    	}
+    	CompletableFuture<LedgerResult> result;
+    	try {
+    		result = engine.transferAsync(request.getPayerAccNumber(), accountToCredit(request), preparation.transaction());
+    	} catch (RuntimeException e) {
+    		releaseLedgerReservation(request.getRequestId(), e);
+    		throw e;
+    	}
+    	return result
+    			.whenComplete((completed, failure) -> {
+    				if (failure != null) {
+    					releaseLedgerReservation(request.getRequestId(), failure);
+    				}
+    			})
+    			.thenApply(completed -> ledgerResponse(request, completed));
+    }
+
+    private TransferResponseV1 ledgerResponse(TransferRequestV1 request, LedgerResult result) {
+    	logger.info("Txn: {} Transfer of {} completed by the ledger", result.transaction().getTransactionId(), request.getAmount());
+    	return sendResponse(result.transaction(), result.transaction().getPayee(), result.payerBalance(), false);
+    }
+
+    /**
+     * Reserves the request id, then checks the transfer in a short transaction. The
+     * reservation is released if the transfer is rejected.
      * @param request
-     * @param payerAccount
+     * @return the response to a duplicate request, or the reserved transaction to hand to the ledger
      */
-    private void validateAccounts(TransferRequestV1 request, Account payerAccount) {
-        if (request.getPayerAccNumber().equals(request.getPayeeAccNumber())) {
-        	logger.error("Payer and payee accounts cannot be the same.");
-            throw new IllegalArgumentException("Payer and payee accounts cannot be the same.");
-        }
-        checkBalance(request, payerAccount);
+    private LedgerPreparation prepareLedgerTransfer(TransferRequestV1 request) {
+    	Optional<Transaction> reserved = claimReservation(request);
+    	try {
+    		return transferExecutor.execute(request.getRequestId(), List.of(), () -> prepareLedgerTransaction(request, reserved));
+    	} catch (RuntimeException e) {
+    		if (reserved.isPresent()) {
+    			reservations.release(request.getRequestId());
+    		}
+    		throw e;
+    	}
+    }
+
+    private LedgerPreparation prepareLedgerTransaction(TransferRequestV1 request, Optional<Transaction> reserved) {
+    	if (reserved.isEmpty()) {
+    		return new LedgerPreparation(duplicateResponse(request.getRequestId()), null);
+    	}
+    	validateAccounts(request);
+    	Payee payee = findRegisteredPayee(request);
+    	String creditAccNum = accountToCredit(request);
+    	if (creditAccNum != null) {
+    		// A missing payee account would fail the whole batch of the shard, reject it up front
+    		accountService.getAccountViewOrThrow(creditAccNum, request.getRequestId());
+    	}
+    	Transaction txn = reserved.get();
+    	txn.setPayerAccount(payee.getPayerAccount());
+    	txn.setPayee(payee);
+    	return new LedgerPreparation(null, txn);
     }
 
     /**
-     * Check if the payer account has enough balance to proceed with transfer
+     * Processes the transfer. Runs inside the transaction opened by the transfer executor,
+     * while the accounts returned by {@link #accountsToLock(TransferRequestV1)} are locked.
+     * @param request
+     * @param reserved pending transaction reserved by the request, empty if the request is a duplicate
+     * @return response object
+     */
+    private TransferResponseV1 processTransfer(TransferRequestV1 request, Optional<Transaction> reserved) {
+    	if (reserved.isEmpty()) {
+    		return duplicateResponse(request.getRequestId());
+    	}
+    	validateAccounts(request);
+    	Payee payee = findRegisteredPayee(request);
+    	// The payer is only referenced through the payee, it is not loaded before the
+    	// guarded debit, so the balance in the response is read after the update
+    	Transaction txn = executeTransfer(reserved.get(), payee, request);
+    	// Read as a view, the payer entity is never loaded into the persistence context.
+    	// The payee of the saved transaction is a proxy, the response is built from the registered one
+    	BigDecimal payerBalance = accountService.getAccountViewOrThrow(request.getPayerAccNumber(), request.getRequestId()).balance();
+    	return sendResponse(txn, payee, payerBalance, false);
+    }
+
+    /**
+     * Answers a request whose request id was used by a completed transfer with the
+     * transaction recorded for it
+     * @param requestId
+     * @return response of the completed transfer marked as duplicate
+     */
+    private TransferResponseV1 duplicateResponse(UUID requestId) {
+    	Transaction txn = txnService.findByRequestId(requestId)
+    			.orElseThrow(() -> new TransactionProcessingException(requestId, "Transaction of the request not found"));
+    	logger.info("Duplicate transaction {} detected with request id{}. Sending the previously processed transaction details",
+    			txn.getTransactionId(), txn.getRequestId());
+    	return sendResponse(txn, true);
+    }
+
+    /**
+     * Validate if the payer and payee account number is different.
+     * The balance is checked by the guarded debit itself.
      *
      * @param request
-     * @param payerAccount
      */
-    private void checkBalance(TransferRequestV1 request, Account payerAccount) {
-        if (payerAccount.getBalance().compareTo(request.getAmount()) < 0) {
-            logger.error("Transfer failed: Payer account has insufficient funds. Account balance is {}", payerAccount.getBalance());
-            throw new InsufficientFundsException(request.getRequestId());
+    private void validateAccounts(TransferRequestV1 request) {
+        if (request.getPayerAccNumber().equals(request.getPayeeAccNumber())) {
+        	logger.error("Payer and payee accounts cannot be the same.");
+            throw new IllegalArgumentException("Payer and payee accounts cannot be the same.");
         }
     }
 
@@ -120,38 +333,33 @@ public abstract class AbstractTransferServiceImpl implements TransferService {
     }
 
     /**
-     * Finds the Payer account matching to the request
+     * Completes the reserved transaction.
      *
-     * @param request
-     * @return
-     */
-    private Account findPayerAccount(TransferRequestV1 request) {
-    	return accountService.getAccountByNumberOrThrow(request.getPayerAccNumber(), request.getRequestId());
-    }
-
-    /**
-     * Persists the transaction.
-     *
-     * @param payerAccount the payer's account
+     * @param transaction the pending transaction reserved for the request
      * @param payee the payee's account
-     * @param amount the amount to transfer
-     * @param type the type of transfer (intra-bank or inter-bank)
-     * @param requestId 
+     * @param request
      * @return the saved Transaction object
      */
-    protected Transaction recordTransaction(Account payerAccount, Payee payee, TransferRequestV1 request,TransferType type) {
-        Transaction transaction = createTransaction(payerAccount, payee, request, type.getValue());
+    protected Transaction recordTransaction(Transaction transaction, Payee payee, TransferRequestV1 request) {
+        transaction.setPayerAccount(payee.getPayerAccount());
+        transaction.setPayee(payee);
         try {
             // Update the payer account balance
-            updatePayerAccountBalance(payerAccount, request.getAmount(),request.getRequestId());
+            updatePayerAccountBalance(request.getPayerAccNumber(), request.getAmount(),request.getRequestId());
 
-            // Save the transaction with status "Success"
-            transaction.setStatus(TransactionStatus.SUCCESS);
+            // Save the transaction with status "Success", or the status the service completes its transfers with
+            transaction.setStatus(completedStatus());
             transaction = txnService.saveTransaction(transaction);
 
             logger.info("Transaction {} recorded successfully", transaction.getTransactionId());
             return transaction;
 
+        } catch (InsufficientFundsException e) {
+            // The guarded debit did not update anything, there is nothing to record
+            throw e;
+        } catch (ConcurrencyFailureException e) {
+            // Conflicting concurrent update, the transfer executor retries the whole transfer
+            throw e;
         } catch (Exception e) {
             // If any error occurs, log the exception
             logger.error("Transaction failed due to exception {}", e.getMessage(), e);
@@ -192,12 +400,12 @@ public abstract class AbstractTransferServiceImpl implements TransferService {
 
     /**
      * Updates Payer Account balance
-     * @param payerAccount
+     * @param payerAccNum
      * @param amount
      */
-	private void updatePayerAccountBalance(Account payerAccount, BigDecimal amount, UUID requestId) {
-		logger.info("Debiting {} from payer Account with balance: {}", amount,  payerAccount.getBalance());
-		accountService.debitFromAccount(payerAccount, amount, requestId);
+	private void updatePayerAccountBalance(String payerAccNum, BigDecimal amount, UUID requestId) {
+		logger.info("Debiting {} from payer Account", amount);
+		accountService.debitFromAccount(payerAccNum, amount, requestId);
 	}
 	
 	 /**
@@ -208,30 +416,85 @@ public abstract class AbstractTransferServiceImpl implements TransferService {
      * @return
      */
     private TransferResponseV1 sendResponse(Transaction txn, boolean isDuplicate) {
+    	return sendResponse(txn, txn.getPayee(), txn.getPayerAccount().getBalance(), isDuplicate);
+    }
+
+    static TransferResponseV1 sendResponse(Transaction txn, Payee payee, BigDecimal payerBalance, boolean isDuplicate) {
         
     	return new TransferResponseV1.Builder()
     		    .withRequestId(txn.getRequestId())  // original request id
     		    .withTransactionId(txn.getTransactionId())  // transactionId
     		    .withStatus(txn.getStatus().name())  // status
-    		    .withBalance(txn.getPayerAccount().getBalance())  // balance
+    		    .withBalance(payerBalance)  // balance
     		    .withAmount(txn.getAmount())
     		    .withCurrency(txn.getCurrency())
     		    .withTransferType(txn.getType())  // transferType
     		    .withTimestamp(Instant.now())  // current timestamp
     		    .withIsDuplicate(isDuplicate)
     		    .withPayerAccNum(txn.getPayerAccount().getAccNum())
-    		    .withPayeeAccNum(txn.getPayee().getAccNum())
-    		    .withPayeeBankCode(txn.getPayee().getBank().getCode())
+    		    .withPayeeAccNum(payee.getAccNum())
+    		    .withPayeeBankCode(payee.getBank().getCode())
     		    .build();
 
     }
 
+    /**
+     * Accounts whose balances are read or updated by this transfer.
+     * By default only the payer account is updated locally.
+     * @param request
+     * @return account numbers to lock
+     */
+    protected Collection<String> accountsToLock(TransferRequestV1 request) {
+    	return List.of(request.getPayerAccNumber());
+    }
+
+    /**
+     * Writer committing the transfers of this service together with others, used when the
+     * ledger is disabled. By default the group commit writer, if enabled.
+     * @return the writer, empty if every transfer is committed on its own
+     */
+    protected Optional<TransferWriter> transferWriter() {
+    	return groupCommitWriter.map(writer -> writer);
+    }
+
+    /**
+     * Status of the transaction once this service has executed the transfer.
+     * By default the transfer is complete.
+     * @return transaction status
+     */
+    protected TransactionStatus completedStatus() {
+    	return TransactionStatus.SUCCESS;
+    }
+
+    /**
+     * Account credited locally by this transfer, used by the ledger.
+     * By default the payee is in another bank and nothing is credited locally.
+     * @param request
+     * @return account number to credit, or null
+     */
+    protected String accountToCredit(TransferRequestV1 request) {
+    	return null;
+    }
+
+    /**
+     * Type of the transfers handled by this service
+     * @return transfer type
+     */
+    protected abstract TransferType getTransferType();
+
     /**
      * Execute the transfer based on transfer type identified
-     * @param payerAccount
+     * @param transaction pending transaction reserved for the request
      * @param payee
      * @param request
      * @return Completed Transaction
      */
-    protected abstract Transaction executeTransfer(Account payerAccount, Payee payee, TransferRequestV1 request);
+    protected abstract Transaction executeTransfer(Transaction transaction, Payee payee, TransferRequestV1 request);
+
+    /**
+     * Result of the preparation of a ledger transfer: either the response to a duplicate
+     * request, or the transaction to hand to the ledger.
+     */
+    private record LedgerPreparation(TransferResponseV1 duplicateResponse, Transaction transaction) {
+    }
 }
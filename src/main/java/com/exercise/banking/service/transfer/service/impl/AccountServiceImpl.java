@@ -1,19 +1,32 @@
 package com.exercise.banking.service.transfer.service.impl;
 
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
 import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.PessimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.exercise.banking.service.transfer.exception.AccountLockTimeoutException;
 import com.exercise.banking.service.transfer.exception.AccountNotFoundException;
 import com.exercise.banking.service.transfer.exception.InsufficientFundsException;
 import com.exercise.banking.service.transfer.exception.PayeeNotRegisteredException;
 import com.exercise.banking.service.transfer.model.Account;
 import com.exercise.banking.service.transfer.model.Payee;
+import com.exercise.banking.service.transfer.registry.BankDirectory;
+import com.exercise.banking.service.transfer.registry.PayeeRegistry;
+import com.exercise.banking.service.transfer.registry.RegisteredPayee;
 import com.exercise.banking.service.transfer.repository.AccountRepository;
+import com.exercise.banking.service.transfer.repository.AccountView;
 import com.exercise.banking.service.transfer.repository.PayeeRepository;
 import com.exercise.banking.service.transfer.service.AccountService;
 @Service
@@ -21,13 +34,18 @@ public class AccountServiceImpl implements AccountService{
 
 	private final AccountRepository accRepo;
 	private final PayeeRepository payeeRepo;
+	private final PayeeRegistry payeeRegistry;
+	private final BankDirectory bankDirectory;
 
 	private static final Logger logger = LoggerFactory.getLogger(AccountServiceImpl.class);
 
 	
-	public AccountServiceImpl(AccountRepository accRepo, PayeeRepository payeeRepo) {
+	public AccountServiceImpl(AccountRepository accRepo, PayeeRepository payeeRepo, PayeeRegistry payeeRegistry,
+			BankDirectory bankDirectory) {
 		this.accRepo = accRepo;
 		this.payeeRepo = payeeRepo;
+		this.payeeRegistry = payeeRegistry;
+		this.bankDirectory = bankDirectory;
 	}
 
 	@Override
@@ -36,52 +54,114 @@ public class AccountServiceImpl implements AccountService{
 				.orElseThrow(() -> new AccountNotFoundException(requestID));
 	}
 
+	@Override
+	public AccountView getAccountViewOrThrow(String accountNumber, UUID requestId) {
+		return accRepo.findViewByAccNum(accountNumber)
+				.orElseThrow(() -> new AccountNotFoundException(requestId));
+	}
+
 	/**
-	 * Search for Payee registered by the Payer.
+	 * Search for Payee registered by the Payer, in the payee registry first.
+	 * If no payee is found, the payer account is checked so that an unknown
+	 * payer is still reported as AccountNotFoundException.
+	 * A payee bank code missing from the bank directory is rejected without looking up the payee.
+	 * The payee is a detached copy of the registration: its bank comes from the bank
+	 * directory, and its payer account is a reference that is loaded when first read.
 	 * @param payerAccountNum
 	 * @param payeeAccountNum
 	 * @param requestId 
-	 * @return Optional<Payee> 
+	 * @return registered payee
 	 */
 	@Override
 	public Payee getPayeeByAccountNumbersOrThrow(String payerAccountNum, String payeeAccountNum, String payeeBankCode, UUID requestId) {
-	    return payeeRepo.findByPayerAccount_AccNumAndAccNum(payerAccountNum, payeeAccountNum)
-	        .filter(payee -> payee.getBank().getCode().equals(payeeBankCode))  // Check the bank code
+	    if (!bankDirectory.contains(payeeBankCode) && accRepo.existsById(payerAccountNum)) {
+	        logger.error("Payee bank code {} is unknown", payeeBankCode);
+	        throw new PayeeNotRegisteredException(requestId);
+	    }
+	    RegisteredPayee registered = payeeRegistry.find(payerAccountNum, payeeAccountNum, payeeBankCode,
+	    		() -> findRegisteredPayee(payerAccountNum, payeeAccountNum, payeeBankCode, requestId))
 	        .orElseThrow(() -> {
 	            logger.error("Payee not found or payee bank code {} does not match", payeeBankCode);
-	            throw new PayeeNotRegisteredException(requestId);
+	            return new PayeeNotRegisteredException(requestId);
 	        });
+	    return new Payee(registered.id(), registered.name(), registered.accNum(), bankDirectory.toBank(registered.bankCode()),
+	    		accRepo.getReferenceById(registered.payerAccNum()));
+	}
+
+	/**
+	 * Reads the registration of the payee from the database, the bank code is checked by the query
+	 * @param payerAccountNum
+	 * @param payeeAccountNum
+	 * @param payeeBankCode
+	 * @param requestId
+	 * @return registered payee, empty if the payer has not registered it in this bank
+	 * @throws AccountNotFoundException if the payer account does not exist
+	 */
+	private Optional<RegisteredPayee> findRegisteredPayee(String payerAccountNum, String payeeAccountNum, String payeeBankCode,
+			UUID requestId) {
+		Optional<RegisteredPayee> payee = payeeRepo.findRegisteredPayee(payerAccountNum, payeeAccountNum, payeeBankCode);
+		if (payee.isEmpty() && !accRepo.existsById(payerAccountNum)) {
+			logger.error("Payer account not found");
+			throw new AccountNotFoundException(requestId);
+		}
+		return payee;
 	}
 
 	@Override
 	@Transactional
-	public synchronized Account creditToAccount(Account account, BigDecimal amount,UUID requestId) {
-		BigDecimal balance = account.getBalance().add(amount);
-		return this.setBalance(account, balance);
+	public void creditToAccount(String accountNumber, BigDecimal amount,UUID requestId) {
+		if (accRepo.credit(accountNumber, amount) == 0) {
+			logger.error("Credit failed: account not found");
+			throw new AccountNotFoundException(requestId);
+		}
+		logger.info("Credited '{}' to account.", amount);
 	}
 
 	@Override
 	@Transactional
-	public synchronized Account debitFromAccount(Account account, BigDecimal amount,UUID requestId) {
-		BigDecimal balance = account.getBalance().subtract(amount);
-		 if (account.getBalance().compareTo(amount) < 0) {
-	            logger.error("Debit failed:  account has insufficient funds. Account balance is {}", account.getBalance());
-	            throw new InsufficientFundsException(requestId);
-	        }
-		return this.setBalance(account, balance);
+	public void debitFromAccount(String accountNumber, BigDecimal amount,UUID requestId) {
+		// The balance check and the update are one statement, there is no window for a concurrent debit
+		if (accRepo.debitIfSufficientFunds(accountNumber, amount) == 0) {
+			if (!accRepo.existsById(accountNumber)) {
+				logger.error("Debit failed: account not found");
+				throw new AccountNotFoundException(requestId);
+			}
+			logger.error("Debit failed: account has insufficient funds for amount {}", amount);
+			throw new InsufficientFundsException(requestId);
+		}
+		logger.info("Debited '{}' from account.", amount);
 	}
-	
-	/**
-	 * Sets balance to account
-	 * @param account
-	 * @param balance
-	 */
-	private Account setBalance(Account account, BigDecimal balance ) {
-		// Update the balance
-		account.setBalance(balance);
-		logger.info("Updating balance to '{}'.", balance);
-		// Save the updated account back to the database
-		return accRepo.save(account);
+
+	@Override
+	public Map<String, AccountView> getAccountViews(Collection<String> accountNumbers) {
+		return accRepo.findViewsByAccNumIn(accountNumbers).stream()
+				.collect(Collectors.toMap(AccountView::accNum, Function.identity()));
+	}
+
+	@Override
+	@Transactional
+	public void applyBalanceChange(String accountNumber, BigDecimal delta, UUID requestId) {
+		if (accRepo.applyDelta(accountNumber, delta) == 0) {
+			logger.error("Balance change of {} no longer applies to the account", delta);
+			throw new OptimisticLockingFailureException("Account " + accountNumber + " was changed by another writer");
+		}
+	}
+
+	@Override
+	@Transactional
+	public void lockAccountsInOrder(Collection<String> accountNumbers, UUID requestId) {
+		// One statement per account: the order of a multi row lock is up to the query plan
+		for (String accountNumber : new TreeSet<>(accountNumbers)) {
+			try {
+				if (accRepo.lockByAccNum(accountNumber).isEmpty()) {
+					logger.error("Account to lock not found");
+					throw new AccountNotFoundException(requestId);
+				}
+			} catch (PessimisticLockingFailureException e) {
+				logger.error("Timed out waiting for account row lock", e);
+				throw new AccountLockTimeoutException(requestId);
+			}
+		}
 	}
 
 }
@@ -0,0 +1,341 @@
+package com.exercise.banking.service.transfer.service.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.MessageSource;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import com.exercise.banking.service.transfer.config.BankConfiguration;
+import com.exercise.banking.service.transfer.dto.BatchItemResultV1;
+import com.exercise.banking.service.transfer.dto.BatchMode;
+import com.exercise.banking.service.transfer.dto.BatchTransferRequestV1;
+import com.exercise.banking.service.transfer.dto.BatchTransferResponseV1;
+import com.exercise.banking.service.transfer.dto.ErrorResponse;
+import com.exercise.banking.service.transfer.dto.TransferRequestV1;
+import com.exercise.banking.service.transfer.exception.AccountLockTimeoutException;
+import com.exercise.banking.service.transfer.exception.AccountNotFoundException;
+import com.exercise.banking.service.transfer.exception.BaseTransferException;
+import com.exercise.banking.service.transfer.exception.BatchModeNotSupportedException;
+import com.exercise.banking.service.transfer.exception.ConcurrentUpdateException;
+import com.exercise.banking.service.transfer.exception.InsufficientFundsException;
+import com.exercise.banking.service.transfer.exception.LedgerBusyException;
+import com.exercise.banking.service.transfer.exception.PayeeNotRegisteredException;
+import com.exercise.banking.service.transfer.exception.TransferInProgressException;
+import com.exercise.banking.service.transfer.ledger.ShardedLedgerEngine;
+import com.exercise.banking.service.transfer.service.BatchTransferService;
+import com.exercise.banking.service.transfer.service.TransferServiceSelector;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+
+/**
+ * Executes batches of transfers in chunks of {@code transfer.batch.chunk-size} transfers,
+ * each in one transaction, see {@link TransferChunkProcessor}. An all or nothing batch is a
+ * single chunk and nothing is written unless every transfer can be executed.
+ *
+ * Request ids already used are answered as duplicates up front. A request id used
+ * concurrently by another request fails the insert of the chunk, which is then checked
+ * for duplicates again and executed once more.
+ *
+ * With the ledger enabled, balances are only written by the ledger shards: the transfers
+ * of a best effort batch are handed to the transfer services one by one, and all or nothing
+ * batches are rejected.
+ *
+ * The bean validation of the transfers runs in parallel, as it needs no database. The
+ * {@code transfer.batch.stage} timers record the validation, the duplicate check and the
+ * execution of every batch or chunk of a stream.
+ */
+@Service
+public class BatchTransferServiceImpl implements BatchTransferService {
+
+	private static final Logger logger = LoggerFactory.getLogger(BatchTransferServiceImpl.class);
+
+	private final TransferChunkProcessor chunkProcessor;
+	private final TransferServiceSelector transferServiceSelector;
+	private final BankConfiguration config;
+	private final Optional<ShardedLedgerEngine> ledgerEngine;
+	private final Validator validator;
+	private final MessageSource messageSource;
+	private final int chunkSize;
+
+	private final DistributionSummary batchSizeSummary;
+	private final Timer validateTimer;
+	private final Timer duplicatesTimer;
+	private final Timer executeTimer;
+	private final Map<BatchItemResultV1.Status, Counter> resultCounters = new EnumMap<>(BatchItemResultV1.Status.class);
+
+	public BatchTransferServiceImpl(TransferChunkProcessor chunkProcessor, TransferServiceSelector transferServiceSelector,
+			BankConfiguration config, Optional<ShardedLedgerEngine> ledgerEngine, Validator validator, MessageSource messageSource,
+			@Value("${transfer.batch.chunk-size:500}") int chunkSize, MeterRegistry meterRegistry) {
+		this.chunkProcessor = chunkProcessor;
+		this.transferServiceSelector = transferServiceSelector;
+		this.config = config;
+		this.ledgerEngine = ledgerEngine;
+		this.validator = validator;
+		this.messageSource = messageSource;
+		this.chunkSize = Math.max(1, chunkSize);
+		this.batchSizeSummary = DistributionSummary.builder("transfer.batch.size")
+				.description("Transfers per batch")
+				.register(meterRegistry);
+		this.validateTimer = stageTimer("validate", meterRegistry);
+		this.duplicatesTimer = stageTimer("duplicates", meterRegistry);
+		this.executeTimer = stageTimer("execute", meterRegistry);
+		for (BatchItemResultV1.Status status : BatchItemResultV1.Status.values()) {
+			resultCounters.put(status, Counter.builder("transfer.batch.transfers")
+					.description("Transfers of batches, by result")
+					.tag("result", status.name().toLowerCase())
+					.register(meterRegistry));
+		}
+	}
+
+	private static Timer stageTimer(String stage, MeterRegistry meterRegistry) {
+		return Timer.builder("transfer.batch.stage")
+				.description("Time spent per batch or chunk of a stream, by stage")
+				.tag("stage", stage)
+				.register(meterRegistry);
+	}
+
+	@Override
+	public BatchTransferResponseV1 performBatchV1(BatchTransferRequestV1 request) {
+		logger.info("Started processing batch of {} transfers in {} mode", request.getTransfers().size(), request.getMode());
+		if (request.getMode() == BatchMode.ALL_OR_NOTHING && ledgerEngine.isPresent()) {
+			throw new BatchModeNotSupportedException(request.getBatchId(),
+					"All or nothing batches are not supported while the ledger applies the transfers");
+		}
+		batchSizeSummary.record(request.getTransfers().size());
+
+		List<BatchItemResultV1> resultList = execute(request);
+		BatchTransferResponseV1 response = new BatchTransferResponseV1(request.getBatchId(), request.getMode(), resultList);
+		logger.info("Batch {}: {} succeeded, {} duplicates, {} failed, {} not executed", response.getStatus(), response.getSucceeded(),
+				response.getDuplicates(), response.getFailed(), response.getNotExecuted());
+		return response;
+	}
+
+	/**
+	 * Reads the stream one chunk of {@code transfer.batch.chunk-size} transfers at a time and
+	 * executes each chunk as a best effort batch. Only one chunk is held in memory.
+	 */
+	@Override
+	public long performStreamV1(UUID streamId, Iterator<TransferRequestV1> transfers, Consumer<List<BatchItemResultV1>> results) {
+		logger.info("Started processing stream of transfers");
+		long count = 0;
+		List<TransferRequestV1> chunk = new ArrayList<>(chunkSize);
+		while (transfers.hasNext()) {
+			chunk.add(transfers.next());
+			if (chunk.size() == chunkSize || !transfers.hasNext()) {
+				results.accept(execute(new BatchTransferRequestV1(streamId, BatchMode.BEST_EFFORT, chunk)));
+				count += chunk.size();
+				chunk = new ArrayList<>(chunkSize);
+			}
+		}
+		logger.info("Stream of {} transfers completed", count);
+		return count;
+	}
+
+	/**
+	 * Validates the transfers, answers the duplicates and executes the others
+	 * @param request
+	 * @return result of every transfer, in the order of the request
+	 */
+	private List<BatchItemResultV1> execute(BatchTransferRequestV1 request) {
+		BatchItemResultV1[] results = new BatchItemResultV1[request.getTransfers().size()];
+		validateTimer.record(() -> validate(request.getTransfers(), results));
+		duplicatesTimer.record(() -> answerDuplicates(request, pending(results), results));
+		executeTimer.record(() -> {
+			if (ledgerEngine.isPresent()) {
+				executeOneByOne(request, results);
+			} else {
+				executeInChunks(request, results);
+			}
+		});
+		List<BatchItemResultV1> resultList = Arrays.asList(results);
+		resultList.forEach(result -> resultCounters.get(result.getStatus()).increment());
+		return resultList;
+	}
+
+	/**
+	 * Fails the transfers that are invalid on their own, or that repeat the request id of
+	 * an earlier transfer of the batch
+	 * @param transfers
+	 * @param results
+	 */
+	private void validate(List<TransferRequestV1> transfers, BatchItemResultV1[] results) {
+		// Each transfer is validated on its own, the checks across transfers follow in order
+		List<Set<ConstraintViolation<TransferRequestV1>>> violationsList = IntStream.range(0, transfers.size()).parallel()
+				.mapToObj(i -> transfers.get(i) == null ? Set.<ConstraintViolation<TransferRequestV1>>of() : validator.validate(transfers.get(i)))
+				.toList();
+		Set<UUID> requestIds = new HashSet<>();
+		for (int i = 0; i < transfers.size(); i++) {
+			TransferRequestV1 transfer = transfers.get(i);
+			if (transfer == null) {
+				results[i] = BatchItemResultV1.failed(null, new ErrorResponse(HttpStatus.BAD_REQUEST, message("error.validation.json")));
+				continue;
+			}
+			Set<ConstraintViolation<TransferRequestV1>> violations = violationsList.get(i);
+			if (!violations.isEmpty()) {
+				Map<String, String> errors = new HashMap<>();
+				violations.forEach(violation -> errors.put(violation.getPropertyPath().toString(), violation.getMessage()));
+				results[i] = BatchItemResultV1.failed(transfer.getRequestId(), new ErrorResponse(transfer.getRequestId(),
+						HttpStatus.BAD_REQUEST, message("error.validation.failed"), errors));
+			} else if (!requestIds.add(transfer.getRequestId())) {
+				results[i] = failed(transfer.getRequestId(), HttpStatus.BAD_REQUEST, "error.batch.request.repeated");
+			} else if (transfer.getPayerAccNumber().equals(transfer.getPayeeAccNumber())) {
+				results[i] = failed(transfer.getRequestId(), HttpStatus.BAD_REQUEST, "error.batch.same.account");
+			}
+		}
+	}
+
+	/**
+	 * Answers the transfers whose request ids were used before
+	 * @param request
+	 * @param indexes transfers to check
+	 * @param results
+	 */
+	private void answerDuplicates(BatchTransferRequestV1 request, List<Integer> indexes, BatchItemResultV1[] results) {
+		List<TransferRequestV1> transfers = indexes.stream().map(request.getTransfers()::get).toList();
+		chunkProcessor.findDuplicates(request.getBatchId(), transfers)
+				.forEach((c, outcome) -> results[indexes.get(c)] = result(transfers.get(c), outcome));
+	}
+
+	/**
+	 * Hands the transfers to the transfer services one by one, used while the ledger applies them
+	 * @param request
+	 * @param results
+	 */
+	private void executeOneByOne(BatchTransferRequestV1 request, BatchItemResultV1[] results) {
+		for (int i : pending(results)) {
+			TransferRequestV1 transfer = request.getTransfers().get(i);
+			try {
+				results[i] = BatchItemResultV1.executed(transferServiceSelector
+						.getService(config.getBankCode(), transfer.getPayeeBankCode()).performTransferV1(transfer));
+			} catch (BaseTransferException e) {
+				results[i] = error(transfer.getRequestId(), e);
+			}
+		}
+	}
+
+	/**
+	 * Executes the pending transfers chunk by chunk. If a request id was used concurrently,
+	 * the chunk is checked for duplicates again and the remaining transfers are executed once more.
+	 * @param request
+	 * @param results
+	 */
+	private void executeInChunks(BatchTransferRequestV1 request, BatchItemResultV1[] results) {
+		for (int attempt = 1; ; attempt++) {
+			List<Integer> pending = pending(results);
+			if (request.getMode() == BatchMode.ALL_OR_NOTHING
+					&& Arrays.stream(results).anyMatch(result -> result != null && result.getStatus() == BatchItemResultV1.Status.FAILED)) {
+				pending.forEach(i -> results[i] = BatchItemResultV1.notExecuted(request.getTransfers().get(i).getRequestId()));
+				return;
+			}
+			int size = request.getMode() == BatchMode.ALL_OR_NOTHING ? Math.max(1, pending.size()) : chunkSize;
+			try {
+				for (int from = 0; from < pending.size(); from += size) {
+					executeChunk(request, pending.subList(from, Math.min(from + size, pending.size())), results);
+				}
+				return;
+			} catch (DataIntegrityViolationException e) {
+				if (attempt > 1) {
+					throw e;
+				}
+				logger.warn("A request id of the batch was used by another request meanwhile, checking for duplicates again");
+				answerDuplicates(request, pending(results), results);
+			}
+		}
+	}
+
+	private void executeChunk(BatchTransferRequestV1 request, List<Integer> indexes, BatchItemResultV1[] results) {
+		List<TransferRequestV1> transfers = indexes.stream().map(request.getTransfers()::get).toList();
+		List<TransferChunkProcessor.Outcome> outcomes;
+		try {
+			outcomes = chunkProcessor.execute(request.getBatchId(), transfers, request.getMode() == BatchMode.ALL_OR_NOTHING);
+		} catch (BaseTransferException e) {
+			if (request.getMode() == BatchMode.ALL_OR_NOTHING) {
+				throw e;
+			}
+			logger.error("Chunk of {} transfers failed", transfers.size(), e);
+			for (int i : indexes) {
+				results[i] = error(request.getTransfers().get(i).getRequestId(), e);
+			}
+			return;
+		}
+		for (int c = 0; c < indexes.size(); c++) {
+			results[indexes.get(c)] = result(transfers.get(c), outcomes.get(c));
+		}
+	}
+
+	private BatchItemResultV1 result(TransferRequestV1 transfer, TransferChunkProcessor.Outcome outcome) {
+		if (outcome.response() != null) {
+			return BatchItemResultV1.executed(outcome.response());
+		} else if (outcome.failure() != null) {
+			return error(transfer.getRequestId(), outcome.failure());
+		}
+		return BatchItemResultV1.notExecuted(transfer.getRequestId());
+	}
+
+	private static List<Integer> pending(BatchItemResultV1[] results) {
+		List<Integer> pending = new ArrayList<>();
+		for (int i = 0; i < results.length; i++) {
+			if (results[i] == null) {
+				pending.add(i);
+			}
+		}
+		return pending;
+	}
+
+	/**
+	 * Result of a failed transfer, with the status and message the single transfer endpoint answers with
+	 * @param requestId
+	 * @param e
+	 * @return failed result
+	 */
+	private BatchItemResultV1 error(UUID requestId, BaseTransferException e) {
+		if (e instanceof AccountNotFoundException) {
+			return failed(requestId, HttpStatus.NOT_FOUND, "error.account.notfound");
+		} else if (e instanceof PayeeNotRegisteredException) {
+			return failed(requestId, HttpStatus.NOT_FOUND, "error.payee.notregistered");
+		} else if (e instanceof InsufficientFundsException) {
+			return failed(requestId, HttpStatus.BAD_REQUEST, "error.insufficient.funds");
+		} else if (e instanceof TransferInProgressException) {
+			return failed(requestId, HttpStatus.CONFLICT, "error.transfer.in.progress");
+		} else if (e instanceof ConcurrentUpdateException) {
+			return failed(requestId, HttpStatus.CONFLICT, "error.transfer.conflict");
+		} else if (e instanceof AccountLockTimeoutException) {
+			return failed(requestId, HttpStatus.SERVICE_UNAVAILABLE, "error.account.lock.timeout");
+		} else if (e instanceof LedgerBusyException) {
+			return failed(requestId, HttpStatus.SERVICE_UNAVAILABLE, "error.ledger.busy");
+		}
+		logger.error("Transfer of the batch failed", e);
+		return failed(requestId, HttpStatus.INTERNAL_SERVER_ERROR, "error.unexpected");
+	}
+
+	private BatchItemResultV1 failed(UUID requestId, HttpStatus status, String messageKey) {
+		return BatchItemResultV1.failed(requestId, new ErrorResponse(requestId, status, message(messageKey)));
+	}
+
+	private String message(String key) {
+		return messageSource.getMessage(key, null, LocaleContextHolder.getLocale());
+	}
+}
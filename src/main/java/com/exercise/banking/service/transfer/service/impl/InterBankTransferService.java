@@ -1,41 +1,91 @@
 package com.exercise.banking.service.transfer.service.impl;
 
+import java.util.List;
+import java.util.Optional;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import com.exercise.banking.service.transfer.bankclient.BankBulkheads;
+import com.exercise.banking.service.transfer.bankclient.ExternalBankClient;
+import com.exercise.banking.service.transfer.concurrency.TransferExecutor;
 import com.exercise.banking.service.transfer.dto.TransferRequestV1;
-import com.exercise.banking.service.transfer.model.Account;
+import com.exercise.banking.service.transfer.groupcommit.GroupCommitWriter;
+import com.exercise.banking.service.transfer.idempotency.IdempotencyCache;
+import com.exercise.banking.service.transfer.idempotency.InFlightRequests;
+import com.exercise.banking.service.transfer.idempotency.RequestReservations;
+import com.exercise.banking.service.transfer.ledger.ShardedLedgerEngine;
+import com.exercise.banking.service.transfer.model.OutboxEntry;
 import com.exercise.banking.service.transfer.model.Payee;
 import com.exercise.banking.service.transfer.model.Transaction;
+import com.exercise.banking.service.transfer.model.TransactionStatus;
 import com.exercise.banking.service.transfer.model.TransferType;
+import com.exercise.banking.service.transfer.outbox.TransferOutbox;
 import com.exercise.banking.service.transfer.service.AccountService;
 import com.exercise.banking.service.transfer.service.TransactionService;
 /**
- * Service class handles inter bank transactions
+ * Service class handles inter bank transactions.
+ *
+ * With the {@link TransferOutbox}, the transfer is written to the outbox in the transaction
+ * of the debit, and answered as SUBMITTED. The outbox dispatcher sends it through the
+ * {@link ExternalBankClient} and completes the transaction with the answer of the bank of
+ * the payee, so neither the request thread nor the locks and the connection of the local
+ * transaction wait on a slow counterparty. The bank client is only used through the
+ * outbox: a transfer sent once after the commit could be debited and never delivered.
+ *
+ * With the {@link BankBulkheads}, a transfer to a bank whose circuit is open fails right
+ * away with a BankUnavailableException, before the payer is debited.
  */
 @Service
 public class InterBankTransferService extends  AbstractTransferServiceImpl{
 
 	private static final Logger logger = LoggerFactory.getLogger(InterBankTransferService.class);
 
-	public InterBankTransferService( TransactionService txnService,AccountService accountService) {
-		super(txnService, accountService);
+	private final Optional<TransferOutbox> outbox;
+	private final Optional<BankBulkheads> bulkheads;
+
+	public InterBankTransferService( TransactionService txnService,AccountService accountService, TransferExecutor transferExecutor,
+			Optional<ShardedLedgerEngine> ledgerEngine, Optional<GroupCommitWriter> groupCommitWriter, IdempotencyCache idempotencyCache,
+			RequestReservations reservations, InFlightRequests inFlightRequests, Optional<ExternalBankClient> bankClient,
+			Optional<TransferOutbox> outbox, Optional<BankBulkheads> bulkheads) {
+		super(txnService, accountService, transferExecutor, ledgerEngine, groupCommitWriter, idempotencyCache, reservations, inFlightRequests);
+		if (bankClient.isPresent() && outbox.isEmpty()) {
+			throw new IllegalStateException("transfer.bank-client.enabled requires transfer.outbox.enabled=true and transfer.ledger.enabled=false");
+		}
+		this.outbox = outbox;
+		this.bulkheads = bulkheads;
+	}
+
+	@Override
+	protected TransferType getTransferType() {
+		return TransferType.INTER_BANK_TRANSFER;
 	}
 
 
 	@Override
-	protected Transaction executeTransfer(Account payerAccount, Payee payee, TransferRequestV1 request) {
+	protected Transaction executeTransfer(Transaction transaction, Payee payee, TransferRequestV1 request) {
 		logger.info("Executing inter-bank transfer");
-		Transaction txn = recordTransaction(payerAccount, payee,request,TransferType.INTER_BANK_TRANSFER);
+		if (outbox.isPresent()) {
+			// Refused before the debit, rather than waiting in the outbox for a bank that keeps failing
+			bulkheads.ifPresent(bulkhead -> bulkhead.checkAvailable(request.getPayeeBankCode(), request.getRequestId()));
+		}
+		Transaction txn = recordTransaction(transaction, payee,request);
 
-		// TODO call the other bank service API
-		logger.info("Calling external bank API  ");
-
-		logger.info("Txn: {} Transfer of {} completed successfully from Payer accountto Payee account",txn.getTransactionId(), request.getAmount());
+		if (outbox.isPresent()) {
+			// Committed or rolled back with the debit, no remote call is made in the transaction
+			outbox.get().add(List.of(new OutboxEntry(txn, request)));
+			logger.info("Txn: {} Transfer of {} submitted from Payer account to the bank of the Payee",txn.getTransactionId(), request.getAmount());
+		} else {
+			logger.info("Txn: {} Transfer of {} completed successfully from Payer accountto Payee account",txn.getTransactionId(), request.getAmount());
+		}
 
 		return txn;
 	}
 
-
+	@Override
+	protected TransactionStatus completedStatus() {
+		// Complete once the bank of the payee has answered
+		return outbox.isPresent() ? TransactionStatus.SUBMITTED : TransactionStatus.SUCCESS;
+	}
 }
@@ -1,18 +1,30 @@
 package com.exercise.banking.service.transfer.service.impl;
 
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import com.exercise.banking.service.transfer.concurrency.LockingStrategy;
+import com.exercise.banking.service.transfer.concurrency.TransferExecutor;
 import com.exercise.banking.service.transfer.dto.TransferRequestV1;
 import com.exercise.banking.service.transfer.exception.AccountNotFoundException;
-import com.exercise.banking.service.transfer.model.Account;
+import com.exercise.banking.service.transfer.groupcommit.GroupCommitWriter;
+import com.exercise.banking.service.transfer.groupcommit.TransferWriter;
+import com.exercise.banking.service.transfer.idempotency.IdempotencyCache;
+import com.exercise.banking.service.transfer.idempotency.InFlightRequests;
+import com.exercise.banking.service.transfer.idempotency.RequestReservations;
+import com.exercise.banking.service.transfer.ledger.ShardedLedgerEngine;
 import com.exercise.banking.service.transfer.model.Payee;
 import com.exercise.banking.service.transfer.model.Transaction;
 import com.exercise.banking.service.transfer.model.TransferType;
+import com.exercise.banking.service.transfer.netting.NettingEngine;
 import com.exercise.banking.service.transfer.service.AccountService;
 import com.exercise.banking.service.transfer.service.TransactionService;
 /**
@@ -23,14 +35,56 @@ public class IntraBankTransferService extends AbstractTransferServiceImpl {
 
 	private static final Logger logger = LoggerFactory.getLogger(IntraBankTransferService.class);
 
-	public IntraBankTransferService(TransactionService txnService,AccountService accountService) {
-		super(txnService, accountService);
+	private final LockingStrategy lockingStrategy;
+	private final Optional<NettingEngine> nettingEngine;
+
+	public IntraBankTransferService(TransactionService txnService,AccountService accountService, TransferExecutor transferExecutor,
+			@Value("${transfer.intra-bank.locking-strategy:ATOMIC_UPDATE}") LockingStrategy lockingStrategy,
+			Optional<ShardedLedgerEngine> ledgerEngine, Optional<GroupCommitWriter> groupCommitWriter, IdempotencyCache idempotencyCache,
+			RequestReservations reservations, InFlightRequests inFlightRequests, Optional<NettingEngine> nettingEngine) {
+		super(txnService, accountService, transferExecutor, ledgerEngine, groupCommitWriter, idempotencyCache, reservations, inFlightRequests);
+		this.lockingStrategy = lockingStrategy;
+		this.nettingEngine = nettingEngine;
+		logger.info("Intra bank transfers use {} locking", lockingStrategy);
+	}
+
+	/**
+	 * Both the payer and the payee accounts are updated for an intra bank transfer.
+	 */
+	@Override
+	protected Collection<String> accountsToLock(TransferRequestV1 request) {
+		return List.of(request.getPayerAccNumber(), request.getPayeeAccNumber());
 	}
 
+	/**
+	 * The payee account is in this bank and is credited locally.
+	 */
 	@Override
-	protected synchronized Transaction executeTransfer(Account payerAccount, Payee payee, TransferRequestV1 request) throws AccountNotFoundException {
+	protected String accountToCredit(TransferRequestV1 request) {
+		return request.getPayeeAccNumber();
+	}
+
+	/**
+	 * With netting, transfers are settled with the other transfers between the same accounts.
+	 */
+	@Override
+	protected Optional<TransferWriter> transferWriter() {
+		return nettingEngine.isPresent() ? nettingEngine.map(engine -> engine) : super.transferWriter();
+	}
+
+	@Override
+	protected TransferType getTransferType() {
+		return TransferType.INTRA_BANK_TRANSFER;
+	}
+
+	@Override
+	protected Transaction executeTransfer(Transaction transaction, Payee payee, TransferRequestV1 request) throws AccountNotFoundException {
 		logger.debug("Trying to execute intra-bank transfer");
-		Transaction txn = recordTransaction(payerAccount, payee, request,TransferType.INTRA_BANK_TRANSFER);
+		if (lockingStrategy == LockingStrategy.PESSIMISTIC) {
+			// Sorted row locks: concurrent A->B and B->A transfers wait instead of deadlocking
+			accountService.lockAccountsInOrder(accountsToLock(request), request.getRequestId());
+		}
+		Transaction txn = recordTransaction(transaction, payee, request);
 		logger.info("Txn: {} Transfer of {} completed successfully.", txn.getTransactionId(),request.getAmount());
 		return txn;
 	}
@@ -39,30 +93,16 @@ public class IntraBankTransferService extends AbstractTransferServiceImpl {
 	 * Credit the amount to Payee's account
 	 * @param payeeAccountNum
 	 * @param amount
-	 * @return
 	 */
 	private  void updatePayeeBalance( String payeeAccNum, BigDecimal amount,UUID requestId) {
 		// Add the transfered amount to the payee's account balance
-		Account payeeAccount = getPayeeAccount(payeeAccNum,requestId);
-		this.accountService.creditToAccount(payeeAccount, amount, requestId);
-		logger.info("Payee Account balance updated to {}", payeeAccount.getBalance());
+		this.accountService.creditToAccount(payeeAccNum, amount, requestId);
+		logger.info("Payee Account credited with {}", amount);
 	}
 
-	/**
-	 * 
-	 * @param payeeAccountNum
-	 * @param requestId 
-	 * @return
-	 */
-	private Account getPayeeAccount(String payeeAccountNum, UUID requestId) {
-		logger.debug("Getting Payee account details ");
-		return this.accountService.getAccountByNumberOrThrow(payeeAccountNum, requestId);
-		
-	}
-	
 	@Override
-	protected Transaction recordTransaction(Account payerAccount, Payee payee, TransferRequestV1 request,TransferType type) {
-		Transaction txn= super.recordTransaction(payerAccount, payee, request, type);
+	protected Transaction recordTransaction(Transaction transaction, Payee payee, TransferRequestV1 request) {
+		Transaction txn= super.recordTransaction(transaction, payee, request);
 		// update Payee account balance
 		this.updatePayeeBalance(request.getPayeeAccNumber(), request.getAmount(), request.getRequestId());
 		return txn;
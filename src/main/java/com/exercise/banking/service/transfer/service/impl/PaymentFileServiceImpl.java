@@ -0,0 +1,224 @@
+package com.exercise.banking.service.transfer.service.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.exercise.banking.service.transfer.dto.BatchItemResultV1;
+import com.exercise.banking.service.transfer.dto.PaymentFileFormat;
+import com.exercise.banking.service.transfer.dto.PaymentFileRecordErrorV1;
+import com.exercise.banking.service.transfer.dto.PaymentFileResultV1;
+import com.exercise.banking.service.transfer.dto.TransferRequestV1;
+import com.exercise.banking.service.transfer.exception.PaymentFileInProgressException;
+import com.exercise.banking.service.transfer.ingestion.PaymentFileReader;
+import com.exercise.banking.service.transfer.model.FileCheckpoint;
+import com.exercise.banking.service.transfer.repository.FileCheckpointRepository;
+import com.exercise.banking.service.transfer.service.BatchTransferService;
+import com.exercise.banking.service.transfer.service.PaymentFileService;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Streams payment files through the batch transfer service: records are parsed while the
+ * upload is read and executed {@code transfer.batch.chunk-size} at a time, so only one
+ * chunk of the file is in memory. After every chunk a {@link FileCheckpoint} records how
+ * many records of the file were executed, in its own transaction.
+ *
+ * An upload of a file that was interrupted parses the records already executed without
+ * executing them again. Records without a request id get one derived from their position,
+ * so a record of a chunk that was executed but not checkpointed is answered as a duplicate.
+ *
+ * The time spent reading, executing and checkpointing is recorded per chunk in the
+ * {@code transfer.file.stage} timers.
+ */
+@Service
+public class PaymentFileServiceImpl implements PaymentFileService {
+
+	private static final Logger logger = LoggerFactory.getLogger(PaymentFileServiceImpl.class);
+
+	private final BatchTransferService batchTransferService;
+	private final FileCheckpointRepository checkpointRepo;
+	private final int maxReportedFailures;
+	private final Set<UUID> filesInProgress = ConcurrentHashMap.newKeySet();
+
+	private final Timer readTimer;
+	private final Timer executeTimer;
+	private final Timer checkpointTimer;
+	private final Counter recordsCounter;
+
+	public PaymentFileServiceImpl(BatchTransferService batchTransferService, FileCheckpointRepository checkpointRepo,
+			@Value("${transfer.file.max-reported-failures:100}") int maxReportedFailures, MeterRegistry meterRegistry) {
+		this.batchTransferService = batchTransferService;
+		this.checkpointRepo = checkpointRepo;
+		this.maxReportedFailures = Math.max(0, maxReportedFailures);
+		this.readTimer = stageTimer("read", meterRegistry);
+		this.executeTimer = stageTimer("execute", meterRegistry);
+		this.checkpointTimer = stageTimer("checkpoint", meterRegistry);
+		this.recordsCounter = Counter.builder("transfer.file.records")
+				.description("Records of payment files read, including the records skipped on resume")
+				.register(meterRegistry);
+	}
+
+	private static Timer stageTimer(String stage, MeterRegistry meterRegistry) {
+		return Timer.builder("transfer.file.stage")
+				.description("Time spent per chunk of a payment file, by stage")
+				.tag("stage", stage)
+				.register(meterRegistry);
+	}
+
+	@Override
+	public PaymentFileResultV1 performFileV1(UUID fileId, PaymentFileFormat format, InputStream content) {
+		if (!filesInProgress.add(fileId)) {
+			throw new PaymentFileInProgressException(fileId);
+		}
+		try {
+			FileCheckpoint checkpoint = checkpointRepo.findById(fileId).orElseGet(() -> new FileCheckpoint(fileId, format));
+			if (checkpoint.isCompleted()) {
+				logger.info("Payment file was completed before, answering with its outcome");
+				return result(checkpoint, checkpoint.getRecordsDone(), List.of());
+			}
+			long resumedFrom = checkpoint.getRecordsDone();
+			try (PaymentFileReader reader = PaymentFileReader.open(format, fileId, content)) {
+				return execute(reader, checkpoint, resumedFrom);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		} finally {
+			filesInProgress.remove(fileId);
+		}
+	}
+
+	private PaymentFileResultV1 execute(PaymentFileReader reader, FileCheckpoint checkpoint, long resumedFrom) {
+		StageClock clock = new StageClock();
+		if (resumedFrom > 0) {
+			logger.info("Resuming payment file after record {}", resumedFrom);
+			while (reader.getRecordsRead() < resumedFrom && clock.hasNext(reader)) {
+				clock.next(reader);
+			}
+		}
+		List<PaymentFileRecordErrorV1> failures = new ArrayList<>();
+		Iterator<TransferRequestV1> transfers = new Iterator<>() {
+			@Override
+			public boolean hasNext() {
+				return clock.hasNext(reader);
+			}
+
+			@Override
+			public TransferRequestV1 next() {
+				return clock.next(reader);
+			}
+		};
+		batchTransferService.performStreamV1(checkpoint.getFileId(), transfers, results -> {
+			clock.chunkExecuted();
+			long record = checkpoint.getRecordsDone();
+			for (BatchItemResultV1 result : results) {
+				record++;
+				switch (result.getStatus()) {
+					case SUCCESS -> checkpoint.setSucceeded(checkpoint.getSucceeded() + 1);
+					case DUPLICATE -> checkpoint.setDuplicates(checkpoint.getDuplicates() + 1);
+					default -> {
+						checkpoint.setFailed(checkpoint.getFailed() + 1);
+						if (failures.size() < maxReportedFailures) {
+							failures.add(new PaymentFileRecordErrorV1(record, result.getRequestId(), result.getError()));
+						}
+					}
+				}
+			}
+			checkpoint.setRecordsDone(record);
+			checkpointTimer.record(() -> checkpointRepo.save(checkpoint));
+			clock.restart();
+		});
+		clock.finish();
+		checkpoint.setCompleted(true);
+		checkpointTimer.record(() -> checkpointRepo.save(checkpoint));
+
+		long records = checkpoint.getRecordsDone();
+		long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(clock.totalNanos()));
+		logger.info("Payment file of {} records: {} succeeded, {} duplicates, {} failed. Read {} ms, executed {} ms, {} records/s",
+				records, checkpoint.getSucceeded(), checkpoint.getDuplicates(), checkpoint.getFailed(),
+				TimeUnit.NANOSECONDS.toMillis(clock.readNanos), TimeUnit.NANOSECONDS.toMillis(clock.executeNanos),
+				(records - resumedFrom) * 1000 / millis);
+		return result(checkpoint, resumedFrom, failures);
+	}
+
+	private static PaymentFileResultV1 result(FileCheckpoint checkpoint, long resumedFrom, List<PaymentFileRecordErrorV1> failures) {
+		return new PaymentFileResultV1(checkpoint.getFileId(), checkpoint.getFormat(), checkpoint.getRecordsDone(), resumedFrom,
+				checkpoint.getSucceeded(), checkpoint.getDuplicates(), checkpoint.getFailed(), failures);
+	}
+
+	/**
+	 * Splits the time of a chunk between reading the records and executing them. Reading
+	 * is interleaved with the batch service, so it is timed around every record.
+	 */
+	private final class StageClock {
+
+		private final long started = System.nanoTime();
+		private long chunkStarted = started;
+		private long chunkReadNanos;
+		private long readNanos;
+		private long executeNanos;
+
+		private boolean hasNext(PaymentFileReader reader) {
+			long start = System.nanoTime();
+			try {
+				return reader.hasNext();
+			} finally {
+				chunkReadNanos += System.nanoTime() - start;
+			}
+		}
+
+		private TransferRequestV1 next(PaymentFileReader reader) {
+			long start = System.nanoTime();
+			try {
+				return reader.next();
+			} finally {
+				chunkReadNanos += System.nanoTime() - start;
+				recordsCounter.increment();
+			}
+		}
+
+		/**
+		 * Records the time since the last chunk, less the reading, as execution
+		 */
+		private void chunkExecuted() {
+			long execute = Math.max(0, System.nanoTime() - chunkStarted - chunkReadNanos);
+			readTimer.record(chunkReadNanos, TimeUnit.NANOSECONDS);
+			executeTimer.record(execute, TimeUnit.NANOSECONDS);
+			readNanos += chunkReadNanos;
+			executeNanos += execute;
+			chunkReadNanos = 0;
+			chunkStarted = System.nanoTime();
+		}
+
+		/**
+		 * Records the reading of the end of the file
+		 */
+		private void finish() {
+			readTimer.record(chunkReadNanos, TimeUnit.NANOSECONDS);
+			readNanos += chunkReadNanos;
+			chunkReadNanos = 0;
+		}
+
+		private void restart() {
+			chunkStarted = System.nanoTime();
+		}
+
+		private long totalNanos() {
+			return System.nanoTime() - started;
+		}
+	}
+}
@@ -1,11 +1,17 @@
 package com.exercise.banking.service.transfer.service.impl;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.exercise.banking.service.transfer.model.Transaction;
+import com.exercise.banking.service.transfer.model.TransactionStatus;
 import com.exercise.banking.service.transfer.repository.TransactionRepository;
 import com.exercise.banking.service.transfer.service.TransactionService;
 @Service
@@ -17,8 +23,17 @@ public class TransactionServiceImpl implements TransactionService{
     	this.txnRepository = txnRepository;
     }
 
+	/**
+	 * A transaction that has an id was reserved before, only its status, payer and payee
+	 * change: it is completed with one update instead of being read back and merged.
+	 */
 	@Override
+	@Transactional
 	public Transaction saveTransaction(Transaction txn) {
+		if (txn.getTransactionId() != null
+				&& this.txnRepository.complete(txn.getTransactionId(), txn.getStatus(), txn.getPayerAccount(), txn.getPayee()) == 1) {
+			return txn;
+		}
 		return this.txnRepository.save(txn);
 	}
 
@@ -27,4 +42,39 @@ public class TransactionServiceImpl implements TransactionService{
 		return this.txnRepository.findByRequestId(requestId);
 	}
 
+	@Override
+	public List<Transaction> findByRequestIds(Collection<UUID> requestIds) {
+		return this.txnRepository.findByRequestIdIn(requestIds);
+	}
+
+	@Override
+	@Transactional
+	public List<Transaction> insertTransactions(List<Transaction> txns) {
+		return this.txnRepository.saveAllAndFlush(txns);
+	}
+
+	@Override
+	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	public Transaction reserve(Transaction txn) {
+		// Flushed here so that a duplicate request id fails this call, not the commit
+		return this.txnRepository.saveAndFlush(txn);
+	}
+
+	@Override
+	public Optional<TransactionStatus> findStatusByRequestId(UUID requestId) {
+		return this.txnRepository.findStatusByRequestId(requestId);
+	}
+
+	@Override
+	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	public boolean releaseReservation(UUID requestId) {
+		return this.txnRepository.deletePending(requestId) > 0;
+	}
+
+	@Override
+	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	public boolean releaseExpiredReservation(UUID requestId, LocalDateTime cutoff) {
+		return this.txnRepository.deletePendingCreatedBefore(requestId, cutoff) > 0;
+	}
+
 }
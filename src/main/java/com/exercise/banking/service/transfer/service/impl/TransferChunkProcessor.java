@@ -0,0 +1,290 @@
+package com.exercise.banking.service.transfer.service.impl;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import com.exercise.banking.service.transfer.concurrency.TransferExecutor;
+import com.exercise.banking.service.transfer.config.BankConfiguration;
+import com.exercise.banking.service.transfer.dto.TransferRequestV1;
+import com.exercise.banking.service.transfer.dto.TransferResponseV1;
+import com.exercise.banking.service.transfer.exception.AccountNotFoundException;
+import com.exercise.banking.service.transfer.exception.BaseTransferException;
+import com.exercise.banking.service.transfer.exception.InsufficientFundsException;
+import com.exercise.banking.service.transfer.exception.PayeeNotRegisteredException;
+import com.exercise.banking.service.transfer.exception.TransferInProgressException;
+import com.exercise.banking.service.transfer.idempotency.IdempotencyCache;
+import com.exercise.banking.service.transfer.idempotency.RequestIdFilter;
+import com.exercise.banking.service.transfer.model.OutboxEntry;
+import com.exercise.banking.service.transfer.model.Payee;
+import com.exercise.banking.service.transfer.model.Transaction;
+import com.exercise.banking.service.transfer.model.TransactionStatus;
+import com.exercise.banking.service.transfer.model.TransferType;
+import com.exercise.banking.service.transfer.outbox.TransferOutbox;
+import com.exercise.banking.service.transfer.repository.AccountView;
+import com.exercise.banking.service.transfer.service.AccountService;
+import com.exercise.banking.service.transfer.service.TransactionService;
+
+/**
+ * Executes a chunk of transfers in one database transaction, for the batch endpoint and
+ * the group commit writer.
+ *
+ * The chunk holds the locks of all its accounts. The accounts are read in one query and
+ * the transfers are checked in order against running balances, then the net change of
+ * every account is applied with one update per account and the transactions are inserted
+ * in JDBC batches. The transactions are inserted as completed, without a reservation: a
+ * request id used by another request meanwhile fails the insert of the whole chunk.
+ * With the {@link TransferOutbox}, the inter bank transfers of the chunk are written to the
+ * outbox in the same transaction and recorded as SUBMITTED.
+ */
+@Component
+public class TransferChunkProcessor {
+
+	private static final Logger logger = LoggerFactory.getLogger(TransferChunkProcessor.class);
+
+	private final AccountService accountService;
+	private final TransactionService txnService;
+	private final TransferExecutor transferExecutor;
+	private final BankConfiguration config;
+	private final IdempotencyCache idempotencyCache;
+	private final RequestIdFilter requestIdFilter;
+	private final Optional<TransferOutbox> outbox;
+
+	public TransferChunkProcessor(AccountService accountService, TransactionService txnService, TransferExecutor transferExecutor,
+			BankConfiguration config, IdempotencyCache idempotencyCache, RequestIdFilter requestIdFilter, Optional<TransferOutbox> outbox) {
+		this.accountService = accountService;
+		this.txnService = txnService;
+		this.transferExecutor = transferExecutor;
+		this.config = config;
+		this.idempotencyCache = idempotencyCache;
+		this.requestIdFilter = requestIdFilter;
+		this.outbox = outbox;
+	}
+
+	/**
+	 * Finds the transfers whose request ids were used before, in the idempotency cache
+	 * first. The others the request id filter may have seen are looked up in one query.
+	 * @param chunkId id of the chunk, used for the locks and the logs
+	 * @param transfers
+	 * @return outcome of the transfers that were used before, keyed by their position: the
+	 * response marked as duplicate, or a TransferInProgressException if it is still pending
+	 */
+	public Map<Integer, Outcome> findDuplicates(UUID chunkId, List<TransferRequestV1> transfers) {
+		Map<Integer, Outcome> duplicates = new HashMap<>();
+		Map<UUID, Integer> lookups = new HashMap<>();
+		for (int i = 0; i < transfers.size(); i++) {
+			UUID requestId = transfers.get(i).getRequestId();
+			Optional<TransferResponseV1> cached = idempotencyCache.get(requestId);
+			if (cached.isPresent()) {
+				duplicates.put(i, new Outcome(new TransferResponseV1.Builder().from(cached.get()).withIsDuplicate(true).build(), null));
+			} else if (requestIdFilter.mightContain(requestId)) {
+				lookups.put(requestId, i);
+			}
+		}
+		if (lookups.isEmpty()) {
+			return duplicates;
+		}
+		transferExecutor.execute(chunkId, List.of(), () -> {
+			for (Transaction txn : txnService.findByRequestIds(lookups.keySet())) {
+				int i = lookups.get(txn.getRequestId());
+				if (txn.getStatus() == TransactionStatus.PENDING) {
+					duplicates.put(i, new Outcome(null, new TransferInProgressException(txn.getRequestId())));
+				} else {
+					logger.info("Duplicate transaction {} detected in chunk", txn.getTransactionId());
+					duplicates.put(i, new Outcome(AbstractTransferServiceImpl.sendResponse(txn, txn.getPayee(),
+							txn.getPayerAccount().getBalance(), true), null));
+				}
+			}
+			return null;
+		});
+		return duplicates;
+	}
+
+	/**
+	 * Executes the transfers in one transaction. The responses of the executed transfers are
+	 * cached once the transaction is committed.
+	 * @param chunkId id of the chunk, used for the locks and the logs
+	 * @param transfers transfers whose request ids are not used yet, in the order to execute them
+	 * @param allOrNothing true to write nothing unless every transfer can be executed
+	 * @return outcome of every transfer, in the order of the chunk
+	 * @throws org.springframework.dao.DataIntegrityViolationException if a request id was used meanwhile, nothing is written
+	 * @throws BaseTransferException if the chunk could not lock its accounts or conflicted with another writer
+	 */
+	public List<Outcome> execute(UUID chunkId, List<TransferRequestV1> transfers, boolean allOrNothing) {
+		Set<String> accounts = new LinkedHashSet<>();
+		for (TransferRequestV1 transfer : transfers) {
+			accounts.add(transfer.getPayerAccNumber());
+			if (isIntraBank(transfer)) {
+				accounts.add(transfer.getPayeeAccNumber());
+			}
+		}
+		List<Outcome> outcomes = transferExecutor.execute(chunkId, accounts,
+				() -> process(chunkId, transfers, accounts, allOrNothing));
+		for (Outcome outcome : outcomes) {
+			if (outcome.response() != null) {
+				// Committed, retries of the transfer are answered without querying the database
+				idempotencyCache.put(outcome.response().getRequestId(), outcome.response());
+				requestIdFilter.put(outcome.response().getRequestId());
+			}
+		}
+		return outcomes;
+	}
+
+	/**
+	 * Answers the transfers whose request ids were used before, then executes the others in
+	 * one transaction, best effort. A request id used meanwhile by another writer fails the
+	 * insert of the whole chunk, the chunk is then checked and executed once more.
+	 * @param chunkId id of the chunk, used for the locks and the logs
+	 * @param transfers transfers in the order to execute them
+	 * @return outcome of every transfer, in the order of the chunk
+	 * @throws BaseTransferException if the chunk could not lock its accounts or conflicted with another writer
+	 */
+	public List<Outcome> executeOrAnswer(UUID chunkId, List<TransferRequestV1> transfers) {
+		Outcome[] outcomes = new Outcome[transfers.size()];
+		for (int attempt = 1; ; attempt++) {
+			List<Integer> remaining = new ArrayList<>();
+			for (int i = 0; i < transfers.size(); i++) {
+				if (outcomes[i] == null) {
+					remaining.add(i);
+				}
+			}
+			Map<Integer, Outcome> duplicates = findDuplicates(chunkId, remaining.stream().map(transfers::get).toList());
+			duplicates.forEach((i, duplicate) -> outcomes[remaining.get(i)] = duplicate);
+			List<Integer> executable = remaining.stream().filter(i -> outcomes[i] == null).toList();
+			if (executable.isEmpty()) {
+				return Arrays.asList(outcomes);
+			}
+			try {
+				List<Outcome> executed = execute(chunkId, executable.stream().map(transfers::get).toList(), false);
+				for (int i = 0; i < executable.size(); i++) {
+					outcomes[executable.get(i)] = executed.get(i);
+				}
+				return Arrays.asList(outcomes);
+			} catch (DataIntegrityViolationException e) {
+				if (attempt > 1) {
+					throw e;
+				}
+				logger.warn("Request id of a transfer of chunk {} was used meanwhile, checking the chunk again", chunkId);
+			}
+		}
+	}
+
+	/**
+	 * Runs inside the transaction opened by the transfer executor, while the accounts of the chunk are locked
+	 */
+	private List<Outcome> process(UUID chunkId, List<TransferRequestV1> transfers, Set<String> accounts, boolean allOrNothing) {
+		int size = transfers.size();
+		Payee[] payees = new Payee[size];
+		BaseTransferException[] failures = new BaseTransferException[size];
+		for (int c = 0; c < size; c++) {
+			TransferRequestV1 transfer = transfers.get(c);
+			try {
+				payees[c] = accountService.getPayeeByAccountNumbersOrThrow(transfer.getPayerAccNumber(), transfer.getPayeeAccNumber(),
+						transfer.getPayeeBankCode(), transfer.getRequestId());
+			} catch (AccountNotFoundException | PayeeNotRegisteredException e) {
+				failures[c] = e;
+			}
+		}
+
+		Map<String, BigDecimal> balances = new HashMap<>();
+		for (AccountView view : accountService.getAccountViews(accounts).values()) {
+			balances.put(view.accNum(), view.balance());
+		}
+		// Sorted, the accounts are updated in the same order by every chunk
+		Map<String, BigDecimal> deltas = new TreeMap<>();
+		BigDecimal[] payerBalances = new BigDecimal[size];
+		for (int c = 0; c < size; c++) {
+			if (failures[c] != null) {
+				continue;
+			}
+			TransferRequestV1 transfer = transfers.get(c);
+			String payer = transfer.getPayerAccNumber();
+			String payee = isIntraBank(transfer) ? transfer.getPayeeAccNumber() : null;
+			if (!balances.containsKey(payer) || payee != null && !balances.containsKey(payee)) {
+				failures[c] = new AccountNotFoundException(transfer.getRequestId());
+			} else if (balances.get(payer).compareTo(transfer.getAmount()) < 0) {
+				failures[c] = new InsufficientFundsException(transfer.getRequestId());
+			} else {
+				balances.merge(payer, transfer.getAmount().negate(), BigDecimal::add);
+				deltas.merge(payer, transfer.getAmount().negate(), BigDecimal::add);
+				if (payee != null) {
+					balances.merge(payee, transfer.getAmount(), BigDecimal::add);
+					deltas.merge(payee, transfer.getAmount(), BigDecimal::add);
+				}
+				payerBalances[c] = balances.get(payer);
+			}
+		}
+
+		List<Outcome> outcomes = new ArrayList<>(size);
+		if (allOrNothing && Arrays.stream(failures).anyMatch(failure -> failure != null)) {
+			logger.info("Transfer of an all or nothing chunk cannot be executed, nothing is written");
+			Arrays.stream(failures).forEach(failure -> outcomes.add(new Outcome(null, failure)));
+			return outcomes;
+		}
+
+		deltas.forEach((accNum, delta) -> {
+			if (delta.signum() != 0) {
+				accountService.applyBalanceChange(accNum, delta, chunkId);
+			}
+		});
+		List<Transaction> txns = new ArrayList<>();
+		for (int c = 0; c < size; c++) {
+			if (failures[c] == null) {
+				TransferRequestV1 transfer = transfers.get(c);
+				txns.add(new Transaction(null, transfer.getRequestId(), payees[c].getPayerAccount(), payees[c], transfer.getAmount(),
+						transfer.getCurrency(), null, completedStatus(transfer), transferType(transfer).getValue()));
+			}
+		}
+		List<Transaction> saved = txns.isEmpty() ? txns : txnService.insertTransactions(txns);
+		logger.info("Chunk of {} transfers recorded {} transactions", size, saved.size());
+
+		List<OutboxEntry> outboxEntries = new ArrayList<>();
+		int next = 0;
+		for (int c = 0; c < size; c++) {
+			if (failures[c] != null) {
+				outcomes.add(new Outcome(null, failures[c]));
+			} else {
+				Transaction txn = saved.get(next++);
+				if (outbox.isPresent() && !isIntraBank(transfers.get(c))) {
+					outboxEntries.add(new OutboxEntry(txn, transfers.get(c)));
+				}
+				outcomes.add(new Outcome(AbstractTransferServiceImpl.sendResponse(txn, payees[c], payerBalances[c], false), null));
+			}
+		}
+		outbox.ifPresent(writer -> writer.add(outboxEntries));
+		return outcomes;
+	}
+
+	private TransactionStatus completedStatus(TransferRequestV1 transfer) {
+		return outbox.isPresent() && !isIntraBank(transfer) ? TransactionStatus.SUBMITTED : TransactionStatus.SUCCESS;
+	}
+
+	private boolean isIntraBank(TransferRequestV1 transfer) {
+		return transferType(transfer) == TransferType.INTRA_BANK_TRANSFER;
+	}
+
+	private TransferType transferType(TransferRequestV1 transfer) {
+		return config.getBankCode().equals(transfer.getPayeeBankCode()) ? TransferType.INTRA_BANK_TRANSFER
+				: TransferType.INTER_BANK_TRANSFER;
+	}
+
+	/**
+	 * Outcome of a transfer of a chunk: the response if it was executed, the failure if it
+	 * was rejected, neither if it was not executed because another transfer was rejected
+	 */
+	public record Outcome(TransferResponseV1 response, BaseTransferException failure) {
+	}
+}
@@ -0,0 +1,94 @@
+package com.exercise.banking.service.transfer.bankclient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.exercise.banking.service.transfer.dto.TransferRequestV1;
+import com.exercise.banking.service.transfer.exception.BankUnavailableException;
+import com.exercise.banking.service.transfer.model.Account;
+import com.exercise.banking.service.transfer.model.Bank;
+import com.exercise.banking.service.transfer.model.Payee;
+import com.exercise.banking.service.transfer.repository.AccountRepository;
+import com.exercise.banking.service.transfer.repository.BankRepository;
+import com.exercise.banking.service.transfer.repository.TransactionRepository;
+import com.exercise.banking.service.transfer.service.impl.InterBankTransferService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * The stub fails every transfer: two failures open the circuit of the bank for a minute.
+ */
+@SpringBootTest(properties = { "transfer.bank-client.enabled=true", "transfer.outbox.enabled=true", "transfer.outbox.poll-ms=20",
+		"transfer.outbox.initial-backoff-ms=20", "transfer.bank-bulkhead.enabled=true", "transfer.bank-bulkhead.failure-threshold=2",
+		"transfer.bank-bulkhead.open-ms=60000", "transfer.stub-bank.enabled=true", "transfer.stub-bank.port=0",
+		"transfer.stub-bank.latency-ms=0", "transfer.stub-bank.error-rate=1.0" })
+class BankBulkheadDeliveryTest {
+
+	private static final String OTHER_BANK = "B00001";
+
+	@Autowired
+	private InterBankTransferService transferService;
+
+	@Autowired
+	private StubBankServer stubBank;
+
+	@Autowired
+	private AccountRepository accRepo;
+
+	@Autowired
+	private BankRepository bankRepo;
+
+	@Autowired
+	private TransactionRepository txnRepo;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Test
+	void testOpenCircuitFailsBeforeTheDebit() throws InterruptedException {
+		Bank otherBank = bankRepo.findById(OTHER_BANK).orElseThrow();
+		otherBank.setEndpoint(stubBank.getEndpoint());
+		bankRepo.save(otherBank);
+		Bank bank = bankRepo.findById("A00001").orElseThrow();
+		Account payer = new Account("7720001", new BigDecimal("100.00"), "Payer", bank, new HashSet<>());
+		payer.addPayee(new Payee(null, "Other bank payee", "7729999", otherBank, payer));
+		accRepo.save(payer);
+
+		// Accepted while the circuit is closed, then retried from the outbox until it opens
+		assertEquals("SUBMITTED", transferService.performTransferV1(request()).getStatus());
+		for (int attempt = 0; attempt < 50 && circuitState() != 2; attempt++) {
+			Thread.sleep(100);
+		}
+		assertEquals(2, circuitState());
+
+		TransferRequestV1 refused = request();
+		BankUnavailableException e = assertThrows(BankUnavailableException.class, () -> transferService.performTransferV1(refused));
+
+		assertEquals(OTHER_BANK, e.getBankCode());
+		assertTrue(e.getRetryAfterSeconds() > 0 && e.getRetryAfterSeconds() <= 60, "Retry after " + e.getRetryAfterSeconds());
+		// Refused before the debit, and the request id is free for a retry
+		assertEquals(new BigDecimal("90.00"), accRepo.findById("7720001").orElseThrow().getBalance());
+		assertEquals(0, txnRepo.findByRequestIdIn(List.of(refused.getRequestId())).size());
+	}
+
+	private double circuitState() {
+		return meterRegistry.find("transfer.bank-bulkhead.circuit.state").tag("bank", OTHER_BANK).gauges().stream()
+				.mapToDouble(gauge -> gauge.value()).findFirst().orElse(0);
+	}
+
+	private static TransferRequestV1 request() {
+		return new TransferRequestV1(UUID.randomUUID(), "7720001", "7729999", "BANK_B", OTHER_BANK, BigDecimal.TEN, "GBP",
+				Instant.now().toString());
+	}
+}
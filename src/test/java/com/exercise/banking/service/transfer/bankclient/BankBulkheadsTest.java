@@ -0,0 +1,122 @@
+package com.exercise.banking.service.transfer.bankclient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.exercise.banking.service.transfer.exception.BankUnavailableException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class BankBulkheadsTest {
+
+	private static final String BANK = "B00001";
+	private static final String OTHER_BANK = "C00001";
+	private static final int INITIAL_LIMIT = 4;
+	private static final long SLOW_CALL_MILLIS = 100;
+	private static final int FAILURE_THRESHOLD = 3;
+	private static final long OPEN_MILLIS = 5000;
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private AtomicLong clock;
+
+	private BankBulkheads bulkheads;
+
+	@BeforeEach
+	void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		clock = new AtomicLong();
+		bulkheads = new BankBulkheads(INITIAL_LIMIT, 1, 8, 0.5, SLOW_CALL_MILLIS, FAILURE_THRESHOLD, OPEN_MILLIS, meterRegistry, clock::get);
+	}
+
+	@Test
+	void testFullBulkhead() {
+		List<BankBulkheads.Permit> permits = acquire(BANK, INITIAL_LIMIT);
+
+		assertTrue(bulkheads.tryAcquire(BANK).isEmpty());
+		// New transfers wait in the outbox for a place
+		bulkheads.checkAvailable(BANK, UUID.randomUUID());
+		// The other banks have their own bulkheads
+		assertTrue(bulkheads.tryAcquire(OTHER_BANK).isPresent());
+		assertEquals(1.0, meterRegistry.get("transfer.bank-bulkhead.rejected").tag("bank", BANK).tag("reason", "saturated").counter().count());
+		assertEquals(INITIAL_LIMIT, gauge("transfer.bank-bulkhead.in-flight", BANK));
+
+		permits.get(0).release(true);
+		assertTrue(bulkheads.tryAcquire(BANK).isPresent());
+	}
+
+	@Test
+	void testLimitAdaptsToTheBank() {
+		// A round of calls answered in time makes room for about one more
+		for (int round = 0; round < 2; round++) {
+			acquire(BANK, INITIAL_LIMIT).forEach(permit -> permit.release(true));
+		}
+		assertEquals(INITIAL_LIMIT + 1, gauge("transfer.bank-bulkhead.limit", BANK));
+
+		// A slow answer halves it
+		BankBulkheads.Permit slow = bulkheads.tryAcquire(BANK).orElseThrow();
+		clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(SLOW_CALL_MILLIS + 1));
+		slow.release(true);
+		assertEquals(2, gauge("transfer.bank-bulkhead.limit", BANK));
+		acquire(BANK, 2);
+		assertTrue(bulkheads.tryAcquire(BANK).isEmpty());
+	}
+
+	@Test
+	void testCircuitOpensAfterFailuresAndIsProbed() {
+		for (int n = 0; n < FAILURE_THRESHOLD; n++) {
+			bulkheads.tryAcquire(BANK).orElseThrow().release(false);
+		}
+
+		BankUnavailableException e = assertThrows(BankUnavailableException.class, () -> bulkheads.checkAvailable(BANK, UUID.randomUUID()));
+		assertEquals(BANK, e.getBankCode());
+		assertEquals(5, e.getRetryAfterSeconds());
+		assertTrue(bulkheads.tryAcquire(BANK).isEmpty());
+		assertEquals(2, gauge("transfer.bank-bulkhead.circuit.state", BANK));
+
+		// Once the circuit has been open long enough, a single call probes the bank
+		clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(OPEN_MILLIS));
+		BankBulkheads.Permit probe = bulkheads.tryAcquire(BANK).orElseThrow();
+		assertTrue(bulkheads.tryAcquire(BANK).isEmpty());
+		probe.release(false);
+		assertTrue(bulkheads.tryAcquire(BANK).isEmpty());
+
+		clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(OPEN_MILLIS));
+		bulkheads.tryAcquire(BANK).orElseThrow().release(true);
+		assertEquals(0, gauge("transfer.bank-bulkhead.circuit.state", BANK));
+		assertTrue(bulkheads.tryAcquire(BANK).isPresent());
+	}
+
+	@Test
+	void testCancelledPermitDoesNotAdaptTheBulkhead() {
+		List<BankBulkheads.Permit> permits = acquire(BANK, INITIAL_LIMIT);
+		permits.forEach(BankBulkheads.Permit::cancel);
+		// Released twice, the place is only given back once
+		permits.get(0).release(false);
+
+		assertEquals(0, gauge("transfer.bank-bulkhead.in-flight", BANK));
+		assertEquals(INITIAL_LIMIT, gauge("transfer.bank-bulkhead.limit", BANK));
+	}
+
+	private List<BankBulkheads.Permit> acquire(String bankCode, int count) {
+		List<BankBulkheads.Permit> permits = new ArrayList<>();
+		for (int n = 0; n < count; n++) {
+			permits.add(bulkheads.tryAcquire(bankCode).orElseThrow());
+		}
+		return permits;
+	}
+
+	private double gauge(String name, String bankCode) {
+		return meterRegistry.get(name).tag("bank", bankCode).gauge().value();
+	}
+}
@@ -0,0 +1,148 @@
+package com.exercise.banking.service.transfer.bankclient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.exercise.banking.service.transfer.config.BankConfiguration;
+import com.exercise.banking.service.transfer.exception.ExternalBankException;
+import com.exercise.banking.service.transfer.registry.BankDirectory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class HttpExternalBankClientTest {
+
+	private static final String BANK_CODE = "B00001";
+
+	private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+	private final BankDirectory bankDirectory = mock(BankDirectory.class);
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private StubBankServer stubBank;
+	private HttpExternalBankClient client;
+
+	@AfterEach
+	void tearDown() {
+		if (client != null) {
+			client.stop();
+		}
+		if (stubBank != null) {
+			stubBank.stop();
+		}
+	}
+
+	@Test
+	void testTransferAccepted() throws Exception {
+		start(0, 0.0, 5000, 2);
+		BankTransferMessage message = message();
+
+		BankTransferAck ack = client.send(message).join();
+
+		assertTrue(ack.isAccepted());
+		assertEquals(message.transactionId(), ack.transactionId());
+		assertEquals(1, stubBank.getAccepted());
+		assertEquals(1, meterRegistry.get("transfer.bank-client.requests").tag("bank", BANK_CODE).tag("outcome", "accepted").timer().count());
+
+		// Sent again with the same transaction id, the bank acknowledges it once more
+		assertTrue(client.send(message).join().isAccepted());
+		assertEquals(1, stubBank.getDuplicates());
+	}
+
+	@Test
+	void testSettlementBatchAccepted() throws Exception {
+		start(0, 0.0, 5000, 2);
+		List<BankTransferMessage> transfers = IntStream.range(0, 5).mapToObj(n -> message()).toList();
+		SettlementBatch batch = SettlementBatch.of(BANK_CODE, transfers);
+
+		SettlementBatchAck ack = client.sendBatch(batch).join();
+
+		assertEquals(List.of(new SettlementPosition("GBP", new BigDecimal("50.00"), 5)), batch.positions());
+		assertEquals(batch.batchId(), ack.batchId());
+		assertEquals(transfers.stream().map(BankTransferMessage::transactionId).toList(),
+				ack.transfers().stream().map(BankTransferAck::transactionId).toList());
+		assertTrue(ack.transfers().stream().allMatch(BankTransferAck::isAccepted));
+		// One call for the whole batch
+		assertEquals(1, stubBank.getBatches());
+		assertEquals(5, stubBank.getAccepted());
+		assertEquals(1, meterRegistry.get("transfer.bank-client.batches").tag("bank", BANK_CODE).timer().count());
+	}
+
+	@Test
+	void testBankError() throws Exception {
+		start(0, 1.0, 5000, 2);
+
+		ExternalBankException e = failure(client.send(message()));
+
+		assertEquals(BANK_CODE, e.getBankCode());
+		assertTrue(e.getMessage().contains("503"), e.getMessage());
+		assertEquals(1, stubBank.getFailed());
+	}
+
+	@Test
+	void testSlowBankTimesOut() throws Exception {
+		start(1000, 0.0, 100, 2);
+
+		ExternalBankException e = failure(client.send(message()));
+
+		assertTrue(e.getMessage().contains("timed out"), e.getMessage());
+	}
+
+	@Test
+	void testBankWithoutEndpoint() throws Exception {
+		start(0, 0.0, 5000, 2);
+		when(bankDirectory.findEndpoint(BANK_CODE)).thenReturn(Optional.empty());
+
+		assertInstanceOf(ExternalBankException.class, failure(client.send(message())));
+	}
+
+	@Test
+	void testSlowBankDoesNotHoldThreads() throws Exception {
+		// One thread handles every answer, each one delayed by 200 ms
+		start(200, 0.0, 5000, 1);
+		long started = System.nanoTime();
+
+		List<CompletableFuture<BankTransferAck>> acks = IntStream.range(0, 100).mapToObj(n -> client.send(message())).toList();
+		acks.forEach(ack -> assertTrue(ack.join().isAccepted()));
+
+		long millis = (System.nanoTime() - started) / 1_000_000;
+		assertEquals(100, stubBank.getAccepted());
+		// Waiting on the answers one after the other would take 20 seconds
+		assertTrue(millis < 5000, "100 transfers took " + millis + " ms");
+	}
+
+	private void start(long latencyMillis, double errorRate, long requestTimeoutMillis, int threads) throws Exception {
+		stubBank = new StubBankServer(objectMapper, 0, latencyMillis, errorRate);
+		stubBank.start();
+		when(bankDirectory.findEndpoint(BANK_CODE)).thenReturn(Optional.of(stubBank.getEndpoint()));
+		BankConfiguration config = mock(BankConfiguration.class);
+		when(config.getBankCode()).thenReturn("A00001");
+		client = new HttpExternalBankClient(bankDirectory, config, objectMapper, "", 1000, requestTimeoutMillis,
+				threads, meterRegistry);
+	}
+
+	private static BankTransferMessage message() {
+		return new BankTransferMessage(UUID.randomUUID(), UUID.randomUUID(), "123456", "654321", BANK_CODE, new BigDecimal("10.00"),
+				"GBP", Instant.now().toString());
+	}
+
+	private static ExternalBankException failure(CompletableFuture<BankTransferAck> ack) {
+		CompletionException e = assertThrows(CompletionException.class, ack::join);
+		return assertInstanceOf(ExternalBankException.class, e.getCause());
+	}
+}
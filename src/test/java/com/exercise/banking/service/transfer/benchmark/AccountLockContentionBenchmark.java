@@ -0,0 +1,96 @@
+package com.exercise.banking.service.transfer.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.exercise.banking.service.transfer.concurrency.AccountLockManager;
+import com.exercise.banking.service.transfer.concurrency.TransferExecutor;
+import com.exercise.banking.service.transfer.concurrency.TransferRetryPolicy;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Contention benchmark for the account lock manager.
+ *
+ * Every client transfers between its own pair of accounts, so the clients never
+ * share an account. A single stripe behaves like the previous synchronized beans
+ * (one transfer at a time in the JVM); the striped manager should scale with the
+ * number of clients. The critical section parks for a short time to stand in for
+ * the database round trips of a transfer.
+ *
+ * Run with: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+class AccountLockContentionBenchmark {
+
+	private static final Logger logger = LoggerFactory.getLogger(AccountLockContentionBenchmark.class);
+
+	private static final long RUN_MILLIS = 2000;
+	private static final long SIMULATED_WORK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+	@ParameterizedTest
+	@ValueSource(ints = { 1, 8, 64 })
+	void benchmarkUnrelatedAccounts(int clients) throws InterruptedException {
+		double global = run(1, clients);
+		double striped = run(1024, clients);
+
+		logger.info("clients={} globalLock={} ops/s stripedLocks={} ops/s speedup={}x",
+				clients, Math.round(global), Math.round(striped), String.format("%.1f", striped / global));
+		assertTrue(global > 0 && striped > 0);
+	}
+
+	private double run(int stripes, int clients) throws InterruptedException {
+		TransferExecutor executor = new TransferExecutor(
+				new AccountLockManager(true, stripes, 60_000, new SimpleMeterRegistry()),
+				new TransferRetryPolicy(3, 1, 10, 0.2, 10),
+				mock(PlatformTransactionManager.class), new SimpleMeterRegistry());
+
+		LongAdder completed = new LongAdder();
+		CountDownLatch start = new CountDownLatch(1);
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RUN_MILLIS);
+
+		ExecutorService pool = Executors.newFixedThreadPool(clients);
+		for (int c = 0; c < clients; c++) {
+			List<String> accounts = List.of("PAYER" + c, "PAYEE" + c);
+			pool.execute(() -> {
+				awaitQuietly(start);
+				while (System.nanoTime() < deadline) {
+					executor.execute(UUID.randomUUID(), accounts, () -> {
+						LockSupport.parkNanos(SIMULATED_WORK_NANOS);
+						return null;
+					});
+					completed.increment();
+				}
+			});
+		}
+		start.countDown();
+		pool.shutdown();
+		pool.awaitTermination(RUN_MILLIS * 10, TimeUnit.MILLISECONDS);
+
+		return completed.sum() * 1000.0 / RUN_MILLIS;
+	}
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,140 @@
+package com.exercise.banking.service.transfer.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.exercise.banking.service.transfer.model.Account;
+import com.exercise.banking.service.transfer.model.Bank;
+import com.exercise.banking.service.transfer.model.Payee;
+import com.exercise.banking.service.transfer.repository.AccountRepository;
+import com.exercise.banking.service.transfer.repository.BankRepository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * Compares reading balances as managed entities with reading them as account views.
+ *
+ * Every transaction reads a number of accounts, each with registered payees, and then
+ * flushes, as a transfer transaction does before it commits. Managed accounts are held by
+ * the persistence context and dirty checked by the flush; views are not.
+ *
+ * Run with: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = { "logging.level.org.hibernate.SQL=WARN",
+		"logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN", "logging.level.com.exercise.banking=WARN",
+		"logging.level.com.exercise.banking.service.transfer.benchmark=INFO" })
+class AccountReadBenchmark {
+
+	private static final Logger logger = LoggerFactory.getLogger(AccountReadBenchmark.class);
+
+	private static final String BANK_CODE = "A00001";
+	private static final int ACCOUNTS = 200;
+	private static final int PAYEES_PER_ACCOUNT = 5;
+	private static final long RUN_MILLIS = 3000;
+
+	@Autowired
+	private AccountRepository accRepo;
+
+	@Autowired
+	private BankRepository bankRepo;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@BeforeEach
+	void setUp() {
+		if (accRepo.existsById(account(0))) {
+			return;
+		}
+		Bank bank = bankRepo.findById(BANK_CODE).orElseThrow();
+		List<Account> accounts = new ArrayList<>();
+		for (int a = 0; a < ACCOUNTS; a++) {
+			Account account = new Account(account(a), new BigDecimal("1000.00"), "Reader" + a, bank, new HashSet<>());
+			for (int p = 1; p <= PAYEES_PER_ACCOUNT; p++) {
+				account.addPayee(new Payee(null, "Reader" + a + "-Payee" + p, account((a + p) % ACCOUNTS), bank, account));
+			}
+			accounts.add(account);
+		}
+		accRepo.saveAll(accounts);
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 1, 10, 50 })
+	void benchmarkBalanceReads(int accountsPerTransaction) {
+		// Warm up both paths before measuring
+		run(accountsPerTransaction, accNum -> accRepo.findById(accNum).orElseThrow().getBalance(), 500);
+		run(accountsPerTransaction, accNum -> accRepo.findViewByAccNum(accNum).orElseThrow().balance(), 500);
+
+		// The payees are not read, the entity only holds its uninitialized collection
+		Result entities = run(accountsPerTransaction, accNum -> accRepo.findById(accNum).orElseThrow().getBalance(), RUN_MILLIS);
+		Result views = run(accountsPerTransaction, accNum -> accRepo.findViewByAccNum(accNum).orElseThrow().balance(), RUN_MILLIS);
+
+		logger.info("accountsPerTransaction={} entities={} reads/s flush={}us views={} reads/s flush={}us speedup={}x",
+				accountsPerTransaction, Math.round(entities.readsPerSecond()), Math.round(entities.flushMicros()),
+				Math.round(views.readsPerSecond()), Math.round(views.flushMicros()),
+				String.format("%.1f", views.readsPerSecond() / entities.readsPerSecond()));
+		// Both read the same committed balances
+		assertEquals(entities.balanceChecksum(), views.balanceChecksum());
+	}
+
+	private Result run(int accountsPerTransaction, Function<String, BigDecimal> read, long runMillis) {
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(runMillis);
+		long started = System.nanoTime();
+		long reads = 0;
+		long flushNanos = 0;
+		long transactions = 0;
+		BigDecimal checksum = BigDecimal.ZERO;
+		while (System.nanoTime() < deadline) {
+			long first = reads;
+			long[] flushed = new long[1];
+			BigDecimal sum = transactionTemplate.execute(status -> {
+				BigDecimal total = BigDecimal.ZERO;
+				for (int a = 0; a < accountsPerTransaction; a++) {
+					total = total.add(read.apply(account((int) ((first + a) % ACCOUNTS))));
+				}
+				long flushStarted = System.nanoTime();
+				entityManager.flush();
+				flushed[0] = System.nanoTime() - flushStarted;
+				return total;
+			});
+			reads += accountsPerTransaction;
+			flushNanos += flushed[0];
+			transactions++;
+			if (transactions == 1) {
+				checksum = sum;
+			}
+		}
+		double seconds = (System.nanoTime() - started) / 1e9;
+		return new Result(reads / seconds, flushNanos / 1000.0 / transactions, checksum);
+	}
+
+	private static String account(int index) {
+		return String.format("RD%04d", index);
+	}
+
+	private record Result(double readsPerSecond, double flushMicros, BigDecimal balanceChecksum) {
+	}
+}
@@ -0,0 +1,106 @@
+package com.exercise.banking.service.transfer.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.exercise.banking.service.transfer.bankclient.BankTransferAck;
+import com.exercise.banking.service.transfer.bankclient.BankTransferMessage;
+import com.exercise.banking.service.transfer.bankclient.HttpExternalBankClient;
+import com.exercise.banking.service.transfer.bankclient.StubBankServer;
+import com.exercise.banking.service.transfer.config.BankConfiguration;
+import com.exercise.banking.service.transfer.registry.BankDirectory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Sends transfers to the stub bank at several latencies, once from a pool of callers each
+ * waiting for its answer, as a blocking client would, and once without waiting.
+ *
+ * The blocking callers deliver at most callers / latency transfers per second. Without
+ * waiting, the throughput no longer depends on the latency and two client threads are enough.
+ *
+ * Run with: mvn test -Pbenchmark -Dtest=ExternalBankClientBenchmark -Dbenchmark.transfers=2000
+ */
+@Tag("benchmark")
+class ExternalBankClientBenchmark {
+
+	private static final Logger logger = LoggerFactory.getLogger(ExternalBankClientBenchmark.class);
+
+	private static final String BANK_CODE = "B00001";
+	private static final int TRANSFERS = Integer.getInteger("benchmark.transfers", 2000);
+	private static final int CALLERS = 16;
+
+	@ParameterizedTest
+	@ValueSource(longs = { 10, 50, 200 })
+	void benchmarkExternalBankClient(long latencyMillis) throws Exception {
+		ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+		StubBankServer stubBank = new StubBankServer(objectMapper, 0, latencyMillis, 0.0);
+		stubBank.start();
+		BankDirectory bankDirectory = mock(BankDirectory.class);
+		when(bankDirectory.findEndpoint(BANK_CODE)).thenReturn(Optional.of(stubBank.getEndpoint()));
+		BankConfiguration config = mock(BankConfiguration.class);
+		when(config.getBankCode()).thenReturn("A00001");
+		HttpExternalBankClient client = new HttpExternalBankClient(bankDirectory, config, objectMapper, "", 1000, 30000, 2,
+				new SimpleMeterRegistry());
+		try {
+			// Warm up the connections and the JIT
+			sendWithoutWaiting(client, 200);
+
+			long blockingMillis = sendBlocking(client, TRANSFERS);
+			long nonBlockingMillis = sendWithoutWaiting(client, TRANSFERS);
+
+			logger.info("latencyMs={} transfers={} blocking callers={} transfers/s={} | non blocking threads=2 transfers/s={}",
+					latencyMillis, TRANSFERS, CALLERS, TRANSFERS * 1000 / Math.max(1, blockingMillis),
+					TRANSFERS * 1000 / Math.max(1, nonBlockingMillis));
+			assertEquals(200 + 2L * TRANSFERS, stubBank.getAccepted());
+		} finally {
+			client.stop();
+			stubBank.stop();
+		}
+	}
+
+	private static long sendBlocking(HttpExternalBankClient client, int transfers) throws InterruptedException {
+		long started = System.nanoTime();
+		ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+		for (int n = 0; n < transfers; n++) {
+			callers.execute(() -> client.send(message()).join());
+		}
+		callers.shutdown();
+		callers.awaitTermination(10, TimeUnit.MINUTES);
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+	}
+
+	private static long sendWithoutWaiting(HttpExternalBankClient client, int transfers) {
+		long started = System.nanoTime();
+		List<CompletableFuture<BankTransferAck>> acks = new ArrayList<>(transfers);
+		for (int n = 0; n < transfers; n++) {
+			acks.add(client.send(message()));
+		}
+		CompletableFuture.allOf(acks.toArray(CompletableFuture[]::new)).join();
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+	}
+
+	private static BankTransferMessage message() {
+		return new BankTransferMessage(UUID.randomUUID(), UUID.randomUUID(), "123456", "654321", BANK_CODE, BigDecimal.TEN, "GBP",
+				Instant.now().toString());
+	}
+}
@@ -0,0 +1,178 @@
+package com.exercise.banking.service.transfer.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.exercise.banking.service.transfer.concurrency.TransferExecutor;
+import com.exercise.banking.service.transfer.dto.TransferRequestV1;
+import com.exercise.banking.service.transfer.exception.BaseTransferException;
+import com.exercise.banking.service.transfer.groupcommit.GroupCommitWriter;
+import com.exercise.banking.service.transfer.model.Account;
+import com.exercise.banking.service.transfer.model.Bank;
+import com.exercise.banking.service.transfer.model.Payee;
+import com.exercise.banking.service.transfer.repository.AccountRepository;
+import com.exercise.banking.service.transfer.repository.BankRepository;
+import com.exercise.banking.service.transfer.service.AccountService;
+import com.exercise.banking.service.transfer.service.TransactionService;
+import com.exercise.banking.service.transfer.service.TransferServiceBuilder;
+import com.exercise.banking.service.transfer.service.impl.IntraBankTransferService;
+import com.exercise.banking.service.transfer.service.impl.TransferChunkProcessor;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Compares one commit per transfer with the group commit writer at several windows.
+ *
+ * Every client pays its own payee, so the transfers do not contend on rows and the
+ * difference is the cost of the commits. A window of -1 runs without the writer.
+ *
+ * Run with: mvn test -Pbenchmark -Dtest=GroupCommitBenchmark -Dbenchmark.clients=32
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = { "logging.level.org.hibernate.SQL=WARN",
+		"logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN", "logging.level.com.exercise.banking=WARN",
+		"logging.level.com.exercise.banking.service.transfer.benchmark=INFO" })
+class GroupCommitBenchmark {
+
+	private static final Logger logger = LoggerFactory.getLogger(GroupCommitBenchmark.class);
+
+	private static final String BANK_CODE = "A00001";
+	private static final int CLIENTS = Integer.getInteger("benchmark.clients", 32);
+	private static final long WARMUP_MILLIS = 2000;
+	private static final long RUN_MILLIS = 3000;
+
+	@Autowired
+	private AccountService accountService;
+
+	@Autowired
+	private TransactionService txnService;
+
+	@Autowired
+	private TransferExecutor transferExecutor;
+
+	@Autowired
+	private TransferChunkProcessor chunkProcessor;
+
+	@Autowired
+	private AccountRepository accRepo;
+
+	@Autowired
+	private BankRepository bankRepo;
+
+	@BeforeEach
+	void setUp() {
+		if (accRepo.existsById(payerAccount(0))) {
+			return;
+		}
+		Bank bank = bankRepo.findById(BANK_CODE).orElseThrow();
+		List<Account> accounts = new ArrayList<>();
+		for (int c = 0; c < CLIENTS; c++) {
+			Account payer = new Account(payerAccount(c), new BigDecimal("1000000.00"), "Payer" + c, bank, new HashSet<>());
+			Account payee = new Account(payeeAccount(c), BigDecimal.ZERO, "Payee" + c, bank, new HashSet<>());
+			payer.addPayee(new Payee(null, "Payee" + c, payee.getAccNum(), bank, payer));
+			accounts.add(payer);
+			accounts.add(payee);
+		}
+		accRepo.saveAll(accounts);
+	}
+
+	@ParameterizedTest
+	@ValueSource(longs = { 0, 1, 2, 5, -1 })
+	void benchmarkGroupCommit(long windowMillis) throws InterruptedException {
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		GroupCommitWriter writer = windowMillis < 0 ? null
+				: new GroupCommitWriter(chunkProcessor, windowMillis, 128, 4096, 5000, meterRegistry);
+		IntraBankTransferService service = new TransferServiceBuilder(txnService, accountService, transferExecutor)
+				.withMeterRegistry(meterRegistry).withGroupCommitWriter(writer).buildIntraBank();
+		if (writer != null) {
+			writer.start();
+		}
+		BigDecimal totalBefore = totalBalance();
+
+		LongAdder completed = new LongAdder();
+		LongAdder failed = new LongAdder();
+		LongAdder latencyNanos = new LongAdder();
+		CountDownLatch start = new CountDownLatch(1);
+		// Transfers started during the warm up are not counted
+		long measuredFrom = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WARMUP_MILLIS);
+		long deadline = measuredFrom + TimeUnit.MILLISECONDS.toNanos(RUN_MILLIS);
+
+		ExecutorService pool = Executors.newFixedThreadPool(CLIENTS);
+		for (int c = 0; c < CLIENTS; c++) {
+			String payer = payerAccount(c);
+			String payee = payeeAccount(c);
+			pool.execute(() -> {
+				awaitQuietly(start);
+				while (System.nanoTime() < deadline) {
+					long started = System.nanoTime();
+					try {
+						service.performTransferV1(new TransferRequestV1(UUID.randomUUID(), payer, payee,
+								"BANK_A", BANK_CODE, BigDecimal.ONE, "GBP", Instant.now().toString()));
+						if (started >= measuredFrom) {
+							completed.increment();
+							latencyNanos.add(System.nanoTime() - started);
+						}
+					} catch (BaseTransferException e) {
+						failed.increment();
+					}
+				}
+			});
+		}
+		start.countDown();
+		pool.shutdown();
+		pool.awaitTermination((WARMUP_MILLIS + RUN_MILLIS) * 10, TimeUnit.MILLISECONDS);
+		if (writer != null) {
+			writer.stop();
+		}
+
+		double groupSize = writer == null ? 1
+				: meterRegistry.get("transfer.group-commit.group.size").summary().mean();
+		logger.info("windowMs={} clients={} transfers/s={} failed={} meanLatencyMs={} meanGroupSize={}",
+				windowMillis < 0 ? "off" : windowMillis, CLIENTS, Math.round(completed.sum() * 1000.0 / RUN_MILLIS), failed.sum(),
+				String.format("%.2f", completed.sum() == 0 ? 0 : latencyNanos.sum() / 1e6 / completed.sum()),
+				String.format("%.1f", groupSize));
+		// Money is only moved between the benchmark accounts
+		assertEquals(totalBefore, totalBalance());
+	}
+
+	private BigDecimal totalBalance() {
+		return accRepo.findAll().stream().map(Account::getBalance).reduce(BigDecimal.ZERO, BigDecimal::add);
+	}
+
+	private static String payerAccount(int client) {
+		return String.format("GCP%03d", client);
+	}
+
+	private static String payeeAccount(int client) {
+		return String.format("GCQ%03d", client);
+	}
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package com.exercise.banking.service.transfer.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.exercise.banking.service.transfer.concurrency.AccountLockManager;
+import com.exercise.banking.service.transfer.concurrency.LockingStrategy;
+import com.exercise.banking.service.transfer.concurrency.TransferExecutor;
+import com.exercise.banking.service.transfer.concurrency.TransferRetryPolicy;
+import com.exercise.banking.service.transfer.dto.TransferRequestV1;
+import com.exercise.banking.service.transfer.exception.BaseTransferException;
+import com.exercise.banking.service.transfer.model.Account;
+import com.exercise.banking.service.transfer.model.Bank;
+import com.exercise.banking.service.transfer.model.Payee;
+import com.exercise.banking.service.transfer.repository.AccountRepository;
+import com.exercise.banking.service.transfer.repository.BankRepository;
+import com.exercise.banking.service.transfer.service.AccountService;
+import com.exercise.banking.service.transfer.service.TransactionService;
+import com.exercise.banking.service.transfer.service.TransferServiceBuilder;
+import com.exercise.banking.service.transfer.service.impl.IntraBankTransferService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Hot account benchmark for the intra bank locking strategies.
+ *
+ * Every client moves money between its own account and one shared hot account, half of
+ * them towards the hot account and half away from it, so all transfers contend on the same
+ * row and opposite transfers run at the same time.
+ *
+ * Run with: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = { "logging.level.org.hibernate.SQL=WARN",
+		"logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN", "logging.level.com.exercise.banking=WARN",
+		"logging.level.com.exercise.banking.service.transfer.benchmark=INFO" })
+class IntraBankLockingStrategyBenchmark {
+
+	private static final Logger logger = LoggerFactory.getLogger(IntraBankLockingStrategyBenchmark.class);
+
+	private static final String BANK_CODE = "A00001";
+	private static final String HOT_ACCOUNT = "HOT000";
+	private static final int CLIENTS = 16;
+	private static final long RUN_MILLIS = 3000;
+
+	@Autowired
+	private AccountService accountService;
+
+	@Autowired
+	private TransactionService txnService;
+
+	@Autowired
+	private AccountRepository accRepo;
+
+	@Autowired
+	private BankRepository bankRepo;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@BeforeEach
+	void setUp() {
+		if (accRepo.existsById(HOT_ACCOUNT)) {
+			return;
+		}
+		Bank bank = bankRepo.findById(BANK_CODE).orElseThrow();
+		Account hot = new Account(HOT_ACCOUNT, new BigDecimal("1000000.00"), "Hot", bank, new HashSet<>());
+		List<Account> accounts = new ArrayList<>(List.of(hot));
+		for (int c = 0; c < CLIENTS; c++) {
+			Account client = new Account(clientAccount(c), new BigDecimal("1000000.00"), "Client" + c, bank, new HashSet<>());
+			client.addPayee(new Payee(null, "Hot", HOT_ACCOUNT, bank, client));
+			hot.addPayee(new Payee(null, "Client" + c, client.getAccNum(), bank, hot));
+			accounts.add(client);
+		}
+		accRepo.saveAll(accounts);
+	}
+
+	@ParameterizedTest
+	@CsvSource({ "ATOMIC_UPDATE, false", "ATOMIC_UPDATE, true", "PESSIMISTIC, false" })
+	void benchmarkHotAccount(LockingStrategy strategy, boolean jvmLocks) throws InterruptedException {
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		TransferExecutor executor = new TransferExecutor(
+				new AccountLockManager(jvmLocks, 1024, 5000, meterRegistry),
+				new TransferRetryPolicy(3, 10, 200, 0.2, 10), transactionManager, meterRegistry);
+		IntraBankTransferService service = new TransferServiceBuilder(txnService, accountService, executor)
+				.withLockingStrategy(strategy).buildIntraBank();
+		BigDecimal totalBefore = totalBalance();
+
+		LongAdder completed = new LongAdder();
+		LongAdder failed = new LongAdder();
+		CountDownLatch start = new CountDownLatch(1);
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RUN_MILLIS);
+
+		ExecutorService pool = Executors.newFixedThreadPool(CLIENTS);
+		for (int c = 0; c < CLIENTS; c++) {
+			String payer = c % 2 == 0 ? clientAccount(c) : HOT_ACCOUNT;
+			String payee = c % 2 == 0 ? HOT_ACCOUNT : clientAccount(c);
+			pool.execute(() -> {
+				awaitQuietly(start);
+				while (System.nanoTime() < deadline) {
+					try {
+						service.performTransferV1(new TransferRequestV1(UUID.randomUUID(), payer, payee,
+								"BANK_A", BANK_CODE, BigDecimal.ONE, "GBP", Instant.now().toString()));
+						completed.increment();
+					} catch (BaseTransferException e) {
+						failed.increment();
+					}
+				}
+			});
+		}
+		start.countDown();
+		pool.shutdown();
+		pool.awaitTermination(RUN_MILLIS * 10, TimeUnit.MILLISECONDS);
+
+		logger.info("strategy={} jvmLocks={} transfers={}/s failed={} conflicts={} retries={}",
+				strategy, jvmLocks, Math.round(completed.sum() * 1000.0 / RUN_MILLIS), failed.sum(),
+				Math.round(meterRegistry.get("transfer.conflicts").counter().count()),
+				Math.round(meterRegistry.get("transfer.retries").counter().count()));
+		// Money is only moved between the benchmark accounts
+		assertEquals(totalBefore, totalBalance());
+	}
+
+	private BigDecimal totalBalance() {
+		return accRepo.findAll().stream().map(Account::getBalance).reduce(BigDecimal.ZERO, BigDecimal::add);
+	}
+
+	private static String clientAccount(int client) {
+		return String.format("HOT%03d", client + 1);
+	}
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package com.exercise.banking.service.transfer.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.exercise.banking.service.transfer.model.Account;
+import com.exercise.banking.service.transfer.model.Bank;
+import com.exercise.banking.service.transfer.model.Payee;
+import com.exercise.banking.service.transfer.repository.AccountRepository;
+import com.exercise.banking.service.transfer.repository.BankRepository;
+import com.exercise.banking.service.transfer.repository.PayeeRepository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * Loads payees the way a payee sync does: many payees per transaction, flushed and
+ * cleared every few thousand so the persistence context stays small.
+ *
+ * The payee ids come from a pooled sequence, so the inserts are sent in JDBC batches. The
+ * statements per payee show it: an identity column needs one statement per payee, here
+ * it is about one per {@code hibernate.jdbc.batch_size} payees plus one sequence call per
+ * {@code transfer.payee.id.allocation-size} ids.
+ *
+ * Run with: mvn test -Pbenchmark -Dbenchmark.payees=1000000
+ */
+@Tag("benchmark")
+@SpringBootTest(properties = { "logging.level.org.hibernate.SQL=WARN",
+		"logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN", "logging.level.com.exercise.banking=WARN",
+		"logging.level.com.exercise.banking.service.transfer.benchmark=INFO" })
+class PayeeLoadBenchmark {
+
+	private static final Logger logger = LoggerFactory.getLogger(PayeeLoadBenchmark.class);
+
+	private static final int PAYEES = Integer.getInteger("benchmark.payees", 1_000_000);
+	private static final String BANK_CODE = "A00001";
+	private static final int ACCOUNTS = 1000;
+	private static final int PAYEES_PER_TRANSACTION = 10_000;
+	private static final int PAYEES_PER_FLUSH = 1000;
+
+	@Autowired
+	private AccountRepository accRepo;
+
+	@Autowired
+	private BankRepository bankRepo;
+
+	@Autowired
+	private PayeeRepository payeeRepo;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Value("${spring.jpa.properties.hibernate.jdbc.batch_size}")
+	private int jdbcBatchSize;
+
+	@Value("${transfer.payee.id.allocation-size}")
+	private int allocationSize;
+
+	@Test
+	void benchmarkPayeeLoad() {
+		Bank bank = bankRepo.findById(BANK_CODE).orElseThrow();
+		List<Account> accounts = new ArrayList<>();
+		for (int a = 0; a < ACCOUNTS; a++) {
+			accounts.add(new Account(account(a), new BigDecimal("1000.00"), "Loader" + a, bank, new HashSet<>()));
+		}
+		accRepo.saveAll(accounts);
+		long payeesBefore = payeeRepo.count();
+
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+		statistics.setStatisticsEnabled(true);
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		long started = System.nanoTime();
+		for (int from = 0; from < PAYEES; from += PAYEES_PER_TRANSACTION) {
+			int first = from;
+			transactionTemplate.executeWithoutResult(status -> load(first, Math.min(first + PAYEES_PER_TRANSACTION, PAYEES)));
+		}
+		double seconds = (System.nanoTime() - started) / 1e9;
+		statistics.setStatisticsEnabled(false);
+		long statements = statistics.getPrepareStatementCount();
+		statistics.clear();
+
+		logger.info("payees={} jdbcBatchSize={} allocationSize={} time={}s payees/s={} statements={} payees/statement={}",
+				PAYEES, jdbcBatchSize, allocationSize, String.format("%.1f", seconds), Math.round(PAYEES / seconds), statements,
+				String.format("%.1f", (double) PAYEES / statements));
+		assertEquals(payeesBefore + PAYEES, payeeRepo.count());
+	}
+
+	private void load(int from, int to) {
+		Bank bank = entityManager.getReference(Bank.class, BANK_CODE);
+		for (int p = from; p < to; p++) {
+			Account payer = entityManager.getReference(Account.class, account(p % ACCOUNTS));
+			entityManager.persist(new Payee(null, "Loader-Payee" + p, String.format("%08d", p), bank, payer));
+			if ((p + 1 - from) % PAYEES_PER_FLUSH == 0) {
+				entityManager.flush();
+				entityManager.clear();
+			}
+		}
+	}
+
+	private static String account(int index) {
+		return String.format("LD%04d", index);
+	}
+}
@@ -0,0 +1,158 @@
+package com.exercise.banking.service.transfer.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.exercise.banking.service.transfer.MoneyTransferApplication;
+import com.exercise.banking.service.transfer.model.Account;
+import com.exercise.banking.service.transfer.model.Bank;
+import com.exercise.banking.service.transfer.model.Payee;
+import com.exercise.banking.service.transfer.repository.AccountRepository;
+import com.exercise.banking.service.transfer.repository.BankRepository;
+
+/**
+ * Compares thread per request and virtual thread request handling.
+ *
+ * The application is started once per mode and receives all requests at the same time,
+ * each on its own connection. The transfers are inter bank transfers spread over many payer
+ * accounts, so they block on the database rather than on each other. The virtual thread mode
+ * is skipped below Java 21 (run with -Pjava21 on a Java 21 JDK).
+ *
+ * Run with: mvn test -Pbenchmark [-Dbenchmark.connections=10000]
+ */
+@Tag("benchmark")
+class RequestThreadingBenchmark {
+
+	private static final Logger logger = LoggerFactory.getLogger(RequestThreadingBenchmark.class);
+
+	private static final int CONNECTIONS = Integer.getInteger("benchmark.connections", 10_000);
+	private static final int PAYERS = 100;
+	private static final String PAYEE_ACCOUNT = "654321";
+	private static final String PAYEE_BANK_CODE = "B00001";
+
+	@ParameterizedTest
+	@ValueSource(booleans = { false, true })
+	void benchmarkConcurrentConnections(boolean virtualThreads) throws InterruptedException {
+		assumeTrue(!virtualThreads || Runtime.version().feature() >= 21, "Virtual threads require Java 21");
+
+		try (ConfigurableApplicationContext context = new SpringApplicationBuilder(MoneyTransferApplication.class)
+				.properties("server.port=0", "spring.threads.virtual.enabled=" + virtualThreads,
+						"server.tomcat.max-connections=" + (CONNECTIONS + 100),
+						"server.tomcat.accept-count=" + CONNECTIONS,
+						"logging.level.org.hibernate.SQL=WARN",
+						"logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+						"logging.level.com.exercise.banking=WARN",
+						"logging.level.com.exercise.banking.service.transfer.benchmark=INFO")
+				.run()) {
+			AccountRepository accRepo = context.getBean(AccountRepository.class);
+			createPayers(accRepo, context.getBean(BankRepository.class));
+			int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+
+			Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+			LongAdder errors = new LongAdder();
+			ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+
+			ExecutorService clientExecutor = Executors.newFixedThreadPool(4);
+			HttpClient client = HttpClient.newBuilder()
+					.version(HttpClient.Version.HTTP_1_1)
+					.executor(clientExecutor)
+					.build();
+			long start = System.nanoTime();
+			List<CompletableFuture<?>> requests = new ArrayList<>(CONNECTIONS);
+			for (int n = 0; n < CONNECTIONS; n++) {
+				long sent = System.nanoTime();
+				requests.add(client.sendAsync(request(port, payerAccount(n % PAYERS)), HttpResponse.BodyHandlers.discarding())
+						.whenComplete((response, failure) -> {
+							if (failure != null) {
+								errors.increment();
+								return;
+							}
+							latencies.add(System.nanoTime() - sent);
+							statuses.computeIfAbsent(response.statusCode(), status -> new LongAdder()).increment();
+						}));
+			}
+			CompletableFuture.allOf(requests.toArray(CompletableFuture[]::new)).exceptionally(failure -> null).join();
+			long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			clientExecutor.shutdown();
+
+			long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+			Map<Integer, Long> statusCounts = new TreeMap<>();
+			statuses.forEach((status, count) -> statusCounts.put(status, count.sum()));
+			logger.info("virtualThreads={} connections={} elapsed={} ms transfers={}/s p50={} ms p99={} ms max={} ms statuses={} errors={}",
+					virtualThreads, CONNECTIONS, elapsedMillis,
+					Math.round(statusCounts.getOrDefault(200, 0L) * 1000.0 / Math.max(elapsedMillis, 1)),
+					percentileMillis(sorted, 0.50), percentileMillis(sorted, 0.99), percentileMillis(sorted, 1.0),
+					statusCounts, errors.sum());
+
+			// Every successful transfer debited exactly one unit from a payer
+			BigDecimal debited = BigDecimal.ZERO;
+			for (int p = 0; p < PAYERS; p++) {
+				debited = debited.add(new BigDecimal("1000000.00").subtract(accRepo.findById(payerAccount(p)).orElseThrow().getBalance()));
+			}
+			assertEquals(statusCounts.getOrDefault(200, 0L).longValue(), debited.longValueExact());
+		}
+	}
+
+	private static void createPayers(AccountRepository accRepo, BankRepository bankRepo) {
+		Bank bank = bankRepo.findById("A00001").orElseThrow();
+		Bank payeeBank = bankRepo.findById(PAYEE_BANK_CODE).orElseThrow();
+		List<Account> accounts = new ArrayList<>(PAYERS);
+		for (int p = 0; p < PAYERS; p++) {
+			Account payer = new Account(payerAccount(p), new BigDecimal("1000000.00"), "Payer" + p, bank, new HashSet<>());
+			payer.addPayee(new Payee(null, "Payee" + p, PAYEE_ACCOUNT, payeeBank, payer));
+			accounts.add(payer);
+		}
+		accRepo.saveAll(accounts);
+	}
+
+	private static HttpRequest request(int port, String payer) {
+		String body = """
+				{"requestId":"%s","payerAccNumber":"%s","payeeAccNumber":"%s","payeeBankName":"BANK_B",\
+				"payeeBankCode":"%s","amount":1,"currency":"GBP"}""".formatted(UUID.randomUUID(), payer, PAYEE_ACCOUNT, PAYEE_BANK_CODE);
+		return HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/v1/transfers"))
+				.timeout(Duration.ofMinutes(2))
+				.header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString(body))
+				.build();
+	}
+
+	private static long percentileMillis(long[] sorted, double percentile) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int index = (int) Math.ceil(percentile * sorted.length) - 1;
+		return TimeUnit.NANOSECONDS.toMillis(sorted[Math.max(index, 0)]);
+	}
+
+	private static String payerAccount(int payer) {
+		return String.format("77%04d", payer);
+	}
+}
@@ -0,0 +1,100 @@
+package com.exercise.banking.service.transfer.concurrency;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.exercise.banking.service.transfer.exception.AccountLockTimeoutException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class AccountLockManagerTest {
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private AccountLockManager lockManager;
+
+	private UUID requestId;
+
+	@BeforeEach
+	void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		lockManager = new AccountLockManager(true, 64, 200, meterRegistry);
+		requestId = UUID.randomUUID();
+	}
+
+	@Test
+	void testStripeCountRoundedUpToPowerOfTwo() {
+		assertEquals(64, lockManager.getStripeCount());
+		assertEquals(128, new AccountLockManager(true, 100, 200, meterRegistry).getStripeCount());
+		assertEquals(1, new AccountLockManager(true, 1, 200, meterRegistry).getStripeCount());
+	}
+
+	@Test
+	@SuppressWarnings("try")
+	void testLockIsReleasedOnClose() throws Exception {
+		try (AccountLockManager.Lease ignored = lockManager.lock(requestId, List.of("ACC001", "ACC002"))) {
+			// Another thread cannot take the same account while the lease is held
+			CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> lockManager.lock(requestId, List.of("ACC002")).close());
+			assertThrows(Exception.class, blocked::join);
+		}
+
+		// Once released, the account can be locked by another thread
+		CompletableFuture.runAsync(() -> lockManager.lock(requestId, List.of("ACC002")).close())
+				.get(1, TimeUnit.SECONDS);
+	}
+
+	@Test
+	@SuppressWarnings("try")
+	void testLockTimeout() throws Exception {
+		try (AccountLockManager.Lease ignored = lockManager.lock(requestId, List.of("ACC001"))) {
+			CompletableFuture<Void> waiting = CompletableFuture.runAsync(() -> lockManager.lock(requestId, List.of("ACC001")));
+			Exception ex = assertThrows(Exception.class, waiting::join);
+			assertTrue(ex.getCause() instanceof AccountLockTimeoutException);
+		}
+		assertEquals(1.0, meterRegistry.get("transfer.account.lock.timeouts").counter().count());
+	}
+
+	@Test
+	@SuppressWarnings("try")
+	void testDisabledLockManagerDoesNotBlock() throws Exception {
+		AccountLockManager disabled = new AccountLockManager(false, 64, 200, meterRegistry);
+		try (AccountLockManager.Lease ignored = disabled.lock(requestId, List.of("ACC001"))) {
+			CompletableFuture.runAsync(() -> disabled.lock(requestId, List.of("ACC001")).close())
+					.get(1, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	@SuppressWarnings("try")
+	void testOpposingTransfersDoNotDeadlock() throws Exception {
+		AccountLockManager manager = new AccountLockManager(true, 1024, 5000, meterRegistry);
+		AtomicInteger completed = new AtomicInteger();
+
+		// Half of the clients transfer A->B while the other half transfer B->A
+		CompletableFuture<?>[] clients = IntStream.range(0, 8)
+				.mapToObj(i -> CompletableFuture.runAsync(() -> {
+					List<String> accounts = i % 2 == 0 ? List.of("ACC001", "ACC002") : List.of("ACC002", "ACC001");
+					for (int n = 0; n < 1000; n++) {
+						try (AccountLockManager.Lease ignored = manager.lock(requestId, accounts)) {
+							completed.incrementAndGet();
+						}
+					}
+				}))
+				.toArray(CompletableFuture[]::new);
+
+		CompletableFuture.allOf(clients).get(10, TimeUnit.SECONDS);
+		assertEquals(8000, completed.get());
+		assertEquals(8000, meterRegistry.get("transfer.account.lock.wait").timer().count());
+	}
+}
@@ -0,0 +1,79 @@
+package com.exercise.banking.service.transfer.concurrency;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class AsyncTransferExecutorTest {
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private AsyncTransferExecutor executor;
+
+	@BeforeEach
+	void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		executor = new AsyncTransferExecutor(1, 2, meterRegistry);
+	}
+
+	@AfterEach
+	void tearDown() {
+		executor.shutdown();
+		MDC.clear();
+	}
+
+	@Test
+	void testRejectsWhenQueueIsFull() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+		executor.execute(() -> {
+			started.countDown();
+			awaitQuietly(release);
+		});
+		assertTrue(started.await(1, TimeUnit.SECONDS));
+
+		// One worker busy, two queued, the fourth transfer is rejected
+		CompletableFuture<?> first = CompletableFuture.runAsync(() -> { }, executor);
+		CompletableFuture<?> second = CompletableFuture.runAsync(() -> { }, executor);
+		assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> { }));
+		assertEquals(1.0, meterRegistry.get("transfer.async.rejected").counter().count());
+		assertEquals(2.0, meterRegistry.get("transfer.async.queue.depth").gauge().value());
+
+		release.countDown();
+		CompletableFuture.allOf(first, second).get(1, TimeUnit.SECONDS);
+		executor.execute(() -> { });
+	}
+
+	@Test
+	void testLoggingContextIsCarriedOver() throws Exception {
+		MDC.put("requestId", "REQ-1");
+		CompletableFuture<String> seen = CompletableFuture.supplyAsync(() -> MDC.get("requestId"), executor);
+		assertEquals("REQ-1", seen.get(1, TimeUnit.SECONDS));
+
+		// The worker does not keep the context of a previous transfer
+		MDC.clear();
+		CompletableFuture<String> next = CompletableFuture.supplyAsync(() -> MDC.get("requestId"), executor);
+		assertNull(next.get(1, TimeUnit.SECONDS));
+	}
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package com.exercise.banking.service.transfer.concurrency;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.exercise.banking.service.transfer.exception.ConcurrentUpdateException;
+import com.exercise.banking.service.transfer.exception.InsufficientFundsException;
+import com.exercise.banking.service.transfer.model.Account;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class TransferExecutorTest {
+
+	@Mock
+	private PlatformTransactionManager txManager;
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private UUID requestId;
+
+	@BeforeEach
+	void setUp() {
+		MockitoAnnotations.openMocks(this);
+		meterRegistry = new SimpleMeterRegistry();
+		requestId = UUID.randomUUID();
+	}
+
+	@Test
+	void testConflictIsRetried() {
+		TransferExecutor executor = createExecutor(new TransferRetryPolicy(3, 1, 5, 0.2, 10));
+		AtomicInteger calls = new AtomicInteger();
+
+		String result = executor.execute(requestId, List.of("ACC001"), () -> {
+			if (calls.incrementAndGet() == 1) {
+				throw new ObjectOptimisticLockingFailureException(Account.class, "ACC001");
+			}
+			return "done";
+		});
+
+		assertEquals("done", result);
+		assertEquals(2, calls.get());
+		assertEquals(2.0, meterRegistry.get("transfer.attempts").counter().count());
+		assertEquals(1.0, meterRegistry.get("transfer.conflicts").counter().count());
+		assertEquals(1.0, meterRegistry.get("transfer.retries").counter().count());
+		assertEquals(0.0, meterRegistry.get("transfer.retries.exhausted").counter().count());
+	}
+
+	@Test
+	void testRetriesExhausted() {
+		TransferExecutor executor = createExecutor(new TransferRetryPolicy(3, 1, 5, 0.2, 10));
+		AtomicInteger calls = new AtomicInteger();
+
+		assertThrows(ConcurrentUpdateException.class, () -> executor.execute(requestId, List.of("ACC001"), () -> {
+			calls.incrementAndGet();
+			throw new ObjectOptimisticLockingFailureException(Account.class, "ACC001");
+		}));
+
+		assertEquals(3, calls.get());
+		assertEquals(3.0, meterRegistry.get("transfer.conflicts").counter().count());
+		assertEquals(1.0, meterRegistry.get("transfer.retries.exhausted").counter().count());
+	}
+
+	@Test
+	void testBusinessFailureIsNotRetried() {
+		TransferExecutor executor = createExecutor(new TransferRetryPolicy(3, 1, 5, 0.2, 10));
+		AtomicInteger calls = new AtomicInteger();
+
+		assertThrows(InsufficientFundsException.class, () -> executor.execute(requestId, List.of("ACC001"), () -> {
+			calls.incrementAndGet();
+			throw new InsufficientFundsException(requestId);
+		}));
+
+		assertEquals(1, calls.get());
+		assertEquals(0.0, meterRegistry.get("transfer.conflicts").counter().count());
+	}
+
+	@Test
+	void testRetryBudgetLimitsRetries() {
+		// No initial budget and no budget earned per request
+		TransferRetryPolicy policy = new TransferRetryPolicy(5, 1, 5, 0.0, 0);
+		TransferExecutor executor = createExecutor(policy);
+		AtomicInteger calls = new AtomicInteger();
+
+		assertThrows(ConcurrentUpdateException.class, () -> executor.execute(requestId, List.of("ACC001"), () -> {
+			calls.incrementAndGet();
+			throw new ObjectOptimisticLockingFailureException(Account.class, "ACC001");
+		}));
+
+		assertEquals(1, calls.get());
+		assertFalse(policy.tryAcquireRetry());
+	}
+
+	@Test
+	void testBackoffIsBounded() {
+		TransferRetryPolicy policy = new TransferRetryPolicy(10, 10, 100, 0.2, 10);
+		for (int retry = 1; retry < 10; retry++) {
+			long backoff = policy.backoffMillis(retry);
+			assertTrue(backoff >= 0 && backoff <= 100);
+		}
+	}
+
+	private TransferExecutor createExecutor(TransferRetryPolicy policy) {
+		return new TransferExecutor(new AccountLockManager(true, 16, 1000, meterRegistry), policy, txManager, meterRegistry);
+	}
+}
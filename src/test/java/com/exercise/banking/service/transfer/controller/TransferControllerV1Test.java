@@ -1,15 +1,29 @@
 package com.exercise.banking.service.transfer.controller;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.math.BigDecimal;
+import java.io.InputStream;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -23,14 +37,29 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import com.exercise.banking.service.transfer.concurrency.AsyncTransferExecutor;
 import com.exercise.banking.service.transfer.config.BankConfiguration;
+import com.exercise.banking.service.transfer.dto.BatchItemResultV1;
+import com.exercise.banking.service.transfer.dto.BatchMode;
+import com.exercise.banking.service.transfer.dto.BatchTransferRequestV1;
+import com.exercise.banking.service.transfer.dto.BatchTransferResponseV1;
+import com.exercise.banking.service.transfer.dto.ErrorResponse;
+import com.exercise.banking.service.transfer.dto.PaymentFileFormat;
+import com.exercise.banking.service.transfer.dto.PaymentFileResultV1;
 import com.exercise.banking.service.transfer.dto.TransferRequestV1;
 import com.exercise.banking.service.transfer.dto.TransferResponseV1;
 import com.exercise.banking.service.transfer.exception.AccountNotFoundException;
+import com.exercise.banking.service.transfer.exception.BankUnavailableException;
+import com.exercise.banking.service.transfer.exception.BatchModeNotSupportedException;
 import com.exercise.banking.service.transfer.exception.InsufficientFundsException;
+import com.exercise.banking.service.transfer.exception.PaymentFileInProgressException;
 import com.exercise.banking.service.transfer.exception.PayeeNotRegisteredException;
+import com.exercise.banking.service.transfer.exception.TransferInProgressException;
 import com.exercise.banking.service.transfer.model.TransferType;
+import com.exercise.banking.service.transfer.service.BatchTransferService;
+import com.exercise.banking.service.transfer.service.PaymentFileService;
 import com.exercise.banking.service.transfer.service.TransferService;
 import com.exercise.banking.service.transfer.service.TransferServiceSelector;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -50,12 +79,25 @@ class TransferControllerV1Test {
     @MockBean
     private BankConfiguration bankConfiguration;
 
+    @MockBean
+    private AsyncTransferExecutor asyncTransferExecutor;
+
+    @MockBean
+    private BatchTransferService batchTransferService;
+
+    @MockBean
+    private PaymentFileService paymentFileService;
+
     @Mock
     private TransferService transferService;
     
     private ObjectMapper objectMapper;
     
     private static final String TRANSFER_API = "/api/v1/transfers";
+    private static final String ASYNC_TRANSFER_API = "/api/v1/transfers/async";
+    private static final String BATCH_TRANSFER_API = "/api/v1/transfers/batch";
+    private static final String STREAM_TRANSFER_API = "/api/v1/transfers/stream";
+    private static final String FILE_TRANSFER_API = "/api/v1/transfers/files/{fileId}";
 
     @BeforeEach
     void setUp() {
@@ -324,6 +366,217 @@ class TransferControllerV1Test {
      }
    
     
+    @Test
+    void testAsyncSuccessTransfer() throws Exception {
+    	UUID requestId = UUID.randomUUID();
+    	UUID txnId = UUID.randomUUID();
+    	TransferResponseV1 transferResponse = new TransferResponseV1.Builder()
+    			.withRequestId(requestId)
+    			.withTransactionId(txnId)
+    			.withStatus("SUCCESS")
+    			.withBalance(BigDecimal.valueOf(900.00))
+    			.withAmount(BigDecimal.valueOf(100.00))
+    			.withCurrency("GBP")
+    			.withTransferType(TransferType.INTRA_BANK_TRANSFER.getValue())
+    			.withTimestamp(Instant.now())
+    			.build();
+    	CompletableFuture<TransferResponseV1> pending = new CompletableFuture<>();
+    	when(transferService.performTransferV1Async(any(TransferRequestV1.class), any(Executor.class))).thenReturn(pending);
+
+    	// The request thread is released before the transfer completes
+    	MvcResult result = mockMvc.perform(post(ASYNC_TRANSFER_API)
+    			.contentType(MediaType.APPLICATION_JSON)
+    			.content(asJsonString(validRequest(requestId))))
+    			.andExpect(request().asyncStarted())
+    			.andReturn();
+    	pending.complete(transferResponse);
+
+    	mockMvc.perform(asyncDispatch(result))
+    			.andExpect(status().isOk())
+    			.andExpect(jsonPath("$.transactionId").value(txnId.toString()))
+    			.andExpect(jsonPath("$.requestId").value(requestId.toString()))
+    			.andExpect(jsonPath("$.balance").value(900.00));
+    }
+
+    @Test
+    void testAsyncTransferFailure() throws Exception {
+    	UUID requestId = UUID.randomUUID();
+    	when(transferService.performTransferV1Async(any(TransferRequestV1.class), any(Executor.class)))
+    			.thenReturn(CompletableFuture.failedFuture(new InsufficientFundsException(requestId)));
+
+    	MvcResult result = mockMvc.perform(post(ASYNC_TRANSFER_API)
+    			.contentType(MediaType.APPLICATION_JSON)
+    			.content(asJsonString(validRequest(requestId))))
+    			.andExpect(request().asyncStarted())
+    			.andReturn();
+
+    	mockMvc.perform(asyncDispatch(result))
+    			.andExpect(status().isBadRequest())
+    			.andExpect(jsonPath("$.message").value("Insufficient funds in account"));
+    }
+
+    @Test
+    void testAsyncTransferQueueFull() throws Exception {
+    	UUID requestId = UUID.randomUUID();
+    	when(transferService.performTransferV1Async(any(TransferRequestV1.class), any(Executor.class)))
+    			.thenThrow(new RejectedExecutionException("Queue full"));
+
+    	mockMvc.perform(post(ASYNC_TRANSFER_API)
+    			.contentType(MediaType.APPLICATION_JSON)
+    			.content(asJsonString(validRequest(requestId))))
+    			.andExpect(status().isServiceUnavailable())
+    			.andExpect(header().string("Retry-After", "1"))
+    			.andExpect(jsonPath("$.requestId").value(requestId.toString()))
+    			.andExpect(jsonPath("$.message").value("Too many transfers queued, please retry"));
+    }
+
+    @Test
+    void testTransferWithSameRequestIdInProgress() throws Exception {
+    	UUID requestId = UUID.randomUUID();
+    	when(transferService.performTransferV1(any(TransferRequestV1.class))).thenThrow(new TransferInProgressException(requestId));
+
+    	mockMvc.perform(post(TRANSFER_API)
+    			.contentType(MediaType.APPLICATION_JSON)
+    			.content(asJsonString(validRequest(requestId))))
+    			.andExpect(status().isConflict())
+    			.andExpect(header().string("Retry-After", "1"))
+    			.andExpect(jsonPath("$.requestId").value(requestId.toString()))
+    			.andExpect(jsonPath("$.message").value("A transfer with this request id is in progress, please retry"));
+    }
+
+    @Test
+    void testTransferToUnavailableBank() throws Exception {
+    	UUID requestId = UUID.randomUUID();
+    	when(transferService.performTransferV1(any(TransferRequestV1.class)))
+    			.thenThrow(new BankUnavailableException(requestId, "B00001", 5));
+
+    	mockMvc.perform(post(TRANSFER_API)
+    			.contentType(MediaType.APPLICATION_JSON)
+    			.content(asJsonString(validRequest(requestId))))
+    			.andExpect(status().isServiceUnavailable())
+    			.andExpect(header().string("Retry-After", "5"))
+    			.andExpect(jsonPath("$.requestId").value(requestId.toString()))
+    			.andExpect(jsonPath("$.message").value("Bank B00001 is not reachable at the moment, please retry later"));
+    }
+
+    @Test
+    void testBatchTransfer() throws Exception {
+    	UUID batchId = UUID.randomUUID();
+    	UUID requestId = UUID.randomUUID();
+    	TransferResponseV1 transferResponse = new TransferResponseV1.Builder()
+    			.withRequestId(requestId)
+    			.withTransactionId(UUID.randomUUID())
+    			.withStatus("SUCCESS")
+    			.withBalance(BigDecimal.valueOf(900.00))
+    			.withAmount(BigDecimal.valueOf(100.00))
+    			.withCurrency("GBP")
+    			.withTransferType(TransferType.INTRA_BANK_TRANSFER.getValue())
+    			.withTimestamp(Instant.now())
+    			.build();
+    	when(batchTransferService.performBatchV1(any(BatchTransferRequestV1.class))).thenReturn(new BatchTransferResponseV1(batchId,
+    			BatchMode.BEST_EFFORT, List.of(BatchItemResultV1.executed(transferResponse))));
+
+    	mockMvc.perform(post(BATCH_TRANSFER_API)
+    			.contentType(MediaType.APPLICATION_JSON)
+    			.content(asJsonString(new BatchTransferRequestV1(batchId, BatchMode.BEST_EFFORT, List.of(validRequest(requestId))))))
+    			.andExpect(status().isOk())
+    			.andExpect(jsonPath("$.batchId").value(batchId.toString()))
+    			.andExpect(jsonPath("$.status").value("COMPLETED"))
+    			.andExpect(jsonPath("$.succeeded").value(1))
+    			.andExpect(jsonPath("$.results[0].status").value("SUCCESS"))
+    			.andExpect(jsonPath("$.results[0].transfer.balance").value(900.00));
+    }
+
+    @Test
+    void testEmptyBatchTransfer() throws Exception {
+    	mockMvc.perform(post(BATCH_TRANSFER_API)
+    			.contentType(MediaType.APPLICATION_JSON)
+    			.content(asJsonString(new BatchTransferRequestV1(UUID.randomUUID(), BatchMode.BEST_EFFORT, List.of()))))
+    			.andExpect(status().isBadRequest())
+    			.andExpect(jsonPath("$.validationErrors.transfers").value("Transfers are required"));
+    }
+
+    @Test
+    void testBatchModeNotSupported() throws Exception {
+    	UUID batchId = UUID.randomUUID();
+    	when(batchTransferService.performBatchV1(any(BatchTransferRequestV1.class)))
+    			.thenThrow(new BatchModeNotSupportedException(batchId, "All or nothing batches are not supported"));
+
+    	mockMvc.perform(post(BATCH_TRANSFER_API)
+    			.contentType(MediaType.APPLICATION_JSON)
+    			.content(asJsonString(new BatchTransferRequestV1(batchId, BatchMode.ALL_OR_NOTHING, List.of(validRequest(UUID.randomUUID()))))))
+    			.andExpect(status().isBadRequest())
+    			.andExpect(jsonPath("$.requestId").value(batchId.toString()))
+    			.andExpect(jsonPath("$.message").value("Batch mode is not supported, please submit the batch in BEST_EFFORT mode"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testStreamTransfer() throws Exception {
+    	UUID requestId = UUID.randomUUID();
+    	doAnswer(invocation -> {
+    		Iterator<TransferRequestV1> transfers = invocation.getArgument(1);
+    		List<BatchItemResultV1> results = new ArrayList<>();
+    		transfers.forEachRemaining(transfer -> results.add(transfer == null
+    				? BatchItemResultV1.failed(null, new ErrorResponse(HttpStatus.BAD_REQUEST, "Malformed JSON request"))
+    				: BatchItemResultV1.executed(new TransferResponseV1.Builder().withRequestId(transfer.getRequestId())
+    						.withStatus("SUCCESS").withTimestamp(Instant.now()).build())));
+    		invocation.getArgument(2, Consumer.class).accept(results);
+    		return (long) results.size();
+    	}).when(batchTransferService).performStreamV1(any(UUID.class), any(Iterator.class), any(Consumer.class));
+
+    	String body = asJsonString(validRequest(requestId)) + "\n\n{not json\n";
+    	MvcResult result = mockMvc.perform(post(STREAM_TRANSFER_API)
+    			.contentType(MediaType.APPLICATION_NDJSON)
+    			.accept(MediaType.APPLICATION_NDJSON)
+    			.content(body))
+    			.andExpect(status().isOk())
+    			.andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+    			.andExpect(header().exists("X-Stream-Id"))
+    			.andReturn();
+
+    	// One result per non blank line
+    	String[] lines = result.getResponse().getContentAsString().split("\n");
+    	assertEquals(2, lines.length);
+    	assertEquals(requestId.toString(), objectMapper.readTree(lines[0]).get("requestId").asText());
+    	assertEquals("SUCCESS", objectMapper.readTree(lines[0]).get("status").asText());
+    	assertEquals("FAILED", objectMapper.readTree(lines[1]).get("status").asText());
+    }
+
+    @Test
+    void testFileTransfer() throws Exception {
+    	UUID fileId = UUID.randomUUID();
+    	when(paymentFileService.performFileV1(eq(fileId), eq(PaymentFileFormat.CSV), any(InputStream.class)))
+    			.thenReturn(new PaymentFileResultV1(fileId, PaymentFileFormat.CSV, 2, 0, 2, 0, 0, List.of()));
+
+    	mockMvc.perform(post(FILE_TRANSFER_API, fileId)
+    			.contentType(PaymentFileFormat.TEXT_CSV_VALUE)
+    			.content("payerAccNumber,payeeAccNumber,payeeBankCode,amount,currency\n"))
+    			.andExpect(status().isOk())
+    			.andExpect(jsonPath("$.fileId").value(fileId.toString()))
+    			.andExpect(jsonPath("$.format").value("CSV"))
+    			.andExpect(jsonPath("$.succeeded").value(2));
+    }
+
+    @Test
+    void testFileTransferInProgress() throws Exception {
+    	UUID fileId = UUID.randomUUID();
+    	when(paymentFileService.performFileV1(eq(fileId), eq(PaymentFileFormat.PAIN_001), any(InputStream.class)))
+    			.thenThrow(new PaymentFileInProgressException(fileId));
+
+    	mockMvc.perform(post(FILE_TRANSFER_API, fileId)
+    			.contentType(MediaType.APPLICATION_XML)
+    			.content("<Document/>"))
+    			.andExpect(status().isConflict())
+    			.andExpect(header().string("Retry-After", "1"))
+    			.andExpect(jsonPath("$.requestId").value(fileId.toString()));
+    }
+
+    private static TransferRequestV1 validRequest(UUID requestId) {
+    	return new TransferRequestV1(requestId, "1234567", "987654", "Payee Bank", "BANK01",
+    			BigDecimal.valueOf(100.00), "GBP", Instant.now().toString());
+    }
+
     /**
      * Helper method to convert an object to a JSON string
      * @param obj
@@ -0,0 +1,165 @@
+package com.exercise.banking.service.transfer.groupcommit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.exercise.banking.service.transfer.dto.TransferRequestV1;
+import com.exercise.banking.service.transfer.dto.TransferResponseV1;
+import com.exercise.banking.service.transfer.exception.InsufficientFundsException;
+import com.exercise.banking.service.transfer.model.Account;
+import com.exercise.banking.service.transfer.model.Bank;
+import com.exercise.banking.service.transfer.model.Payee;
+import com.exercise.banking.service.transfer.repository.AccountRepository;
+import com.exercise.banking.service.transfer.repository.BankRepository;
+import com.exercise.banking.service.transfer.service.impl.IntraBankTransferService;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * A long window, so that transfers submitted together end up in the same group.
+ */
+@SpringBootTest(properties = { "transfer.group-commit.enabled=true", "transfer.group-commit.window-ms=50" })
+class GroupCommitWriterTest {
+
+	private static final String BANK_CODE = "A00001";
+	private static final int CLIENTS = 8;
+	private static final int TRANSFERS_PER_CLIENT = 10;
+
+	private static final AtomicInteger TEST_COUNTER = new AtomicInteger();
+
+	@Autowired
+	private IntraBankTransferService transferService;
+
+	@Autowired
+	private AccountRepository accRepo;
+
+	@Autowired
+	private BankRepository bankRepo;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private String prefix;
+
+	private String hotAccount;
+
+	@BeforeEach
+	void setUp() {
+		prefix = "GC" + TEST_COUNTER.incrementAndGet() + "-";
+		hotAccount = prefix + "HOT";
+		Bank bank = bankRepo.findById(BANK_CODE).orElseThrow();
+
+		Account hot = new Account(hotAccount, new BigDecimal("1000.00"), "Hot", bank, new HashSet<>());
+		List<Account> saved = new ArrayList<>(List.of(hot));
+		for (int c = 0; c < CLIENTS; c++) {
+			Account client = new Account(clientAccount(c), new BigDecimal("1000.00"), "Client" + c, bank, new HashSet<>());
+			client.addPayee(new Payee(null, "Hot", hotAccount, bank, client));
+			hot.addPayee(new Payee(null, "Client" + c, client.getAccNum(), bank, hot));
+			saved.add(client);
+		}
+		accRepo.saveAll(saved);
+	}
+
+	@Test
+	void testConcurrentTransfersShareCommits() {
+		DistributionSummary groups = meterRegistry.get("transfer.group-commit.group.size").summary();
+		long groupsBefore = groups.count();
+
+		// Even clients pay the hot account, odd clients are paid by it
+		CompletableFuture<?>[] clients = IntStream.range(0, CLIENTS)
+				.mapToObj(c -> CompletableFuture.runAsync(() -> {
+					for (int n = 0; n < TRANSFERS_PER_CLIENT; n++) {
+						if (c % 2 == 0) {
+							transfer(clientAccount(c), hotAccount, BigDecimal.ONE);
+						} else {
+							transfer(hotAccount, clientAccount(c), BigDecimal.ONE);
+						}
+					}
+				}))
+				.toArray(CompletableFuture[]::new);
+		CompletableFuture.allOf(clients).join();
+
+		assertEquals(new BigDecimal("1000.00"), balance(hotAccount));
+		for (int c = 0; c < CLIENTS; c++) {
+			BigDecimal expected = c % 2 == 0 ? new BigDecimal("990.00") : new BigDecimal("1010.00");
+			assertEquals(expected, balance(clientAccount(c)));
+		}
+		long committed = groups.count() - groupsBefore;
+		assertTrue(committed < CLIENTS * TRANSFERS_PER_CLIENT, "Transfers were committed in " + committed + " groups");
+	}
+
+	@Test
+	void testRejectedTransferDoesNotFailItsGroup() {
+		// Submitted without waiting, the three transfers are committed in one group
+		CompletableFuture<TransferResponseV1> first = transferService.performTransferV1Async(
+				request(clientAccount(0), hotAccount, new BigDecimal("600.00")), Runnable::run);
+		CompletableFuture<TransferResponseV1> overdrawn = transferService.performTransferV1Async(
+				request(clientAccount(0), hotAccount, new BigDecimal("600.00")), Runnable::run);
+		CompletableFuture<TransferResponseV1> other = transferService.performTransferV1Async(
+				request(clientAccount(1), hotAccount, new BigDecimal("100.00")), Runnable::run);
+
+		assertEquals(new BigDecimal("400.00"), first.join().getBalance());
+		assertThrows(InsufficientFundsException.class, () -> unwrap(overdrawn));
+		assertEquals(new BigDecimal("900.00"), other.join().getBalance());
+		assertEquals(new BigDecimal("400.00"), balance(clientAccount(0)));
+		assertEquals(new BigDecimal("1700.00"), balance(hotAccount));
+	}
+
+	@Test
+	void testDuplicateRequest() {
+		TransferRequestV1 request = request(clientAccount(1), hotAccount, BigDecimal.TEN);
+		TransferResponseV1 first = transferService.performTransferV1(request);
+		TransferResponseV1 second = transferService.performTransferV1(request);
+
+		assertEquals(first.getTransactionId(), second.getTransactionId());
+		assertTrue(second.isDuplicate());
+		assertEquals(new BigDecimal("990.00"), balance(clientAccount(1)));
+	}
+
+	@Test
+	void testSameAccountsRejected() {
+		assertThrows(IllegalArgumentException.class, () -> transfer(hotAccount, hotAccount, BigDecimal.ONE));
+	}
+
+	private TransferResponseV1 transfer(String payer, String payee, BigDecimal amount) {
+		return transferService.performTransferV1(request(payer, payee, amount));
+	}
+
+	private static TransferRequestV1 request(String payer, String payee, BigDecimal amount) {
+		return new TransferRequestV1(UUID.randomUUID(), payer, payee, "BANK_A", BANK_CODE, amount, "GBP", Instant.now().toString());
+	}
+
+	private static <T> T unwrap(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			throw (RuntimeException) e.getCause();
+		}
+	}
+
+	private BigDecimal balance(String accNum) {
+		return accRepo.findById(accNum).orElseThrow().getBalance();
+	}
+
+	private String clientAccount(int client) {
+		return prefix + client;
+	}
+}
@@ -0,0 +1,106 @@
+package com.exercise.banking.service.transfer.idempotency;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.exercise.banking.service.transfer.dto.TransferResponseV1;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class IdempotencyCacheTest {
+
+	private static final long TTL_MILLIS = 1000;
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private AtomicLong clock;
+
+	private IdempotencyCache cache;
+
+	@BeforeEach
+	void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		clock = new AtomicLong();
+		cache = new IdempotencyCache(2, TTL_MILLIS, meterRegistry, clock::get);
+	}
+
+	@Test
+	void testHitAndMiss() {
+		UUID requestId = UUID.randomUUID();
+		TransferResponseV1 response = response(requestId);
+		assertTrue(cache.get(requestId).isEmpty());
+
+		cache.put(requestId, response);
+
+		assertSame(response, cache.get(requestId).orElseThrow());
+		assertEquals(1.0, count("transfer.idempotency.cache.gets", "result", "hit"));
+		assertEquals(1.0, count("transfer.idempotency.cache.gets", "result", "miss"));
+	}
+
+	@Test
+	void testLeastRecentlyUsedIsEvicted() {
+		UUID first = UUID.randomUUID();
+		UUID second = UUID.randomUUID();
+		UUID third = UUID.randomUUID();
+		cache.put(first, response(first));
+		cache.put(second, response(second));
+
+		// Reading the first response makes the second one the least recently used
+		cache.get(first);
+		cache.put(third, response(third));
+
+		assertTrue(cache.get(first).isPresent());
+		assertTrue(cache.get(second).isEmpty());
+		assertTrue(cache.get(third).isPresent());
+		assertEquals(2, cache.size());
+		assertEquals(1.0, count("transfer.idempotency.cache.evictions", "cause", "size"));
+	}
+
+	@Test
+	void testEntriesExpire() {
+		UUID requestId = UUID.randomUUID();
+		cache.put(requestId, response(requestId));
+
+		clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(TTL_MILLIS - 1));
+		assertTrue(cache.get(requestId).isPresent());
+
+		clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+		assertTrue(cache.get(requestId).isEmpty());
+		assertEquals(0, cache.size());
+		assertEquals(1.0, count("transfer.idempotency.cache.evictions", "cause", "expired"));
+	}
+
+	@Test
+	void testDisabledCache() {
+		IdempotencyCache disabled = new IdempotencyCache(0, TTL_MILLIS, new SimpleMeterRegistry(), clock::get);
+		UUID requestId = UUID.randomUUID();
+		disabled.put(requestId, response(requestId));
+
+		assertTrue(disabled.get(requestId).isEmpty());
+		assertEquals(0, disabled.size());
+	}
+
+	private double count(String name, String tag, String value) {
+		return meterRegistry.get(name).tag(tag, value).counter().count();
+	}
+
+	private static TransferResponseV1 response(UUID requestId) {
+		return new TransferResponseV1.Builder()
+				.withRequestId(requestId)
+				.withTransactionId(UUID.randomUUID())
+				.withStatus("SUCCESS")
+				.withBalance(new BigDecimal("900.00"))
+				.withAmount(new BigDecimal("100.00"))
+				.withCurrency("GBP")
+				.build();
+	}
+}
@@ -0,0 +1,137 @@
+package com.exercise.banking.service.transfer.idempotency;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.exercise.banking.service.transfer.dto.TransferResponseV1;
+import com.exercise.banking.service.transfer.exception.InsufficientFundsException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class InFlightRequestsTest {
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private InFlightRequests inFlightRequests;
+
+	@BeforeEach
+	void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		inFlightRequests = new InFlightRequests(meterRegistry);
+	}
+
+	@Test
+	void testDuplicateAttachesToTransferInFlight() throws Exception {
+		UUID requestId = UUID.randomUUID();
+		TransferResponseV1 response = response(requestId);
+		AtomicInteger transfers = new AtomicInteger();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		CompletableFuture<TransferResponseV1> original = CompletableFuture.supplyAsync(() -> inFlightRequests.execute(requestId, () -> {
+			transfers.incrementAndGet();
+			started.countDown();
+			awaitQuietly(release);
+			return response;
+		}));
+		assertTrue(started.await(1, TimeUnit.SECONDS));
+		CompletableFuture<TransferResponseV1> duplicate = CompletableFuture.supplyAsync(() -> inFlightRequests.execute(requestId, () -> {
+			transfers.incrementAndGet();
+			return response;
+		}));
+		awaitCoalesced(1);
+		release.countDown();
+
+		assertSame(response, original.get(1, TimeUnit.SECONDS));
+		TransferResponseV1 duplicateResponse = duplicate.get(1, TimeUnit.SECONDS);
+		assertTrue(duplicateResponse.isDuplicate());
+		assertEquals(response.getTransactionId(), duplicateResponse.getTransactionId());
+		assertEquals(1, transfers.get());
+		assertEquals(0, inFlightRequests.size());
+	}
+
+	@Test
+	void testDuplicateReceivesFailureOfTransferInFlight() throws Exception {
+		UUID requestId = UUID.randomUUID();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		CompletableFuture<TransferResponseV1> original = CompletableFuture.supplyAsync(() -> inFlightRequests.execute(requestId, () -> {
+			started.countDown();
+			awaitQuietly(release);
+			throw new InsufficientFundsException(requestId);
+		}));
+		assertTrue(started.await(1, TimeUnit.SECONDS));
+		CompletableFuture<TransferResponseV1> duplicate = CompletableFuture.supplyAsync(
+				() -> inFlightRequests.execute(requestId, () -> response(requestId)));
+		awaitCoalesced(1);
+		release.countDown();
+
+		assertInstanceOf(InsufficientFundsException.class, assertThrows(ExecutionException.class, () -> original.get(1, TimeUnit.SECONDS)).getCause());
+		assertInstanceOf(InsufficientFundsException.class, assertThrows(ExecutionException.class, () -> duplicate.get(1, TimeUnit.SECONDS)).getCause());
+		assertEquals(0, inFlightRequests.size());
+	}
+
+	@Test
+	void testDuplicateAttachesToAsyncTransfer() throws Exception {
+		UUID requestId = UUID.randomUUID();
+		TransferResponseV1 response = response(requestId);
+		CompletableFuture<TransferResponseV1> pending = new CompletableFuture<>();
+
+		CompletableFuture<TransferResponseV1> original = inFlightRequests.executeAsync(requestId, () -> pending);
+		CompletableFuture<TransferResponseV1> duplicate = inFlightRequests.executeAsync(requestId, () -> {
+			throw new AssertionError("Duplicate must not start a transfer");
+		});
+		assertFalse(duplicate.isDone());
+
+		pending.complete(response);
+		assertSame(response, original.get(1, TimeUnit.SECONDS));
+		assertTrue(duplicate.get(1, TimeUnit.SECONDS).isDuplicate());
+		assertEquals(0, inFlightRequests.size());
+
+		// Once completed, the request id is no longer in flight
+		assertSame(response, inFlightRequests.execute(requestId, () -> response));
+	}
+
+	private void awaitCoalesced(int count) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+		while (meterRegistry.get("transfer.idempotency.inflight.coalesced").counter().count() < count && System.nanoTime() < deadline) {
+			Thread.sleep(1);
+		}
+		assertEquals(count, meterRegistry.get("transfer.idempotency.inflight.coalesced").counter().count());
+	}
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static TransferResponseV1 response(UUID requestId) {
+		return new TransferResponseV1.Builder()
+				.withRequestId(requestId)
+				.withTransactionId(UUID.randomUUID())
+				.withStatus("SUCCESS")
+				.withBalance(new BigDecimal("900.00"))
+				.withAmount(new BigDecimal("100.00"))
+				.withCurrency("GBP")
+				.build();
+	}
+}
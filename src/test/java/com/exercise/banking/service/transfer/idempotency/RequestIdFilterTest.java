@@ -0,0 +1,122 @@
+package com.exercise.banking.service.transfer.idempotency;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.domain.Pageable;
+
+import com.exercise.banking.service.transfer.repository.TransactionRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class RequestIdFilterTest {
+
+	private TransactionRepository txnRepo;
+
+	// Seeded so that the measured false positive rate does not vary between runs
+	private final Random random = new Random(42);
+
+	@BeforeEach
+	void setUp() {
+		txnRepo = mock(TransactionRepository.class);
+		when(txnRepo.findFirstRequestIds(any(Pageable.class))).thenReturn(List.of());
+	}
+
+	@Test
+	void testNotReadyUntilRebuilt() {
+		RequestIdFilter filter = new RequestIdFilter(true, 1000, 0.01, 1, txnRepo, new SimpleMeterRegistry());
+		UUID requestId = UUID.randomUUID();
+
+		assertTrue(filter.mightContain(requestId));
+		filter.rebuild();
+		assertFalse(filter.mightContain(requestId));
+		filter.put(requestId);
+		assertTrue(filter.mightContain(requestId));
+	}
+
+	@Test
+	void testRebuildReadsAllPages() {
+		List<UUID> firstPage = randomIds(10_000);
+		List<UUID> lastPage = randomIds(5);
+		when(txnRepo.findFirstRequestIds(any(Pageable.class))).thenReturn(firstPage);
+		when(txnRepo.findRequestIdsAfter(eq(firstPage.get(firstPage.size() - 1)), any(Pageable.class))).thenReturn(lastPage);
+		RequestIdFilter filter = new RequestIdFilter(true, 1000, 0.01, 8, txnRepo, new SimpleMeterRegistry());
+
+		filter.rebuild();
+
+		assertTrue(firstPage.stream().allMatch(filter::mightContain));
+		assertTrue(lastPage.stream().allMatch(filter::mightContain));
+		assertEquals(10_005L, filter.describe().get("rebuiltInsertions"));
+	}
+
+	@Test
+	void testFalsePositiveRateStaysBoundedWhileGrowing() {
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		RequestIdFilter filter = new RequestIdFilter(true, 1000, 0.01, 8, txnRepo, meterRegistry);
+		filter.rebuild();
+		List<UUID> recorded = randomIds(20_000);
+		recorded.forEach(filter::put);
+
+		// No false negatives
+		assertTrue(recorded.stream().allMatch(filter::mightContain));
+		long falsePositives = randomIds(100_000).stream().filter(filter::mightContain).count();
+		assertTrue(falsePositives < 1_000, "False positives: " + falsePositives);
+
+		Map<String, Object> state = filter.describe();
+		assertEquals(20_000L, state.get("insertions"));
+		assertEquals(false, state.get("saturated"));
+		assertTrue(((List<?>) state.get("slices")).size() > 1);
+		assertTrue((double) state.get("estimatedFpp") < 0.01);
+		assertEquals(100_000.0, meterRegistry.get("transfer.idempotency.filter.checks").tag("result", "negative").counter().count()
+				+ falsePositives, 0.0);
+	}
+
+	@Test
+	void testStopsGrowingAtMemoryBudget() {
+		RequestIdFilter filter = new RequestIdFilter(true, 100_000, 0.01, 1, txnRepo, new SimpleMeterRegistry());
+		filter.rebuild();
+		randomIds(500_000).forEach(filter::put);
+
+		Map<String, Object> state = filter.describe();
+		assertEquals(true, state.get("saturated"));
+		assertTrue((long) state.get("memoryBytes") <= 1024 * 1024);
+		assertEquals(500_000L, state.get("insertions"));
+	}
+
+	@Test
+	void testFailedRebuildKeepsLookingUp() {
+		when(txnRepo.findFirstRequestIds(any(Pageable.class))).thenThrow(new DataAccessResourceFailureException("Database unavailable"));
+		RequestIdFilter filter = new RequestIdFilter(true, 1000, 0.01, 1, txnRepo, new SimpleMeterRegistry());
+
+		filter.rebuild();
+
+		assertEquals(false, filter.describe().get("ready"));
+		assertTrue(filter.mightContain(UUID.randomUUID()));
+	}
+
+	@Test
+	void testDisabledFilterAlwaysLooksUp() {
+		RequestIdFilter filter = new RequestIdFilter(false, 1000, 0.01, 1, txnRepo, new SimpleMeterRegistry());
+		filter.rebuild();
+
+		assertTrue(filter.mightContain(UUID.randomUUID()));
+	}
+
+	private List<UUID> randomIds(int count) {
+		return IntStream.range(0, count).mapToObj(i -> new UUID(random.nextLong(), random.nextLong())).toList();
+	}
+}
@@ -0,0 +1,189 @@
+package com.exercise.banking.service.transfer.idempotency;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.exercise.banking.service.transfer.concurrency.AccountLockManager;
+import com.exercise.banking.service.transfer.concurrency.TransferExecutor;
+import com.exercise.banking.service.transfer.concurrency.TransferRetryPolicy;
+import com.exercise.banking.service.transfer.dto.TransferRequestV1;
+import com.exercise.banking.service.transfer.dto.TransferResponseV1;
+import com.exercise.banking.service.transfer.exception.InsufficientFundsException;
+import com.exercise.banking.service.transfer.exception.TransferInProgressException;
+import com.exercise.banking.service.transfer.model.Account;
+import com.exercise.banking.service.transfer.model.Bank;
+import com.exercise.banking.service.transfer.model.Payee;
+import com.exercise.banking.service.transfer.model.Transaction;
+import com.exercise.banking.service.transfer.model.TransactionStatus;
+import com.exercise.banking.service.transfer.model.TransferType;
+import com.exercise.banking.service.transfer.repository.AccountRepository;
+import com.exercise.banking.service.transfer.repository.BankRepository;
+import com.exercise.banking.service.transfer.repository.TransactionRepository;
+import com.exercise.banking.service.transfer.service.AccountService;
+import com.exercise.banking.service.transfer.service.TransactionService;
+import com.exercise.banking.service.transfer.service.TransferServiceBuilder;
+import com.exercise.banking.service.transfer.service.impl.IntraBankTransferService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Runs duplicate requests against the database, with the JVM account locks and the
+ * idempotency cache disabled so that only the request id reservation keeps them apart.
+ * Concurrent duplicates go through services of their own, as if they had been sent to
+ * different instances, so that they are not coalesced in memory.
+ */
+@SpringBootTest
+class RequestReservationsTest {
+
+	private static final String BANK_CODE = "A00001";
+
+	@Autowired
+	private AccountService accountService;
+
+	@Autowired
+	private TransactionService txnService;
+
+	@Autowired
+	private AccountRepository accRepo;
+
+	@Autowired
+	private BankRepository bankRepo;
+
+	@Autowired
+	private TransactionRepository txnRepo;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private RequestIdFilter requestIdFilter;
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private RequestReservations reservations;
+
+	private TransferExecutor transferExecutor;
+
+	private IntraBankTransferService transferService;
+
+	@BeforeEach
+	void setUp() {
+		if (!accRepo.existsById("RV0001")) {
+			Bank bank = bankRepo.findById(BANK_CODE).orElseThrow();
+			Account payer = new Account("RV0001", new BigDecimal("1000.00"), "Reserver1", bank, new HashSet<>());
+			Account payee = new Account("RV0002", new BigDecimal("0.00"), "Reserver2", bank, new HashSet<>());
+			payer.addPayee(new Payee(null, "Reserver1-Payee", "RV0002", bank, payer));
+			accRepo.saveAll(List.of(payer, payee));
+		}
+
+		meterRegistry = new SimpleMeterRegistry();
+		reservations = new RequestReservations(txnService, requestIdFilter, 5000, 1, 60000, meterRegistry);
+		transferExecutor = new TransferExecutor(
+				new AccountLockManager(false, 16, 1000, meterRegistry),
+				new TransferRetryPolicy(3, 1, 10, 0.2, 10), transactionManager, meterRegistry);
+		transferService = newTransferService();
+	}
+
+	private IntraBankTransferService newTransferService() {
+		return new TransferServiceBuilder(txnService, accountService, transferExecutor)
+				.withIdempotencyCache(new IdempotencyCache(0, 0, meterRegistry)).withReservations(reservations).buildIntraBank();
+	}
+
+	@Test
+	void testConcurrentDuplicatesDebitOnce() {
+		BigDecimal payerBalance = accRepo.findById("RV0001").orElseThrow().getBalance();
+		TransferRequestV1 request = request(UUID.randomUUID(), BigDecimal.TEN);
+		CountDownLatch start = new CountDownLatch(1);
+
+		List<CompletableFuture<TransferResponseV1>> clients = IntStream.range(0, 8)
+				.mapToObj(i -> newTransferService())
+				.map(instance -> CompletableFuture.supplyAsync(() -> {
+					awaitQuietly(start);
+					return instance.performTransferV1(request);
+				}))
+				.toList();
+		start.countDown();
+		List<TransferResponseV1> responses = clients.stream().map(CompletableFuture::join).toList();
+
+		// One request transferred, the others were answered with its outcome
+		assertEquals(1, responses.stream().filter(response -> !response.isDuplicate()).count());
+		assertEquals(1, responses.stream().map(TransferResponseV1::getTransactionId).distinct().count());
+		assertEquals(payerBalance.subtract(BigDecimal.TEN), accRepo.findById("RV0001").orElseThrow().getBalance());
+		assertEquals(TransactionStatus.SUCCESS, txnRepo.findStatusByRequestId(request.getRequestId()).orElseThrow());
+	}
+
+	@Test
+	void testFailedTransferReleasesReservation() {
+		UUID requestId = UUID.randomUUID();
+
+		assertThrows(InsufficientFundsException.class,
+				() -> transferService.performTransferV1(request(requestId, new BigDecimal("1000000.00"))));
+
+		// The request id can be used again
+		assertTrue(txnRepo.findStatusByRequestId(requestId).isEmpty());
+		assertTrue(reservations.claim(requestId, () -> reservation(requestId)).isPresent());
+	}
+
+	@Test
+	void testPendingReservationTimesOut() {
+		UUID requestId = UUID.randomUUID();
+		assertTrue(reservations.claim(requestId, () -> reservation(requestId)).isPresent());
+
+		RequestReservations impatient = new RequestReservations(txnService, requestIdFilter, 50, 1, 60000, meterRegistry);
+		assertThrows(TransferInProgressException.class, () -> impatient.claim(requestId, () -> reservation(requestId)));
+		assertEquals(1.0, meterRegistry.get("transfer.idempotency.reservations").tag("result", "timeout").counter().count());
+	}
+
+	@Test
+	void testExpiredReservationIsTakenOver() {
+		UUID requestId = UUID.randomUUID();
+		Transaction abandoned = reservation(requestId);
+		abandoned.setTimestamp(LocalDateTime.now().minusMinutes(5));
+		txnRepo.save(abandoned);
+
+		assertTrue(reservations.claim(requestId, () -> reservation(requestId)).isPresent());
+		assertEquals(1.0, meterRegistry.get("transfer.idempotency.reservations").tag("result", "expired").counter().count());
+	}
+
+	@Test
+	void testCompletedRequestIsNotClaimed() {
+		UUID requestId = UUID.randomUUID();
+		transferService.performTransferV1(request(requestId, BigDecimal.ONE));
+
+		assertTrue(reservations.claim(requestId, () -> reservation(requestId)).isEmpty());
+	}
+
+	private static TransferRequestV1 request(UUID requestId, BigDecimal amount) {
+		return new TransferRequestV1(requestId, "RV0001", "RV0002", "BANK_A", BANK_CODE, amount, "GBP", Instant.now().toString());
+	}
+
+	private static Transaction reservation(UUID requestId) {
+		return new Transaction(null, requestId, null, null, BigDecimal.ONE, "GBP", null, TransactionStatus.PENDING,
+				TransferType.INTRA_BANK_TRANSFER.getValue());
+	}
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
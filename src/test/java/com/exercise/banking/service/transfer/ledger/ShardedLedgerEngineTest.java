@@ -0,0 +1,196 @@
+package com.exercise.banking.service.transfer.ledger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.reset;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import com.exercise.banking.service.transfer.dto.TransferRequestV1;
+import com.exercise.banking.service.transfer.dto.TransferResponseV1;
+import com.exercise.banking.service.transfer.exception.AccountNotFoundException;
+import com.exercise.banking.service.transfer.exception.InsufficientFundsException;
+import com.exercise.banking.service.transfer.exception.TransactionProcessingException;
+import com.exercise.banking.service.transfer.model.Account;
+import com.exercise.banking.service.transfer.model.Bank;
+import com.exercise.banking.service.transfer.model.Payee;
+import com.exercise.banking.service.transfer.repository.AccountRepository;
+import com.exercise.banking.service.transfer.repository.BankRepository;
+import com.exercise.banking.service.transfer.service.impl.IntraBankTransferService;
+
+/**
+ * The shards keep the balances they loaded, so every test works on accounts of its own.
+ */
+@SpringBootTest(properties = { "transfer.ledger.enabled=true", "transfer.ledger.shards=4" })
+class ShardedLedgerEngineTest {
+
+	private static final String BANK_CODE = "A00001";
+	private static final int CLIENTS = 8;
+	private static final int TRANSFERS_PER_CLIENT = 25;
+
+	private static final AtomicInteger TEST_COUNTER = new AtomicInteger();
+
+	@Autowired
+	private IntraBankTransferService transferService;
+
+	@SpyBean
+	private AccountRepository accRepo;
+
+	@Autowired
+	private BankRepository bankRepo;
+
+	private String prefix;
+
+	private String hotAccount;
+
+	@BeforeEach
+	void setUp() {
+		prefix = "LG" + TEST_COUNTER.incrementAndGet() + "-";
+		hotAccount = prefix + "HOT";
+		Bank bank = bankRepo.findById(BANK_CODE).orElseThrow();
+
+		Account hot = new Account(hotAccount, new BigDecimal("1000.00"), "Hot", bank, new HashSet<>());
+		List<Account> saved = new ArrayList<>(List.of(hot));
+		for (int c = 0; c < CLIENTS; c++) {
+			Account client = new Account(clientAccount(c), new BigDecimal("1000.00"), "Client" + c, bank, new HashSet<>());
+			client.addPayee(new Payee(null, "Hot", hotAccount, bank, client));
+			hot.addPayee(new Payee(null, "Client" + c, client.getAccNum(), bank, hot));
+			saved.add(client);
+		}
+		// Registered payee without an account
+		hot.addPayee(new Payee(null, "Closed", prefix + "CLOSED", bank, hot));
+		accRepo.saveAll(saved);
+	}
+
+	@Test
+	void testConcurrentTransfersAcrossShards() {
+		// Even clients pay the hot account, odd clients are paid by it
+		CompletableFuture<?>[] clients = IntStream.range(0, CLIENTS)
+				.mapToObj(c -> CompletableFuture.runAsync(() -> {
+					for (int n = 0; n < TRANSFERS_PER_CLIENT; n++) {
+						if (c % 2 == 0) {
+							transfer(clientAccount(c), hotAccount, BigDecimal.ONE);
+						} else {
+							transfer(hotAccount, clientAccount(c), BigDecimal.ONE);
+						}
+					}
+				}))
+				.toArray(CompletableFuture[]::new);
+		CompletableFuture.allOf(clients).join();
+
+		assertEquals(new BigDecimal("1000.00"), balance(hotAccount));
+		for (int c = 0; c < CLIENTS; c++) {
+			BigDecimal expected = c % 2 == 0 ? new BigDecimal("975.00") : new BigDecimal("1025.00");
+			assertEquals(expected, balance(clientAccount(c)));
+		}
+
+		// The credits reached the shards owning the paid accounts: their whole balance can be spent
+		for (int c = 1; c < CLIENTS; c += 2) {
+			TransferResponseV1 response = transfer(clientAccount(c), hotAccount, new BigDecimal("1025.00"));
+			assertEquals(0, response.getBalance().signum());
+		}
+		assertEquals(new BigDecimal("5100.00"), balance(hotAccount));
+	}
+
+	@Test
+	void testAsyncTransfers() {
+		// A single preparing thread: the transfers wait in the shards, not on the executor
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			List<CompletableFuture<TransferResponseV1>> responses = IntStream.range(0, CLIENTS)
+					.mapToObj(c -> transferService.performTransferV1Async(request(clientAccount(c), hotAccount, BigDecimal.TEN), executor))
+					.toList();
+			responses.forEach(response -> assertEquals("SUCCESS", response.join().getStatus()));
+		} finally {
+			executor.shutdown();
+		}
+
+		assertEquals(new BigDecimal("1080.00"), balance(hotAccount));
+		assertThrows(InsufficientFundsException.class, () -> unwrap(transferService.performTransferV1Async(
+				request(clientAccount(0), hotAccount, new BigDecimal("991.00")), Runnable::run)));
+	}
+
+	@Test
+	void testInsufficientFunds() {
+		assertThrows(InsufficientFundsException.class, () -> transfer(clientAccount(0), hotAccount, new BigDecimal("1000.01")));
+		assertEquals(new BigDecimal("1000.00"), balance(clientAccount(0)));
+
+		TransferResponseV1 response = transfer(clientAccount(0), hotAccount, new BigDecimal("1000.00"));
+		assertEquals(0, response.getBalance().signum());
+	}
+
+	@Test
+	void testDuplicateRequest() {
+		TransferRequestV1 request = request(clientAccount(1), hotAccount, BigDecimal.TEN);
+		TransferResponseV1 first = transferService.performTransferV1(request);
+		TransferResponseV1 second = transferService.performTransferV1(request);
+
+		assertEquals(first.getTransactionId(), second.getTransactionId());
+		assertTrue(second.isDuplicate());
+		assertEquals(new BigDecimal("990.00"), balance(clientAccount(1)));
+	}
+
+	@Test
+	void testUnknownPayeeAccount() {
+		assertThrows(AccountNotFoundException.class, () -> transfer(hotAccount, prefix + "CLOSED", BigDecimal.ONE));
+		assertEquals(new BigDecimal("1000.00"), balance(hotAccount));
+	}
+
+	@Test
+	void testFailedBalanceReadDoesNotStopTheShard() {
+		String payer = clientAccount(2);
+		doThrow(new DataAccessResourceFailureException("Connection lost")).when(accRepo).findViewByAccNum(payer);
+
+		assertThrows(TransactionProcessingException.class, () -> transfer(payer, hotAccount, BigDecimal.ONE));
+		reset(accRepo);
+
+		// The shard of the payer is still running
+		TransferResponseV1 response = transfer(payer, hotAccount, BigDecimal.ONE);
+		assertEquals("SUCCESS", response.getStatus());
+		assertEquals(new BigDecimal("999.00"), balance(payer));
+	}
+
+	private TransferResponseV1 transfer(String payer, String payee, BigDecimal amount) {
+		return transferService.performTransferV1(request(payer, payee, amount));
+	}
+
+	private static TransferRequestV1 request(String payer, String payee, BigDecimal amount) {
+		return new TransferRequestV1(UUID.randomUUID(), payer, payee, "BANK_A", BANK_CODE, amount, "GBP", Instant.now().toString());
+	}
+
+	private static <T> T unwrap(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			throw (RuntimeException) e.getCause();
+		}
+	}
+
+	private BigDecimal balance(String accNum) {
+		return accRepo.findById(accNum).orElseThrow().getBalance();
+	}
+
+	private String clientAccount(int client) {
+		return prefix + client;
+	}
+}
@@ -0,0 +1,152 @@
+package com.exercise.banking.service.transfer.netting;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.exercise.banking.service.transfer.dto.TransferRequestV1;
+import com.exercise.banking.service.transfer.dto.TransferResponseV1;
+import com.exercise.banking.service.transfer.exception.InsufficientFundsException;
+import com.exercise.banking.service.transfer.model.Account;
+import com.exercise.banking.service.transfer.model.Bank;
+import com.exercise.banking.service.transfer.model.Payee;
+import com.exercise.banking.service.transfer.repository.AccountRepository;
+import com.exercise.banking.service.transfer.repository.BankRepository;
+import com.exercise.banking.service.transfer.repository.TransactionRepository;
+import com.exercise.banking.service.transfer.service.impl.IntraBankTransferService;
+
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * A long window, so that transfers submitted together are settled together.
+ */
+@SpringBootTest(properties = { "transfer.netting.enabled=true", "transfer.netting.window-ms=200" })
+class NettingEngineTest {
+
+	private static final String BANK_CODE = "A00001";
+	private static final int TRANSFERS = 50;
+
+	private static final AtomicInteger TEST_COUNTER = new AtomicInteger();
+
+	@Autowired
+	private IntraBankTransferService transferService;
+
+	@Autowired
+	private AccountRepository accRepo;
+
+	@Autowired
+	private BankRepository bankRepo;
+
+	@Autowired
+	private TransactionRepository txnRepo;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	private Statistics statistics;
+
+	private String payerAccount;
+
+	private String payeeAccount;
+
+	@BeforeEach
+	void setUp() {
+		String prefix = "NT" + TEST_COUNTER.incrementAndGet() + "-";
+		payerAccount = prefix + "PAYER";
+		payeeAccount = prefix + "PAYEE";
+		Bank bank = bankRepo.findById(BANK_CODE).orElseThrow();
+		Account payer = new Account(payerAccount, new BigDecimal("1000.00"), "Payer", bank, new HashSet<>());
+		Account payee = new Account(payeeAccount, new BigDecimal("1000.00"), "Payee", bank, new HashSet<>());
+		payer.addPayee(new Payee(null, "Payee", payeeAccount, bank, payer));
+		accRepo.saveAll(List.of(payer, payee));
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+	}
+
+	@AfterEach
+	void tearDown() {
+		statistics.setStatisticsEnabled(false);
+		statistics.clear();
+	}
+
+	@Test
+	void testTransfersBetweenPairAreSettledTogether() {
+		long transactionsBefore = txnRepo.count();
+		statistics.clear();
+		statistics.setStatisticsEnabled(true);
+		// Submitted without waiting, the transfers are added to the position of the pair
+		List<CompletableFuture<TransferResponseV1>> responses = IntStream.range(0, TRANSFERS)
+				.mapToObj(n -> transferService.performTransferV1Async(request(payerAccount, payeeAccount, BigDecimal.ONE), Runnable::run))
+				.toList();
+		responses.forEach(response -> assertEquals("SUCCESS", response.join().getStatus()));
+		statistics.setStatisticsEnabled(false);
+
+		assertEquals(new BigDecimal("950.00"), balance(payerAccount));
+		assertEquals(new BigDecimal("1050.00"), balance(payeeAccount));
+		// Every transfer is recorded
+		assertEquals(transactionsBefore + TRANSFERS, txnRepo.count());
+		// One window, or two if the transfers straddled a settlement: a few statements each
+		long statements = statistics.getPrepareStatementCount();
+		assertTrue(statements <= 12, TRANSFERS + " transfers took " + statements + " statements");
+	}
+
+	@Test
+	void testRejectedTransferDoesNotFailItsWindow() {
+		CompletableFuture<TransferResponseV1> first = transferService.performTransferV1Async(
+				request(payerAccount, payeeAccount, new BigDecimal("600.00")), Runnable::run);
+		CompletableFuture<TransferResponseV1> overdrawn = transferService.performTransferV1Async(
+				request(payerAccount, payeeAccount, new BigDecimal("600.00")), Runnable::run);
+		CompletableFuture<TransferResponseV1> other = transferService.performTransferV1Async(
+				request(payerAccount, payeeAccount, new BigDecimal("100.00")), Runnable::run);
+
+		assertEquals(new BigDecimal("400.00"), first.join().getBalance());
+		assertThrows(InsufficientFundsException.class, () -> unwrap(overdrawn));
+		assertEquals(new BigDecimal("300.00"), other.join().getBalance());
+		assertEquals(new BigDecimal("300.00"), balance(payerAccount));
+		assertEquals(new BigDecimal("1700.00"), balance(payeeAccount));
+	}
+
+	@Test
+	void testDuplicateRequest() {
+		TransferRequestV1 request = request(payerAccount, payeeAccount, BigDecimal.TEN);
+		TransferResponseV1 first = transferService.performTransferV1(request);
+		TransferResponseV1 second = transferService.performTransferV1(request);
+
+		assertEquals(first.getTransactionId(), second.getTransactionId());
+		assertTrue(second.isDuplicate());
+		assertEquals(new BigDecimal("990.00"), balance(payerAccount));
+	}
+
+	private static TransferRequestV1 request(String payer, String payee, BigDecimal amount) {
+		return new TransferRequestV1(UUID.randomUUID(), payer, payee, "BANK_A", BANK_CODE, amount, "GBP", Instant.now().toString());
+	}
+
+	private static <T> T unwrap(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			throw (RuntimeException) e.getCause();
+		}
+	}
+
+	private BigDecimal balance(String accNum) {
+		return accRepo.findById(accNum).orElseThrow().getBalance();
+	}
+}
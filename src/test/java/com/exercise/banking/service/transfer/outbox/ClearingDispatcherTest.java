@@ -0,0 +1,129 @@
+package com.exercise.banking.service.transfer.outbox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.exercise.banking.service.transfer.bankclient.StubBankServer;
+import com.exercise.banking.service.transfer.dto.TransferRequestV1;
+import com.exercise.banking.service.transfer.dto.TransferResponseV1;
+import com.exercise.banking.service.transfer.model.Account;
+import com.exercise.banking.service.transfer.model.Bank;
+import com.exercise.banking.service.transfer.model.Payee;
+import com.exercise.banking.service.transfer.model.TransactionStatus;
+import com.exercise.banking.service.transfer.repository.AccountRepository;
+import com.exercise.banking.service.transfer.repository.BankRepository;
+import com.exercise.banking.service.transfer.repository.OutboxRepository;
+import com.exercise.banking.service.transfer.repository.TransactionRepository;
+import com.exercise.banking.service.transfer.service.impl.InterBankTransferService;
+
+/**
+ * Settlement batches of ten transfers, a bank with fewer is cleared after two seconds.
+ */
+@SpringBootTest(properties = { "transfer.outbox.enabled=true", "transfer.outbox.poll-ms=20", "transfer.clearing.enabled=true",
+		"transfer.clearing.cycle-ms=2000", "transfer.clearing.max-batch-size=10", "transfer.bank-client.enabled=true",
+		"transfer.stub-bank.enabled=true", "transfer.stub-bank.port=0", "transfer.stub-bank.latency-ms=20" })
+class ClearingDispatcherTest {
+
+	private static final String BANK_CODE = "A00001";
+	private static final String OTHER_BANK = "B00001";
+	private static final int BATCH_SIZE = 10;
+
+	private static final AtomicInteger TEST_COUNTER = new AtomicInteger();
+
+	@Autowired
+	private InterBankTransferService transferService;
+
+	@Autowired
+	private StubBankServer stubBank;
+
+	@Autowired
+	private AccountRepository accRepo;
+
+	@Autowired
+	private BankRepository bankRepo;
+
+	@Autowired
+	private TransactionRepository txnRepo;
+
+	@Autowired
+	private OutboxRepository outboxRepo;
+
+	private String payerAccount;
+
+	private String payeeAccount;
+
+	@BeforeEach
+	void setUp() {
+		Bank otherBank = bankRepo.findById(OTHER_BANK).orElseThrow();
+		otherBank.setEndpoint(stubBank.getEndpoint());
+		bankRepo.save(otherBank);
+		int test = TEST_COUNTER.incrementAndGet();
+		payerAccount = String.format("871%04d", test);
+		payeeAccount = String.format("879%04d", test);
+		Bank bank = bankRepo.findById(BANK_CODE).orElseThrow();
+		Account payer = new Account(payerAccount, new BigDecimal("1000.00"), "Payer", bank, new HashSet<>());
+		payer.addPayee(new Payee(null, "Other bank payee", payeeAccount, otherBank, payer));
+		accRepo.save(payer);
+	}
+
+	@Test
+	void testFullBatchesAreSettledInOneCallEach() throws InterruptedException {
+		long batchesBefore = stubBank.getBatches();
+		List<UUID> transactionIds = transfer(3 * BATCH_SIZE);
+
+		awaitDelivered(transactionIds);
+
+		transactionIds.forEach(id -> assertEquals(TransactionStatus.SUCCESS, txnRepo.findById(id).orElseThrow().getStatus()));
+		assertEquals(3, stubBank.getBatches() - batchesBefore);
+		assertEquals(new BigDecimal("970.00"), accRepo.findById(payerAccount).orElseThrow().getBalance());
+	}
+
+	@Test
+	void testTransfersWaitForTheClearingCycle() throws InterruptedException {
+		long batchesBefore = stubBank.getBatches();
+		List<UUID> transactionIds = transfer(3);
+
+		// Not a full batch, the transfers wait until the cycle is over
+		Thread.sleep(300);
+		transactionIds.forEach(id -> assertEquals(TransactionStatus.SUBMITTED, txnRepo.findById(id).orElseThrow().getStatus()));
+		assertTrue(transactionIds.stream().allMatch(outboxRepo::existsById));
+
+		awaitDelivered(transactionIds);
+		transactionIds.forEach(id -> assertEquals(TransactionStatus.SUCCESS, txnRepo.findById(id).orElseThrow().getStatus()));
+		assertEquals(1, stubBank.getBatches() - batchesBefore);
+	}
+
+	private List<UUID> transfer(int count) {
+		return IntStream.range(0, count)
+				.mapToObj(n -> transferService.performTransferV1(request()))
+				.peek(response -> assertEquals("SUBMITTED", response.getStatus()))
+				.map(TransferResponseV1::getTransactionId)
+				.toList();
+	}
+
+	private void awaitDelivered(List<UUID> transactionIds) throws InterruptedException {
+		for (int attempt = 0; attempt < 100 && transactionIds.stream().anyMatch(outboxRepo::existsById); attempt++) {
+			Thread.sleep(100);
+		}
+		assertFalse(transactionIds.stream().anyMatch(outboxRepo::existsById), "Transfers left in the outbox");
+	}
+
+	private TransferRequestV1 request() {
+		return new TransferRequestV1(UUID.randomUUID(), payerAccount, payeeAccount, "BANK_B", OTHER_BANK, BigDecimal.ONE, "GBP",
+				Instant.now().toString());
+	}
+}
@@ -0,0 +1,123 @@
+package com.exercise.banking.service.transfer.outbox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.exercise.banking.service.transfer.bankclient.BankTransferAck;
+import com.exercise.banking.service.transfer.bankclient.ExternalBankClient;
+import com.exercise.banking.service.transfer.exception.ExternalBankException;
+import com.exercise.banking.service.transfer.idempotency.IdempotencyCache;
+import com.exercise.banking.service.transfer.model.OutboxEntry;
+import com.exercise.banking.service.transfer.model.TransactionStatus;
+import com.exercise.banking.service.transfer.repository.OutboxRepository;
+import com.exercise.banking.service.transfer.repository.TransactionRepository;
+import com.exercise.banking.service.transfer.service.AccountService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Answers of the bank recorded by the dispatcher, without a database.
+ */
+class OutboxDispatcherRecordTest {
+
+	private static final String BANK_CODE = "B00001";
+	private static final int MAX_ATTEMPTS = 3;
+
+	private final OutboxRepository outboxRepo = mock(OutboxRepository.class);
+	private final TransactionRepository txnRepo = mock(TransactionRepository.class);
+	private final AccountService accountService = mock(AccountService.class);
+	private final ExternalBankClient bankClient = mock(ExternalBankClient.class);
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private OutboxDispatcher dispatcher;
+
+	private OutboxEntry entry;
+
+	@BeforeEach
+	void setUp() {
+		dispatcher = new OutboxDispatcher(outboxRepo, txnRepo, accountService, bankClient,
+				new IdempotencyCache(1000, 60000, meterRegistry), Optional.empty(), mock(PlatformTransactionManager.class),
+				100, 100, 1000, 60000, MAX_ATTEMPTS, false, 0, 1, meterRegistry);
+		entry = new OutboxEntry();
+		entry.setTransactionId(UUID.randomUUID());
+		entry.setRequestId(UUID.randomUUID());
+		entry.setPayerAccNumber("123456");
+		entry.setPayeeAccNumber("654321");
+		entry.setPayeeBankCode(BANK_CODE);
+		entry.setAmount(BigDecimal.TEN);
+		entry.setCurrency("GBP");
+		entry.setCreatedAt(LocalDateTime.now());
+		entry.setNextAttemptAt(entry.getCreatedAt());
+		when(outboxRepo.findDueBankCodes(any())).thenReturn(List.of(BANK_CODE));
+		when(outboxRepo.findDue(eq(BANK_CODE), any(), any())).thenReturn(List.of(entry));
+	}
+
+	@Test
+	void testRejectedTransferIsRefunded() {
+		answer(BankTransferAck.Status.REJECTED);
+		when(txnRepo.completeSubmitted(List.of(entry.getTransactionId()), TransactionStatus.FAILURE)).thenReturn(1);
+
+		dispatcher.dispatch();
+
+		verify(accountService, times(1)).creditToAccount("123456", BigDecimal.TEN, entry.getRequestId());
+		verify(outboxRepo).deleteAllByIdInBatch(List.of(entry.getTransactionId()));
+	}
+
+	@Test
+	void testTransferCompletedElsewhereIsNotRefundedAgain() {
+		answer(BankTransferAck.Status.REJECTED);
+		// Another dispatcher recorded the same answer first
+		when(txnRepo.completeSubmitted(List.of(entry.getTransactionId()), TransactionStatus.FAILURE)).thenReturn(0);
+
+		dispatcher.dispatch();
+
+		verify(accountService, never()).creditToAccount(any(), any(), any());
+		verify(outboxRepo).deleteAllByIdInBatch(List.of(entry.getTransactionId()));
+	}
+
+	@Test
+	void testUndeliveredTransferIsRetriedThenDeadLettered() {
+		when(bankClient.send(any())).thenReturn(CompletableFuture.failedFuture(
+				new ExternalBankException(entry.getRequestId(), BANK_CODE, "Bank " + BANK_CODE + " answered with status 503")));
+
+		for (int attempt = 1; attempt < MAX_ATTEMPTS; attempt++) {
+			dispatcher.dispatch();
+			assertEquals(attempt, entry.getAttempts());
+			assertNull(entry.getDeadLetteredAt());
+		}
+		dispatcher.dispatch();
+
+		assertNotNull(entry.getDeadLetteredAt());
+		assertEquals(1.0, meterRegistry.get("transfer.outbox.deliveries").tag("outcome", "dead-lettered").counter().count());
+		assertEquals(MAX_ATTEMPTS - 1.0, meterRegistry.get("transfer.outbox.deliveries").tag("outcome", "retried").counter().count());
+		verify(outboxRepo, times(MAX_ATTEMPTS)).saveAll(anyList());
+		// Kept SUBMITTED and debited, the other bank may have received it
+		verify(txnRepo, never()).completeSubmitted(any(), any());
+		verify(accountService, never()).creditToAccount(any(), any(), any());
+	}
+
+	private void answer(BankTransferAck.Status status) {
+		when(bankClient.send(any())).thenReturn(CompletableFuture.completedFuture(
+				new BankTransferAck(entry.getTransactionId(), status, status == BankTransferAck.Status.REJECTED ? "Account closed" : null)));
+	}
+}
@@ -0,0 +1,160 @@
+package com.exercise.banking.service.transfer.outbox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.exercise.banking.service.transfer.bankclient.StubBankServer;
+import com.exercise.banking.service.transfer.dto.BatchItemResultV1;
+import com.exercise.banking.service.transfer.dto.BatchMode;
+import com.exercise.banking.service.transfer.dto.BatchTransferRequestV1;
+import com.exercise.banking.service.transfer.dto.BatchTransferResponseV1;
+import com.exercise.banking.service.transfer.dto.TransferRequestV1;
+import com.exercise.banking.service.transfer.dto.TransferResponseV1;
+import com.exercise.banking.service.transfer.model.Account;
+import com.exercise.banking.service.transfer.model.Bank;
+import com.exercise.banking.service.transfer.model.Payee;
+import com.exercise.banking.service.transfer.model.TransactionStatus;
+import com.exercise.banking.service.transfer.repository.AccountRepository;
+import com.exercise.banking.service.transfer.repository.BankRepository;
+import com.exercise.banking.service.transfer.repository.OutboxRepository;
+import com.exercise.banking.service.transfer.repository.TransactionRepository;
+import com.exercise.banking.service.transfer.service.BatchTransferService;
+import com.exercise.banking.service.transfer.service.impl.InterBankTransferService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * The stub fails half of the deliveries, short backoffs retry them within the test.
+ */
+@SpringBootTest(properties = { "transfer.outbox.enabled=true", "transfer.outbox.poll-ms=20", "transfer.outbox.initial-backoff-ms=20",
+		"transfer.outbox.max-backoff-ms=100", "transfer.bank-client.enabled=true", "transfer.stub-bank.enabled=true",
+		"transfer.stub-bank.port=0", "transfer.stub-bank.latency-ms=20", "transfer.stub-bank.error-rate=0.5" })
+class OutboxDispatcherTest {
+
+	private static final String BANK_CODE = "A00001";
+	private static final String OTHER_BANK = "B00001";
+	private static final int TRANSFERS = 20;
+
+	private static final AtomicInteger TEST_COUNTER = new AtomicInteger();
+
+	@Autowired
+	private InterBankTransferService transferService;
+
+	@Autowired
+	private BatchTransferService batchTransferService;
+
+	@Autowired
+	private StubBankServer stubBank;
+
+	@Autowired
+	private AccountRepository accRepo;
+
+	@Autowired
+	private BankRepository bankRepo;
+
+	@Autowired
+	private TransactionRepository txnRepo;
+
+	@Autowired
+	private OutboxRepository outboxRepo;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private String payerAccount;
+
+	private String payeeAccount;
+
+	@BeforeEach
+	void setUp() {
+		Bank otherBank = bankRepo.findById(OTHER_BANK).orElseThrow();
+		otherBank.setEndpoint(stubBank.getEndpoint());
+		bankRepo.save(otherBank);
+		// Digits only, the batch validates the account numbers
+		int test = TEST_COUNTER.incrementAndGet();
+		payerAccount = String.format("881%04d", test);
+		payeeAccount = String.format("889%04d", test);
+		Bank bank = bankRepo.findById(BANK_CODE).orElseThrow();
+		Account payer = new Account(payerAccount, new BigDecimal("1000.00"), "Payer", bank, new HashSet<>());
+		payer.addPayee(new Payee(null, "Other bank payee", payeeAccount, otherBank, payer));
+		accRepo.save(payer);
+	}
+
+	@Test
+	void testTransfersAreDeliveredDespiteFailures() throws InterruptedException {
+		double retriedBefore = meterRegistry.get("transfer.outbox.deliveries").tag("outcome", "retried").counter().count();
+		List<TransferResponseV1> responses = IntStream.range(0, TRANSFERS)
+				.mapToObj(n -> transferService.performTransferV1(request(BigDecimal.ONE)))
+				.toList();
+
+		// Answered once debited, before the other bank has seen the transfers
+		responses.forEach(response -> assertEquals("SUBMITTED", response.getStatus()));
+		assertEquals(new BigDecimal("980.00"), balance(payerAccount));
+		List<UUID> transactionIds = responses.stream().map(TransferResponseV1::getTransactionId).toList();
+		awaitDelivered(transactionIds);
+
+		transactionIds.forEach(id -> assertEquals(TransactionStatus.SUCCESS, txnRepo.findById(id).orElseThrow().getStatus()));
+		assertTrue(meterRegistry.get("transfer.outbox.deliveries").tag("outcome", "retried").counter().count() > retriedBefore);
+		assertEquals(new BigDecimal("980.00"), balance(payerAccount));
+	}
+
+	@Test
+	void testRetryIsAnsweredWithDeliveredStatus() throws InterruptedException {
+		TransferRequestV1 request = request(BigDecimal.TEN);
+		TransferResponseV1 first = transferService.performTransferV1(request);
+		awaitDelivered(List.of(first.getTransactionId()));
+
+		TransferResponseV1 retry = transferService.performTransferV1(request);
+
+		assertTrue(retry.isDuplicate());
+		assertEquals(first.getTransactionId(), retry.getTransactionId());
+		assertEquals("SUCCESS", retry.getStatus());
+		assertEquals(new BigDecimal("990.00"), balance(payerAccount));
+	}
+
+	@Test
+	void testBatchTransfersAreWrittenToTheOutbox() throws InterruptedException {
+		List<TransferRequestV1> transfers = IntStream.range(0, TRANSFERS).mapToObj(n -> request(BigDecimal.ONE)).toList();
+
+		BatchTransferResponseV1 response = batchTransferService.performBatchV1(
+				new BatchTransferRequestV1(UUID.randomUUID(), BatchMode.BEST_EFFORT, transfers));
+
+		assertEquals(TRANSFERS, response.getSucceeded());
+		List<UUID> transactionIds = response.getResults().stream().map(BatchItemResultV1::getTransfer)
+				.peek(transfer -> assertEquals("SUBMITTED", transfer.getStatus()))
+				.map(TransferResponseV1::getTransactionId)
+				.toList();
+		awaitDelivered(transactionIds);
+		transactionIds.forEach(id -> assertEquals(TransactionStatus.SUCCESS, txnRepo.findById(id).orElseThrow().getStatus()));
+	}
+
+	private void awaitDelivered(List<UUID> transactionIds) throws InterruptedException {
+		for (int attempt = 0; attempt < 100 && transactionIds.stream().anyMatch(outboxRepo::existsById); attempt++) {
+			Thread.sleep(100);
+		}
+		assertFalse(transactionIds.stream().anyMatch(outboxRepo::existsById), "Transfers left in the outbox");
+	}
+
+	private TransferRequestV1 request(BigDecimal amount) {
+		return new TransferRequestV1(UUID.randomUUID(), payerAccount, payeeAccount, "BANK_B", OTHER_BANK, amount, "GBP",
+				Instant.now().toString());
+	}
+
+	private BigDecimal balance(String accNum) {
+		return accRepo.findById(accNum).orElseThrow().getBalance();
+	}
+}
@@ -0,0 +1,42 @@
+package com.exercise.banking.service.transfer.registry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.exercise.banking.service.transfer.model.Bank;
+import com.exercise.banking.service.transfer.repository.BankRepository;
+
+/**
+ * Adds and removes banks through JPA while the bank directory is loaded.
+ */
+@SpringBootTest
+class BankDirectoryListenerTest {
+
+	@Autowired
+	private BankDirectory bankDirectory;
+
+	@Autowired
+	private BankRepository bankRepo;
+
+	@Test
+	void testDirectoryFollowsBankChanges() {
+		assertTrue(bankDirectory.contains("A00001"));
+		assertFalse(bankDirectory.contains("D00001"));
+
+		Bank bank = new Bank();
+		bank.setCode("D00001");
+		bank.setName("BANK_D");
+		bankRepo.save(bank);
+
+		assertEquals("BANK_D", bankDirectory.findName("D00001").orElseThrow());
+
+		bankRepo.deleteById("D00001");
+
+		assertFalse(bankDirectory.contains("D00001"));
+	}
+}
@@ -0,0 +1,95 @@
+package com.exercise.banking.service.transfer.registry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import com.exercise.banking.service.transfer.model.Bank;
+import com.exercise.banking.service.transfer.repository.BankRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class BankDirectoryTest {
+
+	private BankRepository bankRepo;
+
+	private AtomicLong now;
+
+	private BankDirectory directory;
+
+	@BeforeEach
+	void setUp() {
+		bankRepo = mock(BankRepository.class);
+		when(bankRepo.findAll()).thenReturn(List.of(bank("A00001", "BANK_A")));
+		now = new AtomicLong();
+		directory = new BankDirectory(bankRepo, 60_000, new SimpleMeterRegistry(), now::get);
+	}
+
+	@Test
+	void testLoadedOnceAndReadFromMemory() {
+		assertTrue(directory.contains("A00001"));
+		assertFalse(directory.contains("B00001"));
+		assertEquals("BANK_A", directory.toBank("A00001").getName());
+		assertNull(directory.toBank("B00001").getName());
+
+		verify(bankRepo, times(1)).findAll();
+		Map<String, String> banks = directory.banks();
+		assertThrows(UnsupportedOperationException.class, () -> banks.put("B00001", "BANK_B"));
+	}
+
+	@Test
+	void testInvalidatedDirectoryIsReplaced() {
+		Map<String, String> before = directory.banks();
+		when(bankRepo.findAll()).thenReturn(List.of(bank("A00001", "BANK_A"), bank("B00001", "BANK_B")));
+
+		directory.invalidate();
+
+		assertTrue(directory.contains("B00001"));
+		// Readers holding the previous snapshot still see a consistent one
+		assertEquals(Map.of("A00001", "BANK_A"), before);
+	}
+
+	@Test
+	void testOldDirectoryIsReloaded() {
+		directory.banks();
+		when(bankRepo.findAll()).thenReturn(List.of(bank("B00001", "BANK_B")));
+
+		now.addAndGet(TimeUnit.SECONDS.toNanos(59));
+		assertTrue(directory.contains("A00001"));
+		now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+		assertFalse(directory.contains("A00001"));
+		assertTrue(directory.contains("B00001"));
+	}
+
+	@Test
+	void testFailedReloadKeepsCurrentDirectory() {
+		directory.banks();
+		when(bankRepo.findAll()).thenThrow(new DataAccessResourceFailureException("Database unavailable"));
+
+		directory.invalidate();
+
+		assertTrue(directory.contains("A00001"));
+	}
+
+	private static Bank bank(String code, String name) {
+		Bank bank = new Bank();
+		bank.setCode(code);
+		bank.setName(name);
+		return bank;
+	}
+}
@@ -0,0 +1,101 @@
+package com.exercise.banking.service.transfer.registry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.UUID;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.exercise.banking.service.transfer.exception.PayeeNotRegisteredException;
+import com.exercise.banking.service.transfer.model.Account;
+import com.exercise.banking.service.transfer.model.Bank;
+import com.exercise.banking.service.transfer.model.Payee;
+import com.exercise.banking.service.transfer.repository.AccountRepository;
+import com.exercise.banking.service.transfer.repository.BankRepository;
+import com.exercise.banking.service.transfer.repository.PayeeRepository;
+import com.exercise.banking.service.transfer.service.AccountService;
+
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Registers and removes payees through JPA while the payee registry holds the
+ * outcome of earlier lookups.
+ */
+@SpringBootTest
+class PayeeRegistryListenerTest {
+
+	private static final String BANK_CODE = "A00001";
+
+	@Autowired
+	private AccountService accountService;
+
+	@Autowired
+	private AccountRepository accRepo;
+
+	@Autowired
+	private BankRepository bankRepo;
+
+	@Autowired
+	private PayeeRepository payeeRepo;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Test
+	void testAddedPayeeIsFoundRightAway() {
+		Bank bank = bankRepo.findById(BANK_CODE).orElseThrow();
+		Account payer = accRepo.save(new Account("PR0001", new BigDecimal("100.00"), "Registrar1", bank, new HashSet<>()));
+		UUID requestId = UUID.randomUUID();
+
+		// Cached as not registered
+		assertThrows(PayeeNotRegisteredException.class,
+				() -> accountService.getPayeeByAccountNumbersOrThrow("PR0001", "PR0002", BANK_CODE, requestId));
+
+		payer.addPayee(new Payee(null, "Registrar1-Payee", "PR0002", bank, payer));
+		accRepo.save(payer);
+
+		Payee payee = accountService.getPayeeByAccountNumbersOrThrow("PR0001", "PR0002", BANK_CODE, requestId);
+		assertEquals("PR0002", payee.getAccNum());
+		assertEquals(BANK_CODE, payee.getBank().getCode());
+
+		payeeRepo.deleteById(payee.getId());
+
+		assertThrows(PayeeNotRegisteredException.class,
+				() -> accountService.getPayeeByAccountNumbersOrThrow("PR0001", "PR0002", BANK_CODE, requestId));
+	}
+
+	@Test
+	void testPayeesAddedTogetherAreInsertedInBatches() {
+		Bank bank = bankRepo.findById(BANK_CODE).orElseThrow();
+		Account payer = accRepo.save(new Account("PR0003", new BigDecimal("100.00"), "Registrar3", bank, new HashSet<>()));
+		UUID requestId = UUID.randomUUID();
+		assertThrows(PayeeNotRegisteredException.class,
+				() -> accountService.getPayeeByAccountNumbersOrThrow("PR0003", "PR1099", BANK_CODE, requestId));
+
+		for (int p = 1000; p < 1100; p++) {
+			payer.addPayee(new Payee(null, "Registrar3-Payee" + p, "PR" + p, bank, payer));
+		}
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+		statistics.setStatisticsEnabled(true);
+		try {
+			accRepo.save(payer);
+			// select the payer, the sequence at most three times, then two batches of 50 inserts
+			assertTrue(statistics.getPrepareStatementCount() <= 6, "statements: " + statistics.getPrepareStatementCount());
+		} finally {
+			statistics.setStatisticsEnabled(false);
+			statistics.clear();
+		}
+
+		// The payer's entries were still invalidated
+		assertEquals("PR1099", accountService.getPayeeByAccountNumbersOrThrow("PR0003", "PR1099", BANK_CODE, requestId).getAccNum());
+	}
+}
@@ -0,0 +1,96 @@
+package com.exercise.banking.service.transfer.registry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class PayeeRegistryTest {
+
+	private static final RegisteredPayee PAYEE = new RegisteredPayee(1L, "Payee", "PAYEE001", "A00001", "PAYER001");
+
+	private AtomicLong now;
+
+	private PayeeRegistry registry;
+
+	private AtomicInteger loads;
+
+	@BeforeEach
+	void setUp() {
+		now = new AtomicLong();
+		loads = new AtomicInteger();
+		registry = new PayeeRegistry(2, 60_000, 1_000, new SimpleMeterRegistry(), now::get);
+	}
+
+	@Test
+	void testRegisteredPayeeIsLoadedOnce() {
+		assertEquals(Optional.of(PAYEE), find("PAYER001", "PAYEE001", Optional.of(PAYEE)));
+		assertEquals(Optional.of(PAYEE), find("PAYER001", "PAYEE001", Optional.of(PAYEE)));
+		assertEquals(1, loads.get());
+
+		now.addAndGet(TimeUnit.SECONDS.toNanos(60));
+		find("PAYER001", "PAYEE001", Optional.of(PAYEE));
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	void testMissingPayeeExpiresSooner() {
+		assertTrue(find("PAYER001", "PAYEE002", Optional.empty()).isEmpty());
+		assertTrue(find("PAYER001", "PAYEE002", Optional.empty()).isEmpty());
+		assertEquals(1, loads.get());
+
+		now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+		assertEquals(Optional.of(PAYEE), find("PAYER001", "PAYEE002", Optional.of(PAYEE)));
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	void testInvalidateDropsEntriesOfPayer() {
+		find("PAYER001", "PAYEE001", Optional.of(PAYEE));
+		find("PAYER002", "PAYEE001", Optional.of(PAYEE));
+
+		registry.invalidate("PAYER001");
+
+		assertEquals(1, registry.size());
+		find("PAYER001", "PAYEE001", Optional.empty());
+		assertEquals(3, loads.get());
+	}
+
+	@Test
+	void testLookupOverlappingInvalidationIsNotStored() {
+		registry.find("PAYER001", "PAYEE001", "A00001", () -> {
+			// The payee is registered while the old state is being read
+			registry.invalidate("PAYER001");
+			return Optional.empty();
+		});
+
+		assertEquals(0, registry.size());
+	}
+
+	@Test
+	void testLeastRecentlyUsedEntriesAreEvicted() {
+		find("PAYER001", "PAYEE001", Optional.of(PAYEE));
+		find("PAYER001", "PAYEE002", Optional.of(PAYEE));
+		find("PAYER001", "PAYEE001", Optional.of(PAYEE));
+		find("PAYER001", "PAYEE003", Optional.of(PAYEE));
+
+		assertEquals(2, registry.size());
+		find("PAYER001", "PAYEE001", Optional.of(PAYEE));
+		assertEquals(3, loads.get());
+	}
+
+	private Optional<RegisteredPayee> find(String payerAccNum, String payeeAccNum, Optional<RegisteredPayee> stored) {
+		return registry.find(payerAccNum, payeeAccNum, "A00001", () -> {
+			loads.incrementAndGet();
+			return stored;
+		});
+	}
+}
@@ -3,10 +3,15 @@ package com.exercise.banking.service.transfer.service;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.math.BigDecimal;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -24,9 +29,15 @@ import com.exercise.banking.service.transfer.model.Account;
 import com.exercise.banking.service.transfer.model.Bank;
 import com.exercise.banking.service.transfer.model.Payee;
 import com.exercise.banking.service.transfer.repository.AccountRepository;
+import com.exercise.banking.service.transfer.repository.BankRepository;
+import com.exercise.banking.service.transfer.registry.BankDirectory;
+import com.exercise.banking.service.transfer.registry.PayeeRegistry;
+import com.exercise.banking.service.transfer.registry.RegisteredPayee;
 import com.exercise.banking.service.transfer.repository.PayeeRepository;
 import com.exercise.banking.service.transfer.service.impl.AccountServiceImpl;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 @Transactional
 @DataJpaTest
 class AccountServiceImplTest {
@@ -36,6 +47,9 @@ class AccountServiceImplTest {
 	
 	@Mock
 	AccountRepository accRepo;
+
+	@Mock
+	BankRepository bankRepo;
 	
 	private AccountService accountService;
 	
@@ -44,7 +58,12 @@ class AccountServiceImplTest {
 	@BeforeEach
 	public void setUp() {
 		MockitoAnnotations.openMocks(this);
-		accountService = new AccountServiceImpl(accRepo, payeeRepo);
+		Bank testBank1 = new Bank();
+		testBank1.setCode("testCode1");
+		testBank1.setName("testBank1");
+		when(bankRepo.findAll()).thenReturn(List.of(testBank1));
+		accountService = new AccountServiceImpl(accRepo, payeeRepo, new PayeeRegistry(1000, 600000, 5000, new SimpleMeterRegistry()),
+				new BankDirectory(bankRepo, 300000, new SimpleMeterRegistry()));
 		requestId = UUID.randomUUID();
 	}
 	
@@ -63,7 +82,7 @@ class AccountServiceImplTest {
 	    payerAccount.getPayees().add(payee1);
 	    
 	    // Mock the repository call to return the Payee
-	    when(payeeRepo.findByPayerAccount_AccNumAndAccNum("PAYER001", "PAYEE001")).thenReturn(Optional.of(payee1));
+	    when(payeeRepo.findRegisteredPayee("PAYER001", "PAYEE001", "testCode1")).thenReturn(Optional.of(registered(payee1)));
 	    
 	    // Call the method under test
 	    Payee retrievedPayee = accountService.getPayeeByAccountNumbersOrThrow("PAYER001", "PAYEE001","testCode1",UUID.randomUUID());
@@ -100,69 +119,56 @@ class AccountServiceImplTest {
 	
 	@Test
 	void testCreditToAccountl() {
-	    // Setup the bank instance
-	    Bank testBank1 = new Bank();
-	    testBank1.setCode("testCode1");
-	    testBank1.setName("testBank1");
-
-	    // Setup the payer account with an initial balance and link to the bank
-	    Account payerAccount = new Account("PAYER001", new BigDecimal("1000.00"), "Payer1", testBank1, new HashSet<>());
-	    
-	    when(accRepo.findById("PAYER001")).thenReturn(Optional.of(payerAccount));
-	    when(accRepo.save(payerAccount)).thenReturn(payerAccount);
-	    
 	    BigDecimal amount = BigDecimal.valueOf(200);
+	    when(accRepo.credit("PAYER001", amount)).thenReturn(1);
 	    
 	    // Call the method under test
-	    Account retrieved = accountService.creditToAccount(payerAccount, amount, requestId);
+	    accountService.creditToAccount("PAYER001", amount, requestId);
 	    
-	    // Validate the result
-	    assertNotNull(retrieved, "The retrieved account should not be null");
-	    assertEquals("PAYER001", retrieved.getAccNum(), "The  account number should match");
-	    assertEquals(new BigDecimal("1200.00"),retrieved.getBalance(), "The balance should match");
+	    // Validate the single update was issued
+	    verify(accRepo).credit("PAYER001", amount);
+	    verify(accRepo, never()).save(any(Account.class));
 	}
 	
 	@Test
-	void testDebitFromAccountl() {
-	    // Setup the bank instance
-	    Bank testBank1 = new Bank();
-	    testBank1.setCode("testCode1");
-	    testBank1.setName("testBank1");
-
-	    // Setup the payer account with an initial balance and link to the bank
-	    Account payerAccount = new Account("PAYER001", new BigDecimal("1000.00"), "Payer1", testBank1, new HashSet<>());
-	    
-	    when(accRepo.findById("PAYER001")).thenReturn(Optional.of(payerAccount));
-	    when(accRepo.save(payerAccount)).thenReturn(payerAccount);
+	void testCreditToUnknownAccount() {
+	    BigDecimal amount = BigDecimal.valueOf(200);
+	    when(accRepo.credit("PAYER001", amount)).thenReturn(0);
 	    
+		assertThrows(AccountNotFoundException.class, () -> accountService.creditToAccount("PAYER001", amount, requestId));
+	}
+	
+	@Test
+	void testDebitFromAccountl() {
 	    BigDecimal amount = BigDecimal.valueOf(200);
+	    when(accRepo.debitIfSufficientFunds("PAYER001", amount)).thenReturn(1);
 	    
 	    // Call the method under test
-	    Account retrieved = accountService.debitFromAccount(payerAccount, amount, requestId);
+	    accountService.debitFromAccount("PAYER001", amount, requestId);
 	    
-	    // Validate the result
-	    assertNotNull(retrieved, "The retrieved account should not be null");
-	    assertEquals("PAYER001", retrieved.getAccNum(), "The  account number should match");
-	    assertEquals(new BigDecimal("800.00"),retrieved.getBalance(), "The balance should match");
+	    // Validate the single guarded update was issued, without loading the account
+	    verify(accRepo).debitIfSufficientFunds("PAYER001", amount);
+	    verify(accRepo, never()).findById("PAYER001");
 	}
 	
 	@Test
 	void testDebitWithInSufficientFunds() {
-	    // Setup the bank instance
-	    Bank testBank1 = new Bank();
-	    testBank1.setCode("testCode1");
-	    testBank1.setName("testBank1");
-
-	    // Setup the payer account with an initial balance and link to the bank
-	    Account payerAccount = new Account("PAYER001", new BigDecimal("1000.00"), "Payer1", testBank1, new HashSet<>());
-	    
-	    when(accRepo.findById("PAYER001")).thenReturn(Optional.of(payerAccount));
-	    when(accRepo.save(payerAccount)).thenReturn(payerAccount);
-	    
 	    BigDecimal amount = BigDecimal.valueOf(1200);
+	    // The guard does not match, but the account exists
+	    when(accRepo.debitIfSufficientFunds("PAYER001", amount)).thenReturn(0);
+	    when(accRepo.existsById("PAYER001")).thenReturn(true);
 	    
 	    // Call the method under test
-		assertThrows(InsufficientFundsException.class, () -> accountService.debitFromAccount(payerAccount, amount, requestId));
+		assertThrows(InsufficientFundsException.class, () -> accountService.debitFromAccount("PAYER001", amount, requestId));
+	}
+	
+	@Test
+	void testDebitFromUnknownAccount() {
+	    BigDecimal amount = BigDecimal.valueOf(200);
+	    when(accRepo.debitIfSufficientFunds("PAYER001", amount)).thenReturn(0);
+	    when(accRepo.existsById("PAYER001")).thenReturn(false);
+	    
+		assertThrows(AccountNotFoundException.class, () -> accountService.debitFromAccount("PAYER001", amount, requestId));
 	}
 
 	@Test
@@ -190,8 +196,8 @@ class AccountServiceImplTest {
 	    payerAccount.getPayees().add(payee1);
 	    
 	    // Mock the repository call to return the Payee
-	    when(payeeRepo.findByPayerAccount_AccNumAndAccNum("PAYER001", "PAYEE001")).thenReturn(Optional.of(payee1));
-	    
+	    when(payeeRepo.findRegisteredPayee("PAYER001", "PAYEE001", "testCode1")).thenReturn(Optional.of(registered(payee1)));
+	    when(accRepo.existsById("PAYER001")).thenReturn(true);
 	    
 	    assertThrows(PayeeNotRegisteredException.class, () -> {
             accountService.getPayeeByAccountNumbersOrThrow("PAYER001", "PAYEE001","invalidCode",requestId);
@@ -206,8 +212,9 @@ class AccountServiceImplTest {
         String payeeBankCode = "PAYEEBANK01";
         
         // Mock the repository to return Optional.empty() for an unregistered payee
-        when(payeeRepo.findByPayerAccount_AccNumAndAccNum(payerAccountNum, payeeAccountNum))
+        when(payeeRepo.findRegisteredPayee(payerAccountNum, payeeAccountNum, payeeBankCode))
             .thenReturn(Optional.empty());
+        when(accRepo.existsById(payerAccountNum)).thenReturn(true);
         
         // Act & Assert
         assertThrows(PayeeNotRegisteredException.class, () -> {
@@ -215,5 +222,42 @@ class AccountServiceImplTest {
         }, "Expected PayeeNotRegisteredException to be thrown when payee is not found");
     }
 	
+	@Test
+    void testPayeeRetrievalForUnknownPayer() {
+        when(payeeRepo.findRegisteredPayee("PAYER001", "PAYEE001", "testCode1"))
+            .thenReturn(Optional.empty());
+        when(accRepo.existsById("PAYER001")).thenReturn(false);
+        
+        assertThrows(AccountNotFoundException.class, () -> {
+            accountService.getPayeeByAccountNumbersOrThrow("PAYER001", "PAYEE001", "testCode1",requestId);
+        }, "Expected AccountNotFoundException to be thrown when payer account is not found");
+    }
+
+	@Test
+	void testRepeatedLookupsAnsweredFromPayeeRegistry() {
+		Bank testBank1 = new Bank();
+		testBank1.setCode("testCode1");
+		testBank1.setName("testBank1");
+		Account payerAccount = new Account("PAYER001", new BigDecimal("1000.00"), "Payer1", testBank1, new HashSet<>());
+		Payee payee1 = new Payee(7L, "NickName", "PAYEE001", testBank1, payerAccount);
+		when(payeeRepo.findRegisteredPayee("PAYER001", "PAYEE001", "testCode1")).thenReturn(Optional.of(registered(payee1)));
+		when(payeeRepo.findRegisteredPayee("PAYER001", "PAYEE002", "testCode1")).thenReturn(Optional.empty());
+		when(accRepo.existsById("PAYER001")).thenReturn(true);
+
+		for (int i = 0; i < 3; i++) {
+			assertEquals(7L, accountService.getPayeeByAccountNumbersOrThrow("PAYER001", "PAYEE001", "testCode1", requestId).getId());
+			assertThrows(PayeeNotRegisteredException.class,
+					() -> accountService.getPayeeByAccountNumbersOrThrow("PAYER001", "PAYEE002", "testCode1", requestId));
+		}
 
+		// One query each, the registrations and the missing payee are cached
+		verify(payeeRepo, times(1)).findRegisteredPayee("PAYER001", "PAYEE001", "testCode1");
+		verify(payeeRepo, times(1)).findRegisteredPayee("PAYER001", "PAYEE002", "testCode1");
+		verify(accRepo, times(1)).existsById("PAYER001");
+	}
+
+	private static RegisteredPayee registered(Payee payee) {
+		return new RegisteredPayee(payee.getId(), payee.getName(), payee.getAccNum(), payee.getBank().getCode(),
+				payee.getPayerAccount().getAccNum());
+	}
 }
@@ -0,0 +1,234 @@
+package com.exercise.banking.service.transfer.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+
+import com.exercise.banking.service.transfer.dto.BatchItemResultV1;
+import com.exercise.banking.service.transfer.dto.BatchMode;
+import com.exercise.banking.service.transfer.dto.BatchTransferRequestV1;
+import com.exercise.banking.service.transfer.dto.BatchTransferResponseV1;
+import com.exercise.banking.service.transfer.dto.TransferRequestV1;
+import com.exercise.banking.service.transfer.idempotency.RequestIdFilter;
+import com.exercise.banking.service.transfer.model.Account;
+import com.exercise.banking.service.transfer.model.Bank;
+import com.exercise.banking.service.transfer.model.Payee;
+import com.exercise.banking.service.transfer.repository.AccountRepository;
+import com.exercise.banking.service.transfer.repository.BankRepository;
+import com.exercise.banking.service.transfer.repository.TransactionRepository;
+
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Runs batches against the database, the response cache is disabled so that duplicates
+ * are answered from the database.
+ */
+@SpringBootTest(properties = { "transfer.idempotency.cache.max-size=0", "transfer.batch.chunk-size=20" })
+class BatchTransferServiceTest {
+
+	private static final String SOURCE_BANK = "A00001";
+	private static final String OTHER_BANK = "B00001";
+
+	@Autowired
+	private BatchTransferService batchTransferService;
+
+	@Autowired
+	private AccountRepository accRepo;
+
+	@Autowired
+	private BankRepository bankRepo;
+
+	@Autowired
+	private TransactionRepository txnRepo;
+
+	@Autowired
+	private RequestIdFilter requestIdFilter;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	private Statistics statistics;
+
+	@BeforeEach
+	void setUp() {
+		requestIdFilter.rebuild();
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+	}
+
+	@AfterEach
+	void tearDown() {
+		statistics.setStatisticsEnabled(false);
+		statistics.clear();
+	}
+
+	@Test
+	void testBestEffortBatch() {
+		register("8810001", "100.00", "8810002", SOURCE_BANK);
+		register("8810003", "100.00", "8810004", OTHER_BANK);
+
+		BatchTransferResponseV1 response = batchTransferService.performBatchV1(new BatchTransferRequestV1(UUID.randomUUID(),
+				BatchMode.BEST_EFFORT, List.of(
+						request("8810001", "8810002", SOURCE_BANK, "60.00"),
+						// Only 40.00 left once the first transfer is executed
+						request("8810001", "8810002", SOURCE_BANK, "50.00"),
+						request("8810003", "8810004", OTHER_BANK, "30.00"),
+						request("8810003", "8819999", OTHER_BANK, "10.00"),
+						request("8810001", "8810001", SOURCE_BANK, "10.00"))));
+
+		assertEquals(BatchTransferResponseV1.Status.PARTIALLY_COMPLETED, response.getStatus());
+		assertEquals(2, response.getSucceeded());
+		assertEquals(3, response.getFailed());
+		List<BatchItemResultV1> results = response.getResults();
+		assertEquals(BatchItemResultV1.Status.SUCCESS, results.get(0).getStatus());
+		assertEquals(0, new BigDecimal("40.00").compareTo(results.get(0).getTransfer().getBalance()));
+		assertEquals(HttpStatus.BAD_REQUEST, results.get(1).getError().getStatus());
+		assertEquals("Insufficient funds in account", results.get(1).getError().getMessage());
+		assertEquals(BatchItemResultV1.Status.SUCCESS, results.get(2).getStatus());
+		assertEquals(HttpStatus.NOT_FOUND, results.get(3).getError().getStatus());
+		assertEquals(HttpStatus.BAD_REQUEST, results.get(4).getError().getStatus());
+
+		assertBalance("8810001", "40.00");
+		assertBalance("8810002", "60.00");
+		assertBalance("8810003", "70.00");
+		assertTrue(txnRepo.findByRequestId(results.get(1).getRequestId()).isEmpty());
+	}
+
+	@Test
+	void testAllOrNothingBatchRejected() {
+		register("8820001", "100.00", "8820002", SOURCE_BANK);
+
+		BatchTransferResponseV1 response = batchTransferService.performBatchV1(new BatchTransferRequestV1(UUID.randomUUID(),
+				BatchMode.ALL_OR_NOTHING, List.of(
+						request("8820001", "8820002", SOURCE_BANK, "60.00"),
+						request("8820001", "8820002", SOURCE_BANK, "60.00"))));
+
+		assertEquals(BatchTransferResponseV1.Status.REJECTED, response.getStatus());
+		assertEquals(BatchItemResultV1.Status.NOT_EXECUTED, response.getResults().get(0).getStatus());
+		assertEquals(BatchItemResultV1.Status.FAILED, response.getResults().get(1).getStatus());
+		assertBalance("8820001", "100.00");
+		assertBalance("8820002", "0.00");
+		assertTrue(txnRepo.findByRequestId(response.getResults().get(0).getRequestId()).isEmpty());
+	}
+
+	@Test
+	void testAllOrNothingBatchCompleted() {
+		register("8830001", "100.00", "8830002", SOURCE_BANK);
+
+		BatchTransferResponseV1 response = batchTransferService.performBatchV1(new BatchTransferRequestV1(UUID.randomUUID(),
+				BatchMode.ALL_OR_NOTHING, List.of(
+						request("8830001", "8830002", SOURCE_BANK, "60.00"),
+						request("8830001", "8830002", SOURCE_BANK, "40.00"))));
+
+		assertEquals(BatchTransferResponseV1.Status.COMPLETED, response.getStatus());
+		assertBalance("8830001", "0.00");
+		assertBalance("8830002", "100.00");
+	}
+
+	@Test
+	void testResubmittedBatchAnsweredWithDuplicates() {
+		register("8840001", "100.00", "8840002", SOURCE_BANK);
+		BatchTransferRequestV1 request = new BatchTransferRequestV1(UUID.randomUUID(), BatchMode.BEST_EFFORT, List.of(
+				request("8840001", "8840002", SOURCE_BANK, "10.00"),
+				request("8840001", "8840002", SOURCE_BANK, "20.00")));
+		BatchTransferResponseV1 first = batchTransferService.performBatchV1(request);
+
+		BatchTransferResponseV1 second = batchTransferService.performBatchV1(request);
+
+		assertEquals(BatchTransferResponseV1.Status.COMPLETED, second.getStatus());
+		assertEquals(2, second.getDuplicates());
+		assertEquals(first.getResults().get(1).getTransfer().getTransactionId(), second.getResults().get(1).getTransfer().getTransactionId());
+		assertBalance("8840001", "70.00");
+	}
+
+	@Test
+	void testStatementsDoNotGrowWithTransfers() {
+		register("8850001", "1000.00", "8850002", SOURCE_BANK);
+		// Loads the registration into the payee registry
+		batchTransferService.performBatchV1(batch(1, "8850001", "8850002"));
+
+		// read the accounts, update the two balances, insert the transactions in one JDBC batch
+		assertEquals(4, countStatements(batch(1, "8850001", "8850002")));
+		assertEquals(4, countStatements(batch(20, "8850001", "8850002")));
+	}
+
+	@Test
+	void testStreamIsExecutedChunkByChunk() {
+		register("8860001", "1000.00", "8860002", SOURCE_BANK);
+		List<TransferRequestV1> transfers = new ArrayList<>();
+		for (int i = 0; i < 45; i++) {
+			// An unreadable line
+			transfers.add(i == 3 ? null : request("8860001", "8860002", SOURCE_BANK, "1.00"));
+		}
+		AtomicInteger read = new AtomicInteger();
+		Iterator<TransferRequestV1> stream = transfers.stream().peek(transfer -> read.incrementAndGet()).iterator();
+		List<Integer> readBeforeResults = new ArrayList<>();
+		List<BatchItemResultV1> results = new ArrayList<>();
+
+		long count = batchTransferService.performStreamV1(UUID.randomUUID(), stream, chunk -> {
+			readBeforeResults.add(read.get());
+			results.addAll(chunk);
+		});
+
+		assertEquals(45, count);
+		// The next chunk is only read once the results of the previous one are handed over
+		assertEquals(List.of(20, 40, 45), readBeforeResults);
+		assertEquals(45, results.size());
+		assertEquals(BatchItemResultV1.Status.FAILED, results.get(3).getStatus());
+		assertEquals(44, results.stream().filter(result -> result.getStatus() == BatchItemResultV1.Status.SUCCESS).count());
+		assertEquals(transfers.get(44).getRequestId(), results.get(44).getRequestId());
+		assertBalance("8860001", "956.00");
+	}
+
+	private long countStatements(BatchTransferRequestV1 request) {
+		statistics.clear();
+		statistics.setStatisticsEnabled(true);
+		BatchTransferResponseV1 response = batchTransferService.performBatchV1(request);
+		statistics.setStatisticsEnabled(false);
+		assertEquals(BatchTransferResponseV1.Status.COMPLETED, response.getStatus());
+		return statistics.getPrepareStatementCount();
+	}
+
+	private static BatchTransferRequestV1 batch(int size, String payerAccNum, String payeeAccNum) {
+		List<TransferRequestV1> transfers = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			transfers.add(request(payerAccNum, payeeAccNum, SOURCE_BANK, "1.00"));
+		}
+		return new BatchTransferRequestV1(UUID.randomUUID(), BatchMode.BEST_EFFORT, transfers);
+	}
+
+	private void register(String payerAccNum, String balance, String payeeAccNum, String payeeBankCode) {
+		Bank bank = bankRepo.findById(SOURCE_BANK).orElseThrow();
+		Account payer = accRepo.save(new Account(payerAccNum, new BigDecimal(balance), "Batch-" + payerAccNum, bank, new HashSet<>()));
+		if (SOURCE_BANK.equals(payeeBankCode)) {
+			accRepo.save(new Account(payeeAccNum, new BigDecimal("0.00"), "Batch-" + payeeAccNum, bank, new HashSet<>()));
+		}
+		payer.addPayee(new Payee(null, "Batch-Payee", payeeAccNum, bankRepo.findById(payeeBankCode).orElseThrow(), payer));
+		accRepo.save(payer);
+	}
+
+	private void assertBalance(String accNum, String balance) {
+		assertEquals(0, new BigDecimal(balance).compareTo(accRepo.findViewByAccNum(accNum).orElseThrow().balance()));
+	}
+
+	private static TransferRequestV1 request(String payerAccNum, String payeeAccNum, String payeeBankCode, String amount) {
+		return new TransferRequestV1(UUID.randomUUID(), payerAccNum, payeeAccNum, null, payeeBankCode, new BigDecimal(amount), "GBP",
+				Instant.now().toString());
+	}
+}
@@ -3,6 +3,8 @@ package com.exercise.banking.service.transfer.service;
 import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 
 import java.math.BigDecimal;
@@ -19,16 +21,23 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.exercise.banking.service.transfer.concurrency.AccountLockManager;
+import com.exercise.banking.service.transfer.concurrency.TransferExecutor;
+import com.exercise.banking.service.transfer.concurrency.TransferRetryPolicy;
 import com.exercise.banking.service.transfer.dto.TransferRequestV1;
 import com.exercise.banking.service.transfer.dto.TransferResponseV1;
 import com.exercise.banking.service.transfer.model.Account;
 import com.exercise.banking.service.transfer.model.Bank;
 import com.exercise.banking.service.transfer.model.Payee;
 import com.exercise.banking.service.transfer.model.Transaction;
+import com.exercise.banking.service.transfer.repository.AccountView;
 import com.exercise.banking.service.transfer.service.impl.IntraBankTransferService;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 @Transactional
 @DataJpaTest
 class ConcurrentTransferServiceTest {
@@ -40,12 +49,18 @@ class ConcurrentTransferServiceTest {
     @Mock
     TransactionService txnService;
 
+    @Mock
+    private PlatformTransactionManager txManager;
+
     private IntraBankTransferService intraBankTransferService;
 
     @BeforeEach
     public void setUp() {
         MockitoAnnotations.openMocks(this);
-        intraBankTransferService = new IntraBankTransferService(txnService, accountService);
+        TransferExecutor transferExecutor = new TransferExecutor(
+                new AccountLockManager(true, 16, 1000, new SimpleMeterRegistry()),
+                new TransferRetryPolicy(3, 1, 10, 0.2, 10), txManager, new SimpleMeterRegistry());
+        intraBankTransferService = new TransferServiceBuilder(txnService, accountService, transferExecutor).buildIntraBank();
     }
 
     @Test
@@ -59,38 +74,43 @@ class ConcurrentTransferServiceTest {
         Payee payee1 = new Payee(null, "Person1-Payee1", "ACC002",  testBank1, payerAccount);
         payerAccount.getPayees().add(payee1);
 
-        UUID requestId = UUID.randomUUID();
         Account payeeAccount = new Account("ACC002", new BigDecimal("200.00"), "Payee1", testBank1, null);
-        TransferRequestV1 request = new TransferRequestV1(requestId, "ACC001", "ACC002", "testBank1", "testCode1", new BigDecimal("100.00"), "GBP", Instant.now().toString());
 
         // Mock repository and service responses
-        when(accountService.getAccountByNumberOrThrow("ACC001",requestId)).thenReturn(payerAccount);
-        when(accountService.getAccountByNumberOrThrow("ACC002",requestId)).thenReturn(payeeAccount);
-        when(accountService.getPayeeByAccountNumbersOrThrow("ACC001", "ACC002", "testCode1", requestId)).thenReturn(payee1);
+        when(accountService.getAccountByNumberOrThrow(eq("ACC001"), any(UUID.class))).thenReturn(payerAccount);
+        when(accountService.getAccountByNumberOrThrow(eq("ACC002"), any(UUID.class))).thenReturn(payeeAccount);
+        when(accountService.getPayeeByAccountNumbersOrThrow(eq("ACC001"), eq("ACC002"), eq("testCode1"), any(UUID.class))).thenReturn(payee1);
         
         Mockito.doAnswer(invocation -> {
-            Account account = invocation.getArgument(0);
+            Account account = accountService.getAccountByNumberOrThrow(invocation.getArgument(0), invocation.getArgument(2));
             BigDecimal amount = invocation.getArgument(1);
             account.setBalance(account.getBalance().add(amount));
-            return account; // void method, so return null
-        }).when(accountService).creditToAccount(any(Account.class), any(BigDecimal.class), any(UUID.class));
+            return null; // void method, so return null
+        }).when(accountService).creditToAccount(anyString(), any(BigDecimal.class), any(UUID.class));
         
         
         
         Mockito.doAnswer(invocation -> {
-            Account account = invocation.getArgument(0);
+            Account account = accountService.getAccountByNumberOrThrow(invocation.getArgument(0), invocation.getArgument(2));
             BigDecimal amount = invocation.getArgument(1);
             account.setBalance(account.getBalance().subtract(amount));
-            return account; // void method, so return null
-        }).when(accountService).debitFromAccount(any(Account.class), any(BigDecimal.class), any(UUID.class));
+            return null; // void method, so return null
+        }).when(accountService).debitFromAccount(anyString(), any(BigDecimal.class), any(UUID.class));
+        // Views are read from the mocked accounts
+        when(accountService.getAccountViewOrThrow(anyString(), any(UUID.class))).thenAnswer(invocation -> {
+            Account account = accountService.getAccountByNumberOrThrow(invocation.getArgument(0), invocation.getArgument(1));
+            return new AccountView(account.getAccNum(), account.getBalance(), account.getBank().getCode(), account.getVersion());
+        });
 
 
         // Mock the save behavior of the transaction repository
         when(txnService.saveTransaction(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(txnService.reserve(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
-        // Run concurrent transfers using CompletableFuture
+        // Run concurrent transfers using CompletableFuture, each with its own request id
         CompletableFuture<TransferResponseV1>[] futures = IntStream.range(0, 10)
-                .mapToObj(i -> CompletableFuture.supplyAsync(() -> intraBankTransferService.performTransferV1(request)))
+                .mapToObj(i -> new TransferRequestV1(UUID.randomUUID(), "ACC001", "ACC002", "testBank1", "testCode1", new BigDecimal("100.00"), "GBP", Instant.now().toString()))
+                .map(request -> CompletableFuture.supplyAsync(() -> intraBankTransferService.performTransferV1(request)))
                 .toArray(CompletableFuture[]::new);
 
         // Wait for all futures to complete and assert results
@@ -0,0 +1,182 @@
+package com.exercise.banking.service.transfer.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+
+import com.exercise.banking.service.transfer.dto.PaymentFileFormat;
+import com.exercise.banking.service.transfer.dto.PaymentFileResultV1;
+import com.exercise.banking.service.transfer.exception.PaymentFileFormatException;
+import com.exercise.banking.service.transfer.idempotency.RequestIdFilter;
+import com.exercise.banking.service.transfer.model.Account;
+import com.exercise.banking.service.transfer.model.Bank;
+import com.exercise.banking.service.transfer.model.Payee;
+import com.exercise.banking.service.transfer.repository.AccountRepository;
+import com.exercise.banking.service.transfer.repository.BankRepository;
+import com.exercise.banking.service.transfer.repository.FileCheckpointRepository;
+import com.exercise.banking.service.transfer.repository.TransactionRepository;
+
+/**
+ * Small chunks, so that a file of a few records is executed and checkpointed in several chunks.
+ */
+@SpringBootTest(properties = { "transfer.idempotency.cache.max-size=0", "transfer.batch.chunk-size=5" })
+class PaymentFileServiceTest {
+
+	private static final String SOURCE_BANK = "A00001";
+	private static final String CSV_HEADER = "payerAccNumber,payeeAccNumber,payeeBankName,payeeBankCode,amount,currency\n";
+
+	@Autowired
+	private PaymentFileService paymentFileService;
+
+	@Autowired
+	private AccountRepository accRepo;
+
+	@Autowired
+	private BankRepository bankRepo;
+
+	@Autowired
+	private TransactionRepository txnRepo;
+
+	@Autowired
+	private FileCheckpointRepository checkpointRepo;
+
+	@Autowired
+	private RequestIdFilter requestIdFilter;
+
+	@BeforeEach
+	void setUp() {
+		requestIdFilter.rebuild();
+	}
+
+	@Test
+	void testPain001File() {
+		register("8910001", "100.00", "8910002");
+		UUID endToEndId = UUID.randomUUID();
+		String pain001 = """
+				<?xml version="1.0" encoding="UTF-8"?>
+				<Document xmlns="urn:iso:std:iso:20022:tech:xsd:pain.001.001.09">
+				  <CstmrCdtTrfInitn>
+				    <GrpHdr><MsgId>MSG-1</MsgId><NbOfTxs>3</NbOfTxs></GrpHdr>
+				    <PmtInf>
+				      <PmtInfId>PMT-1</PmtInfId>
+				      <DbtrAcct><Id><Othr><Id>8910001</Id></Othr></Id></DbtrAcct>
+				      <CdtTrfTxInf>
+				        <PmtId><EndToEndId>%s</EndToEndId></PmtId>
+				        <Amt><InstdAmt Ccy="GBP">10.00</InstdAmt></Amt>
+				        <CdtrAgt><FinInstnId><ClrSysMmbId><MmbId>A00001</MmbId></ClrSysMmbId><Nm>BANK_A</Nm></FinInstnId></CdtrAgt>
+				        <CdtrAcct><Id><Othr><Id>8910002</Id></Othr></Id></CdtrAcct>
+				      </CdtTrfTxInf>
+				      <CdtTrfTxInf>
+				        <PmtId><EndToEndId>INVOICE-42</EndToEndId></PmtId>
+				        <Amt><InstdAmt Ccy="USD">20.00</InstdAmt></Amt>
+				        <CdtrAgt><FinInstnId><ClrSysMmbId><MmbId>A00001</MmbId></ClrSysMmbId></FinInstnId></CdtrAgt>
+				        <CdtrAcct><Id><Othr><Id>8910002</Id></Othr></Id></CdtrAcct>
+				      </CdtTrfTxInf>
+				      <CdtTrfTxInf>
+				        <PmtId><EndToEndId>INVOICE-43</EndToEndId></PmtId>
+				        <Amt><InstdAmt Ccy="GBP"><![CDATA[30.50]]></InstdAmt></Amt>
+				        <CdtrAgt><FinInstnId><ClrSysMmbId><MmbId>A00001</MmbId></ClrSysMmbId></FinInstnId></CdtrAgt>
+				        <CdtrAcct><Id><Othr><Id>8910002</Id></Othr></Id></CdtrAcct>
+				      </CdtTrfTxInf>
+				    </PmtInf>
+				  </CstmrCdtTrfInitn>
+				</Document>
+				""".formatted(endToEndId);
+
+		PaymentFileResultV1 result = paymentFileService.performFileV1(UUID.randomUUID(), PaymentFileFormat.PAIN_001, content(pain001));
+
+		assertEquals(3, result.getRecords());
+		assertEquals(2, result.getSucceeded());
+		assertEquals(1, result.getFailed());
+		assertEquals(2, result.getFailures().get(0).getRecord());
+		assertEquals(HttpStatus.BAD_REQUEST, result.getFailures().get(0).getError().getStatus());
+		assertTrue(txnRepo.findByRequestId(endToEndId).isPresent());
+		assertBalance("8910001", "59.50");
+		assertBalance("8910002", "40.50");
+	}
+
+	@Test
+	void testCsvFile() {
+		register("8920001", "100.00", "8920002");
+		String csv = CSV_HEADER
+				+ "8920001,8920002,\"BANK_A, London\",A00001,10.00,GBP\n"
+				+ "\n"
+				+ "8920001,8920002,BANK_A,A00001,ten,GBP\n"
+				+ "8920001,8920002,,A00001,5.00,EUR\n";
+
+		PaymentFileResultV1 result = paymentFileService.performFileV1(UUID.randomUUID(), PaymentFileFormat.CSV, content(csv));
+
+		assertEquals(3, result.getRecords());
+		assertEquals(2, result.getSucceeded());
+		assertEquals(1, result.getFailed());
+		assertEquals(2, result.getFailures().get(0).getRecord());
+		assertBalance("8920001", "85.00");
+	}
+
+	@Test
+	void testCsvFileWithoutRequiredColumns() {
+		UUID fileId = UUID.randomUUID();
+		PaymentFileFormatException e = assertThrows(PaymentFileFormatException.class,
+				() -> paymentFileService.performFileV1(fileId, PaymentFileFormat.CSV, content("payerAccNumber,amount\n8930001,1.00\n")));
+		assertEquals(0, e.getRecord());
+	}
+
+	@Test
+	void testInterruptedFileResumesAfterCheckpoint() {
+		register("8940001", "100.00", "8940002");
+		UUID fileId = UUID.randomUUID();
+		StringBuilder records = new StringBuilder(CSV_HEADER);
+		for (int i = 0; i < 12; i++) {
+			records.append("8940001,8940002,BANK_A,A00001,1.00,GBP\n");
+		}
+		// Record 13 cannot be read: the chunk of records 11 and 12 is never executed
+		String broken = records + "8940001,\"8940002,BANK_A,A00001,1.00,GBP\n";
+		PaymentFileFormatException e = assertThrows(PaymentFileFormatException.class,
+				() -> paymentFileService.performFileV1(fileId, PaymentFileFormat.CSV, content(broken)));
+		assertEquals(13, e.getRecord());
+		assertEquals(10, checkpointRepo.findById(fileId).orElseThrow().getRecordsDone());
+		assertBalance("8940001", "90.00");
+
+		String fixed = records + "8940001,8940002,BANK_A,A00001,1.00,GBP\n";
+		PaymentFileResultV1 resumed = paymentFileService.performFileV1(fileId, PaymentFileFormat.CSV, content(fixed));
+		assertEquals(10, resumed.getResumedFrom());
+		assertEquals(13, resumed.getRecords());
+		assertEquals(13, resumed.getSucceeded());
+		assertBalance("8940001", "87.00");
+
+		// A completed file is answered with its outcome, nothing is executed again
+		PaymentFileResultV1 again = paymentFileService.performFileV1(fileId, PaymentFileFormat.CSV, content(fixed));
+		assertEquals(13, again.getResumedFrom());
+		assertEquals(13, again.getSucceeded());
+		assertBalance("8940001", "87.00");
+	}
+
+	private void register(String payerAccNum, String balance, String payeeAccNum) {
+		Bank bank = bankRepo.findById(SOURCE_BANK).orElseThrow();
+		Account payer = accRepo.save(new Account(payerAccNum, new BigDecimal(balance), "File-" + payerAccNum, bank, new HashSet<>()));
+		accRepo.save(new Account(payeeAccNum, new BigDecimal("0.00"), "File-" + payeeAccNum, bank, new HashSet<>()));
+		payer.addPayee(new Payee(null, "File-Payee", payeeAccNum, bank, payer));
+		accRepo.save(payer);
+	}
+
+	private void assertBalance(String accNum, String balance) {
+		assertEquals(0, new BigDecimal(balance).compareTo(accRepo.findViewByAccNum(accNum).orElseThrow().balance()));
+	}
+
+	private static InputStream content(String file) {
+		return new ByteArrayInputStream(file.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,139 @@
+package com.exercise.banking.service.transfer.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.exercise.banking.service.transfer.concurrency.AccountLockManager;
+import com.exercise.banking.service.transfer.concurrency.LockingStrategy;
+import com.exercise.banking.service.transfer.concurrency.TransferExecutor;
+import com.exercise.banking.service.transfer.concurrency.TransferRetryPolicy;
+import com.exercise.banking.service.transfer.dto.TransferRequestV1;
+import com.exercise.banking.service.transfer.exception.AccountLockTimeoutException;
+import com.exercise.banking.service.transfer.model.Account;
+import com.exercise.banking.service.transfer.model.Bank;
+import com.exercise.banking.service.transfer.model.Payee;
+import com.exercise.banking.service.transfer.repository.AccountRepository;
+import com.exercise.banking.service.transfer.repository.BankRepository;
+import com.exercise.banking.service.transfer.service.impl.IntraBankTransferService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Runs the pessimistic locking strategy against the database, with the JVM locks disabled
+ * so that only the database row locks coordinate the transfers.
+ */
+@SpringBootTest
+class PessimisticLockingTransferTest {
+
+	private static final String BANK_CODE = "A00001";
+
+	@Autowired
+	private AccountService accountService;
+
+	@Autowired
+	private TransactionService txnService;
+
+	@Autowired
+	private AccountRepository accRepo;
+
+	@Autowired
+	private BankRepository bankRepo;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private IntraBankTransferService transferService;
+
+	@BeforeEach
+	void setUp() {
+		if (!accRepo.existsById("PL0001")) {
+			Bank bank = bankRepo.findById(BANK_CODE).orElseThrow();
+			Account first = new Account("PL0001", new BigDecimal("1000.00"), "Locker1", bank, new HashSet<>());
+			Account second = new Account("PL0002", new BigDecimal("1000.00"), "Locker2", bank, new HashSet<>());
+			first.addPayee(new Payee(null, "Locker1-Payee", "PL0002", bank, first));
+			second.addPayee(new Payee(null, "Locker2-Payee", "PL0001", bank, second));
+			accRepo.saveAll(List.of(first, second));
+		}
+
+		meterRegistry = new SimpleMeterRegistry();
+		TransferExecutor transferExecutor = new TransferExecutor(
+				new AccountLockManager(false, 16, 1000, meterRegistry),
+				new TransferRetryPolicy(3, 1, 10, 0.2, 10), transactionManager, meterRegistry);
+		transferService = new TransferServiceBuilder(txnService, accountService, transferExecutor)
+				.withLockingStrategy(LockingStrategy.PESSIMISTIC).buildIntraBank();
+	}
+
+	@Test
+	void testOpposingTransfersDoNotDeadlock() {
+		BigDecimal firstBalance = accRepo.findById("PL0001").orElseThrow().getBalance();
+		BigDecimal secondBalance = accRepo.findById("PL0002").orElseThrow().getBalance();
+
+		// Half of the clients transfer PL0001->PL0002 while the other half transfer PL0002->PL0001
+		CompletableFuture<?>[] clients = IntStream.range(0, 8)
+				.mapToObj(i -> CompletableFuture.runAsync(() -> {
+					String payer = i % 2 == 0 ? "PL0001" : "PL0002";
+					String payee = i % 2 == 0 ? "PL0002" : "PL0001";
+					for (int n = 0; n < 10; n++) {
+						transferService.performTransferV1(new TransferRequestV1(UUID.randomUUID(), payer, payee,
+								"BANK_A", BANK_CODE, BigDecimal.ONE, "GBP", Instant.now().toString()));
+					}
+				}))
+				.toArray(CompletableFuture[]::new);
+		CompletableFuture.allOf(clients).join();
+
+		// The same amount moved in both directions
+		assertEquals(firstBalance, accRepo.findById("PL0001").orElseThrow().getBalance());
+		assertEquals(secondBalance, accRepo.findById("PL0002").orElseThrow().getBalance());
+		// Transfers waited for the row locks instead of failing and being retried
+		assertEquals(0.0, meterRegistry.get("transfer.conflicts").counter().count());
+	}
+
+	@Test
+	void testRowLockTimeout() throws Exception {
+		TransactionTemplate tx = new TransactionTemplate(transactionManager);
+		UUID requestId = UUID.randomUUID();
+		CountDownLatch locked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		CompletableFuture<Void> holder = CompletableFuture.runAsync(() -> tx.executeWithoutResult(status -> {
+			accountService.lockAccountsInOrder(List.of("PL0001"), requestId);
+			locked.countDown();
+			awaitQuietly(release);
+		}));
+		try {
+			locked.await(5, TimeUnit.SECONDS);
+			assertThrows(AccountLockTimeoutException.class, () -> tx.executeWithoutResult(
+					status -> accountService.lockAccountsInOrder(List.of("PL0002", "PL0001"), requestId)));
+		} finally {
+			release.countDown();
+		}
+		holder.get(5, TimeUnit.SECONDS);
+	}
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -2,6 +2,7 @@ package com.exercise.banking.service.transfer.service;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.when;
 
 import java.math.BigDecimal;
@@ -19,8 +20,12 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.exercise.banking.service.transfer.concurrency.AccountLockManager;
+import com.exercise.banking.service.transfer.concurrency.TransferExecutor;
+import com.exercise.banking.service.transfer.concurrency.TransferRetryPolicy;
 import com.exercise.banking.service.transfer.dto.TransferRequestV1;
 import com.exercise.banking.service.transfer.dto.TransferResponseV1;
 import com.exercise.banking.service.transfer.model.Account;
@@ -28,9 +33,12 @@ import com.exercise.banking.service.transfer.model.Bank;
 import com.exercise.banking.service.transfer.model.Payee;
 import com.exercise.banking.service.transfer.model.Transaction;
 import com.exercise.banking.service.transfer.model.TransferType;
+import com.exercise.banking.service.transfer.repository.AccountView;
 import com.exercise.banking.service.transfer.service.impl.InterBankTransferService;
 import com.exercise.banking.service.transfer.service.impl.IntraBankTransferService;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 @Transactional
 @DataJpaTest
 class SuccessTransferServiceTest {
@@ -41,17 +49,23 @@ class SuccessTransferServiceTest {
     @Mock
     TransactionService txnService;
 
+    @Mock
+    private PlatformTransactionManager txManager;
+
 
 	private TransferServiceSelector selector;
 
 	@BeforeEach
 	public void setUp() {
 		MockitoAnnotations.openMocks(this);
+		TransferExecutor transferExecutor = new TransferExecutor(
+				new AccountLockManager(true, 16, 1000, new SimpleMeterRegistry()),
+				new TransferRetryPolicy(3, 1, 10, 0.2, 10), txManager, new SimpleMeterRegistry());
 		// Create the EnumMap with the mocked services
         Map<TransferType, TransferService> services = new EnumMap<>(TransferType.class);
         
-        IntraBankTransferService intraBankSvc = new IntraBankTransferService(txnService, accountService);
-		InterBankTransferService interBankSvc = new InterBankTransferService(txnService, accountService);
+        IntraBankTransferService intraBankSvc = new TransferServiceBuilder(txnService, accountService, transferExecutor).buildIntraBank();
+		InterBankTransferService interBankSvc = new TransferServiceBuilder(txnService, accountService, transferExecutor).buildInterBank();
 		
         services.put(TransferType.INTER_BANK_TRANSFER, interBankSvc);
         services.put(TransferType.INTRA_BANK_TRANSFER, intraBankSvc);
@@ -87,18 +101,23 @@ class SuccessTransferServiceTest {
 		payerAccount.getPayees().add(payee1);
 
 		Mockito.doAnswer(invocation -> {
-            Account account = invocation.getArgument(0);
+            Account account = accountService.getAccountByNumberOrThrow(invocation.getArgument(0), invocation.getArgument(2));
             BigDecimal amnt = invocation.getArgument(1);
             account.setBalance(account.getBalance().add(amnt));
-            return account; // void method, so return null
-        }).when(accountService).creditToAccount(any(Account.class), any(BigDecimal.class), any(UUID.class));
+            return null; // void method, so return null
+        }).when(accountService).creditToAccount(anyString(), any(BigDecimal.class), any(UUID.class));
         
         Mockito.doAnswer(invocation -> {
-            Account account = invocation.getArgument(0);
+            Account account = accountService.getAccountByNumberOrThrow(invocation.getArgument(0), invocation.getArgument(2));
             BigDecimal amnt = invocation.getArgument(1);
             account.setBalance(account.getBalance().subtract(amnt));
-            return account; // void method, so return null
-        }).when(accountService).debitFromAccount(any(Account.class), any(BigDecimal.class), any(UUID.class));
+            return null; // void method, so return null
+        }).when(accountService).debitFromAccount(anyString(), any(BigDecimal.class), any(UUID.class));
+        // Views are read from the mocked accounts
+        when(accountService.getAccountViewOrThrow(anyString(), any(UUID.class))).thenAnswer(invocation -> {
+            Account account = accountService.getAccountByNumberOrThrow(invocation.getArgument(0), invocation.getArgument(1));
+            return new AccountView(account.getAccNum(), account.getBalance(), account.getBank().getCode(), account.getVersion());
+        });
 
 
 		UUID requestId = UUID.randomUUID();
@@ -116,6 +135,7 @@ class SuccessTransferServiceTest {
 
 		// Mock the save behavior of the transaction repository
 	    when(txnService.saveTransaction(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
+	    when(txnService.reserve(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
 		// Perform transfer
 		CompletableFuture<TransferResponseV1> future = CompletableFuture.supplyAsync(() -> svc.performTransferV1(request));
@@ -4,6 +4,9 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.math.BigDecimal;
@@ -77,6 +80,19 @@ private  UUID requestId ;
 		
 	}
 	
+	@Test
+	void testSaveReservedTxnWithOneUpdate() {
+		
+		UUID txnId = UUID.randomUUID();
+		Transaction mockTxn = createMockTxn(requestId,txnId);
+		
+		when(mockTxnRepo.complete(txnId, mockTxn.getStatus(), mockTxn.getPayerAccount(), mockTxn.getPayee())).thenReturn(1);
+		Transaction retrievedTxn = txnService.saveTransaction(mockTxn);
+		assertEquals(mockTxn, retrievedTxn);
+		verify(mockTxnRepo, never()).save(any(Transaction.class));
+		
+	}
+	
 	private Transaction createMockTxn(UUID requestId,UUID txnId) {
 		Transaction mockTransaction = new Transaction();
         mockTransaction.setTransactionId(txnId); 
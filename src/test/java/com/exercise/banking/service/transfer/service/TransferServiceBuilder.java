@@ -0,0 +1,119 @@
+package com.exercise.banking.service.transfer.service;
+
+import java.util.Optional;
+
+import com.exercise.banking.service.transfer.bankclient.BankBulkheads;
+import com.exercise.banking.service.transfer.bankclient.ExternalBankClient;
+import com.exercise.banking.service.transfer.concurrency.LockingStrategy;
+import com.exercise.banking.service.transfer.concurrency.TransferExecutor;
+import com.exercise.banking.service.transfer.groupcommit.GroupCommitWriter;
+import com.exercise.banking.service.transfer.idempotency.IdempotencyCache;
+import com.exercise.banking.service.transfer.idempotency.InFlightRequests;
+import com.exercise.banking.service.transfer.idempotency.RequestIdFilter;
+import com.exercise.banking.service.transfer.idempotency.RequestReservations;
+import com.exercise.banking.service.transfer.ledger.ShardedLedgerEngine;
+import com.exercise.banking.service.transfer.netting.NettingEngine;
+import com.exercise.banking.service.transfer.outbox.TransferOutbox;
+import com.exercise.banking.service.transfer.service.impl.InterBankTransferService;
+import com.exercise.banking.service.transfer.service.impl.IntraBankTransferService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Builds the transfer services outside of a Spring context.
+ *
+ * The optional collaborators are disabled and the idempotency collaborators use the
+ * defaults of the application, unless they are set on the builder.
+ */
+public class TransferServiceBuilder {
+
+	private final TransactionService txnService;
+	private final AccountService accountService;
+	private final TransferExecutor transferExecutor;
+	private LockingStrategy lockingStrategy = LockingStrategy.ATOMIC_UPDATE;
+	private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private IdempotencyCache idempotencyCache;
+	private RequestReservations reservations;
+	private Optional<ShardedLedgerEngine> ledgerEngine = Optional.empty();
+	private Optional<GroupCommitWriter> groupCommitWriter = Optional.empty();
+	private Optional<NettingEngine> nettingEngine = Optional.empty();
+	private Optional<ExternalBankClient> bankClient = Optional.empty();
+	private Optional<TransferOutbox> outbox = Optional.empty();
+	private Optional<BankBulkheads> bulkheads = Optional.empty();
+
+	public TransferServiceBuilder(TransactionService txnService, AccountService accountService, TransferExecutor transferExecutor) {
+		this.txnService = txnService;
+		this.accountService = accountService;
+		this.transferExecutor = transferExecutor;
+	}
+
+	public TransferServiceBuilder withLockingStrategy(LockingStrategy lockingStrategy) {
+		this.lockingStrategy = lockingStrategy;
+		return this;
+	}
+
+	public TransferServiceBuilder withMeterRegistry(MeterRegistry meterRegistry) {
+		this.meterRegistry = meterRegistry;
+		return this;
+	}
+
+	public TransferServiceBuilder withIdempotencyCache(IdempotencyCache idempotencyCache) {
+		this.idempotencyCache = idempotencyCache;
+		return this;
+	}
+
+	public TransferServiceBuilder withReservations(RequestReservations reservations) {
+		this.reservations = reservations;
+		return this;
+	}
+
+	public TransferServiceBuilder withLedgerEngine(ShardedLedgerEngine ledgerEngine) {
+		this.ledgerEngine = Optional.ofNullable(ledgerEngine);
+		return this;
+	}
+
+	public TransferServiceBuilder withGroupCommitWriter(GroupCommitWriter groupCommitWriter) {
+		this.groupCommitWriter = Optional.ofNullable(groupCommitWriter);
+		return this;
+	}
+
+	public TransferServiceBuilder withNettingEngine(NettingEngine nettingEngine) {
+		this.nettingEngine = Optional.ofNullable(nettingEngine);
+		return this;
+	}
+
+	public TransferServiceBuilder withBankClient(ExternalBankClient bankClient) {
+		this.bankClient = Optional.ofNullable(bankClient);
+		return this;
+	}
+
+	public TransferServiceBuilder withOutbox(TransferOutbox outbox) {
+		this.outbox = Optional.ofNullable(outbox);
+		return this;
+	}
+
+	public TransferServiceBuilder withBulkheads(BankBulkheads bulkheads) {
+		this.bulkheads = Optional.ofNullable(bulkheads);
+		return this;
+	}
+
+	public IntraBankTransferService buildIntraBank() {
+		return new IntraBankTransferService(txnService, accountService, transferExecutor, lockingStrategy, ledgerEngine,
+				groupCommitWriter, idempotencyCache(), reservations(), new InFlightRequests(meterRegistry), nettingEngine);
+	}
+
+	public InterBankTransferService buildInterBank() {
+		return new InterBankTransferService(txnService, accountService, transferExecutor, ledgerEngine, groupCommitWriter,
+				idempotencyCache(), reservations(), new InFlightRequests(meterRegistry), bankClient, outbox, bulkheads);
+	}
+
+	private IdempotencyCache idempotencyCache() {
+		return idempotencyCache != null ? idempotencyCache : new IdempotencyCache(1000, 60000, meterRegistry);
+	}
+
+	private RequestReservations reservations() {
+		return reservations != null ? reservations
+				: new RequestReservations(txnService, new RequestIdFilter(false, 1, 0.001, 1, null, meterRegistry), 5000, 1, 60000, meterRegistry);
+	}
+}
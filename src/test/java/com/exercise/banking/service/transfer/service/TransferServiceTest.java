@@ -4,6 +4,8 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -27,8 +29,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.exercise.banking.service.transfer.bankclient.ExternalBankClient;
+import com.exercise.banking.service.transfer.concurrency.AccountLockManager;
+import com.exercise.banking.service.transfer.concurrency.TransferExecutor;
+import com.exercise.banking.service.transfer.concurrency.TransferRetryPolicy;
 import com.exercise.banking.service.transfer.dto.TransferRequestV1;
 import com.exercise.banking.service.transfer.dto.TransferResponseV1;
 import com.exercise.banking.service.transfer.exception.AccountNotFoundException;
@@ -41,9 +48,12 @@ import com.exercise.banking.service.transfer.model.Payee;
 import com.exercise.banking.service.transfer.model.Transaction;
 import com.exercise.banking.service.transfer.model.TransactionStatus;
 import com.exercise.banking.service.transfer.model.TransferType;
+import com.exercise.banking.service.transfer.repository.AccountView;
 import com.exercise.banking.service.transfer.service.impl.InterBankTransferService;
 import com.exercise.banking.service.transfer.service.impl.IntraBankTransferService;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 @Transactional
 @DataJpaTest
 
@@ -57,6 +67,9 @@ class TransferServiceTest {
     @Mock
     private TransactionService mockTxnService;
 
+    @Mock
+    private PlatformTransactionManager txManager;
+
 	@InjectMocks
 	TransferServiceSelectorTest transferSvcSelector;
 
@@ -71,27 +84,41 @@ class TransferServiceTest {
 	@BeforeEach
 	public void setUp() {
 		MockitoAnnotations.openMocks(this);
-       intraBankTransferService = new IntraBankTransferService(mockTxnService, mockAccntService);
-       interBankTransferService = new InterBankTransferService(mockTxnService,mockAccntService);
+		TransferExecutor transferExecutor = new TransferExecutor(
+				new AccountLockManager(true, 16, 1000, new SimpleMeterRegistry()),
+				new TransferRetryPolicy(3, 1, 10, 0.2, 10), txManager, new SimpleMeterRegistry());
+       intraBankTransferService = new TransferServiceBuilder(mockTxnService, mockAccntService, transferExecutor).buildIntraBank();
+       interBankTransferService = new TransferServiceBuilder(mockTxnService, mockAccntService, transferExecutor).buildInterBank();
        
        requestId = UUID.randomUUID();
+       when(mockTxnService.reserve(any(Transaction.class))).thenAnswer(invocation -> invocation.getArgument(0));
        MDC.put("requestId", requestId.toString());
        
        Mockito.doAnswer(invocation -> {
-           Account account = invocation.getArgument(0);
+           Account account = mockAccntService.getAccountByNumberOrThrow(invocation.getArgument(0), invocation.getArgument(2));
            BigDecimal amount = invocation.getArgument(1);
            account.setBalance(account.getBalance().add(amount));
-           return account; 
-       }).when(mockAccntService).creditToAccount(any(Account.class), any(BigDecimal.class), any(UUID.class));
+           return null; 
+       }).when(mockAccntService).creditToAccount(anyString(), any(BigDecimal.class), any(UUID.class));
        
        
        
        Mockito.doAnswer(invocation -> {
-           Account account = invocation.getArgument(0);
+           Account account = mockAccntService.getAccountByNumberOrThrow(invocation.getArgument(0), invocation.getArgument(2));
            BigDecimal amount = invocation.getArgument(1);
+           // Same guard as the conditional debit in the repository
+           if (account.getBalance().compareTo(amount) < 0) {
+               throw new InsufficientFundsException(invocation.getArgument(2));
+           }
            account.setBalance(account.getBalance().subtract(amount));
-           return account; 
-       }).when(mockAccntService).debitFromAccount(any(Account.class), any(BigDecimal.class), any(UUID.class));
+           return null; 
+       }).when(mockAccntService).debitFromAccount(anyString(), any(BigDecimal.class), any(UUID.class));
+
+       // Views are read from the mocked accounts
+       when(mockAccntService.getAccountViewOrThrow(anyString(), any(UUID.class))).thenAnswer(invocation -> {
+           Account account = mockAccntService.getAccountByNumberOrThrow(invocation.getArgument(0), invocation.getArgument(1));
+           return new AccountView(account.getAccNum(), account.getBalance(), account.getBank().getCode(), account.getVersion());
+       });
 
 
 	}
@@ -179,6 +206,7 @@ class TransferServiceTest {
         mockTransaction.setPayerAccount(resultPayerAccount);
         
         when(mockTxnService.findByRequestId(requestId)).thenReturn(Optional.of(mockTransaction));
+        when(mockTxnService.findStatusByRequestId(requestId)).thenReturn(Optional.of(TransactionStatus.SUCCESS));
 
 
         // Execute the transfer
@@ -197,6 +225,40 @@ class TransferServiceTest {
     }
 	
 	
+	@Test
+	void testRetryAnsweredFromIdempotencyCache() {
+		Bank testBank1 = new Bank();
+		testBank1.setCode("testCode1");
+		testBank1.setName("testBank1");
+
+		Account payerAccount = new Account("ACC001", new BigDecimal("1000.00"), "Payer1", testBank1, new HashSet<>());
+		Payee payee1 = new Payee(null, "Person1-Payee1", "ACC002", testBank1, payerAccount);
+		payerAccount.addPayee(payee1);
+		Account payeeAccount = new Account("ACC002", new BigDecimal("200.00"), "Payee1", testBank1, null);
+		TransferRequestV1 request = new TransferRequestV1(requestId, "ACC001", "ACC002", "testBank1", "testCode1", new BigDecimal("100.00"), "GBP", Instant.now().toString());
+
+		mockAccount(payerAccount, "ACC001");
+		mockAccount(payeeAccount, "ACC002");
+		mockPayeeByAccountNumber("ACC001", "ACC002", "testCode1", payee1);
+		Transaction mockTransaction = createMockTxn(requestId);
+		mockTransaction.setType(TransferType.INTRA_BANK_TRANSFER.getValue());
+		mockTransaction.setCurrency("GBP");
+		mockTransaction.setPayerAccount(payerAccount);
+		mockTransaction.setPayee(payee1);
+		when(mockTxnService.saveTransaction(any(Transaction.class))).thenReturn(mockTransaction);
+
+		TransferResponseV1 first = intraBankTransferService.performTransferV1(request);
+		TransferResponseV1 retry = intraBankTransferService.performTransferV1(request);
+
+		assertTrue(retry.isDuplicate());
+		assertEquals(first.getTransactionId(), retry.getTransactionId());
+		assertEquals(new BigDecimal("900.00"), retry.getBalance());
+		// The retry did not look up the transaction or move any money
+		verify(mockTxnService, never()).findByRequestId(requestId);
+		verify(mockAccntService, times(1)).debitFromAccount("ACC001", new BigDecimal("100.00"), requestId);
+		assertEquals(new BigDecimal("900.00"), payerAccount.getBalance());
+	}
+
 	@Test
 	void testIntraBankTransferFailure() {
 	    logger.info("####### TEST FOR INTRA BANK TRANSFER FAILURE ##########");
@@ -223,7 +285,7 @@ class TransferServiceTest {
 
 
 	    // Simulate a failure in saving the payer account
-	    when(mockAccntService.debitFromAccount(payerAccount, amount, requestId)).thenThrow(new RuntimeException("Simulated database failure"));
+	    Mockito.doThrow(new RuntimeException("Simulated database failure")).when(mockAccntService).debitFromAccount("ACC001", amount, requestId);
 	    
 
 	    // Execute the transfer and expect a TransactionProcessingException
@@ -386,7 +448,9 @@ class TransferServiceTest {
 		TransferRequestV1 request = new TransferRequestV1(requestId,"ACC001", "ACC003", "testBank2", "testCode2",
 				new BigDecimal("100.00"),"GBP",Instant.now().toString());
 		
-		when(mockAccntService.getAccountByNumberOrThrow("ACC001",requestId)).thenThrow(new AccountNotFoundException(requestId));
+		// The payee lookup reports an unknown payer account
+		when(mockAccntService.getPayeeByAccountNumbersOrThrow("ACC001", "ACC003","testCode2",requestId))
+		.thenThrow(new AccountNotFoundException(requestId));
 
 		assertThrows(AccountNotFoundException.class, () -> intraBankTransferService.performTransferV1(request));
 	}
@@ -414,10 +478,22 @@ class TransferServiceTest {
 				new BigDecimal("100.00"),"GBP",Instant.now().toString());
 
 		mockAccount(payerAccount,"ACC001");
+		mockPayeeByAccountNumber("ACC001", "ACC003","testCode2",payee1);
 		assertThrows(InsufficientFundsException.class, () -> intraBankTransferService.performTransferV1(request));
 
 	}
 	
+	@Test
+	void testBankClientRequiresOutbox() {
+		TransferExecutor transferExecutor = new TransferExecutor(
+				new AccountLockManager(true, 16, 1000, new SimpleMeterRegistry()),
+				new TransferRetryPolicy(3, 1, 10, 0.2, 10), txManager, new SimpleMeterRegistry());
+		// Sent once after the commit, a lost call would leave the payer debited
+		TransferServiceBuilder builder = new TransferServiceBuilder(mockTxnService, mockAccntService, transferExecutor)
+				.withBankClient(Mockito.mock(ExternalBankClient.class));
+		assertThrows(IllegalStateException.class, builder::buildInterBank);
+	}
+
 	private Transaction createMockTxn(UUID requestId) {
 		Transaction mockTransaction = new Transaction();
         mockTransaction.setTransactionId(UUID.randomUUID()); 
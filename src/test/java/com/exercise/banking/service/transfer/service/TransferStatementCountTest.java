@@ -0,0 +1,125 @@
+package com.exercise.banking.service.transfer.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.UUID;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.exercise.banking.service.transfer.dto.TransferRequestV1;
+import com.exercise.banking.service.transfer.dto.TransferResponseV1;
+import com.exercise.banking.service.transfer.idempotency.RequestIdFilter;
+import com.exercise.banking.service.transfer.model.Account;
+import com.exercise.banking.service.transfer.model.Bank;
+import com.exercise.banking.service.transfer.model.Payee;
+import com.exercise.banking.service.transfer.repository.AccountRepository;
+import com.exercise.banking.service.transfer.repository.BankRepository;
+
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Counts the SQL statements a transfer prepares, so that a change adding a query to the
+ * hot path fails here instead of showing up as lost throughput.
+ *
+ * The response cache is disabled, duplicates are answered from the database.
+ */
+@SpringBootTest(properties = "transfer.idempotency.cache.max-size=0")
+class TransferStatementCountTest {
+
+	private static final String SOURCE_BANK = "A00001";
+	private static final String OTHER_BANK = "B00001";
+
+	@Autowired
+	private TransferServiceSelector selector;
+
+	@Autowired
+	private AccountRepository accRepo;
+
+	@Autowired
+	private BankRepository bankRepo;
+
+	@Autowired
+	private RequestIdFilter requestIdFilter;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	private Statistics statistics;
+
+	@BeforeEach
+	void setUp() {
+		// Ready, so that new request ids are reserved without looking them up
+		requestIdFilter.rebuild();
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.setStatisticsEnabled(true);
+	}
+
+	@AfterEach
+	void tearDown() {
+		statistics.setStatisticsEnabled(false);
+		statistics.clear();
+	}
+
+	@Test
+	void testIntraBankTransfer() {
+		register("7710001", "7710002", SOURCE_BANK);
+
+		// reserve, select payee, debit, credit, complete, read balance
+		assertEquals(6, countStatements(request(UUID.randomUUID(), "7710001", "7710002", SOURCE_BANK)));
+		// The registration is cached from now on
+		assertEquals(5, countStatements(request(UUID.randomUUID(), "7710001", "7710002", SOURCE_BANK)));
+		// Accounts are read as views, no entity is loaded
+		assertEquals(0, statistics.getEntityLoadCount());
+	}
+
+	@Test
+	void testInterBankTransfer() {
+		register("7720001", "7720002", OTHER_BANK);
+
+		countStatements(request(UUID.randomUUID(), "7720001", "7720002", OTHER_BANK));
+		// reserve, debit, complete, read balance
+		assertEquals(4, countStatements(request(UUID.randomUUID(), "7720001", "7720002", OTHER_BANK)));
+		assertEquals(0, statistics.getEntityLoadCount());
+	}
+
+	@Test
+	void testDuplicateTransfer() {
+		register("7730001", "7730002", SOURCE_BANK);
+		TransferRequestV1 request = request(UUID.randomUUID(), "7730001", "7730002", SOURCE_BANK);
+		countStatements(request);
+
+		// status of the request id, then the transaction with its payer and payee
+		assertEquals(2, countStatements(request));
+	}
+
+	private long countStatements(TransferRequestV1 request) {
+		statistics.clear();
+		TransferResponseV1 response = selector.getService(SOURCE_BANK, request.getPayeeBankCode()).performTransferV1(request);
+		assertEquals("SUCCESS", response.getStatus());
+		return statistics.getPrepareStatementCount();
+	}
+
+	private void register(String payerAccNum, String payeeAccNum, String payeeBankCode) {
+		Bank bank = bankRepo.findById(SOURCE_BANK).orElseThrow();
+		Account payer = accRepo.save(new Account(payerAccNum, new BigDecimal("1000.00"), "Counter-" + payerAccNum, bank, new HashSet<>()));
+		if (SOURCE_BANK.equals(payeeBankCode)) {
+			accRepo.save(new Account(payeeAccNum, new BigDecimal("0.00"), "Counter-" + payeeAccNum, bank, new HashSet<>()));
+		}
+		payer.addPayee(new Payee(null, "Counter-Payee", payeeAccNum, bankRepo.findById(payeeBankCode).orElseThrow(), payer));
+		accRepo.save(payer);
+	}
+
+	private static TransferRequestV1 request(UUID requestId, String payerAccNum, String payeeAccNum, String payeeBankCode) {
+		return new TransferRequestV1(requestId, payerAccNum, payeeAccNum, null, payeeBankCode, new BigDecimal("10.00"), "GBP",
+				Instant.now().toString());
+	}
+}